@@ -178,6 +178,7 @@ import org.whispersystems.textsecuregcm.storage.RemoteConfigs;
 import org.whispersystems.textsecuregcm.storage.RemoteConfigsManager;
 import org.whispersystems.textsecuregcm.storage.ReportMessageDynamoDb;
 import org.whispersystems.textsecuregcm.storage.ReportMessageManager;
+import org.whispersystems.textsecuregcm.storage.SerializedExpireableJsonDynamoStore;
 import org.whispersystems.textsecuregcm.storage.StoredVerificationCodeManager;
 import org.whispersystems.textsecuregcm.storage.SubscriptionManager;
 import org.whispersystems.textsecuregcm.storage.VerificationCodeStore;
@@ -288,7 +289,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     DynamoDbClient dynamoDbClient = DynamoDbFromConfig.client(config.getDynamoDbClientConfiguration(),
         AWSSDK_CREDENTIALS_PROVIDER);
 
-    DeletedAccounts deletedAccounts = new DeletedAccounts(dynamoDbClient,
+    DeletedAccounts deletedAccounts = new DeletedAccounts(dynamoDbAsyncClient,
         config.getDynamoDbTables().getDeletedAccounts().getTableName());
 
     DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager =
@@ -311,7 +312,8 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         config.getDynamoDbTables().getAccounts().getPhoneNumberTableName(),
         config.getDynamoDbTables().getAccounts().getPhoneNumberIdentifierTableName(),
         config.getDynamoDbTables().getAccounts().getUsernamesTableName(),
-        config.getDynamoDbTables().getAccounts().getScanPageSize());
+        config.getDynamoDbTables().getAccounts().getScanPageSize(),
+        config.getDynamoDbTables().getAccounts().getScanCapacityUnitsPerSecond());
     PhoneNumberIdentifiers phoneNumberIdentifiers = new PhoneNumberIdentifiers(dynamoDbClient,
         config.getDynamoDbTables().getPhoneNumberIdentifiers().getTableName());
     Profiles profiles = new Profiles(dynamoDbClient, dynamoDbAsyncClient,
@@ -334,9 +336,9 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     ReportMessageDynamoDb reportMessageDynamoDb = new ReportMessageDynamoDb(dynamoDbClient,
         config.getDynamoDbTables().getReportMessage().getTableName(),
         config.getReportMessageConfiguration().getReportTtl());
-    VerificationCodeStore pendingAccounts = new VerificationCodeStore(dynamoDbClient,
+    VerificationCodeStore pendingAccounts = new VerificationCodeStore(dynamoDbClient, dynamoDbAsyncClient,
         config.getDynamoDbTables().getPendingAccounts().getTableName());
-    VerificationCodeStore pendingDevices = new VerificationCodeStore(dynamoDbClient,
+    VerificationCodeStore pendingDevices = new VerificationCodeStore(dynamoDbClient, dynamoDbAsyncClient,
         config.getDynamoDbTables().getPendingDevices().getTableName());
     RegistrationRecoveryPasswords registrationRecoveryPasswords = new RegistrationRecoveryPasswords(
         config.getDynamoDbTables().getRegistrationRecovery().getTableName(),
@@ -346,7 +348,10 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     );
 
     final VerificationSessions verificationSessions = new VerificationSessions(dynamoDbAsyncClient,
-        config.getDynamoDbTables().getVerificationSessions().getTableName(), clock);
+        config.getDynamoDbTables().getVerificationSessions().getTableName(), clock,
+        config.getDynamoDbTables().getVerificationSessions().isBinaryEncoding()
+            ? SerializedExpireableJsonDynamoStore.ValueEncoding.CBOR
+            : SerializedExpireableJsonDynamoStore.ValueEncoding.JSON);
 
     final ClientResources redisClientResources = ClientResources.builder()
         .commandLatencyRecorder(new MicrometerCommandLatencyRecorder(Metrics.globalRegistry, MicrometerOptions.builder().build()))
@@ -391,6 +396,8 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         .scheduledExecutorService(name(getClass(), "secureValueRecoveryServiceRetry-%d")).threads(1).build();
     ScheduledExecutorService storageServiceRetryExecutor = environment.lifecycle()
         .scheduledExecutorService(name(getClass(), "storageServiceRetry-%d")).threads(1).build();
+    ScheduledExecutorService currencyConversionExecutor = environment.lifecycle()
+        .scheduledExecutorService(name(getClass(), "currencyConversion-%d")).threads(1).build();
 
     Scheduler messageDeliveryScheduler = Schedulers.fromExecutorService(
         ExecutorServiceMetrics.monitor(Metrics.globalRegistry,
@@ -405,6 +412,11 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     ExecutorService batchIdentityCheckExecutor = environment.lifecycle().executorService(name(getClass(), "batchIdentityCheck-%d")).minThreads(32).maxThreads(32).build();
     ExecutorService multiRecipientMessageExecutor = environment.lifecycle()
         .executorService(name(getClass(), "multiRecipientMessage-%d")).minThreads(64).maxThreads(64).build();
+    ExecutorService authCredentialExecutor = environment.lifecycle()
+        .executorService(name(getClass(), "authCredential-%d"))
+        .minThreads(availableProcessors)
+        .maxThreads(availableProcessors)
+        .build();
     ExecutorService subscriptionProcessorExecutor = environment.lifecycle()
         .executorService(name(getClass(), "subscriptionProcessor-%d"))
         .maxThreads(availableProcessors)  // mostly this is IO bound so tying to number of processors is tenuous at best
@@ -487,7 +499,8 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         keyspaceNotificationDispatchExecutor);
     StoredVerificationCodeManager pendingAccountsManager = new StoredVerificationCodeManager(pendingAccounts);
     StoredVerificationCodeManager pendingDevicesManager = new StoredVerificationCodeManager(pendingDevices);
-    ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster);
+    ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster,
+        config.getDynamoDbTables().getProfiles().isBinaryCacheEncoding());
     MessagesCache messagesCache = new MessagesCache(messagesCluster, messagesCluster,
         keyspaceNotificationDispatchExecutor, messageDeliveryScheduler, messageDeletionAsyncExecutor, clock);
     PushLatencyManager pushLatencyManager = new PushLatencyManager(metricsCluster, dynamicConfigurationManager);
@@ -569,7 +582,8 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     FixerClient fixerClient = new FixerClient(currencyClient, config.getPaymentsServiceConfiguration().fixerApiKey().value());
     CoinMarketCapClient coinMarketCapClient = new CoinMarketCapClient(currencyClient, config.getPaymentsServiceConfiguration().coinMarketCapApiKey().value(), config.getPaymentsServiceConfiguration().coinMarketCapCurrencyIds());
     CurrencyConversionManager currencyManager = new CurrencyConversionManager(fixerClient, coinMarketCapClient,
-        cacheCluster, config.getPaymentsServiceConfiguration().paymentCurrencies(), Clock.systemUTC());
+        cacheCluster, config.getPaymentsServiceConfiguration().paymentCurrencies(), currencyConversionExecutor,
+        Clock.systemUTC());
 
     environment.lifecycle().manage(apnSender);
     environment.lifecycle().manage(apnPushNotificationScheduler);
@@ -708,7 +722,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         new AttachmentControllerV2(rateLimiters, config.getAwsAttachmentsConfiguration().accessKey().value(), config.getAwsAttachmentsConfiguration().accessSecret().value(), config.getAwsAttachmentsConfiguration().region(), config.getAwsAttachmentsConfiguration().bucket()),
         new AttachmentControllerV3(rateLimiters, config.getGcpAttachmentsConfiguration().domain(), config.getGcpAttachmentsConfiguration().email(), config.getGcpAttachmentsConfiguration().maxSizeInBytes(), config.getGcpAttachmentsConfiguration().pathPrefix(), config.getGcpAttachmentsConfiguration().rsaSigningKey().value()),
         new CallLinkController(rateLimiters, genericZkSecretParams),
-        new CertificateController(new CertificateGenerator(config.getDeliveryCertificate().certificate().value(), config.getDeliveryCertificate().ecPrivateKey(), config.getDeliveryCertificate().expiresDays()), zkAuthOperations, genericZkSecretParams, clock),
+        new CertificateController(new CertificateGenerator(config.getDeliveryCertificate().certificate().value(), config.getDeliveryCertificate().ecPrivateKey(), config.getDeliveryCertificate().expiresDays()), zkAuthOperations, genericZkSecretParams, clock, authCredentialExecutor),
         new ChallengeController(rateLimitChallengeManager),
         new DeviceController(pendingDevicesManager, accountsManager, messagesManager, keys, rateLimiters, config.getMaxDevices()),
         new DirectoryV2Controller(directoryV2CredentialsGenerator),
@@ -8,6 +8,7 @@ package org.whispersystems.textsecuregcm.auth;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.security.InvalidKeyException;
+import java.time.Instant;
 import java.util.concurrent.TimeUnit;
 import org.signal.libsignal.protocol.ecc.Curve;
 import org.signal.libsignal.protocol.ecc.ECPrivateKey;
@@ -31,9 +32,17 @@ public class CertificateGenerator {
   }
 
   public byte[] createFor(Account account, Device device, boolean includeE164) throws InvalidKeyException {
+    return createFor(account, device, includeE164, Instant.now());
+  }
+
+  /**
+   * Creates a sender certificate that expires a fixed number of days after the given issue time. Certificates created
+   * with the same issue time for the same account, device, identity key, and phone number have identical contents.
+   */
+  public byte[] createFor(Account account, Device device, boolean includeE164, Instant issuedAt) throws InvalidKeyException {
     SenderCertificate.Certificate.Builder builder = SenderCertificate.Certificate.newBuilder()
                                                                                  .setSenderDevice(Math.toIntExact(device.getId()))
-                                                                                 .setExpires(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(expiresDays))
+                                                                                 .setExpires(issuedAt.toEpochMilli() + TimeUnit.DAYS.toMillis(expiresDays))
                                                                                  .setIdentityKey(ByteString.copyFrom(account.getIdentityKey().serialize()))
                                                                                  .setSigner(serverCertificate)
                                                                                  .setSenderUuid(account.getUuid().toString());
@@ -9,6 +9,7 @@ import static java.util.Objects.requireNonNull;
 import static org.whispersystems.textsecuregcm.util.HmacUtils.hmac256ToHexString;
 import static org.whispersystems.textsecuregcm.util.HmacUtils.hmac256TruncatedToHexString;
 import static org.whispersystems.textsecuregcm.util.HmacUtils.hmacHexStringsEqual;
+import static org.whispersystems.textsecuregcm.util.HmacUtils.keyedHmac256;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.time.Clock;
@@ -16,6 +17,7 @@ import java.time.Instant;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Function;
+import javax.crypto.Mac;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.whispersystems.textsecuregcm.configuration.secrets.SecretBytes;
@@ -26,9 +28,11 @@ public class ExternalServiceCredentialsGenerator {
 
   private static final int TRUNCATED_SIGNATURE_LENGTH = 10;
 
-  private final byte[] key;
+  private final ThreadLocal<Mac> signatureMac;
 
-  private final byte[] userDerivationKey;
+  private final ThreadLocal<Mac> userDerivationMac;
+
+  private final boolean deriveUsername;
 
   private final boolean prependUsername;
 
@@ -61,8 +65,10 @@ public class ExternalServiceCredentialsGenerator {
       final String usernameTimestampPrefix,
       final Function<Instant, Instant> usernameTimestampTruncator,
       final Clock clock) {
-    this.key = requireNonNull(key);
-    this.userDerivationKey = requireNonNull(userDerivationKey);
+    this.signatureMac = keyedHmac256(requireNonNull(key));
+    this.deriveUsername = requireNonNull(userDerivationKey).length > 0;
+    // An empty key is not a valid HMAC key, but we'll never use it if we're not deriving usernames
+    this.userDerivationMac = deriveUsername ? keyedHmac256(userDerivationKey) : null;
     this.prependUsername = prependUsername;
     this.truncateSignature = truncateSignature;
     this.usernameTimestampPrefix = usernameTimestampPrefix;
@@ -112,7 +118,7 @@ public class ExternalServiceCredentialsGenerator {
 
   private ExternalServiceCredentials generate(final String identity) {
     final String username = shouldDeriveUsername()
-        ? hmac256TruncatedToHexString(userDerivationKey, identity, derivedUsernameTruncateLength)
+        ? hmac256TruncatedToHexString(userDerivationMac, identity, derivedUsernameTruncateLength)
         : identity;
 
     final long currentTimeSeconds = currentTimeSeconds();
@@ -120,8 +126,8 @@ public class ExternalServiceCredentialsGenerator {
     final String dataToSign = usernameIsTimestamp() ? username : username + DELIMITER + currentTimeSeconds;
 
     final String signature = truncateSignature
-        ? hmac256TruncatedToHexString(key, dataToSign, TRUNCATED_SIGNATURE_LENGTH)
-        : hmac256ToHexString(key, dataToSign);
+        ? hmac256TruncatedToHexString(signatureMac, dataToSign, TRUNCATED_SIGNATURE_LENGTH)
+        : hmac256ToHexString(signatureMac, dataToSign);
 
     final String token = (prependUsername ? dataToSign : currentTimeSeconds) + DELIMITER + signature;
 
@@ -183,8 +189,8 @@ public class ExternalServiceCredentialsGenerator {
 
     final String signedData = usernameIsTimestamp() ? credentials.username() : credentials.username() + DELIMITER + timestampSeconds;
     final String expectedSignature = truncateSignature
-        ? hmac256TruncatedToHexString(key, signedData, TRUNCATED_SIGNATURE_LENGTH)
-        : hmac256ToHexString(key, signedData);
+        ? hmac256TruncatedToHexString(signatureMac, signedData, TRUNCATED_SIGNATURE_LENGTH)
+        : hmac256ToHexString(signatureMac, signedData);
 
     // if the signature is valid it's safe to parse the `timestampSeconds` string into Long
     return hmacHexStringsEqual(expectedSignature, actualSignature)
@@ -206,7 +212,7 @@ public class ExternalServiceCredentialsGenerator {
   }
 
   private boolean shouldDeriveUsername() {
-    return userDerivationKey.length > 0;
+    return deriveUsername;
   }
 
   private boolean hasUsernameTimestampPrefix() {
@@ -5,14 +5,27 @@
 package org.whispersystems.textsecuregcm.configuration;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import javax.validation.constraints.Min;
 
 public class AccountDatabaseCrawlerConfiguration {
 
   @JsonProperty
   private int chunkSize = 1000;
 
+  /**
+   * The number of segments into which to divide the accounts table; segments are crawled in parallel, each with its own
+   * checkpoint.
+   */
+  @JsonProperty
+  @Min(1)
+  private int segments = 1;
+
   public int getChunkSize() {
     return chunkSize;
   }
 
+  public int getSegments() {
+    return segments;
+  }
+
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.whispersystems.textsecuregcm.configuration.DynamoDbTables.Table;
 import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.PositiveOrZero;
 
 public class AccountsTableConfiguration extends Table {
 
@@ -11,6 +12,7 @@ public class AccountsTableConfiguration extends Table {
   private final String phoneNumberIdentifierTableName;
   private final String usernamesTableName;
   private final int scanPageSize;
+  private final double scanCapacityUnitsPerSecond;
 
   @JsonCreator
   public AccountsTableConfiguration(
@@ -18,7 +20,8 @@ public class AccountsTableConfiguration extends Table {
       @JsonProperty("phoneNumberTableName") final String phoneNumberTableName,
       @JsonProperty("phoneNumberIdentifierTableName") final String phoneNumberIdentifierTableName,
       @JsonProperty("usernamesTableName") final String usernamesTableName,
-      @JsonProperty("scanPageSize") final int scanPageSize) {
+      @JsonProperty("scanPageSize") final int scanPageSize,
+      @JsonProperty("scanCapacityUnitsPerSecond") final double scanCapacityUnitsPerSecond) {
 
     super(tableName);
 
@@ -26,6 +29,7 @@ public class AccountsTableConfiguration extends Table {
     this.phoneNumberIdentifierTableName = phoneNumberIdentifierTableName;
     this.usernamesTableName = usernamesTableName;
     this.scanPageSize = scanPageSize;
+    this.scanCapacityUnitsPerSecond = scanCapacityUnitsPerSecond;
   }
 
   @NotBlank
@@ -46,4 +50,13 @@ public class AccountsTableConfiguration extends Table {
   public int getScanPageSize() {
     return scanPageSize;
   }
+
+  /**
+   * Returns the maximum rate, in read capacity units per second, at which crawlers and worker commands may scan the
+   * accounts table; if zero, scans are paced only when DynamoDB throttles them.
+   */
+  @PositiveOrZero
+  public double getScanCapacityUnitsPerSecond() {
+    return scanCapacityUnitsPerSecond;
+  }
 }
@@ -6,12 +6,33 @@ package org.whispersystems.textsecuregcm.configuration;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
 import org.whispersystems.textsecuregcm.configuration.secrets.SecretString;
 
-
+/**
+ * @param clientPoolSize the number of independent APNs clients (and therefore HTTP/2 connections) over which
+ *                       notifications are sharded by device token
+ * @param maxConcurrentStreamsPerClient the maximum number of notifications that may be in flight on any one client
+ *                                      before further notifications for that client are queued locally
+ */
 public record ApnConfiguration(@NotBlank String teamId,
                                @NotBlank String keyId,
                                @NotNull SecretString signingKey,
                                @NotBlank String bundleId,
-                               boolean sandbox) {
+                               boolean sandbox,
+                               @Positive int clientPoolSize,
+                               @Positive int maxConcurrentStreamsPerClient) {
+
+  public static final int DEFAULT_CLIENT_POOL_SIZE = 1;
+  public static final int DEFAULT_MAX_CONCURRENT_STREAMS_PER_CLIENT = 1_000;
+
+  public ApnConfiguration {
+    if (clientPoolSize == 0) {
+      clientPoolSize = DEFAULT_CLIENT_POOL_SIZE;
+    }
+
+    if (maxConcurrentStreamsPerClient == 0) {
+      maxConcurrentStreamsPerClient = DEFAULT_MAX_CONCURRENT_STREAMS_PER_CLIENT;
+    }
+  }
 }
@@ -58,14 +58,14 @@ public class DynamoDbTables {
   private final Table pendingAccounts;
   private final Table pendingDevices;
   private final Table phoneNumberIdentifiers;
-  private final Table profiles;
+  private final ProfilesTableConfiguration profiles;
   private final Table pushChallenge;
   private final TableWithExpiration redeemedReceipts;
   private final TableWithExpiration registrationRecovery;
   private final Table remoteConfig;
   private final Table reportMessage;
   private final Table subscriptions;
-  private final Table verificationSessions;
+  private final VerificationSessionsTableConfiguration verificationSessions;
 
   public DynamoDbTables(
       @JsonProperty("accounts") final AccountsTableConfiguration accounts,
@@ -80,14 +80,14 @@ public class DynamoDbTables {
       @JsonProperty("pendingAccounts") final Table pendingAccounts,
       @JsonProperty("pendingDevices") final Table pendingDevices,
       @JsonProperty("phoneNumberIdentifiers") final Table phoneNumberIdentifiers,
-      @JsonProperty("profiles") final Table profiles,
+      @JsonProperty("profiles") final ProfilesTableConfiguration profiles,
       @JsonProperty("pushChallenge") final Table pushChallenge,
       @JsonProperty("redeemedReceipts") final TableWithExpiration redeemedReceipts,
       @JsonProperty("registrationRecovery") final TableWithExpiration registrationRecovery,
       @JsonProperty("remoteConfig") final Table remoteConfig,
       @JsonProperty("reportMessage") final Table reportMessage,
       @JsonProperty("subscriptions") final Table subscriptions,
-      @JsonProperty("verificationSessions") final Table verificationSessions) {
+      @JsonProperty("verificationSessions") final VerificationSessionsTableConfiguration verificationSessions) {
 
     this.accounts = accounts;
     this.deletedAccounts = deletedAccounts;
@@ -185,7 +185,7 @@ public class DynamoDbTables {
 
   @NotNull
   @Valid
-  public Table getProfiles() {
+  public ProfilesTableConfiguration getProfiles() {
     return profiles;
   }
 
@@ -227,7 +227,7 @@ public class DynamoDbTables {
 
   @NotNull
   @Valid
-  public Table getVerificationSessions() {
+  public VerificationSessionsTableConfiguration getVerificationSessions() {
     return verificationSessions;
   }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.whispersystems.textsecuregcm.configuration.DynamoDbTables.Table;
+
+public class ProfilesTableConfiguration extends Table {
+
+  private final boolean binaryCacheEncoding;
+
+  @JsonCreator
+  public ProfilesTableConfiguration(
+      @JsonProperty("tableName") final String tableName,
+      @JsonProperty("binaryCacheEncoding") final boolean binaryCacheEncoding) {
+
+    super(tableName);
+
+    this.binaryCacheEncoding = binaryCacheEncoding;
+  }
+
+  /**
+   * Returns {@code true} if profiles should be cached in Redis in a compact binary encoding instead of JSON. Profiles
+   * cached in either encoding can always be read, but this should only be enabled once every server in the fleet is able
+   * to read binary-encoded profiles.
+   */
+  public boolean isBinaryCacheEncoding() {
+    return binaryCacheEncoding;
+  }
+}
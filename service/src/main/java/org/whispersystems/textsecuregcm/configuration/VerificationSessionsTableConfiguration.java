@@ -0,0 +1,34 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.whispersystems.textsecuregcm.configuration.DynamoDbTables.Table;
+
+public class VerificationSessionsTableConfiguration extends Table {
+
+  private final boolean binaryEncoding;
+
+  @JsonCreator
+  public VerificationSessionsTableConfiguration(
+      @JsonProperty("tableName") final String tableName,
+      @JsonProperty("binaryEncoding") final boolean binaryEncoding) {
+
+    super(tableName);
+
+    this.binaryEncoding = binaryEncoding;
+  }
+
+  /**
+   * Returns {@code true} if sessions should be written in a compact binary encoding instead of JSON. Sessions written
+   * in either encoding can always be read, but this should only be enabled once every server in the fleet is able to
+   * read binary-encoded sessions.
+   */
+  public boolean isBinaryEncoding() {
+    return binaryEncoding;
+  }
+}
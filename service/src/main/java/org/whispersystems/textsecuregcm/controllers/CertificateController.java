@@ -9,8 +9,11 @@ import static com.codahale.metrics.MetricRegistry.name;
 
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.dropwizard.auth.Auth;
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import java.security.InvalidKeyException;
 import java.time.Clock;
@@ -21,7 +24,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
@@ -32,6 +38,7 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import org.signal.libsignal.protocol.IdentityKey;
 import org.signal.libsignal.zkgroup.auth.ServerZkAuthOperations;
 import org.signal.libsignal.zkgroup.calllinks.CallLinkAuthCredentialResponse;
 import org.signal.libsignal.zkgroup.GenericServerSecretParams;
@@ -49,21 +56,52 @@ public class CertificateController {
   private final ServerZkAuthOperations serverZkAuthOperations;
   private final GenericServerSecretParams genericServerSecretParams;
   private final Clock clock;
+  private final Executor authCredentialExecutor;
+
+  private final Cache<DeliveryCertificateKey, byte[]> deliveryCertificateCache;
 
   @VisibleForTesting
   public static final Duration MAX_REDEMPTION_DURATION = Duration.ofDays(7);
   private static final String GENERATE_DELIVERY_CERTIFICATE_COUNTER_NAME = name(CertificateGenerator.class, "generateCertificate");
   private static final String INCLUDE_E164_TAG_NAME = "includeE164";
+  private static final String DELIVERY_CERTIFICATE_CACHE_COUNTER_NAME = name(CertificateController.class, "deliveryCertificateCache");
+  private static final Timer SIGN_DELIVERY_CERTIFICATE_TIMER = Metrics.timer(name(CertificateController.class, "signDeliveryCertificate"));
+
+  // Delivery certificates issued within the same bucket share an expiration time, and so can be reused within the bucket;
+  // a certificate served from the cache has lost at most one bucket's worth of its validity period
+  private static final ChronoUnit DELIVERY_CERTIFICATE_EXPIRATION_BUCKET = ChronoUnit.HOURS;
+  private static final int MAX_CACHED_DELIVERY_CERTIFICATES = 50_000;
+
+  private static final String ISSUE_AUTH_CREDENTIAL_TIMER_NAME = name(CertificateController.class, "issueAuthCredential");
+  private static final Timer ISSUE_GROUP_AUTH_CREDENTIAL_TIMER = Metrics.timer(ISSUE_AUTH_CREDENTIAL_TIMER_NAME, "type", "group");
+  private static final Timer ISSUE_CALL_LINK_AUTH_CREDENTIAL_TIMER = Metrics.timer(ISSUE_AUTH_CREDENTIAL_TIMER_NAME, "type", "callLink");
+
+  /**
+   * Identifies the contents of a delivery certificate. The phone number is present only if the certificate includes it.
+   */
+  private record DeliveryCertificateKey(UUID accountIdentifier,
+                                        long deviceId,
+                                        IdentityKey identityKey,
+                                        @Nullable String number,
+                                        Instant issuedAt) {
+  }
 
   public CertificateController(
       @Nonnull CertificateGenerator certificateGenerator,
       @Nonnull ServerZkAuthOperations serverZkAuthOperations,
       @Nonnull GenericServerSecretParams genericServerSecretParams,
-      @Nonnull Clock clock) {
+      @Nonnull Clock clock,
+      @Nonnull Executor authCredentialExecutor) {
     this.certificateGenerator = Objects.requireNonNull(certificateGenerator);
     this.serverZkAuthOperations = Objects.requireNonNull(serverZkAuthOperations);
     this.genericServerSecretParams = genericServerSecretParams;
     this.clock = Objects.requireNonNull(clock);
+    this.authCredentialExecutor = Objects.requireNonNull(authCredentialExecutor);
+
+    this.deliveryCertificateCache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_DELIVERY_CERTIFICATES)
+        .expireAfterWrite(DELIVERY_CERTIFICATE_EXPIRATION_BUCKET.getDuration())
+        .build();
   }
 
   @Timed
@@ -81,15 +119,37 @@ public class CertificateController {
     Metrics.counter(GENERATE_DELIVERY_CERTIFICATE_COUNTER_NAME, INCLUDE_E164_TAG_NAME, String.valueOf(includeE164))
         .increment();
 
-    return new DeliveryCertificate(
-        certificateGenerator.createFor(auth.getAccount(), auth.getAuthenticatedDevice(), includeE164));
+    final Instant issuedAt = clock.instant().truncatedTo(DELIVERY_CERTIFICATE_EXPIRATION_BUCKET);
+
+    final DeliveryCertificateKey key = new DeliveryCertificateKey(auth.getAccount().getUuid(),
+        auth.getAuthenticatedDevice().getId(),
+        auth.getAccount().getIdentityKey(),
+        includeE164 ? auth.getAccount().getNumber() : null,
+        issuedAt);
+
+    @Nullable byte[] certificate = deliveryCertificateCache.getIfPresent(key);
+
+    Metrics.counter(DELIVERY_CERTIFICATE_CACHE_COUNTER_NAME, "outcome", certificate != null ? "hit" : "miss")
+        .increment();
+
+    if (certificate == null) {
+      final Timer.Sample sample = Timer.start();
+
+      certificate =
+          certificateGenerator.createFor(auth.getAccount(), auth.getAuthenticatedDevice(), includeE164, issuedAt);
+
+      sample.stop(SIGN_DELIVERY_CERTIFICATE_TIMER);
+      deliveryCertificateCache.put(key, certificate);
+    }
+
+    return new DeliveryCertificate(certificate);
   }
 
   @Timed
   @GET
   @Produces(MediaType.APPLICATION_JSON)
   @Path("/auth/group")
-  public GroupCredentials getGroupAuthenticationCredentials(
+  public CompletableFuture<GroupCredentials> getGroupAuthenticationCredentials(
       @Auth AuthenticatedAccount auth,
       @QueryParam("redemptionStartSeconds") int startSeconds,
       @QueryParam("redemptionEndSeconds") int endSeconds) {
@@ -107,27 +167,36 @@ public class CertificateController {
       throw new BadRequestException();
     }
 
-    final List<GroupCredentials.GroupCredential> credentials = new ArrayList<>();
-    final List<GroupCredentials.CallLinkAuthCredential> callLinkAuthCredentials = new ArrayList<>();
+    final List<CompletableFuture<GroupCredentials.GroupCredential>> credentialFutures = new ArrayList<>();
+    final List<CompletableFuture<GroupCredentials.CallLinkAuthCredential>> callLinkAuthCredentialFutures = new ArrayList<>();
 
     Instant redemption = redemptionStart;
 
     UUID aci = auth.getAccount().getUuid();
     UUID pni = auth.getAccount().getPhoneNumberIdentifier();
 
+    // Each issuance is an independent (and expensive) zkgroup operation, so issue them all in parallel
     while (!redemption.isAfter(redemptionEnd)) {
-      credentials.add(new GroupCredentials.GroupCredential(
-          serverZkAuthOperations.issueAuthCredentialWithPni(aci, pni, redemption).serialize(),
-          (int) redemption.getEpochSecond()));
+      final Instant redemptionDay = redemption;
+
+      credentialFutures.add(CompletableFuture.supplyAsync(() -> new GroupCredentials.GroupCredential(
+          ISSUE_GROUP_AUTH_CREDENTIAL_TIMER.record(() ->
+              serverZkAuthOperations.issueAuthCredentialWithPni(aci, pni, redemptionDay).serialize()),
+          (int) redemptionDay.getEpochSecond()), authCredentialExecutor));
 
-      callLinkAuthCredentials.add(new GroupCredentials.CallLinkAuthCredential(
-          CallLinkAuthCredentialResponse.issueCredential(aci, redemption, genericServerSecretParams).serialize(),
-          redemption.getEpochSecond()));
+      callLinkAuthCredentialFutures.add(CompletableFuture.supplyAsync(() -> new GroupCredentials.CallLinkAuthCredential(
+          ISSUE_CALL_LINK_AUTH_CREDENTIAL_TIMER.record(() ->
+              CallLinkAuthCredentialResponse.issueCredential(aci, redemptionDay, genericServerSecretParams).serialize()),
+          redemptionDay.getEpochSecond()), authCredentialExecutor));
 
       redemption = redemption.plus(Duration.ofDays(1));
     }
 
-
-    return new GroupCredentials(credentials, callLinkAuthCredentials, pni);
+    return CompletableFuture.allOf(credentialFutures.toArray(CompletableFuture[]::new))
+        .thenCombine(CompletableFuture.allOf(callLinkAuthCredentialFutures.toArray(CompletableFuture[]::new)),
+            (ignored, alsoIgnored) -> new GroupCredentials(
+                credentialFutures.stream().map(CompletableFuture::join).toList(),
+                callLinkAuthCredentialFutures.stream().map(CompletableFuture::join).toList(),
+                pni));
   }
 }
@@ -4,10 +4,14 @@
  */
 package org.whispersystems.textsecuregcm.controllers;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.net.HttpHeaders;
 import io.dropwizard.auth.Auth;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -18,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
@@ -55,6 +60,7 @@ import org.whispersystems.textsecuregcm.storage.Device.DeviceCapabilities;
 import org.whispersystems.textsecuregcm.storage.KeysManager;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
 import org.whispersystems.textsecuregcm.storage.StoredVerificationCodeManager;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.textsecuregcm.util.Util;
 import org.whispersystems.textsecuregcm.util.VerificationCode;
@@ -65,6 +71,13 @@ public class DeviceController {
 
   static final int MAX_DEVICES = 6;
 
+  private static final String STAGE_TIMER_NAME = name(DeviceController.class, "stage");
+  private static final String OPERATION_TAG_NAME = "operation";
+  private static final String STAGE_TAG_NAME = "stage";
+
+  private static final String REMOVE_DEVICE_OPERATION = "removeDevice";
+  private static final String LINK_DEVICE_OPERATION = "linkDevice";
+
   private final StoredVerificationCodeManager pendingDevices;
   private final AccountsManager       accounts;
   private final MessagesManager       messages;
@@ -105,20 +118,20 @@ public class DeviceController {
   @Produces(MediaType.APPLICATION_JSON)
   @Path("/{device_id}")
   @ChangesDeviceEnabledState
-  public void removeDevice(@Auth AuthenticatedAccount auth, @PathParam("device_id") long deviceId) {
-    Account account = auth.getAccount();
+  public CompletableFuture<Void> removeDevice(@Auth AuthenticatedAccount auth, @PathParam("device_id") long deviceId) {
+    final Account account = auth.getAccount();
     if (auth.getAuthenticatedDevice().getId() != Device.MASTER_ID) {
       throw new WebApplicationException(Response.Status.UNAUTHORIZED);
     }
 
-    final CompletableFuture<Void> deleteKeysFuture = keys.delete(account.getUuid(), deviceId);
-
-    messages.clear(account.getUuid(), deviceId);
-    account = accounts.update(account, a -> a.removeDevice(deviceId));
-    // ensure any messages that came in after the first clear() are also removed
-    messages.clear(account.getUuid(), deviceId);
-
-    deleteKeysFuture.join();
+    return CompletableFuture.allOf(
+            recordStage(REMOVE_DEVICE_OPERATION, "deleteKeys", () -> keys.delete(account.getUuid(), deviceId)),
+            recordStage(REMOVE_DEVICE_OPERATION, "clearMessages", () -> messages.clear(account.getUuid(), deviceId)),
+            recordStage(REMOVE_DEVICE_OPERATION, "updateAccount",
+                () -> accounts.updateAsync(account, a -> a.removeDevice(deviceId))))
+        // ensure any messages that came in after the first clear() are also removed
+        .thenCompose(ignored -> recordStage(REMOVE_DEVICE_OPERATION, "clearLateMessages",
+            () -> messages.clear(account.getUuid(), deviceId)));
   }
 
   @Timed
@@ -166,23 +179,21 @@ public class DeviceController {
   @Path("/{verification_code}")
   @ChangesDeviceEnabledState
   @Deprecated(forRemoval = true)
-  public DeviceResponse verifyDeviceToken(@PathParam("verification_code") String verificationCode,
+  public CompletableFuture<DeviceResponse> verifyDeviceToken(@PathParam("verification_code") String verificationCode,
       @HeaderParam(HttpHeaders.AUTHORIZATION) BasicAuthorizationHeader authorizationHeader,
       @NotNull @Valid AccountAttributes accountAttributes,
       @Context ContainerRequest containerRequest)
       throws RateLimitExceededException, DeviceLimitExceededException {
 
-    final Pair<Account, Device> accountAndDevice = createDevice(authorizationHeader.getUsername(),
+    return createDevice(authorizationHeader.getUsername(),
         authorizationHeader.getPassword(),
         verificationCode,
         accountAttributes,
         containerRequest,
-        Optional.empty());
-
-    final Account account = accountAndDevice.first();
-    final Device device = accountAndDevice.second();
-
-    return new DeviceResponse(account.getUuid(), account.getPhoneNumberIdentifier(), device.getId());
+        Optional.empty())
+        .thenApply(accountAndDevice -> new DeviceResponse(accountAndDevice.first().getUuid(),
+            accountAndDevice.first().getPhoneNumberIdentifier(),
+            accountAndDevice.second().getId()));
   }
 
   @Timed
@@ -202,22 +213,21 @@ public class DeviceController {
   @ApiResponse(responseCode = "429", description = "Too many attempts", headers = @Header(
       name = "Retry-After",
       description = "If present, an positive integer indicating the number of seconds before a subsequent attempt could succeed"))
-  public DeviceResponse linkDevice(@HeaderParam(HttpHeaders.AUTHORIZATION) BasicAuthorizationHeader authorizationHeader,
-                                   @NotNull @Valid LinkDeviceRequest linkDeviceRequest,
-                                   @Context ContainerRequest containerRequest)
+  public CompletableFuture<DeviceResponse> linkDevice(
+      @HeaderParam(HttpHeaders.AUTHORIZATION) BasicAuthorizationHeader authorizationHeader,
+      @NotNull @Valid LinkDeviceRequest linkDeviceRequest,
+      @Context ContainerRequest containerRequest)
       throws RateLimitExceededException, DeviceLimitExceededException {
 
-    final Pair<Account, Device> accountAndDevice = createDevice(authorizationHeader.getUsername(),
+    return createDevice(authorizationHeader.getUsername(),
         authorizationHeader.getPassword(),
         linkDeviceRequest.verificationCode(),
         linkDeviceRequest.accountAttributes(),
         containerRequest,
-        Optional.of(linkDeviceRequest.deviceActivationRequest()));
-
-    final Account account = accountAndDevice.first();
-    final Device device = accountAndDevice.second();
-
-    return new DeviceResponse(account.getUuid(), account.getPhoneNumberIdentifier(), device.getId());
+        Optional.of(linkDeviceRequest.deviceActivationRequest()))
+        .thenApply(accountAndDevice -> new DeviceResponse(accountAndDevice.first().getUuid(),
+            accountAndDevice.first().getPhoneNumberIdentifier(),
+            accountAndDevice.second().getId()));
   }
 
   @Timed
@@ -258,7 +268,7 @@ public class DeviceController {
     return isDowngrade;
   }
 
-  private Pair<Account, Device> createDevice(final String phoneNumber,
+  private CompletableFuture<Pair<Account, Device>> createDevice(final String phoneNumber,
                                      final String password,
                                      final String verificationCode,
                                      final AccountAttributes accountAttributes,
@@ -336,33 +346,83 @@ public class DeviceController {
           device.setGcmId(gcmRegistrationId.gcmRegistrationId()));
     });
 
-    final Account updatedAccount = accounts.update(account, a -> {
-      device.setId(a.getNextDeviceId());
+    return addDevice(account, device, maybeDeviceActivationRequest, MAX_DEVICES)
+        .thenCompose(updatedAccount -> recordStage(LINK_DEVICE_OPERATION, "removeVerificationCode",
+            () -> pendingDevices.removeAsync(phoneNumber))
+            .thenApply(ignored -> new Pair<>(updatedAccount, device)));
+  }
 
-      final CompletableFuture<Void> deleteKeysFuture = CompletableFuture.allOf(
-          keys.delete(a.getUuid(), device.getId()),
-          keys.delete(a.getPhoneNumberIdentifier(), device.getId()));
+  private CompletableFuture<Account> addDevice(final Account account,
+      final Device device,
+      final Optional<DeviceActivationRequest> maybeDeviceActivationRequest,
+      final int triesRemaining) {
+
+    final long candidateDeviceId = account.getNextDeviceId();
+
+    // Clear out anything a previous device with the same ID may have left behind and store the new device's keys
+    // before the device becomes visible; once it's part of the account, senders may fetch its keys and queue messages
+    // for it, and neither may be wiped out from under them.
+    return CompletableFuture.allOf(
+            recordStage(LINK_DEVICE_OPERATION, "deleteKeys", () -> CompletableFuture.allOf(
+                keys.delete(account.getUuid(), candidateDeviceId),
+                keys.delete(account.getPhoneNumberIdentifier(), candidateDeviceId))),
+            recordStage(LINK_DEVICE_OPERATION, "clearMessages",
+                () -> messages.clear(account.getUuid(), candidateDeviceId)))
+        .thenCompose(ignored -> recordStage(LINK_DEVICE_OPERATION, "storeKeys",
+            () -> maybeDeviceActivationRequest.map(deviceActivationRequest -> CompletableFuture.allOf(
+                    keys.storeEcSignedPreKeys(account.getUuid(),
+                        Map.of(candidateDeviceId, deviceActivationRequest.aciSignedPreKey().get())),
+                    keys.storePqLastResort(account.getUuid(),
+                        Map.of(candidateDeviceId, deviceActivationRequest.aciPqLastResortPreKey().get())),
+                    keys.storeEcSignedPreKeys(account.getPhoneNumberIdentifier(),
+                        Map.of(candidateDeviceId, deviceActivationRequest.pniSignedPreKey().get())),
+                    keys.storePqLastResort(account.getPhoneNumberIdentifier(),
+                        Map.of(candidateDeviceId, deviceActivationRequest.pniPqLastResortPreKey().get()))))
+                .orElseGet(() -> CompletableFuture.completedFuture(null))))
+        .thenCompose(ignored -> recordStage(LINK_DEVICE_OPERATION, "updateAccount",
+            () -> accounts.updateAsync(account, a -> {
+              if (a.getNextDeviceId() != candidateDeviceId) {
+                // Somebody else linked a device while we were preparing this one; we'll need to start over with a
+                // different device ID
+                throw new DeviceIdConflictException(a);
+              }
+
+              device.setId(candidateDeviceId);
+              a.addDevice(device);
+            })))
+        .exceptionallyCompose(throwable -> {
+          if (ExceptionUtils.unwrap(throwable) instanceof DeviceIdConflictException deviceIdConflictException
+              && triesRemaining > 1) {
+
+            return addDevice(deviceIdConflictException.getAccount(), device, maybeDeviceActivationRequest,
+                triesRemaining - 1);
+          }
+
+          return CompletableFuture.failedFuture(throwable);
+        });
+  }
 
-      messages.clear(a.getUuid(), device.getId());
+  private static <T> CompletableFuture<T> recordStage(final String operation,
+      final String stage,
+      final Supplier<CompletableFuture<T>> stageSupplier) {
 
-      deleteKeysFuture.join();
+    final Timer.Sample sample = Timer.start();
 
-      maybeDeviceActivationRequest.ifPresent(deviceActivationRequest -> CompletableFuture.allOf(
-              keys.storeEcSignedPreKeys(a.getUuid(),
-                  Map.of(device.getId(), deviceActivationRequest.aciSignedPreKey().get())),
-              keys.storePqLastResort(a.getUuid(),
-                  Map.of(device.getId(), deviceActivationRequest.aciPqLastResortPreKey().get())),
-              keys.storeEcSignedPreKeys(a.getPhoneNumberIdentifier(),
-                  Map.of(device.getId(), deviceActivationRequest.pniSignedPreKey().get())),
-              keys.storePqLastResort(a.getPhoneNumberIdentifier(),
-                  Map.of(device.getId(), deviceActivationRequest.pniPqLastResortPreKey().get())))
-          .join());
+    return stageSupplier.get().whenComplete((ignored, throwable) ->
+        sample.stop(Metrics.timer(STAGE_TIMER_NAME, OPERATION_TAG_NAME, operation, STAGE_TAG_NAME, stage)));
+  }
 
-      a.addDevice(device);
-    });
+  private static class DeviceIdConflictException extends RuntimeException {
+
+    private final Account account;
 
-    pendingDevices.remove(phoneNumber);
+    private DeviceIdConflictException(final Account account) {
+      super(null, null, true, false);
+      this.account = account;
+    }
 
-    return new Pair<>(updatedAccount, device);
+    private Account getAccount() {
+      return account;
+    }
   }
 }
@@ -24,6 +24,7 @@ import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -87,7 +88,6 @@ import org.whispersystems.textsecuregcm.metrics.MessageMetrics;
 import org.whispersystems.textsecuregcm.metrics.UserAgentTagUtil;
 import org.whispersystems.textsecuregcm.providers.MultiRecipientMessageProvider;
 import org.whispersystems.textsecuregcm.push.MessageSender;
-import org.whispersystems.textsecuregcm.push.NotPushRegisteredException;
 import org.whispersystems.textsecuregcm.push.PushNotificationManager;
 import org.whispersystems.textsecuregcm.push.ReceiptSender;
 import org.whispersystems.textsecuregcm.spam.FilterSpam;
@@ -285,26 +285,27 @@ public class MessageController {
           Tag.of(EPHEMERAL_TAG_NAME, String.valueOf(messages.online())),
           Tag.of(SENDER_TYPE_TAG_NAME, senderType));
 
+      final List<Pair<Device, Envelope>> envelopes = new ArrayList<>(messages.messages().size());
+
       for (IncomingMessage incomingMessage : messages.messages()) {
         Optional<Device> destinationDevice = destination.get().getDevice(incomingMessage.destinationDeviceId());
 
         if (destinationDevice.isPresent()) {
           Metrics.counter(SENT_MESSAGE_COUNTER_NAME, tags).increment();
-          sendIndividualMessage(
+          envelopes.add(new Pair<>(destinationDevice.get(), buildIndividualEnvelope(
               source,
-              destination.get(),
-              destinationDevice.get(),
               destinationUuid,
               messages.timestamp(),
-              messages.online(),
               isStory,
               messages.urgent(),
               incomingMessage,
               userAgent,
-              spamReportToken);
+              spamReportToken)));
         }
       }
 
+      sendMessages(destination.get(), envelopes, messages.online());
+
       return Response.ok(new SendMessageResponse(needsSync)).build();
     } catch (NoSuchUserException e) {
       throw new WebApplicationException(Response.status(404).build());
@@ -454,18 +455,32 @@ public class MessageController {
           Tag.of(EPHEMERAL_TAG_NAME, String.valueOf(online)),
           Tag.of(SENDER_TYPE_TAG_NAME, SENDER_TYPE_UNIDENTIFIED)));
 
-      multiRecipientMessageExecutor.invokeAll(Arrays.stream(multiRecipientMessage.getRecipients())
-          .map(recipient -> (Callable<Void>) () -> {
-            Account destinationAccount = uuidToAccountMap.get(recipient.getUuid());
+      // Group recipients by account so presence for all of an account's devices can be checked in a single batch
+      final Map<Account, List<Pair<Device, Envelope>>> envelopesByAccount = new LinkedHashMap<>();
+
+      for (final Recipient recipient : multiRecipientMessage.getRecipients()) {
+        Account destinationAccount = uuidToAccountMap.get(recipient.getUuid());
+
+        if (destinationAccount == null) {
+          // Story recipients that don't exist were filtered out when building the account map
+          continue;
+        }
+
+        // we asserted this must exist in validateCompleteDeviceList
+        Device destinationDevice = destinationAccount.getDevice(recipient.getDeviceId()).orElseThrow();
+        sentMessageCounter.increment();
 
-            // we asserted this must exist in validateCompleteDeviceList
-            Device destinationDevice = destinationAccount.getDevice(recipient.getDeviceId()).orElseThrow();
-            sentMessageCounter.increment();
+        envelopesByAccount.computeIfAbsent(destinationAccount, ignored -> new ArrayList<>())
+            .add(new Pair<>(destinationDevice, buildCommonPayloadEnvelope(destinationAccount, timestamp, isStory,
+                isUrgent, recipient, multiRecipientMessage.getCommonPayload())));
+      }
+
+      multiRecipientMessageExecutor.invokeAll(envelopesByAccount.entrySet().stream()
+          .map(entry -> (Callable<Void>) () -> {
             try {
-              sendCommonPayloadMessage(destinationAccount, destinationDevice, timestamp, online, isStory, isUrgent,
-                  recipient, multiRecipientMessage.getCommonPayload());
+              sendMessages(entry.getKey(), entry.getValue(), online);
             } catch (NoSuchUserException e) {
-              uuids404.add(destinationAccount.getUuid());
+              uuids404.add(entry.getKey().getUuid());
             }
             return null;
           })
@@ -650,78 +665,72 @@ public class MessageController {
         .build();
   }
 
-  private void sendIndividualMessage(
+  private Envelope buildIndividualEnvelope(
       Optional<AuthenticatedAccount> source,
-      Account destinationAccount,
-      Device destinationDevice,
       UUID destinationUuid,
       long timestamp,
-      boolean online,
       boolean story,
       boolean urgent,
       IncomingMessage incomingMessage,
       String userAgentString,
-      Optional<byte[]> spamReportToken)
-      throws NoSuchUserException {
-    try {
-      final Envelope envelope;
-
-      try {
-        Account sourceAccount = source.map(AuthenticatedAccount::getAccount).orElse(null);
-        Long sourceDeviceId = source.map(account -> account.getAuthenticatedDevice().getId()).orElse(null);
-        envelope = incomingMessage.toEnvelope(
-            destinationUuid,
-            sourceAccount,
-            sourceDeviceId,
-            timestamp == 0 ? System.currentTimeMillis() : timestamp,
-            story,
-            urgent,
-            spamReportToken.orElse(null));
-      } catch (final IllegalArgumentException e) {
-        logger.warn("Received bad envelope type {} from {}", incomingMessage.type(), userAgentString);
-        throw new BadRequestException(e);
-      }
+      Optional<byte[]> spamReportToken) {
 
-      messageSender.sendMessage(destinationAccount, destinationDevice, envelope, online);
-    } catch (NotPushRegisteredException e) {
-      if (destinationDevice.isMaster()) throw new NoSuchUserException(e);
-      else                              logger.debug("Not registered", e);
+    try {
+      Account sourceAccount = source.map(AuthenticatedAccount::getAccount).orElse(null);
+      Long sourceDeviceId = source.map(account -> account.getAuthenticatedDevice().getId()).orElse(null);
+      return incomingMessage.toEnvelope(
+          destinationUuid,
+          sourceAccount,
+          sourceDeviceId,
+          timestamp == 0 ? System.currentTimeMillis() : timestamp,
+          story,
+          urgent,
+          spamReportToken.orElse(null));
+    } catch (final IllegalArgumentException e) {
+      logger.warn("Received bad envelope type {} from {}", incomingMessage.type(), userAgentString);
+      throw new BadRequestException(e);
     }
   }
 
-  private void sendCommonPayloadMessage(Account destinationAccount,
-      Device destinationDevice,
+  private Envelope buildCommonPayloadEnvelope(Account destinationAccount,
       long timestamp,
-      boolean online,
       boolean story,
       boolean urgent,
       Recipient recipient,
-      byte[] commonPayload) throws NoSuchUserException {
-    try {
-      Envelope.Builder messageBuilder = Envelope.newBuilder();
-      long serverTimestamp = System.currentTimeMillis();
-      byte[] recipientKeyMaterial = recipient.getPerRecipientKeyMaterial();
-
-      byte[] payload = new byte[1 + recipientKeyMaterial.length + commonPayload.length];
-      payload[0] = MultiRecipientMessageProvider.VERSION;
-      System.arraycopy(recipientKeyMaterial, 0, payload, 1, recipientKeyMaterial.length);
-      System.arraycopy(commonPayload, 0, payload, 1 + recipientKeyMaterial.length, commonPayload.length);
-
-      messageBuilder
-          .setType(Type.UNIDENTIFIED_SENDER)
-          .setTimestamp(timestamp == 0 ? serverTimestamp : timestamp)
-          .setServerTimestamp(serverTimestamp)
-          .setContent(ByteString.copyFrom(payload))
-          .setStory(story)
-          .setUrgent(urgent)
-          .setDestinationUuid(destinationAccount.getUuid().toString());
-
-      messageSender.sendMessage(destinationAccount, destinationDevice, messageBuilder.build(), online);
-    } catch (NotPushRegisteredException e) {
-      if (destinationDevice.isMaster()) {
-        throw new NoSuchUserException(e);
+      byte[] commonPayload) {
+
+    Envelope.Builder messageBuilder = Envelope.newBuilder();
+    long serverTimestamp = System.currentTimeMillis();
+    byte[] recipientKeyMaterial = recipient.getPerRecipientKeyMaterial();
+
+    byte[] payload = new byte[1 + recipientKeyMaterial.length + commonPayload.length];
+    payload[0] = MultiRecipientMessageProvider.VERSION;
+    System.arraycopy(recipientKeyMaterial, 0, payload, 1, recipientKeyMaterial.length);
+    System.arraycopy(commonPayload, 0, payload, 1 + recipientKeyMaterial.length, commonPayload.length);
+
+    return messageBuilder
+        .setType(Type.UNIDENTIFIED_SENDER)
+        .setTimestamp(timestamp == 0 ? serverTimestamp : timestamp)
+        .setServerTimestamp(serverTimestamp)
+        .setContent(ByteString.copyFrom(payload))
+        .setStory(story)
+        .setUrgent(urgent)
+        .setDestinationUuid(destinationAccount.getUuid().toString())
+        .build();
+  }
+
+  private void sendMessages(Account destinationAccount, List<Pair<Device, Envelope>> envelopes, boolean online)
+      throws NoSuchUserException {
+
+    if (envelopes.isEmpty()) {
+      return;
+    }
+
+    for (final Device notPushRegisteredDevice : messageSender.sendMessages(destinationAccount, envelopes, online)) {
+      if (notPushRegisteredDevice.isMaster()) {
+        throw new NoSuchUserException(destinationAccount.getUuid());
       } else {
-        logger.debug("Not registered", e);
+        logger.debug("Not registered: {}.{}", destinationAccount.getUuid(), notPushRegisteredDevice.getId());
       }
     }
   }
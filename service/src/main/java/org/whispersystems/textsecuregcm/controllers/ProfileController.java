@@ -10,6 +10,7 @@ import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import io.dropwizard.auth.Auth;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
@@ -39,6 +40,7 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -100,6 +102,7 @@ import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
 import org.whispersystems.textsecuregcm.storage.ProfilesManager;
 import org.whispersystems.textsecuregcm.storage.VersionedProfile;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.textsecuregcm.util.Util;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -404,7 +407,8 @@ public class ProfileController {
       final Instant expiration,
       final ContainerRequestContext containerRequestContext) {
 
-    final ExpiringProfileKeyCredentialResponse expiringProfileKeyCredentialResponse = profilesManager.get(account.getUuid(), version)
+    final ExpiringProfileKeyCredentialResponse expiringProfileKeyCredentialResponse =
+        getVersionedProfile(account.getUuid(), version)
         .map(profile -> getExpiringProfileKeyCredentialResponse(encodedCredentialRequest, profile, account.getUuid(), expiration))
         .orElse(null);
 
@@ -418,7 +422,7 @@ public class ProfileController {
       final boolean isSelf,
       final ContainerRequestContext containerRequestContext) {
 
-    final Optional<VersionedProfile> maybeProfile = profilesManager.get(account.getUuid(), version);
+    final Optional<VersionedProfile> maybeProfile = getVersionedProfile(account.getUuid(), version);
 
     if (maybeProfile.isEmpty()) {
       // Hypothesis: this should basically never happen since clients can't delete versions
@@ -442,6 +446,16 @@ public class ProfileController {
         name, about, aboutEmoji, avatar, paymentAddress);
   }
 
+  private Optional<VersionedProfile> getVersionedProfile(final UUID uuid, final String version) {
+    try {
+      return profilesManager.getAsync(uuid, version).join();
+    } catch (final CompletionException e) {
+      // Surface the same exceptions a synchronous lookup would, rather than a generic wrapper
+      Throwables.throwIfUnchecked(ExceptionUtils.unwrap(e));
+      throw e;
+    }
+  }
+
   private BaseProfileResponse buildBaseProfileResponseForAccountIdentity(final Account account,
       final boolean isSelf,
       final ContainerRequestContext containerRequestContext) {
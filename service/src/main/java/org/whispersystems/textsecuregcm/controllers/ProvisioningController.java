@@ -9,6 +9,7 @@ import com.codahale.metrics.annotation.Timed;
 import io.dropwizard.auth.Auth;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
@@ -42,16 +43,19 @@ public class ProvisioningController {
   @PUT
   @Consumes(MediaType.APPLICATION_JSON)
   @Produces(MediaType.APPLICATION_JSON)
-  public void sendProvisioningMessage(@Auth AuthenticatedAccount auth,
+  public CompletableFuture<Void> sendProvisioningMessage(@Auth AuthenticatedAccount auth,
       @PathParam("destination") String destinationName,
       @NotNull @Valid ProvisioningMessage message)
       throws RateLimitExceededException {
 
     rateLimiters.getMessagesLimiter().validate(auth.getAccount().getUuid());
 
-    if (!provisioningManager.sendProvisioningMessage(new ProvisioningAddress(destinationName, 0),
-        Base64.getMimeDecoder().decode(message.body()))) {
-      throw new WebApplicationException(Response.Status.NOT_FOUND);
-    }
+    return provisioningManager.sendProvisioningMessage(new ProvisioningAddress(destinationName, 0),
+            Base64.getMimeDecoder().decode(message.body()))
+        .thenAccept(receiverPresent -> {
+          if (!receiverPresent) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+          }
+        });
   }
 }
@@ -79,6 +79,7 @@ import org.whispersystems.textsecuregcm.registration.VerificationSession;
 import org.whispersystems.textsecuregcm.spam.Extract;
 import org.whispersystems.textsecuregcm.spam.FilterSpam;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
+import org.whispersystems.textsecuregcm.storage.ContestedOptimisticLockException;
 import org.whispersystems.textsecuregcm.spam.ScoreThreshold;
 import org.whispersystems.textsecuregcm.storage.RegistrationRecoveryPasswordsManager;
 import org.whispersystems.textsecuregcm.storage.VerificationSessionManager;
@@ -247,9 +248,18 @@ public class VerificationController {
 
   private void updateStoredVerificationSession(final RegistrationServiceSession registrationServiceSession,
       final VerificationSession verificationSession) {
-    verificationSessionManager.update(registrationServiceSession.encodedSessionId(), verificationSession)
-        .orTimeout(DYNAMODB_TIMEOUT.toSeconds(), TimeUnit.SECONDS)
-        .join();
+    try {
+      verificationSessionManager.update(registrationServiceSession.encodedSessionId(), verificationSession)
+          .orTimeout(DYNAMODB_TIMEOUT.toSeconds(), TimeUnit.SECONDS)
+          .join();
+    } catch (final CompletionException e) {
+      if (ExceptionUtils.unwrap(e) instanceof ContestedOptimisticLockException) {
+        // Another request modified the session after we read it; the client may retry with the current session
+        throw new ServerErrorException("session was modified concurrently", Response.Status.SERVICE_UNAVAILABLE);
+      }
+
+      throw e;
+    }
   }
 
   /**
@@ -9,12 +9,14 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
@@ -39,32 +41,33 @@ public class CoinMarketCapClient {
     this.currencyIdsBySymbol = currencyIdsBySymbol;
   }
 
-  public BigDecimal getSpotPrice(final String currency, final String base) throws IOException {
+  public CompletableFuture<BigDecimal> getSpotPrice(final String currency, final String base) {
     if (!currencyIdsBySymbol.containsKey(currency)) {
-      throw new IllegalArgumentException("No currency ID found for " + currency);
+      return CompletableFuture.failedFuture(new IllegalArgumentException("No currency ID found for " + currency));
     }
 
     final URI quoteUri = URI.create(
         String.format("https://pro-api.coinmarketcap.com/v2/tools/price-conversion?amount=1&id=%d&convert=%s",
             currencyIdsBySymbol.get(currency), base));
 
-    try {
-      final HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder()
-              .GET()
-              .uri(quoteUri)
-              .header("X-CMC_PRO_API_KEY", apiKey)
-              .build(),
-          HttpResponse.BodyHandlers.ofString());
-
-      if (response.statusCode() < 200 || response.statusCode() >= 300) {
-        logger.warn("CoinMarketCapRequest failed with response: {}", response);
-        throw new IOException("CoinMarketCap request failed with status code " + response.statusCode());
-      }
-
-      return extractConversionRate(parseResponse(response.body()), base);
-    } catch (final InterruptedException e) {
-      throw new IOException("Interrupted while waiting for a response", e);
-    }
+    return httpClient.sendAsync(HttpRequest.newBuilder()
+                .GET()
+                .uri(quoteUri)
+                .header("X-CMC_PRO_API_KEY", apiKey)
+                .build(),
+            HttpResponse.BodyHandlers.ofString())
+        .thenApply(response -> {
+          try {
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+              logger.warn("CoinMarketCapRequest failed with response: {}", response);
+              throw new IOException("CoinMarketCap request failed with status code " + response.statusCode());
+            }
+
+            return extractConversionRate(parseResponse(response.body()), base);
+          } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
   }
 
   @VisibleForTesting
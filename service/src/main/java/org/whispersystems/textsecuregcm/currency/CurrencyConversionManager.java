@@ -1,25 +1,37 @@
 package org.whispersystems.textsecuregcm.currency;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import io.dropwizard.lifecycle.Managed;
 import io.lettuce.core.SetArgs;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.entities.CurrencyConversionEntity;
 import org.whispersystems.textsecuregcm.entities.CurrencyConversionEntityList;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
-import org.whispersystems.textsecuregcm.util.Util;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 
 public class CurrencyConversionManager implements Managed {
 
@@ -30,6 +42,12 @@ public class CurrencyConversionManager implements Managed {
 
   private static final Duration COIN_MARKET_CAP_REFRESH_INTERVAL = Duration.ofMinutes(5);
 
+  private static final Duration UPDATE_INTERVAL = Duration.ofSeconds(15);
+
+  private static final String UPDATE_TIMER_NAME = name(CurrencyConversionManager.class, "update");
+  private static final String FETCH_COIN_MARKET_CAP_TIMER_NAME =
+      name(CurrencyConversionManager.class, "fetchCoinMarketCap");
+
   @VisibleForTesting
   static final String COIN_MARKET_CAP_SHARED_CACHE_CURRENT_KEY = "CurrencyConversionManager::CoinMarketCapCacheCurrent";
   private static final String COIN_MARKET_CAP_SHARED_CACHE_DATA_KEY = "CurrencyConversionManager::CoinMarketCapCacheData";
@@ -37,10 +55,14 @@ public class CurrencyConversionManager implements Managed {
   private final FixerClient  fixerClient;
   private final CoinMarketCapClient coinMarketCapClient;
   private final FaultTolerantRedisCluster cacheCluster;
+  private final ScheduledExecutorService executor;
   private final Clock clock;
 
   private final List<String> currencies;
 
+  @Nullable
+  private ScheduledFuture<?> updateFuture;
+
   private final AtomicReference<CurrencyConversionEntityList> cached = new AtomicReference<>(null);
 
   private Instant fixerUpdatedTimestamp = Instant.MIN;
@@ -48,15 +70,21 @@ public class CurrencyConversionManager implements Managed {
   private Map<String, BigDecimal> cachedFixerValues;
   private Map<String, BigDecimal> cachedCoinMarketCapValues;
 
+  // The rates from which the current snapshot was built
+  private Map<String, BigDecimal> snapshotFixerValues;
+  private Map<String, BigDecimal> snapshotCoinMarketCapValues;
+
   public CurrencyConversionManager(final FixerClient fixerClient,
       final CoinMarketCapClient coinMarketCapClient,
       final FaultTolerantRedisCluster cacheCluster,
       final List<String> currencies,
+      final ScheduledExecutorService executor,
       final Clock clock) {
     this.fixerClient = fixerClient;
     this.coinMarketCapClient = coinMarketCapClient;
     this.cacheCluster = cacheCluster;
     this.currencies  = currencies;
+    this.executor = executor;
     this.clock = clock;
   }
 
@@ -65,23 +93,28 @@ public class CurrencyConversionManager implements Managed {
   }
 
   @Override
-  public void start() throws Exception {
-    new Thread(() -> {
-      for (;;) {
-        try {
-          updateCacheIfNecessary();
-        } catch (Throwable t) {
-          logger.warn("Error updating currency conversions", t);
-        }
-
-        Util.sleep(15000);
+  public synchronized void start() throws Exception {
+    updateFuture = executor.scheduleWithFixedDelay(() -> {
+      final Timer.Sample sample = Timer.start();
+      boolean success = false;
+
+      try {
+        updateCacheIfNecessary();
+        success = true;
+      } catch (final Throwable t) {
+        logger.warn("Error updating currency conversions", t);
+      } finally {
+        sample.stop(Metrics.timer(UPDATE_TIMER_NAME, "success", String.valueOf(success)));
       }
-    }).start();
+    }, 0, UPDATE_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
   }
 
   @Override
-  public void stop() throws Exception {
-
+  public synchronized void stop() throws Exception {
+    if (updateFuture != null) {
+      updateFuture.cancel(false);
+      updateFuture = null;
+    }
   }
 
   @VisibleForTesting
@@ -112,13 +145,7 @@ public class CurrencyConversionManager implements Managed {
             SetArgs.Builder.nx().ex(COIN_MARKET_CAP_REFRESH_INTERVAL))));
 
     if (shouldUpdateSharedCache || cachedCoinMarketCapValues == null) {
-      final Map<String, BigDecimal> conversionRatesFromCoinMarketCap = new HashMap<>(currencies.size());
-
-      for (final String currency : currencies) {
-        conversionRatesFromCoinMarketCap.put(currency, coinMarketCapClient.getSpotPrice(currency, "USD"));
-      }
-
-      cachedCoinMarketCapValues = conversionRatesFromCoinMarketCap;
+      cachedCoinMarketCapValues = fetchCoinMarketCapValues();
 
       if (shouldUpdateSharedCache) {
         cacheCluster.useCluster(connection -> {
@@ -132,12 +159,23 @@ public class CurrencyConversionManager implements Managed {
       }
     }
 
-    List<CurrencyConversionEntity> entities = new LinkedList<>();
+    final CurrencyConversionEntityList currentSnapshot = cached.get();
+
+    if (currentSnapshot != null
+        && cachedFixerValues.equals(snapshotFixerValues)
+        && cachedCoinMarketCapValues.equals(snapshotCoinMarketCapValues)) {
+
+      // Nothing has changed since we last built a snapshot; there's no need to repeat all the arithmetic
+      this.cached.set(new CurrencyConversionEntityList(currentSnapshot.getCurrencies(), clock.millis()));
+      return;
+    }
+
+    final List<CurrencyConversionEntity> entities = new ArrayList<>(cachedCoinMarketCapValues.size());
 
     for (Map.Entry<String, BigDecimal> currency : cachedCoinMarketCapValues.entrySet()) {
       BigDecimal usdValue = stripTrailingZerosAfterDecimal(currency.getValue());
 
-      Map<String, BigDecimal> values = new HashMap<>();
+      Map<String, BigDecimal> values = new HashMap<>(cachedFixerValues.size() + 1);
       values.put("USD", usdValue);
 
       for (Map.Entry<String, BigDecimal> conversion : cachedFixerValues.entrySet()) {
@@ -147,9 +185,45 @@ public class CurrencyConversionManager implements Managed {
       entities.add(new CurrencyConversionEntity(currency.getKey(), values));
     }
 
+    this.snapshotFixerValues = cachedFixerValues;
+    this.snapshotCoinMarketCapValues = cachedCoinMarketCapValues;
     this.cached.set(new CurrencyConversionEntityList(entities, clock.millis()));
   }
 
+  /**
+   * Fetches spot prices for all configured currencies from CoinMarketCap concurrently.
+   */
+  private Map<String, BigDecimal> fetchCoinMarketCapValues() throws IOException {
+    final Timer.Sample sample = Timer.start();
+    boolean success = false;
+
+    final Map<String, CompletableFuture<BigDecimal>> spotPriceFutures = new HashMap<>(currencies.size());
+    currencies.forEach(currency -> spotPriceFutures.put(currency, coinMarketCapClient.getSpotPrice(currency, "USD")));
+
+    try {
+      CompletableFuture.allOf(spotPriceFutures.values().toArray(CompletableFuture[]::new)).join();
+
+      final Map<String, BigDecimal> conversionRatesFromCoinMarketCap = new HashMap<>(currencies.size());
+      spotPriceFutures.forEach((currency, future) -> conversionRatesFromCoinMarketCap.put(currency, future.join()));
+
+      success = true;
+      return conversionRatesFromCoinMarketCap;
+    } catch (final CompletionException e) {
+      final Throwable cause = ExceptionUtils.unwrap(e);
+
+      if (cause instanceof UncheckedIOException uncheckedIOException) {
+        throw uncheckedIOException.getCause();
+      } else if (cause instanceof IOException ioException) {
+        throw ioException;
+      }
+
+      Throwables.throwIfUnchecked(cause);
+      throw e;
+    } finally {
+      sample.stop(Metrics.timer(FETCH_COIN_MARKET_CAP_TIMER_NAME, "success", String.valueOf(success)));
+    }
+  }
+
   private BigDecimal stripTrailingZerosAfterDecimal(BigDecimal bigDecimal) {
     BigDecimal n = bigDecimal.stripTrailingZeros();
     if (n.scale() < 0) {
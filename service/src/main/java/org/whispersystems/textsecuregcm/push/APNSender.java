@@ -9,6 +9,7 @@ import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
 import com.eatthepath.pushy.apns.ApnsClient;
 import com.eatthepath.pushy.apns.ApnsClientBuilder;
 import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
 import com.eatthepath.pushy.apns.PushType;
 import com.eatthepath.pushy.apns.auth.ApnsSigningKey;
 import com.eatthepath.pushy.apns.util.SimpleApnsPayloadBuilder;
@@ -16,22 +17,30 @@ import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
 import com.google.common.annotations.VisibleForTesting;
 import io.dropwizard.lifecycle.Managed;
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import org.whispersystems.textsecuregcm.configuration.ApnConfiguration;
 
 public class APNSender implements Managed, PushNotificationSender {
 
   private final ExecutorService executor;
   private final String bundleId;
-  private final ApnsClient apnsClient;
+  private final String voipTopic;
+  private final List<BoundedApnsClient> apnsClients;
 
   @VisibleForTesting
   static final String APN_VOIP_NOTIFICATION_PAYLOAD = new SimpleApnsPayloadBuilder()
@@ -56,32 +65,73 @@ public class APNSender implements Managed, PushNotificationSender {
   private static final String APNS_CA_FILENAME = "apns-certificates.pem";
 
   private static final Timer SEND_NOTIFICATION_TIMER = Metrics.timer(name(APNSender.class, "sendNotification"));
+  private static final Timer QUEUE_TIME_TIMER = Metrics.timer(name(APNSender.class, "queueTime"));
+
+  private static final String IN_FLIGHT_STREAMS_GAUGE_NAME = name(APNSender.class, "inFlightStreams");
+  private static final String QUEUED_NOTIFICATIONS_GAUGE_NAME = name(APNSender.class, "queuedNotifications");
 
   public APNSender(ExecutorService executor, ApnConfiguration configuration)
       throws IOException, NoSuchAlgorithmException, InvalidKeyException
   {
-    this.executor = executor;
-    this.bundleId = configuration.bundleId();
-    this.apnsClient = new ApnsClientBuilder().setSigningKey(
-            ApnsSigningKey.loadFromInputStream(new ByteArrayInputStream(configuration.signingKey().value().getBytes()),
-                configuration.teamId(), configuration.keyId()))
-        .setTrustedServerCertificateChain(getClass().getResourceAsStream(APNS_CA_FILENAME))
-        .setApnsServer(configuration.sandbox() ? ApnsClientBuilder.DEVELOPMENT_APNS_HOST : ApnsClientBuilder.PRODUCTION_APNS_HOST)
-        .build();
+    this(executor, buildApnsClients(configuration), configuration.bundleId(),
+        configuration.maxConcurrentStreamsPerClient());
   }
 
   @VisibleForTesting
   public APNSender(ExecutorService executor, ApnsClient apnsClient, String bundleId) {
+    this(executor, List.of(apnsClient), bundleId, ApnConfiguration.DEFAULT_MAX_CONCURRENT_STREAMS_PER_CLIENT);
+  }
+
+  @VisibleForTesting
+  APNSender(ExecutorService executor, List<ApnsClient> apnsClients, String bundleId, int maxConcurrentStreamsPerClient) {
+    if (apnsClients.isEmpty()) {
+      throw new IllegalArgumentException("At least one APNs client is required");
+    }
+
     this.executor = executor;
-    this.apnsClient = apnsClient;
     this.bundleId = bundleId;
+    this.voipTopic = bundleId + ".voip";
+
+    final List<BoundedApnsClient> boundedClients = new ArrayList<>(apnsClients.size());
+
+    for (int i = 0; i < apnsClients.size(); i++) {
+      boundedClients.add(new BoundedApnsClient(apnsClients.get(i), maxConcurrentStreamsPerClient, i));
+    }
+
+    this.apnsClients = Collections.unmodifiableList(boundedClients);
+  }
+
+  private static List<ApnsClient> buildApnsClients(final ApnConfiguration configuration)
+      throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+
+    final List<ApnsClient> apnsClients = new ArrayList<>(configuration.clientPoolSize());
+
+    for (int i = 0; i < configuration.clientPoolSize(); i++) {
+      apnsClients.add(new ApnsClientBuilder().setSigningKey(
+              ApnsSigningKey.loadFromInputStream(new ByteArrayInputStream(configuration.signingKey().value().getBytes()),
+                  configuration.teamId(), configuration.keyId()))
+          .setTrustedServerCertificateChain(APNSender.class.getResourceAsStream(APNS_CA_FILENAME))
+          .setApnsServer(configuration.sandbox() ? ApnsClientBuilder.DEVELOPMENT_APNS_HOST : ApnsClientBuilder.PRODUCTION_APNS_HOST)
+          .build());
+    }
+
+    return apnsClients;
+  }
+
+  /**
+   * Selects the client responsible for the given device token. Notifications for a given token always go to the same
+   * client so that APNs sees them in order on a single connection.
+   */
+  @VisibleForTesting
+  int getClientIndex(final String deviceToken) {
+    return Math.floorMod(deviceToken.hashCode(), apnsClients.size());
   }
 
   @Override
   public CompletableFuture<SendPushNotificationResult> sendNotification(final PushNotification notification) {
     final String topic = switch (notification.tokenType()) {
       case APN -> bundleId;
-      case APN_VOIP -> bundleId + ".voip";
+      case APN_VOIP -> voipTopic;
       default -> throw new IllegalArgumentException("Unsupported token type: " + notification.tokenType());
     };
 
@@ -135,21 +185,13 @@ public class APNSender implements Managed, PushNotificationSender {
         (notification.notificationType() == PushNotification.NotificationType.NOTIFICATION && notification.urgent() && !isVoip)
             ? "incoming-message" : null;
 
-    final Instant start = Instant.now();
-
-    return apnsClient.sendNotification(new SimpleApnsPushNotification(notification.deviceToken(),
+    return apnsClients.get(getClientIndex(notification.deviceToken())).sendNotification(new SimpleApnsPushNotification(notification.deviceToken(),
         topic,
         payload,
         MAX_EXPIRATION,
         deliveryPriority,
         pushType,
         collapseId))
-        .whenComplete((response, throwable) -> {
-          // Note that we deliberately run this small bit of non-blocking measurement on the "send notification" thread
-          // to avoid any measurement noise that could arise from dispatching to another executor and waiting in its
-          // queue
-          SEND_NOTIFICATION_TIMER.record(Duration.between(start, Instant.now()));
-        })
         .thenApplyAsync(response -> {
           final boolean accepted;
           final String rejectionReason;
@@ -175,6 +217,97 @@ public class APNSender implements Managed, PushNotificationSender {
 
   @Override
   public void stop() {
-    this.apnsClient.close().join();
+    CompletableFuture.allOf(apnsClients.stream()
+        .map(boundedApnsClient -> boundedApnsClient.apnsClient().close())
+        .toArray(CompletableFuture[]::new))
+        .join();
+  }
+
+  /**
+   * Wraps an {@link ApnsClient} with a limit on the number of notifications that may be in flight at any one time.
+   * Pushy will happily accept an unbounded number of notifications, but a single HTTP/2 connection can only carry as
+   * many concurrent streams as APNs allows; rather than letting excess notifications pile up invisibly inside the
+   * client, we hold them in a local queue where we can measure how long they wait.
+   */
+  private static class BoundedApnsClient {
+
+    private final ApnsClient apnsClient;
+    private final int maxConcurrentStreams;
+    private final Semaphore streamPermits;
+    private final Queue<Runnable> pendingNotifications = new ConcurrentLinkedQueue<>();
+
+    private BoundedApnsClient(final ApnsClient apnsClient, final int maxConcurrentStreams, final int clientIndex) {
+      this.apnsClient = apnsClient;
+      this.maxConcurrentStreams = maxConcurrentStreams;
+      this.streamPermits = new Semaphore(maxConcurrentStreams);
+
+      final Tags tags = Tags.of("client", String.valueOf(clientIndex));
+
+      Metrics.gauge(IN_FLIGHT_STREAMS_GAUGE_NAME, tags, this, BoundedApnsClient::getInFlightStreams);
+      Metrics.gaugeCollectionSize(QUEUED_NOTIFICATIONS_GAUGE_NAME, tags, pendingNotifications);
+    }
+
+    ApnsClient apnsClient() {
+      return apnsClient;
+    }
+
+    private int getInFlightStreams() {
+      return maxConcurrentStreams - streamPermits.availablePermits();
+    }
+
+    CompletableFuture<PushNotificationResponse<SimpleApnsPushNotification>> sendNotification(
+        final SimpleApnsPushNotification notification) {
+
+      final CompletableFuture<PushNotificationResponse<SimpleApnsPushNotification>> responseFuture =
+          new CompletableFuture<>();
+
+      final long enqueuedNanos = System.nanoTime();
+
+      pendingNotifications.add(() -> {
+        QUEUE_TIME_TIMER.record(System.nanoTime() - enqueuedNanos, TimeUnit.NANOSECONDS);
+
+        // Only time the exchange with APNs itself; time spent waiting in our own queue is measured separately
+        final long startNanos = System.nanoTime();
+
+        try {
+          apnsClient.sendNotification(notification).whenComplete((response, throwable) -> {
+            // Note that we deliberately run this small bit of non-blocking measurement on the "send notification"
+            // thread to avoid any measurement noise that could arise from dispatching to another executor and waiting
+            // in its queue
+            SEND_NOTIFICATION_TIMER.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+            streamPermits.release();
+            drainPendingNotifications();
+
+            if (throwable != null) {
+              responseFuture.completeExceptionally(throwable);
+            } else {
+              responseFuture.complete(response);
+            }
+          });
+        } catch (final RuntimeException e) {
+          streamPermits.release();
+          responseFuture.completeExceptionally(e);
+        }
+      });
+
+      drainPendingNotifications();
+
+      return responseFuture;
+    }
+
+    private void drainPendingNotifications() {
+      while (!pendingNotifications.isEmpty() && streamPermits.tryAcquire()) {
+        final Runnable sendNotification = pendingNotifications.poll();
+
+        if (sendNotification == null) {
+          // Another thread got to the queue first
+          streamPermits.release();
+          break;
+        }
+
+        sendNotification.run();
+      }
+    }
   }
 }
@@ -12,19 +12,23 @@ import io.dropwizard.lifecycle.Managed;
 import io.lettuce.core.Limit;
 import io.lettuce.core.Range;
 import io.lettuce.core.RedisException;
+import io.lettuce.core.ScoredValue;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.SetArgs;
 import io.lettuce.core.cluster.SlotHash;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -41,6 +45,10 @@ import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.textsecuregcm.util.RedisClusterUtil;
 import org.whispersystems.textsecuregcm.util.Util;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 public class ApnPushNotificationScheduler implements Managed {
 
@@ -59,8 +67,20 @@ public class ApnPushNotificationScheduler implements Managed {
   private static final Counter evicted = Metrics.counter(name(ApnPushNotificationScheduler.class, "voip_evicted"));
 
   private static final Counter backgroundNotificationScheduledCounter = Metrics.counter(name(ApnPushNotificationScheduler.class, "backgroundNotification", "scheduled"));
+  private static final Counter slotProcessingErrorCounter = Metrics.counter(name(ApnPushNotificationScheduler.class, "slotProcessingError"));
+
   private static final Counter backgroundNotificationSentCounter = Metrics.counter(name(ApnPushNotificationScheduler.class, "backgroundNotification", "sent"));
 
+  private static final Timer voipNotificationLatenessTimer = Timer.builder(name(ApnPushNotificationScheduler.class, "lateness"))
+      .tag("type", "voip")
+      .publishPercentileHistogram(true)
+      .register(Metrics.globalRegistry);
+
+  private static final Timer backgroundNotificationLatenessTimer = Timer.builder(name(ApnPushNotificationScheduler.class, "lateness"))
+      .tag("type", "background")
+      .publishPercentileHistogram(true)
+      .register(Metrics.globalRegistry);
+
   private final APNSender apnSender;
   private final AccountsManager accountsManager;
   private final FaultTolerantRedisCluster pushSchedulingCluster;
@@ -74,6 +94,8 @@ public class ApnPushNotificationScheduler implements Managed {
 
   private final Thread[] workerThreads;
 
+  private final Scheduler accountLookupScheduler = Schedulers.boundedElastic();
+
   @VisibleForTesting
   static final Duration BACKGROUND_NOTIFICATION_PERIOD = Duration.ofMinutes(20);
 
@@ -162,11 +184,151 @@ public class ApnPushNotificationScheduler implements Managed {
     }
   }
 
+  /**
+   * A notification worker that claims a whole range of slots at a time rather than a single slot, and which, within
+   * each page of pending notifications, looks up accounts concurrently and sends notifications without waiting for
+   * each one in turn.
+   */
+  class ShardedNotificationWorker implements Runnable {
+
+    private static final int PAGE_SIZE = 128;
+
+    @VisibleForTesting
+    static final int SLOTS_PER_SHARD = 64;
+
+    private static final int MAX_CONCURRENCY = 32;
+
+    @Override
+    public void run() {
+      do {
+        try {
+          final long entriesProcessed = processNextShard();
+
+          if (entriesProcessed == 0) {
+            Util.sleep(1000);
+          }
+        } catch (Exception e) {
+          logger.warn("Exception while operating", e);
+        }
+      } while (running.get());
+    }
+
+    private long processNextShard() {
+      // Claim a range of slots that no other worker (in this or any other process) will process in this pass
+      return processShard(pushSchedulingCluster.withCluster(connection ->
+          connection.sync().incrby(NEXT_SLOT_TO_PROCESS_KEY, SLOTS_PER_SHARD)));
+    }
+
+    @VisibleForTesting
+    long processShard(final long shardEnd) {
+      long entriesProcessed = 0;
+
+      for (long i = shardEnd - SLOTS_PER_SHARD; i < shardEnd; i++) {
+        final int slot = (int) (i % SlotHash.SLOT_COUNT);
+
+        // Nobody else will look at the rest of this shard until the slot counter comes all the way around again, so
+        // a failure in one slot shouldn't keep us from processing the others
+        try {
+          entriesProcessed += processRecurringVoipNotifications(slot) + processScheduledBackgroundNotifications(slot);
+        } catch (final Exception e) {
+          logger.warn("Failed to process slot {}", slot, e);
+          slotProcessingErrorCounter.increment();
+        }
+      }
+
+      return entriesProcessed;
+    }
+
+    @VisibleForTesting
+    long processRecurringVoipNotifications(final int slot) {
+      List<ScoredValue<String>> pendingDestinations;
+      long entriesProcessed = 0;
+
+      do {
+        pendingDestinations = getPendingDestinationsWithScoresForRecurringVoipNotifications(slot, PAGE_SIZE);
+        entriesProcessed += pendingDestinations.size();
+
+        Flux.fromIterable(pendingDestinations)
+            .flatMap(scoredDestination -> getAccountAndDeviceFromPairStringAsync(scoredDestination.getValue())
+                .flatMap(maybeAccountAndDevice -> maybeAccountAndDevice
+                    .map(accountAndDevice -> {
+                      voipNotificationLatenessTimer.record(
+                          Math.max(0, clock.millis() - (long) scoredDestination.getScore()), TimeUnit.MILLISECONDS);
+
+                      return Mono.fromCompletionStage(
+                          sendRecurringVoipNotificationAsync(accountAndDevice.first(), accountAndDevice.second()));
+                    })
+                    .orElseGet(() -> Mono.fromCompletionStage(
+                        removeRecurringVoipNotificationEntry(scoredDestination.getValue())).then())), MAX_CONCURRENCY)
+            .then()
+            .block();
+      } while (!pendingDestinations.isEmpty());
+
+      return entriesProcessed;
+    }
+
+    @VisibleForTesting
+    long processScheduledBackgroundNotifications(final int slot) {
+      final long currentTimeMillis = clock.millis();
+      final String queueKey = getPendingBackgroundNotificationQueueKey(slot);
+
+      final long processedBackgroundNotifications = pushSchedulingCluster.withCluster(connection -> {
+        List<ScoredValue<String>> destinations;
+        long offset = 0;
+
+        do {
+          destinations = connection.sync().zrangebyscoreWithScores(queueKey, Range.create(0, currentTimeMillis),
+              Limit.create(offset, PAGE_SIZE));
+
+          Flux.fromIterable(destinations)
+              .flatMap(scoredDestination -> getAccountAndDeviceFromPairStringAsync(scoredDestination.getValue())
+                  .flatMap(maybeAccountAndDevice -> Mono.justOrEmpty(maybeAccountAndDevice))
+                  .flatMap(accountAndDevice -> {
+                    backgroundNotificationLatenessTimer.record(
+                        Math.max(0, currentTimeMillis - (long) scoredDestination.getScore()), TimeUnit.MILLISECONDS);
+
+                    return Mono.fromCompletionStage(
+                        sendBackgroundNotificationAsync(accountAndDevice.first(), accountAndDevice.second()));
+                  }), MAX_CONCURRENCY)
+              .then()
+              .block();
+
+          offset += destinations.size();
+        } while (destinations.size() == PAGE_SIZE);
+
+        return offset;
+      });
+
+      pushSchedulingCluster.useCluster(connection ->
+          connection.sync().zremrangebyscore(queueKey, Range.create(0, currentTimeMillis)));
+
+      return processedBackgroundNotifications;
+    }
+
+    private Mono<Optional<Pair<Account, Device>>> getAccountAndDeviceFromPairStringAsync(final String destination) {
+      return Mono.fromCallable(() -> getAccountAndDeviceFromPairString(destination))
+          .subscribeOn(accountLookupScheduler)
+          .onErrorResume(IllegalArgumentException.class, e -> {
+            logger.warn("Failed to parse account/device pair: {}", destination, e);
+            return Mono.empty();
+          });
+    }
+  }
+
   public ApnPushNotificationScheduler(FaultTolerantRedisCluster pushSchedulingCluster,
       APNSender apnSender, AccountsManager accountsManager, final int dedicatedProcessWorkerThreadCount)
       throws IOException {
 
-    this(pushSchedulingCluster, apnSender, accountsManager, Clock.systemUTC(), dedicatedProcessWorkerThreadCount);
+    this(pushSchedulingCluster, apnSender, accountsManager, dedicatedProcessWorkerThreadCount, false);
+  }
+
+  public ApnPushNotificationScheduler(FaultTolerantRedisCluster pushSchedulingCluster,
+      APNSender apnSender, AccountsManager accountsManager, final int dedicatedProcessWorkerThreadCount,
+      final boolean shardedWorkers)
+      throws IOException {
+
+    this(pushSchedulingCluster, apnSender, accountsManager, Clock.systemUTC(), dedicatedProcessWorkerThreadCount,
+        shardedWorkers);
   }
 
   @VisibleForTesting
@@ -176,6 +338,17 @@ public class ApnPushNotificationScheduler implements Managed {
       Clock clock,
       int dedicatedProcessThreadCount) throws IOException {
 
+    this(pushSchedulingCluster, apnSender, accountsManager, clock, dedicatedProcessThreadCount, false);
+  }
+
+  @VisibleForTesting
+  ApnPushNotificationScheduler(FaultTolerantRedisCluster pushSchedulingCluster,
+      APNSender apnSender,
+      AccountsManager accountsManager,
+      Clock clock,
+      int dedicatedProcessThreadCount,
+      boolean shardedWorkers) throws IOException {
+
     this.apnSender = apnSender;
     this.accountsManager = accountsManager;
     this.pushSchedulingCluster = pushSchedulingCluster;
@@ -194,7 +367,8 @@ public class ApnPushNotificationScheduler implements Managed {
     this.workerThreads = new Thread[dedicatedProcessThreadCount];
 
     for (int i = 0; i < this.workerThreads.length; i++) {
-      this.workerThreads[i] = new Thread(new NotificationWorker(), "ApnFallbackManagerWorker-" + i);
+      this.workerThreads[i] = new Thread(shardedWorkers ? new ShardedNotificationWorker() : new NotificationWorker(),
+          "ApnFallbackManagerWorker-" + i);
     }
   }
 
@@ -284,6 +458,38 @@ public class ApnPushNotificationScheduler implements Managed {
     retry.increment();
   }
 
+  private CompletionStage<Void> sendRecurringVoipNotificationAsync(final Account account, final Device device) {
+    final String apnId = device.getVoipApnId();
+
+    if (apnId == null) {
+      return removeRecurringVoipNotificationEntry(account, device).thenAccept(dropValue());
+    }
+
+    if (device.getLastSeen() < clock.millis() - TimeUnit.DAYS.toMillis(7)) {
+      evicted.increment();
+      return removeRecurringVoipNotificationEntry(account, device).thenAccept(dropValue());
+    }
+
+    apnSender.sendNotification(new PushNotification(apnId, PushNotification.TokenType.APN_VOIP, PushNotification.NotificationType.NOTIFICATION, null, account, device, true));
+    retry.increment();
+
+    return CompletableFuture.completedFuture(null);
+  }
+
+  private CompletionStage<Void> sendBackgroundNotificationAsync(final Account account, final Device device) {
+    if (StringUtils.isBlank(device.getApnId())) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    apnSender.sendNotification(new PushNotification(device.getApnId(), PushNotification.TokenType.APN, PushNotification.NotificationType.NOTIFICATION, null, account, device, false));
+    backgroundNotificationSentCounter.increment();
+
+    return pushSchedulingCluster.withCluster(connection -> connection.async().set(
+            getLastBackgroundNotificationTimestampKey(account, device),
+            String.valueOf(clock.millis()), new SetArgs().ex(BACKGROUND_NOTIFICATION_PERIOD)))
+        .thenAccept(dropValue());
+  }
+
   @VisibleForTesting
   void sendBackgroundNotification(final Account account, final Device device) {
     if (StringUtils.isNotBlank(device.getApnId())) {
@@ -378,6 +584,23 @@ public class ApnPushNotificationScheduler implements Managed {
         List.of(String.valueOf(clock.millis()), String.valueOf(limit)));
   }
 
+  @SuppressWarnings("unchecked")
+  @VisibleForTesting
+  List<ScoredValue<String>> getPendingDestinationsWithScoresForRecurringVoipNotifications(final int slot, final int limit) {
+    final List<String> destinationsAndScores = (List<String>) getPendingVoipDestinationsScript.execute(
+        List.of(getPendingRecurringVoipNotificationQueueKey(slot)),
+        List.of(String.valueOf(clock.millis()), String.valueOf(limit), "true"));
+
+    final List<ScoredValue<String>> scoredDestinations = new ArrayList<>(destinationsAndScores.size() / 2);
+
+    for (int i = 0; i + 1 < destinationsAndScores.size(); i += 2) {
+      scoredDestinations.add(
+          ScoredValue.just(Double.parseDouble(destinationsAndScores.get(i + 1)), destinationsAndScores.get(i)));
+    }
+
+    return scoredDestinations;
+  }
+
   private CompletionStage<Void> insertRecurringVoipNotificationEntry(final Account account, final Device device, final long timestamp, final long interval) {
     final String endpoint = getEndpointKey(account, device);
 
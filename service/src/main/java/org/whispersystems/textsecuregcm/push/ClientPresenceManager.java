@@ -23,11 +23,14 @@ import io.lettuce.core.cluster.pubsub.RedisClusterPubSubAdapter;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
@@ -42,6 +45,7 @@ import org.whispersystems.textsecuregcm.redis.FaultTolerantPubSubConnection;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.util.Constants;
+import org.whispersystems.textsecuregcm.util.Pair;
 
 /**
  * The client presence manager keeps track of which clients are actively connected and "present" to receive messages.
@@ -65,20 +69,38 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
   private final ExecutorService keyspaceNotificationExecutorService;
   private final ScheduledExecutorService scheduledExecutorService;
   private ScheduledFuture<?> pruneMissingPeersFuture;
+  private ScheduledFuture<?> renewPresenceFuture;
+  private int nextRenewalSegment = 0;
 
   private final Map<String, DisplacedPresenceListener> displacementListenersByPresenceKey = new ConcurrentHashMap<>();
 
   private final Timer checkPresenceTimer;
+  private final Timer checkPresenceBatchTimer;
+  private final Meter localPresenceHitMeter;
+  private final Meter remotePresenceCheckMeter;
   private final Timer setPresenceTimer;
   private final Timer clearPresenceTimer;
   private final Timer prunePeersTimer;
+  private final Timer renewPresenceBatchTimer;
+  private final Meter renewPresenceMeter;
   private final Meter pruneClientMeter;
+  private final Timer prunePeerClientsTimer;
   private final Meter remoteDisplacementMeter;
   private final Meter pubSubMessageMeter;
 
   private static final int PRUNE_PEERS_INTERVAL_SECONDS = (int) Duration.ofSeconds(30).toSeconds();
   private static final int PRESENCE_EXPIRATION_SECONDS = (int) Duration.ofMinutes(11).toSeconds();
 
+  @VisibleForTesting
+  static final int PRUNE_CLIENTS_BATCH_SIZE = 1_000;
+
+  // Every local presence is renewed once per renewal interval, but the work is spread over many small sweeps so that
+  // each sweep only touches one segment of the local presences
+  private static final Duration PRESENCE_RENEWAL_INTERVAL = Duration.ofMinutes(5);
+
+  @VisibleForTesting
+  static final int PRESENCE_RENEWAL_SEGMENTS = 60;
+
   static final String MANAGER_SET_KEY = "presence::managers";
 
   private static final Logger log = LoggerFactory.getLogger(ClientPresenceManager.class);
@@ -99,10 +121,16 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
     metricRegistry.gauge(name(getClass(), "localClientCount"), () -> displacementListenersByPresenceKey::size);
 
     this.checkPresenceTimer = metricRegistry.timer(name(getClass(), "checkPresence"));
+    this.checkPresenceBatchTimer = metricRegistry.timer(name(getClass(), "checkPresenceBatch"));
+    this.localPresenceHitMeter = metricRegistry.meter(name(getClass(), "localPresenceHit"));
+    this.remotePresenceCheckMeter = metricRegistry.meter(name(getClass(), "remotePresenceCheck"));
     this.setPresenceTimer = metricRegistry.timer(name(getClass(), "setPresence"));
     this.clearPresenceTimer = metricRegistry.timer(name(getClass(), "clearPresence"));
     this.prunePeersTimer = metricRegistry.timer(name(getClass(), "prunePeers"));
+    this.renewPresenceBatchTimer = metricRegistry.timer(name(getClass(), "renewPresenceBatch"));
+    this.renewPresenceMeter = metricRegistry.meter(name(getClass(), "renewPresence"));
     this.pruneClientMeter = metricRegistry.meter(name(getClass(), "pruneClient"));
+    this.prunePeerClientsTimer = metricRegistry.timer(name(getClass(), "prunePeerClients"));
     this.remoteDisplacementMeter = metricRegistry.meter(name(getClass(), "remoteDisplacement"));
     this.pubSubMessageMeter = metricRegistry.meter(name(getClass(), "pubSubMessage"));
   }
@@ -136,6 +164,17 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
         log.warn("Failed to prune missing peers", t);
       }
     }, new Random().nextInt(PRUNE_PEERS_INTERVAL_SECONDS), PRUNE_PEERS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+    final long renewalSweepIntervalMillis = PRESENCE_RENEWAL_INTERVAL.toMillis() / PRESENCE_RENEWAL_SEGMENTS;
+
+    renewPresenceFuture = scheduledExecutorService.scheduleAtFixedRate(() -> {
+      try {
+        renewPresences(nextRenewalSegment);
+        nextRenewalSegment = (nextRenewalSegment + 1) % PRESENCE_RENEWAL_SEGMENTS;
+      } catch (final Throwable t) {
+        log.warn("Failed to renew presences", t);
+      }
+    }, new Random().nextLong(renewalSweepIntervalMillis), renewalSweepIntervalMillis, TimeUnit.MILLISECONDS);
   }
 
   @Override
@@ -146,6 +185,10 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
       pruneMissingPeersFuture.cancel(false);
     }
 
+    if (renewPresenceFuture != null) {
+      renewPresenceFuture.cancel(false);
+    }
+
     for (final String presenceKey : displacementListenersByPresenceKey.keySet()) {
       clearPresence(presenceKey);
     }
@@ -184,6 +227,36 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
         List.of(managerId, String.valueOf(PRESENCE_EXPIRATION_SECONDS)));
   }
 
+  /**
+   * Renews all local presences in the given segment. Presence keys are grouped by cluster slot and each group is
+   * renewed with a single script invocation; all groups are dispatched at once and pipelined over the cluster
+   * connection.
+   *
+   * @param segment the segment of local presences to renew, from 0 (inclusive) to {@link #PRESENCE_RENEWAL_SEGMENTS}
+   * (exclusive)
+   */
+  @VisibleForTesting
+  void renewPresences(final int segment) {
+    try (final Timer.Context ignored = renewPresenceBatchTimer.time()) {
+      final Map<Integer, List<String>> presenceKeysBySlot = displacementListenersByPresenceKey.keySet().stream()
+          .filter(presenceKey -> getRenewalSegment(presenceKey) == segment)
+          .collect(Collectors.groupingBy(SlotHash::getSlot));
+
+      final List<String> args = List.of(managerId, String.valueOf(PRESENCE_EXPIRATION_SECONDS));
+
+      CompletableFuture.allOf(presenceKeysBySlot.values().stream()
+              .map(presenceKeys -> renewPresenceScript.executeAsync(presenceKeys, args)
+                  .thenRun(() -> renewPresenceMeter.mark(presenceKeys.size())))
+              .toArray(CompletableFuture[]::new))
+          .join();
+    }
+  }
+
+  @VisibleForTesting
+  static int getRenewalSegment(final String presenceKey) {
+    return Math.floorMod(presenceKey.hashCode(), PRESENCE_RENEWAL_SEGMENTS);
+  }
+
   public void disconnectAllPresences(final UUID accountUuid, final List<Long> deviceIds) {
 
     List<String> presenceKeys = new ArrayList<>();
@@ -219,13 +292,96 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
     clearPresence(presenceKey);
   }
 
+  /**
+   * Checks whether the given account/device pair is present on any server. Clients connected to this server are
+   * recognized without a round trip to Redis.
+   */
   public boolean isPresent(final UUID accountUuid, final long deviceId) {
     try (final Timer.Context ignored = checkPresenceTimer.time()) {
+      if (isLocallyPresent(accountUuid, deviceId)) {
+        localPresenceHitMeter.mark();
+        return true;
+      }
+
+      remotePresenceCheckMeter.mark();
+
       return presenceCluster.withCluster(connection ->
           connection.sync().exists(getPresenceKey(accountUuid, deviceId))) == 1;
     }
   }
 
+  /**
+   * Checks whether each of the given account/device pairs is present on any server.
+   *
+   * @see #isPresentAsync(Collection)
+   */
+  public Map<Pair<UUID, Long>, Boolean> isPresent(final Collection<Pair<UUID, Long>> accountAndDeviceIds) {
+    return isPresentAsync(accountAndDeviceIds).join();
+  }
+
+  /**
+   * Checks whether each of the given account/device pairs is present on any server. Clients connected to this server
+   * are recognized locally; for the rest, presence keys are grouped by cluster slot and each group is fetched with a
+   * single {@code MGET}. All groups are dispatched at once, so the whole check generally costs at most a single round
+   * trip regardless of the number of devices.
+   *
+   * @return a future that yields a map of every given account/device pair to its presence
+   */
+  public CompletableFuture<Map<Pair<UUID, Long>, Boolean>> isPresentAsync(
+      final Collection<Pair<UUID, Long>> accountAndDeviceIds) {
+
+    final Map<Pair<UUID, Long>, Boolean> locallyPresentAccountAndDeviceIds = new HashMap<>();
+    final List<Pair<UUID, Long>> remoteAccountAndDeviceIds = new ArrayList<>();
+
+    accountAndDeviceIds.stream().distinct().forEach(accountAndDeviceId -> {
+      if (isLocallyPresent(accountAndDeviceId.first(), accountAndDeviceId.second())) {
+        localPresenceHitMeter.mark();
+        locallyPresentAccountAndDeviceIds.put(accountAndDeviceId, true);
+      } else {
+        remotePresenceCheckMeter.mark();
+        remoteAccountAndDeviceIds.add(accountAndDeviceId);
+      }
+    });
+
+    if (remoteAccountAndDeviceIds.isEmpty()) {
+      return CompletableFuture.completedFuture(locallyPresentAccountAndDeviceIds);
+    }
+
+    final Map<Integer, List<Pair<UUID, Long>>> accountAndDeviceIdsBySlot = remoteAccountAndDeviceIds.stream()
+        .collect(Collectors.groupingBy(accountAndDeviceId ->
+            SlotHash.getSlot(getPresenceKey(accountAndDeviceId.first(), accountAndDeviceId.second()))));
+
+    final Timer.Context timerContext = checkPresenceBatchTimer.time();
+
+    final List<CompletableFuture<Map<Pair<UUID, Long>, Boolean>>> slotFutures = presenceCluster.withCluster(connection ->
+        accountAndDeviceIdsBySlot.values().stream()
+            .map(slotAccountAndDeviceIds -> connection.async().mget(slotAccountAndDeviceIds.stream()
+                    .map(accountAndDeviceId -> getPresenceKey(accountAndDeviceId.first(), accountAndDeviceId.second()))
+                    .toArray(String[]::new))
+                .thenApply(keyValues -> {
+                  final Map<Pair<UUID, Long>, Boolean> presenceByAccountAndDeviceId = new HashMap<>();
+
+                  for (int i = 0; i < slotAccountAndDeviceIds.size(); i++) {
+                    presenceByAccountAndDeviceId.put(slotAccountAndDeviceIds.get(i), keyValues.get(i).hasValue());
+                  }
+
+                  return presenceByAccountAndDeviceId;
+                })
+                .toCompletableFuture())
+            .toList());
+
+    return CompletableFuture.allOf(slotFutures.toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> {
+          final Map<Pair<UUID, Long>, Boolean> presenceByAccountAndDeviceId =
+              new HashMap<>(locallyPresentAccountAndDeviceIds);
+
+          slotFutures.forEach(slotFuture -> presenceByAccountAndDeviceId.putAll(slotFuture.join()));
+
+          return presenceByAccountAndDeviceId;
+        })
+        .whenComplete((ignored, throwable) -> timerContext.stop());
+  }
+
   public boolean isLocallyPresent(final UUID accountUuid, final long deviceId) {
     return displacementListenersByPresenceKey.containsKey(getPresenceKey(accountUuid, deviceId));
   }
@@ -239,7 +395,7 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
       displacementListenersByPresenceKey.remove(presenceKey);
       unsubscribeFromRemotePresenceChanges(presenceKey);
 
-      final boolean removed = clearPresenceScript.execute(List.of(presenceKey), List.of(managerId)) != null;
+      final boolean removed = (long) clearPresenceScript.execute(List.of(presenceKey), List.of(managerId)) > 0;
       presenceCluster.useCluster(connection -> connection.sync().srem(connectedClientSetKey, presenceKey));
 
       return removed;
@@ -281,13 +437,7 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
 
           final String connectedClientsKey = getConnectedClientSetKey(peerId);
 
-          String presenceKey;
-
-          while ((presenceKey = presenceCluster.withCluster(connection -> connection.sync().spop(connectedClientsKey)))
-              != null) {
-            clearPresenceScript.execute(List.of(presenceKey), List.of(peerId));
-            pruneClientMeter.mark();
-          }
+          prunePeerClients(peerId, connectedClientsKey);
 
           presenceCluster.useCluster(connection -> {
             connection.sync().del(connectedClientsKey);
@@ -298,6 +448,35 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
     }
   }
 
+  private void prunePeerClients(final String peerId, final String connectedClientsKey) {
+    try (final Timer.Context ignored = prunePeerClientsTimer.time()) {
+      Set<String> presenceKeys;
+
+      do {
+        presenceKeys = presenceCluster.withCluster(
+            connection -> connection.sync().spop(connectedClientsKey, PRUNE_CLIENTS_BATCH_SIZE));
+
+        clearPresences(presenceKeys, peerId);
+      } while (presenceKeys.size() == PRUNE_CLIENTS_BATCH_SIZE);
+    }
+  }
+
+  /**
+   * Clears the given presence keys if they're still held by the given manager. Presence keys are grouped by cluster
+   * slot and each group is cleared with a single script invocation; all groups are dispatched at once and pipelined
+   * over the cluster connection.
+   */
+  private void clearPresences(final Collection<String> presenceKeys, final String presenceManagerId) {
+    final Map<Integer, List<String>> presenceKeysBySlot = presenceKeys.stream()
+        .collect(Collectors.groupingBy(SlotHash::getSlot));
+
+    CompletableFuture.allOf(presenceKeysBySlot.values().stream()
+            .map(slotPresenceKeys -> clearPresenceScript.executeAsync(slotPresenceKeys, List.of(presenceManagerId))
+                .thenAccept(cleared -> pruneClientMeter.mark((long) cleared)))
+            .toArray(CompletableFuture[]::new))
+        .join();
+  }
+
   @Override
   public void message(final RedisClusterNode node, final String channel, final String message) {
     pubSubMessageMeter.mark();
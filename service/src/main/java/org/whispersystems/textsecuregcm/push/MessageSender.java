@@ -8,11 +8,16 @@ import static com.codahale.metrics.MetricRegistry.name;
 import static org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
 
 import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import org.apache.commons.lang3.StringUtils;
 import org.whispersystems.textsecuregcm.redis.RedisOperation;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import org.whispersystems.textsecuregcm.util.Pair;
 
 /**
  * A MessageSender sends Signal messages to destination devices. Messages may be "normal" user-to-user messages,
@@ -56,17 +61,7 @@ public class MessageSender {
   public void sendMessage(final Account account, final Device device, final Envelope message, final boolean online)
       throws NotPushRegisteredException {
 
-    final String channel;
-
-    if (device.getGcmId() != null) {
-      channel = "gcm";
-    } else if (device.getApnId() != null) {
-      channel = "apn";
-    } else if (device.getFetchesMessages()) {
-      channel = "websocket";
-    } else {
-      throw new AssertionError();
-    }
+    final String channel = getChannel(device);
 
     final boolean clientPresent;
 
@@ -85,18 +80,157 @@ public class MessageSender {
       clientPresent = clientPresenceManager.isPresent(account.getUuid(), device.getId());
 
       if (!clientPresent) {
-        try {
-          pushNotificationManager.sendNewMessageNotification(account, device.getId(), message.getUrgent());
-
-          final boolean useVoip = StringUtils.isNotBlank(device.getVoipApnId());
-          RedisOperation.unchecked(() -> pushLatencyManager.recordPushSent(account.getUuid(), device.getId(), useVoip, message.getUrgent()));
-        } catch (final NotPushRegisteredException e) {
-          if (!device.getFetchesMessages()) {
-            throw e;
+        sendNewMessageNotification(account, device, message);
+      }
+    }
+
+    incrementSendCounter(channel, online, clientPresent, message);
+  }
+
+  /**
+   * Sends messages to any number of devices associated with a single account. This behaves like calling
+   * {@link #sendMessage(Account, Device, Envelope, boolean)} once for each message in order, except that the presence of
+   * destination devices is checked with batched lookups rather than one lookup per message.
+   * <p/>
+   * If the account's primary device can receive neither push notifications nor messages via websocket, there's no
+   * point in sending further messages to the account; as a caller that stops at the first
+   * {@link NotPushRegisteredException} from a primary device would, this method sends no messages after such a failure.
+   *
+   * @param account the account to which the destination devices belong
+   * @param messages the messages to send, each paired with its destination device; a device may appear more than once
+   * @param online whether the messages are "online" messages
+   *
+   * @return the destination devices for which {@link #sendMessage(Account, Device, Envelope, boolean)} would have thrown
+   * a {@link NotPushRegisteredException}, in order; if a primary device is among them, it is the last
+   */
+  public List<Device> sendMessages(final Account account, final List<Pair<Device, Envelope>> messages,
+      final boolean online) {
+
+    final List<Device> notPushRegisteredDevices = new ArrayList<>();
+
+    int batchStart = 0;
+
+    while (batchStart < messages.size()) {
+      // Don't insert any messages beyond a primary device that might fail until we know whether it actually failed
+      int batchEnd = batchStart;
+
+      while (batchEnd < messages.size() && !mayFailToNotify(messages.get(batchEnd).first(), online)) {
+        batchEnd++;
+      }
+
+      batchEnd = Math.min(batchEnd + 1, messages.size());
+
+      final List<Device> batchNotPushRegisteredDevices =
+          sendMessageBatch(account, messages.subList(batchStart, batchEnd), online);
+
+      notPushRegisteredDevices.addAll(batchNotPushRegisteredDevices);
+
+      if (batchNotPushRegisteredDevices.stream().anyMatch(Device::isMaster)) {
+        break;
+      }
+
+      batchStart = batchEnd;
+    }
+
+    return notPushRegisteredDevices;
+  }
+
+  private List<Device> sendMessageBatch(final Account account, final List<Pair<Device, Envelope>> messages,
+      final boolean online) {
+
+    final List<String> channels = messages.stream()
+        .map(deviceAndMessage -> getChannel(deviceAndMessage.first()))
+        .toList();
+
+    final List<Pair<UUID, Long>> accountAndDeviceIds = messages.stream()
+        .map(deviceAndMessage -> new Pair<>(account.getUuid(), deviceAndMessage.first().getId()))
+        .distinct()
+        .toList();
+
+    final List<Device> notPushRegisteredDevices = new ArrayList<>();
+    final Map<Pair<UUID, Long>, Boolean> presenceByAccountAndDeviceId;
+
+    if (online) {
+      presenceByAccountAndDeviceId = clientPresenceManager.isPresent(accountAndDeviceIds);
+
+      messages.forEach(deviceAndMessage -> {
+        if (isPresent(presenceByAccountAndDeviceId, account, deviceAndMessage.first())) {
+          messagesManager.insert(account.getUuid(), deviceAndMessage.first().getId(),
+              deviceAndMessage.second().toBuilder().setEphemeral(true).build());
+        }
+      });
+    } else {
+      messages.forEach(deviceAndMessage ->
+          messagesManager.insert(account.getUuid(), deviceAndMessage.first().getId(), deviceAndMessage.second()));
+
+      // As in sendMessage, we check for presence only after all messages have been inserted
+      presenceByAccountAndDeviceId = clientPresenceManager.isPresent(accountAndDeviceIds);
+
+      messages.forEach(deviceAndMessage -> {
+        if (!isPresent(presenceByAccountAndDeviceId, account, deviceAndMessage.first())) {
+          try {
+            sendNewMessageNotification(account, deviceAndMessage.first(), deviceAndMessage.second());
+          } catch (final NotPushRegisteredException e) {
+            notPushRegisteredDevices.add(deviceAndMessage.first());
           }
         }
+      });
+    }
+
+    for (int i = 0; i < messages.size(); i++) {
+      incrementSendCounter(channels.get(i), online,
+          isPresent(presenceByAccountAndDeviceId, account, messages.get(i).first()), messages.get(i).second());
+    }
+
+    return notPushRegisteredDevices;
+  }
+
+  /**
+   * Indicates whether sending a message to the given device might fail with a {@link NotPushRegisteredException} that
+   * would end a multi-message send.
+   */
+  private static boolean mayFailToNotify(final Device device, final boolean online) {
+    return !online
+        && device.isMaster()
+        && !device.getFetchesMessages()
+        && StringUtils.isAllBlank(device.getGcmId(), device.getVoipApnId(), device.getApnId());
+  }
+
+  private static boolean isPresent(final Map<Pair<UUID, Long>, Boolean> presenceByAccountAndDeviceId,
+      final Account account, final Device device) {
+
+    return presenceByAccountAndDeviceId.getOrDefault(new Pair<>(account.getUuid(), device.getId()), false);
+  }
+
+  private static String getChannel(final Device device) {
+    if (device.getGcmId() != null) {
+      return "gcm";
+    } else if (device.getApnId() != null) {
+      return "apn";
+    } else if (device.getFetchesMessages()) {
+      return "websocket";
+    } else {
+      throw new AssertionError();
+    }
+  }
+
+  private void sendNewMessageNotification(final Account account, final Device device, final Envelope message)
+      throws NotPushRegisteredException {
+
+    try {
+      pushNotificationManager.sendNewMessageNotification(account, device.getId(), message.getUrgent());
+
+      final boolean useVoip = StringUtils.isNotBlank(device.getVoipApnId());
+      RedisOperation.unchecked(() -> pushLatencyManager.recordPushSent(account.getUuid(), device.getId(), useVoip, message.getUrgent()));
+    } catch (final NotPushRegisteredException e) {
+      if (!device.getFetchesMessages()) {
+        throw e;
       }
     }
+  }
+
+  private static void incrementSendCounter(final String channel, final boolean online, final boolean clientPresent,
+      final Envelope message) {
 
     Metrics.counter(SEND_COUNTER_NAME,
             CHANNEL_TAG_NAME, channel,
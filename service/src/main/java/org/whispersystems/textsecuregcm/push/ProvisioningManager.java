@@ -18,23 +18,35 @@ import io.lettuce.core.codec.ByteArrayCodec;
 import io.lettuce.core.pubsub.RedisPubSubAdapter;
 import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
 import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.configuration.CircuitBreakerConfiguration;
-import org.whispersystems.textsecuregcm.redis.RedisOperation;
 import org.whispersystems.textsecuregcm.redis.RedisUriUtil;
 import org.whispersystems.textsecuregcm.storage.PubSubProtos;
 import org.whispersystems.textsecuregcm.util.CircuitBreakerUtil;
 import org.whispersystems.textsecuregcm.websocket.InvalidWebsocketAddressException;
 import org.whispersystems.textsecuregcm.websocket.ProvisioningAddress;
 
+/**
+ * The provisioning manager relays provisioning messages from existing devices to the provisioning sockets of new
+ * devices via Redis pub/sub. Linking flows open provisioning sockets in bursts, so rather than issuing one blocking
+ * {@code SUBSCRIBE} or {@code UNSUBSCRIBE} per socket, the provisioning manager queues subscription changes and sends
+ * everything that has accumulated as a single command whenever the previous command has completed.
+ */
 public class ProvisioningManager extends RedisPubSubAdapter<byte[], byte[]> implements Managed {
 
   private final RedisClient redisClient;
@@ -46,6 +58,11 @@ public class ProvisioningManager extends RedisPubSubAdapter<byte[], byte[]> impl
   private final Map<ProvisioningAddress, Consumer<PubSubProtos.PubSubMessage>> listenersByProvisioningAddress =
       new ConcurrentHashMap<>();
 
+  // Guarded by `this`
+  private final Map<String, CompletableFuture<Void>> pendingSubscriptions = new HashMap<>();
+  private final Set<String> pendingUnsubscriptions = new HashSet<>();
+  private boolean subscriptionUpdateInFlight = false;
+
   private static final String ACTIVE_LISTENERS_GAUGE_NAME = name(ProvisioningManager.class, "activeListeners");
 
   private static final String SEND_PROVISIONING_MESSAGE_COUNTER_NAME =
@@ -54,6 +71,26 @@ public class ProvisioningManager extends RedisPubSubAdapter<byte[], byte[]> impl
   private static final String RECEIVE_PROVISIONING_MESSAGE_COUNTER_NAME =
       name(ProvisioningManager.class, "receiveProvisioningMessage");
 
+  private static final String SUBSCRIPTION_CHANGE_COUNTER_NAME =
+      name(ProvisioningManager.class, "subscriptionChange");
+
+  private static final Counter SUBSCRIBE_COUNTER =
+      Metrics.counter(SUBSCRIPTION_CHANGE_COUNTER_NAME, "action", "subscribe");
+
+  private static final Counter UNSUBSCRIBE_COUNTER =
+      Metrics.counter(SUBSCRIPTION_CHANGE_COUNTER_NAME, "action", "unsubscribe");
+
+  private static final DistributionSummary SUBSCRIPTION_BATCH_SIZE = DistributionSummary
+      .builder(name(ProvisioningManager.class, "subscriptionBatchSize"))
+      .publishPercentiles(0.5, 0.75, 0.95, 0.99, 0.999)
+      .distributionStatisticExpiry(Duration.ofMinutes(5))
+      .register(Metrics.globalRegistry);
+
+  private static final Timer SUBSCRIBE_LATENCY_TIMER =
+      Metrics.timer(name(ProvisioningManager.class, "subscribeLatency"));
+
+  private static final String PUBLISH_LATENCY_TIMER_NAME = name(ProvisioningManager.class, "publishLatency");
+
   private static final Logger logger = LoggerFactory.getLogger(ProvisioningManager.class);
 
   public ProvisioningManager(final String redisUri,
@@ -98,33 +135,137 @@ public class ProvisioningManager extends RedisPubSubAdapter<byte[], byte[]> impl
     redisClient.shutdown();
   }
 
-  public void addListener(final ProvisioningAddress address, final Consumer<PubSubProtos.PubSubMessage> listener) {
+  /**
+   * Registers a listener for provisioning messages sent to the given address.
+   *
+   * @return a future that completes once messages sent to the given address will reach the listener
+   */
+  public CompletableFuture<Void> addListener(final ProvisioningAddress address,
+      final Consumer<PubSubProtos.PubSubMessage> listener) {
+
     listenersByProvisioningAddress.put(address, listener);
 
-    circuitBreaker.executeRunnable(
-        () -> subscriptionConnection.sync().subscribe(address.serialize().getBytes(StandardCharsets.UTF_8)));
+    final Timer.Sample sample = Timer.start();
+    final CompletableFuture<Void> subscribeFuture = new CompletableFuture<>();
+
+    synchronized (this) {
+      pendingSubscriptions.put(address.serialize(), subscribeFuture);
+    }
+
+    SUBSCRIBE_COUNTER.increment();
+    updateSubscriptions();
+
+    return subscribeFuture.whenComplete((ignored, throwable) -> sample.stop(SUBSCRIBE_LATENCY_TIMER));
   }
 
   public void removeListener(final ProvisioningAddress address) {
-    RedisOperation.unchecked(() -> circuitBreaker.executeRunnable(
-        () -> subscriptionConnection.sync().unsubscribe(address.serialize().getBytes(StandardCharsets.UTF_8))));
-
     listenersByProvisioningAddress.remove(address);
+
+    final String channel = address.serialize();
+
+    synchronized (this) {
+      // If we never got as far as subscribing, there's nothing to undo
+      final CompletableFuture<Void> pendingSubscription = pendingSubscriptions.remove(channel);
+
+      if (pendingSubscription != null) {
+        pendingSubscription.complete(null);
+      } else {
+        pendingUnsubscriptions.add(channel);
+      }
+    }
+
+    UNSUBSCRIBE_COUNTER.increment();
+    updateSubscriptions();
   }
 
-  public boolean sendProvisioningMessage(final ProvisioningAddress address, final byte[] body) {
+  /**
+   * Sends all pending subscription changes to Redis unless a previous batch of changes is still in flight, in which
+   * case pending changes will be sent when that batch completes.
+   */
+  private void updateSubscriptions() {
+    final Map<String, CompletableFuture<Void>> subscriptions;
+    final Set<String> unsubscriptions;
+
+    synchronized (this) {
+      if (subscriptionUpdateInFlight || (pendingSubscriptions.isEmpty() && pendingUnsubscriptions.isEmpty())) {
+        return;
+      }
+
+      subscriptionUpdateInFlight = true;
+
+      subscriptions = new HashMap<>(pendingSubscriptions);
+      unsubscriptions = new HashSet<>(pendingUnsubscriptions);
+
+      pendingSubscriptions.clear();
+      pendingUnsubscriptions.clear();
+    }
+
+    SUBSCRIPTION_BATCH_SIZE.record(subscriptions.size() + unsubscriptions.size());
+
+    final CompletableFuture<Void> subscribeFuture = subscriptions.isEmpty()
+        ? CompletableFuture.completedFuture(null)
+        : circuitBreaker.executeCompletionStage(
+            () -> subscriptionConnection.async().subscribe(toChannels(subscriptions.keySet()))).toCompletableFuture();
+
+    final CompletableFuture<Void> unsubscribeFuture = unsubscriptions.isEmpty()
+        ? CompletableFuture.completedFuture(null)
+        : circuitBreaker.executeCompletionStage(
+            () -> subscriptionConnection.async().unsubscribe(toChannels(unsubscriptions))).toCompletableFuture();
+
+    subscribeFuture.whenComplete((ignored, throwable) -> subscriptions.values().forEach(future -> {
+      if (throwable != null) {
+        future.completeExceptionally(throwable);
+      } else {
+        future.complete(null);
+      }
+    }));
+
+    unsubscribeFuture.whenComplete((ignored, throwable) -> {
+      if (throwable != null) {
+        logger.warn("Failed to unsubscribe from {} provisioning channels", unsubscriptions.size(), throwable);
+      }
+    });
+
+    CompletableFuture.allOf(subscribeFuture, unsubscribeFuture).whenComplete((ignored, throwable) -> {
+      synchronized (this) {
+        subscriptionUpdateInFlight = false;
+      }
+
+      updateSubscriptions();
+    });
+  }
+
+  private static byte[][] toChannels(final Set<String> channels) {
+    return channels.stream()
+        .map(channel -> channel.getBytes(StandardCharsets.UTF_8))
+        .toArray(byte[][]::new);
+  }
+
+  /**
+   * Publishes a provisioning message to the given address.
+   *
+   * @return a future that yields {@code true} if a listener was subscribed to the given address or {@code false}
+   * otherwise
+   */
+  public CompletableFuture<Boolean> sendProvisioningMessage(final ProvisioningAddress address, final byte[] body) {
     final PubSubProtos.PubSubMessage pubSubMessage = PubSubProtos.PubSubMessage.newBuilder()
         .setType(PubSubProtos.PubSubMessage.Type.DELIVER)
         .setContent(ByteString.copyFrom(body))
         .build();
 
-    final boolean receiverPresent = circuitBreaker.executeSupplier(
-        () -> publicationConnection.sync()
-            .publish(address.serialize().getBytes(StandardCharsets.UTF_8), pubSubMessage.toByteArray()) > 0);
+    final Timer.Sample sample = Timer.start();
+
+    return circuitBreaker.executeCompletionStage(() -> publicationConnection.async()
+            .publish(address.serialize().getBytes(StandardCharsets.UTF_8), pubSubMessage.toByteArray()))
+        .toCompletableFuture()
+        .thenApply(receivers -> {
+          final boolean receiverPresent = receivers > 0;
 
-    Metrics.counter(SEND_PROVISIONING_MESSAGE_COUNTER_NAME, "online", String.valueOf(receiverPresent)).increment();
+          sample.stop(Metrics.timer(PUBLISH_LATENCY_TIMER_NAME, "online", String.valueOf(receiverPresent)));
+          Metrics.counter(SEND_PROVISIONING_MESSAGE_COUNTER_NAME, "online", String.valueOf(receiverPresent)).increment();
 
-    return receiverPresent;
+          return receiverPresent;
+        });
   }
 
   @Override
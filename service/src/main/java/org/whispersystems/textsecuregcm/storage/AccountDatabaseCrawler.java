@@ -9,9 +9,16 @@ import static com.codahale.metrics.MetricRegistry.name;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.IntStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.util.Constants;
@@ -25,6 +32,9 @@ public class AccountDatabaseCrawler {
   private static final Timer processChunkTimer = metricRegistry.timer(
       name(AccountDatabaseCrawler.class, "processChunk"));
 
+  private static final String SEGMENT_ACCOUNTS_COUNTER_NAME = name(AccountDatabaseCrawler.class, "segmentAccounts");
+  private static final String SEGMENT_FINISHED_COUNTER_NAME = name(AccountDatabaseCrawler.class, "segmentFinished");
+
   private static final long WORKER_TTL_MS = 120_000L;
 
   private final String name;
@@ -33,18 +43,42 @@ public class AccountDatabaseCrawler {
   private final String workerId;
   private final AccountDatabaseCrawlerCache cache;
   private final List<AccountDatabaseCrawlerListener> listeners;
+  private final int segments;
+  private final Executor segmentExecutor;
 
   public AccountDatabaseCrawler(final String name,
       AccountsManager accounts,
       AccountDatabaseCrawlerCache cache,
       List<AccountDatabaseCrawlerListener> listeners,
       int chunkSize) {
+    this(name, accounts, cache, listeners, chunkSize, 1, Runnable::run);
+  }
+
+  /**
+   * Constructs a crawler that divides the accounts table into the given number of segments and crawls each segment
+   * independently. Segments are crawled concurrently on the given executor, and so the executor's thread count bounds
+   * the number of chunks that listeners will process at once; listeners must tolerate concurrent calls to
+   * {@link AccountDatabaseCrawlerListener#timeAndProcessCrawlChunk(Optional, List)}.
+   */
+  public AccountDatabaseCrawler(final String name,
+      AccountsManager accounts,
+      AccountDatabaseCrawlerCache cache,
+      List<AccountDatabaseCrawlerListener> listeners,
+      int chunkSize,
+      int segments,
+      Executor segmentExecutor) {
+    if (segments < 1) {
+      throw new IllegalArgumentException("Segment count must be positive");
+    }
+
     this.name = name;
     this.accounts = accounts;
     this.chunkSize = chunkSize;
     this.workerId = UUID.randomUUID().toString();
     this.cache = cache;
     this.listeners = listeners;
+    this.segments = segments;
+    this.segmentExecutor = segmentExecutor;
   }
 
   public void crawlAllAccounts() {
@@ -53,36 +87,109 @@ public class AccountDatabaseCrawler {
       return;
     }
     try {
-      Optional<UUID> fromUuid = getLastUuid();
-
-      if (fromUuid.isEmpty()) {
-        logger.info("{}: Started crawl", name);
-        listeners.forEach(AccountDatabaseCrawlerListener::onCrawlStart);
+      if (segments > 1) {
+        crawlAllSegments();
       } else {
-        logger.info("{}: Resuming crawl", name);
+        crawlSequentially();
       }
+    } finally {
+      cache.releaseActiveWork(workerId);
+    }
+  }
 
-      AccountCrawlChunk chunkAccounts;
-      do {
-        try (Timer.Context timer = processChunkTimer.time()) {
-          logger.debug("{}: Processing chunk", name);
-          chunkAccounts = readChunk(fromUuid, chunkSize);
+  private void crawlSequentially() {
+    Optional<UUID> fromUuid = getLastUuid();
 
-          for (AccountDatabaseCrawlerListener listener : listeners) {
-            listener.timeAndProcessCrawlChunk(fromUuid, chunkAccounts.getAccounts());
-          }
-          fromUuid = chunkAccounts.getLastUuid();
-          cacheLastUuid(fromUuid);
+    if (fromUuid.isEmpty()) {
+      logger.info("{}: Started crawl", name);
+      listeners.forEach(AccountDatabaseCrawlerListener::onCrawlStart);
+    } else {
+      logger.info("{}: Resuming crawl", name);
+    }
+
+    AccountCrawlChunk chunkAccounts;
+    do {
+      try (Timer.Context timer = processChunkTimer.time()) {
+        logger.debug("{}: Processing chunk", name);
+        chunkAccounts = readChunk(fromUuid, chunkSize);
+
+        for (AccountDatabaseCrawlerListener listener : listeners) {
+          listener.timeAndProcessCrawlChunk(fromUuid, chunkAccounts.getAccounts());
         }
+        fromUuid = chunkAccounts.getLastUuid();
+        cacheLastUuid(fromUuid);
+      }
 
-      } while (!chunkAccounts.getAccounts().isEmpty());
+    } while (!chunkAccounts.getAccounts().isEmpty());
 
-      logger.info("{}: Finished crawl", name);
-      listeners.forEach(AccountDatabaseCrawlerListener::onCrawlEnd);
+    logger.info("{}: Finished crawl", name);
+    listeners.forEach(AccountDatabaseCrawlerListener::onCrawlEnd);
+  }
 
-    } finally {
-      cache.releaseActiveWork(workerId);
+  private void crawlAllSegments() {
+    if (cache.hasSegmentProgress(segments)) {
+      logger.info("{}: Resuming crawl with {} segments", name, segments);
+    } else {
+      logger.info("{}: Started crawl with {} segments", name, segments);
+      listeners.forEach(AccountDatabaseCrawlerListener::onCrawlStart);
     }
+
+    // If any segment fails, the checkpoints for all segments remain in place so a later crawl can pick up where this
+    // one left off
+    CompletableFuture.allOf(IntStream.range(0, segments)
+            .mapToObj(segment -> CompletableFuture.runAsync(() -> crawlSegment(segment), segmentExecutor))
+            .toArray(CompletableFuture[]::new))
+        .join();
+
+    cache.clearSegmentProgress(segments);
+
+    logger.info("{}: Finished crawl", name);
+    listeners.forEach(AccountDatabaseCrawlerListener::onCrawlEnd);
+  }
+
+  private void crawlSegment(final int segment) {
+    if (cache.isSegmentFinished(segment, segments)) {
+      logger.debug("{}: Segment {} already finished", name, segment);
+      return;
+    }
+
+    final Counter segmentAccountsCounter =
+        Metrics.counter(SEGMENT_ACCOUNTS_COUNTER_NAME, "segment", String.valueOf(segment));
+
+    final Instant start = Instant.now();
+    long accountsCrawled = 0;
+
+    Optional<UUID> fromUuid = cache.getLastUuid(segment, segments);
+    AccountCrawlChunk chunkAccounts;
+
+    do {
+      try (Timer.Context timer = processChunkTimer.time()) {
+        logger.debug("{}: Processing chunk in segment {}", name, segment);
+
+        try (Timer.Context readTimer = readChunkTimer.time()) {
+          chunkAccounts = accounts.getAllFromDynamo(segment, segments, fromUuid.orElse(null), chunkSize);
+        }
+
+        for (AccountDatabaseCrawlerListener listener : listeners) {
+          listener.timeAndProcessCrawlChunk(fromUuid, chunkAccounts.getAccounts());
+        }
+
+        segmentAccountsCounter.increment(chunkAccounts.getAccounts().size());
+        accountsCrawled += chunkAccounts.getAccounts().size();
+
+        if (chunkAccounts.getLastUuid().isPresent()) {
+          fromUuid = chunkAccounts.getLastUuid();
+          cache.setLastUuid(segment, segments, fromUuid.get());
+        }
+      }
+    } while (!chunkAccounts.getAccounts().isEmpty());
+
+    cache.setSegmentFinished(segment, segments);
+    Metrics.counter(SEGMENT_FINISHED_COUNTER_NAME).increment();
+
+    final Duration elapsed = Duration.between(start, Instant.now());
+    logger.info("{}: Finished segment {} of {}; crawled {} accounts in {} ({} accounts/s)", name, segment, segments,
+        accountsCrawled, elapsed, accountsCrawled / Math.max(1, elapsed.toSeconds()));
   }
 
   private AccountCrawlChunk readChunk(Optional<UUID> fromUuid, int chunkSize) {
@@ -21,6 +21,10 @@ public class AccountDatabaseCrawlerCache {
 
   private static final String ACTIVE_WORKER_KEY = "account_database_crawler_cache_active_worker";
   private static final String LAST_UUID_DYNAMO_KEY = "account_database_crawler_cache_last_uuid_dynamo";
+  private static final String SEGMENT_PROGRESS_KEY = "account_database_crawler_cache_segment_progress";
+
+  // Marks a segment that has been crawled to completion
+  private static final String SEGMENT_FINISHED = "finished";
 
   private static final long LAST_NUMBER_TTL_MS = 86400_000L;
 
@@ -67,6 +71,60 @@ public class AccountDatabaseCrawlerCache {
     }
   }
 
+  /**
+   * Checks whether any segment of a parallel crawl with the given number of segments has recorded progress.
+   */
+  public boolean hasSegmentProgress(final int totalSegments) {
+    return cacheCluster.withCluster(connection -> connection.sync().exists(getSegmentProgressKey(totalSegments))) > 0;
+  }
+
+  public Optional<UUID> getLastUuid(final int segment, final int totalSegments) {
+    final String progress = getSegmentProgress(segment, totalSegments);
+
+    return progress == null || SEGMENT_FINISHED.equals(progress)
+        ? Optional.empty()
+        : Optional.of(UUID.fromString(progress));
+  }
+
+  public void setLastUuid(final int segment, final int totalSegments, final UUID lastUuid) {
+    setSegmentProgress(segment, totalSegments, lastUuid.toString());
+  }
+
+  public boolean isSegmentFinished(final int segment, final int totalSegments) {
+    return SEGMENT_FINISHED.equals(getSegmentProgress(segment, totalSegments));
+  }
+
+  public void setSegmentFinished(final int segment, final int totalSegments) {
+    setSegmentProgress(segment, totalSegments, SEGMENT_FINISHED);
+  }
+
+  /**
+   * Discards progress for all segments of a parallel crawl with the given number of segments.
+   */
+  public void clearSegmentProgress(final int totalSegments) {
+    cacheCluster.useCluster(connection -> connection.sync().del(getSegmentProgressKey(totalSegments)));
+  }
+
+  private String getSegmentProgress(final int segment, final int totalSegments) {
+    return cacheCluster.withCluster(connection ->
+        connection.sync().hget(getSegmentProgressKey(totalSegments), String.valueOf(segment)));
+  }
+
+  private void setSegmentProgress(final int segment, final int totalSegments, final String progress) {
+    final String key = getSegmentProgressKey(totalSegments);
+
+    cacheCluster.useCluster(connection -> {
+      connection.sync().hset(key, String.valueOf(segment), progress);
+      connection.sync().pexpire(key, LAST_NUMBER_TTL_MS);
+    });
+  }
+
+  // Progress is kept separately for each segment count, since a scan segment's position means nothing once the table
+  // has been divided a different way
+  private String getSegmentProgressKey(final int totalSegments) {
+    return getPrefixedKey(SEGMENT_PROGRESS_KEY + "::" + totalSegments);
+  }
+
   private String getPrefixedKey(final String key) {
     return prefix + key;
   }
@@ -10,6 +10,7 @@ import static java.util.Objects.requireNonNull;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
@@ -23,6 +24,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
@@ -30,28 +32,35 @@ import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.util.AttributeValues;
 import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
 import org.whispersystems.textsecuregcm.util.UUIDUtil;
+import org.whispersystems.textsecuregcm.util.Util;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.publisher.ParallelFlux;
 import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.Delete;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.Put;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
 import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
 import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
 import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
@@ -78,8 +87,16 @@ public class Accounts extends AbstractDynamoDbStore {
   private static final Timer GET_BY_UUID_TIMER = Metrics.timer(name(Accounts.class, "getByUuid"));
   private static final Timer GET_ALL_FROM_START_TIMER = Metrics.timer(name(Accounts.class, "getAllFrom"));
   private static final Timer GET_ALL_FROM_OFFSET_TIMER = Metrics.timer(name(Accounts.class, "getAllFromOffset"));
+  private static final Timer GET_ALL_FROM_SEGMENT_TIMER = Metrics.timer(name(Accounts.class, "getAllFromSegment"));
   private static final Timer DELETE_TIMER = Metrics.timer(name(Accounts.class, "delete"));
 
+  private static final String SCAN_CAPACITY_UNITS_PER_SECOND_GAUGE_NAME =
+      name(Accounts.class, "scanCapacityUnitsPerSecond");
+  private static final Counter SCAN_THROTTLED_COUNTER = Metrics.counter(name(Accounts.class, "scanThrottled"));
+
+  // The number of times we'll retry a throttled scan request before giving up
+  private static final int MAX_THROTTLED_SCAN_RETRIES = 10;
+
   private static final String CONDITIONAL_CHECK_FAILED = "ConditionalCheckFailed";
 
   private static final String TRANSACTION_CONFLICT = "TransactionConflict";
@@ -123,6 +140,8 @@ public class Accounts extends AbstractDynamoDbStore {
 
   private final int scanPageSize;
 
+  private final ScanThrottle scanThrottle;
+
 
   @VisibleForTesting
   public Accounts(
@@ -134,6 +153,22 @@ public class Accounts extends AbstractDynamoDbStore {
       final String phoneNumberIdentifierConstraintTableName,
       final String usernamesConstraintTableName,
       final int scanPageSize) {
+
+    this(clock, client, asyncClient, accountsTableName, phoneNumberConstraintTableName,
+        phoneNumberIdentifierConstraintTableName, usernamesConstraintTableName, scanPageSize, new ScanThrottle(0));
+  }
+
+  @VisibleForTesting
+  Accounts(
+      final Clock clock,
+      final DynamoDbClient client,
+      final DynamoDbAsyncClient asyncClient,
+      final String accountsTableName,
+      final String phoneNumberConstraintTableName,
+      final String phoneNumberIdentifierConstraintTableName,
+      final String usernamesConstraintTableName,
+      final int scanPageSize,
+      final ScanThrottle scanThrottle) {
     super(client);
     this.clock = clock;
     this.asyncClient = asyncClient;
@@ -142,6 +177,9 @@ public class Accounts extends AbstractDynamoDbStore {
     this.accountsTableName = accountsTableName;
     this.usernamesConstraintTableName = usernamesConstraintTableName;
     this.scanPageSize = scanPageSize;
+    this.scanThrottle = scanThrottle;
+
+    Metrics.gauge(SCAN_CAPACITY_UNITS_PER_SECOND_GAUGE_NAME, scanThrottle, ScanThrottle::getCapacityUnitsPerSecond);
   }
 
   public Accounts(
@@ -151,10 +189,11 @@ public class Accounts extends AbstractDynamoDbStore {
       final String phoneNumberConstraintTableName,
       final String phoneNumberIdentifierConstraintTableName,
       final String usernamesConstraintTableName,
-      final int scanPageSize) {
+      final int scanPageSize,
+      final double scanCapacityUnitsPerSecond) {
     this(Clock.systemUTC(), client, asyncClient, accountsTableName,
         phoneNumberConstraintTableName, phoneNumberIdentifierConstraintTableName, usernamesConstraintTableName,
-        scanPageSize);
+        scanPageSize, new ScanThrottle(scanCapacityUnitsPerSecond));
   }
 
   public boolean create(final Account account) {
@@ -662,6 +701,14 @@ public class Accounts extends AbstractDynamoDbStore {
             .map(Accounts::fromItem)));
   }
 
+  @Nonnull
+  public CompletableFuture<Optional<Account>> getByAccountIdentifierAsync(final UUID uuid) {
+    return record(GET_BY_UUID_TIMER,
+        () -> itemByKeyAsync(accountsTableName, KEY_ACCOUNT_UUID, AttributeValues.fromUUID(uuid))
+            .thenApply(maybeItem -> maybeItem.map(Accounts::fromItem)))
+        .toCompletableFuture();
+  }
+
   public void delete(final UUID uuid) {
     DELETE_TIMER.record(() -> getByAccountIdentifier(uuid).ifPresent(account -> {
 
@@ -688,16 +735,54 @@ public class Accounts extends AbstractDynamoDbStore {
     return Flux.range(0, segments)
         .parallel()
         .runOn(scheduler)
-        .flatMap(segment -> asyncClient.scanPaginator(ScanRequest.builder()
+        .flatMap(segment -> scanPages(ScanRequest.builder()
                 .tableName(accountsTableName)
                 .consistentRead(true)
                 .segment(segment)
                 .totalSegments(segments)
                 .build())
-            .items()
+            .flatMapIterable(ScanResponse::items)
             .map(Accounts::fromItem));
   }
 
+  /**
+   * Streams pages of accounts from a single segment of a parallel scan of the accounts table. The last UUID of each page
+   * is the key from which a later scan of the same segment may resume, and is empty for the last page in the segment.
+   *
+   * @param segment the segment to scan
+   * @param totalSegments the total number of segments in the parallel scan
+   * @param from the key after which to start scanning, or {@code null} to scan the segment from the beginning
+   *
+   * @return a stream of pages of accounts from the given segment
+   */
+  Flux<AccountCrawlChunk> getAllPages(final int segment, final int totalSegments, @Nullable final UUID from) {
+    final ScanRequest.Builder scanRequestBuilder = ScanRequest.builder()
+        .tableName(accountsTableName)
+        .consistentRead(true)
+        .segment(segment)
+        .totalSegments(totalSegments);
+
+    if (from != null) {
+      scanRequestBuilder.exclusiveStartKey(Map.of(KEY_ACCOUNT_UUID, AttributeValues.fromUUID(from)));
+    }
+
+    return scanPages(scanRequestBuilder.build())
+        .map(scanResponse -> new AccountCrawlChunk(
+            scanResponse.items().stream().map(Accounts::fromItem).toList(),
+            scanResponse.hasLastEvaluatedKey()
+                ? AttributeValues.getUUID(scanResponse.lastEvaluatedKey(), KEY_ACCOUNT_UUID, null)
+                : null));
+  }
+
+  /**
+   * Returns DynamoDB's estimate of the number of items in the accounts table. DynamoDB updates the estimate roughly
+   * every six hours.
+   */
+  CompletableFuture<Long> getApproximateCount() {
+    return asyncClient.describeTable(DescribeTableRequest.builder().tableName(accountsTableName).build())
+        .thenApply(response -> response.table().itemCount());
+  }
+
   @Nonnull
   public AccountCrawlChunk getAllFrom(final UUID from, final int maxCount) {
     final ScanRequest.Builder scanRequestBuilder = ScanRequest.builder()
@@ -715,6 +800,32 @@ public class Accounts extends AbstractDynamoDbStore {
     return scanForChunk(scanRequestBuilder, maxCount, GET_ALL_FROM_START_TIMER);
   }
 
+  /**
+   * Reads a chunk of accounts from a single segment of a parallel scan of the accounts table.
+   *
+   * @param segment the segment to read
+   * @param totalSegments the total number of segments in the parallel scan
+   * @param from the UUID of the last account read from the given segment, if any
+   * @param maxCount the maximum number of accounts to return
+   *
+   * @return a chunk of accounts from the given segment
+   */
+  @Nonnull
+  public AccountCrawlChunk getAllFromSegment(final int segment, final int totalSegments, @Nullable final UUID from,
+      final int maxCount) {
+
+    final ScanRequest.Builder scanRequestBuilder = ScanRequest.builder()
+        .limit(scanPageSize)
+        .segment(segment)
+        .totalSegments(totalSegments);
+
+    if (from != null) {
+      scanRequestBuilder.exclusiveStartKey(Map.of(KEY_ACCOUNT_UUID, AttributeValues.fromUUID(from)));
+    }
+
+    return scanForChunk(scanRequestBuilder, maxCount, GET_ALL_FROM_SEGMENT_TIMER);
+  }
+
   @Nonnull
   private Optional<Account> getByIndirectLookup(
       final Timer timer,
@@ -749,6 +860,18 @@ public class Accounts extends AbstractDynamoDbStore {
     return Optional.ofNullable(response.item()).filter(m -> !m.isEmpty());
   }
 
+  @Nonnull
+  private CompletableFuture<Optional<Map<String, AttributeValue>>> itemByKeyAsync(final String table,
+      final String keyName, final AttributeValue keyValue) {
+
+    return asyncClient.getItem(GetItemRequest.builder()
+            .tableName(table)
+            .key(Map.of(keyName, keyValue))
+            .consistentRead(true)
+            .build())
+        .thenApply(response -> Optional.ofNullable(response.item()).filter(item -> !item.isEmpty()));
+  }
+
   @Nonnull
   private Optional<Map<String, AttributeValue>> itemByGsiKey(final String table, final String indexName, final String keyName, final AttributeValue keyValue) {
     final QueryResponse response = db().query(QueryRequest.builder()
@@ -887,11 +1010,81 @@ public class Accounts extends AbstractDynamoDbStore {
   @Nonnull
   private AccountCrawlChunk scanForChunk(final ScanRequest.Builder scanRequestBuilder, final int maxCount, final Timer timer) {
     scanRequestBuilder.tableName(accountsTableName);
-    final List<Map<String, AttributeValue>> items = requireNonNull(timer.record(() -> scan(scanRequestBuilder.build(), maxCount)));
+    final List<Map<String, AttributeValue>> items = requireNonNull(timer.record(() -> scanThrottled(scanRequestBuilder.build(), maxCount)));
     final List<Account> accounts = items.stream().map(Accounts::fromItem).toList();
     return new AccountCrawlChunk(accounts, accounts.size() > 0 ? accounts.get(accounts.size() - 1).getUuid() : null);
   }
 
+  /**
+   * Scans pages from the accounts table at the pace set by this instance's scan throttle, starting with the page
+   * identified by the given request.
+   */
+  private Flux<ScanResponse> scanPages(final ScanRequest initialScanRequest) {
+    return scanPage(initialScanRequest)
+        .expand(scanResponse -> scanResponse.hasLastEvaluatedKey() && !scanResponse.lastEvaluatedKey().isEmpty()
+            ? scanPage(initialScanRequest.toBuilder().exclusiveStartKey(scanResponse.lastEvaluatedKey()).build())
+            : Mono.empty());
+  }
+
+  private Mono<ScanResponse> scanPage(final ScanRequest scanRequest) {
+    final ScanRequest throttledScanRequest =
+        scanRequest.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+
+    // Defer so that retries wait for (and re-check) the throttle's delay
+    return Mono.defer(() -> {
+          final Duration delay = scanThrottle.getDelay();
+          final Mono<ScanResponse> scanResponseMono = Mono.fromFuture(() -> asyncClient.scan(throttledScanRequest));
+
+          return delay.isZero() ? scanResponseMono : Mono.delay(delay).then(scanResponseMono);
+        })
+        .doOnNext(scanResponse -> scanThrottle.pageScanned(scanResponse.consumedCapacity()))
+        .retryWhen(Retry.max(MAX_THROTTLED_SCAN_RETRIES)
+            .filter(ScanThrottle::isThrottlingException)
+            .doBeforeRetry(ignored -> {
+              SCAN_THROTTLED_COUNTER.increment();
+              scanThrottle.throttled();
+            })
+            .onRetryExhaustedThrow((spec, retrySignal) -> retrySignal.failure()));
+  }
+
+  /**
+   * Scans up to {@code maxCount} items from the accounts table at the pace set by this instance's scan throttle.
+   */
+  private List<Map<String, AttributeValue>> scanThrottled(final ScanRequest initialScanRequest, final int maxCount) {
+    final List<Map<String, AttributeValue>> items = new ArrayList<>();
+    ScanRequest scanRequest = initialScanRequest.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+    int throttledRetries = 0;
+
+    while (items.size() < maxCount) {
+      Util.sleep(scanThrottle.getDelay().toMillis());
+
+      final ScanResponse scanResponse;
+
+      try {
+        scanResponse = db().scan(scanRequest);
+      } catch (final RuntimeException e) {
+        if (ScanThrottle.isThrottlingException(e) && throttledRetries++ < MAX_THROTTLED_SCAN_RETRIES) {
+          SCAN_THROTTLED_COUNTER.increment();
+          scanThrottle.throttled();
+          continue;
+        }
+
+        throw e;
+      }
+
+      scanThrottle.pageScanned(scanResponse.consumedCapacity());
+      scanResponse.items().stream().limit(maxCount - items.size()).forEach(items::add);
+
+      if (!scanResponse.hasLastEvaluatedKey() || scanResponse.lastEvaluatedKey().isEmpty()) {
+        break;
+      }
+
+      scanRequest = scanRequest.toBuilder().exclusiveStartKey(scanResponse.lastEvaluatedKey()).build();
+    }
+
+    return items;
+  }
+
   @Nonnull
   private static String extractCancellationReasonCodes(final TransactionCanceledException exception) {
     return exception.cancellationReasons().stream()
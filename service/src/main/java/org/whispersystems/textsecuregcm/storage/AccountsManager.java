@@ -16,6 +16,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import io.lettuce.core.RedisException;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
@@ -23,7 +24,9 @@ import java.io.IOException;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -56,11 +59,14 @@ import org.whispersystems.textsecuregcm.securestorage.SecureStorageClient;
 import org.whispersystems.textsecuregcm.securevaluerecovery.SecureValueRecovery2Client;
 import org.whispersystems.textsecuregcm.util.Constants;
 import org.whispersystems.textsecuregcm.util.DestinationDeviceValidator;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
 import org.whispersystems.textsecuregcm.util.Util;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.publisher.ParallelFlux;
 import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 public class AccountsManager {
 
@@ -118,6 +124,8 @@ public class AccountsManager {
 
   private static final Duration USERNAME_HASH_RESERVATION_TTL_MINUTES = Duration.ofMinutes(5);
 
+  private static final int MAX_UPDATE_RETRIES = 10;
+
   @FunctionalInterface
   private interface AccountPersister {
     void persistAccount(Account account) throws UsernameHashNotAvailableException;
@@ -604,6 +612,62 @@ public class AccountsManager {
     return updatedAccount;
   }
 
+  /**
+   * Asynchronously applies changes to an account. Like {@link #update(Account, Consumer)}, the updater may be applied
+   * more than once if another writer changes the account concurrently.
+   *
+   * @param account the account to update
+   * @param updater applies changes to the account
+   *
+   * @return a future that yields the updated account
+   */
+  public CompletableFuture<Account> updateAsync(final Account account, final Consumer<Account> updater) {
+    final Timer.Context timerContext = updateTimer.time();
+
+    return redisDeleteAsync(account)
+        .thenCompose(ignored -> updateWithRetriesAsync(account, a -> {
+          updater.accept(a);
+          // assume that all updaters passed to the public method actually modify the account
+          return true;
+        }, MAX_UPDATE_RETRIES))
+        .thenCompose(updatedAccount -> redisSetAsync(updatedAccount).thenApply(ignored -> updatedAccount))
+        .whenComplete((ignored, throwable) -> timerContext.close());
+  }
+
+  private CompletableFuture<Account> updateWithRetriesAsync(final Account account,
+      final Function<Account, Boolean> updater,
+      final int triesRemaining) {
+
+    final Account originalAccount = cloneAccount(account);
+
+    if (!updater.apply(account)) {
+      return CompletableFuture.completedFuture(account);
+    }
+
+    return accounts.updateAsync(account).toCompletableFuture()
+        .thenApply(ignored -> {
+          final Account updatedAccount = cloneAccount(account);
+          account.markStale();
+
+          AccountChangeValidator.GENERAL_CHANGE_VALIDATOR.validateChange(originalAccount, updatedAccount);
+
+          return updatedAccount;
+        })
+        .exceptionallyCompose(throwable -> {
+          if (ExceptionUtils.unwrap(throwable) instanceof ContestedOptimisticLockException) {
+            if (triesRemaining <= 1) {
+              return CompletableFuture.failedFuture(new OptimisticLockRetryLimitExceededException());
+            }
+
+            return accounts.getByAccountIdentifierAsync(account.getUuid())
+                .thenCompose(maybeAccount -> updateWithRetriesAsync(maybeAccount.orElseThrow(), updater,
+                    triesRemaining - 1));
+          }
+
+          return CompletableFuture.failedFuture(throwable);
+        });
+  }
+
   private Account updateWithRetries(Account account,
       final Function<Account, Boolean> updater,
       final Consumer<Account> persister,
@@ -629,10 +693,9 @@ public class AccountsManager {
       return account;
     }
 
-    final int maxTries = 10;
     int tries = 0;
 
-    while (tries < maxTries) {
+    while (tries < MAX_UPDATE_RETRIES) {
 
       try {
         persister.persistAccount(account);
@@ -670,6 +733,64 @@ public class AccountsManager {
     }
   }
 
+  /**
+   * Applies device-level changes to a batch of accounts, typically accounts read by a crawler. Unlike
+   * {@link #update(Account, Consumer)}, this method writes each account using the version that was crawled rather than
+   * re-reading it first, re-reading only if another writer has changed the account in the meantime. It also invalidates
+   * (rather than repopulates) cached copies of updated accounts, since crawled accounts are unlikely to be read again
+   * soon.
+   *
+   * @param accountsToUpdate the accounts to update; these accounts are not modified
+   * @param deviceUpdater applies changes to a device and returns {@code true} if the device was actually changed
+   * @param maxConcurrency the maximum number of accounts to update concurrently
+   *
+   * @return a future that yields the number of accounts that were actually updated; accounts that could not be updated
+   * are logged and skipped
+   */
+  public CompletableFuture<Long> updateDevices(final Collection<Account> accountsToUpdate,
+      final Function<Device, Boolean> deviceUpdater,
+      final int maxConcurrency) {
+
+    return Flux.fromIterable(accountsToUpdate)
+        .flatMap(account -> updateDevices(cloneAccount(account), deviceUpdater, MAX_UPDATE_RETRIES)
+            .onErrorResume(throwable -> {
+              logger.warn("Failed to update devices for account {}", account.getUuid(), throwable);
+              return Mono.just(false);
+            }), maxConcurrency)
+        .filter(updated -> updated)
+        .count()
+        .toFuture();
+  }
+
+  private Mono<Boolean> updateDevices(final Account account,
+      final Function<Device, Boolean> deviceUpdater,
+      final int retriesRemaining) {
+
+    final Account originalAccount = cloneAccount(account);
+
+    boolean changed = false;
+
+    for (final Device device : account.getDevices()) {
+      changed |= deviceUpdater.apply(device);
+    }
+
+    if (!changed) {
+      return Mono.just(false);
+    }
+
+    return Mono.fromFuture(() -> accounts.updateAsync(account).toCompletableFuture())
+        .doOnSuccess(ignored -> AccountChangeValidator.GENERAL_CHANGE_VALIDATOR.validateChange(originalAccount, account))
+        .then(Mono.fromFuture(() -> redisDeleteAsync(account)))
+        .thenReturn(true)
+        .onErrorResume(throwable -> ExceptionUtils.unwrap(throwable) instanceof ContestedOptimisticLockException
+                && retriesRemaining > 0,
+            throwable -> Mono.fromCallable(() -> accounts.getByAccountIdentifier(account.getUuid()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(maybeAccount -> maybeAccount
+                    .map(refreshedAccount -> updateDevices(refreshedAccount, deviceUpdater, retriesRemaining - 1))
+                    .orElseGet(() -> Mono.just(false))));
+  }
+
   public Account updateDevice(Account account, long deviceId, Consumer<Device> deviceUpdater) {
     return update(account, a -> {
       a.getDevice(deviceId).ifPresent(deviceUpdater);
@@ -730,10 +851,24 @@ public class AccountsManager {
     return accounts.getAllFrom(uuid, length);
   }
 
+  public AccountCrawlChunk getAllFromDynamo(int segment, int totalSegments, @Nullable UUID uuid, int length) {
+    return accounts.getAllFromSegment(segment, totalSegments, uuid, length);
+  }
+
   public ParallelFlux<Account> streamAllFromDynamo(final int segments, final Scheduler scheduler) {
     return accounts.getAll(segments, scheduler);
   }
 
+  public Flux<AccountCrawlChunk> streamAllFromDynamo(final int segment, final int totalSegments,
+      @Nullable final UUID from) {
+
+    return accounts.getAllPages(segment, totalSegments, from);
+  }
+
+  public CompletableFuture<Long> getApproximateAccountCountFromDynamo() {
+    return accounts.getApproximateCount();
+  }
+
   public void delete(final Account account, final DeletionReason deletionReason) throws InterruptedException {
     try (final Timer.Context ignored = deleteTimer.time()) {
       accountLockManager.withLock(List.of(account.getNumber()), () -> {
@@ -868,6 +1003,50 @@ public class AccountsManager {
     }
   }
 
+  private CompletableFuture<Void> redisSetAsync(final Account account) {
+    final String accountJson;
+
+    try {
+      accountJson = mapper.writeValueAsString(account);
+    } catch (final JsonProcessingException e) {
+      return CompletableFuture.failedFuture(new IllegalStateException(e));
+    }
+
+    final Timer.Context timerContext = redisSetTimer.time();
+
+    return cacheCluster.withCluster(connection -> {
+          final RedisAdvancedClusterAsyncCommands<String, String> commands = connection.async();
+          final List<CompletableFuture<String>> futures = new ArrayList<>();
+
+          futures.add(commands.setex(getAccountMapKey(account.getPhoneNumberIdentifier().toString()), CACHE_TTL_SECONDS,
+              account.getUuid().toString()).toCompletableFuture());
+          futures.add(commands.setex(getAccountMapKey(account.getNumber()), CACHE_TTL_SECONDS,
+              account.getUuid().toString()).toCompletableFuture());
+          futures.add(commands.setex(getAccountEntityKey(account.getUuid()), CACHE_TTL_SECONDS, accountJson)
+              .toCompletableFuture());
+
+          account.getUsernameHash().ifPresent(usernameHash ->
+              futures.add(commands.setex(getUsernameHashAccountMapKey(usernameHash), CACHE_TTL_SECONDS,
+                  account.getUuid().toString()).toCompletableFuture()));
+
+          return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+        })
+        .whenComplete((ignored, throwable) -> timerContext.close());
+  }
+
+  private CompletableFuture<Void> redisDeleteAsync(final Account account) {
+    final List<String> keys = new ArrayList<>(List.of(
+        getAccountMapKey(account.getNumber()),
+        getAccountMapKey(account.getPhoneNumberIdentifier().toString()),
+        getAccountEntityKey(account.getUuid())));
+
+    account.getUsernameHash().ifPresent(usernameHash -> keys.add(getUsernameHashAccountMapKey(usernameHash)));
+
+    return cacheCluster.withCluster(connection -> connection.async().del(keys.toArray(String[]::new)))
+        .toCompletableFuture()
+        .thenRun(Util.NOOP);
+  }
+
   private void redisDelete(final Account account) {
     try (final Timer.Context ignored = redisDeleteTimer.time()) {
       cacheCluster.useCluster(connection -> {
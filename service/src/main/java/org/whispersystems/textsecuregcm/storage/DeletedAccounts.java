@@ -4,13 +4,21 @@
  */
 package org.whispersystems.textsecuregcm.storage;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.google.common.base.Throwables;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.whispersystems.textsecuregcm.util.AttributeValues;
-import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
@@ -29,43 +37,48 @@ public class DeletedAccounts {
 
   static final Duration TIME_TO_LIVE = Duration.ofDays(30);
 
-  private final DynamoDbClient dynamoDbClient;
+  private static final Timer FIND_UUID_TIMER = Metrics.timer(name(DeletedAccounts.class, "findUuid"));
+  private static final Timer FIND_E164_TIMER = Metrics.timer(name(DeletedAccounts.class, "findE164"));
+  private static final Timer PUT_TIMER = Metrics.timer(name(DeletedAccounts.class, "put"));
+  private static final Timer REMOVE_TIMER = Metrics.timer(name(DeletedAccounts.class, "remove"));
+
+  private final DynamoDbAsyncClient dynamoDbAsyncClient;
   private final String tableName;
 
-  public DeletedAccounts(final DynamoDbClient dynamoDbClient, final String tableName) {
-    this.dynamoDbClient = dynamoDbClient;
+  public DeletedAccounts(final DynamoDbAsyncClient dynamoDbAsyncClient, final String tableName) {
+    this.dynamoDbAsyncClient = dynamoDbAsyncClient;
     this.tableName = tableName;
   }
 
   public void put(UUID uuid, String e164) {
-    dynamoDbClient.putItem(PutItemRequest.builder()
+    timed(dynamoDbAsyncClient.putItem(PutItemRequest.builder()
         .tableName(tableName)
         .item(Map.of(
             KEY_ACCOUNT_E164, AttributeValues.fromString(e164),
             ATTR_ACCOUNT_UUID, AttributeValues.fromUUID(uuid),
             ATTR_EXPIRES, AttributeValues.fromLong(Instant.now().plus(TIME_TO_LIVE).getEpochSecond())))
-        .build());
+        .build()), PUT_TIMER);
   }
 
   public Optional<UUID> findUuid(final String e164) {
-    final GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+    final GetItemResponse response = timed(dynamoDbAsyncClient.getItem(GetItemRequest.builder()
         .tableName(tableName)
         .consistentRead(true)
         .key(Map.of(KEY_ACCOUNT_E164, AttributeValues.fromString(e164)))
-        .build());
+        .build()), FIND_UUID_TIMER);
 
     return Optional.ofNullable(AttributeValues.getUUID(response.item(), ATTR_ACCOUNT_UUID, null));
   }
 
   public Optional<String> findE164(final UUID uuid) {
-    final QueryResponse response = dynamoDbClient.query(QueryRequest.builder()
+    final QueryResponse response = timed(dynamoDbAsyncClient.query(QueryRequest.builder()
         .tableName(tableName)
         .indexName(UUID_TO_E164_INDEX_NAME)
         .keyConditionExpression("#uuid = :uuid")
         .projectionExpression("#e164")
         .expressionAttributeNames(Map.of("#uuid", ATTR_ACCOUNT_UUID,
             "#e164", KEY_ACCOUNT_E164))
-        .expressionAttributeValues(Map.of(":uuid", AttributeValues.fromUUID(uuid))).build());
+        .expressionAttributeValues(Map.of(":uuid", AttributeValues.fromUUID(uuid))).build()), FIND_E164_TIMER);
 
     if (response.count() == 0) {
       return Optional.empty();
@@ -79,9 +92,23 @@ public class DeletedAccounts {
   }
 
   public void remove(final String e164) {
-    dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+    timed(dynamoDbAsyncClient.deleteItem(DeleteItemRequest.builder()
         .tableName(tableName)
         .key(Map.of(KEY_ACCOUNT_E164, AttributeValues.fromString(e164)))
-        .build());
+        .build()), REMOVE_TIMER);
+  }
+
+  private static <T> T timed(final CompletableFuture<T> future, final Timer timer) {
+    final Timer.Sample sample = Timer.start();
+
+    try {
+      return future.join();
+    } catch (final CompletionException e) {
+      // Preserve the exceptions callers have always seen from the synchronous client
+      Throwables.throwIfUnchecked(ExceptionUtils.unwrap(e));
+      throw e;
+    } finally {
+      sample.stop(timer);
+    }
   }
 }
@@ -17,6 +17,7 @@ import io.lettuce.core.cluster.SlotHash;
 import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
 import io.lettuce.core.cluster.pubsub.RedisClusterPubSubAdapter;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
@@ -36,8 +37,10 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.function.Predicate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javax.annotation.Nullable;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
@@ -53,7 +56,6 @@ import reactor.core.observability.micrometer.Micrometer;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
 
 public class MessagesCache extends RedisClusterPubSubAdapter<String, String> implements Managed {
 
@@ -64,8 +66,6 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   private final ExecutorService notificationExecutorService;
   private final Scheduler messageDeliveryScheduler;
   private final ExecutorService messageDeletionExecutorService;
-  // messageDeletionExecutorService wrapped into a reactor Scheduler
-  private final Scheduler messageDeletionScheduler;
 
   private final ClusterLuaScript insertScript;
   private final ClusterLuaScript removeByGuidScript;
@@ -80,13 +80,18 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   private final Timer getMessagesTimer = Metrics.timer(name(MessagesCache.class, "get"));
   private final Timer getQueuesToPersistTimer = Metrics.timer(name(MessagesCache.class, "getQueuesToPersist"));
   private final Timer clearQueueTimer = Metrics.timer(name(MessagesCache.class, "clear"));
+  private final Timer clearAccountQueuesTimer = Metrics.timer(name(MessagesCache.class, "clearAccount"));
   private final Counter pubSubMessageCounter = Metrics.counter(name(MessagesCache.class, "pubSubMessage"));
   private final Counter newMessageNotificationCounter = Metrics.counter(
       name(MessagesCache.class, "newMessageNotification"));
+  private final Counter localNewMessageNotificationCounter = Metrics.counter(
+      name(MessagesCache.class, "localNewMessageNotification"));
   private final Counter queuePersistedNotificationCounter = Metrics.counter(
       name(MessagesCache.class, "queuePersisted"));
-  private final Counter staleEphemeralMessagesCounter = Metrics.counter(
-      name(MessagesCache.class, "staleEphemeralMessages"));
+  private final Counter discardedStaleEphemeralMessagesCounter = Metrics.counter(
+      name(MessagesCache.class, "discardedStaleEphemeralMessages"));
+  private final Timer redisWaitPerDrainTimer = Metrics.timer(name(MessagesCache.class, "redisWaitPerDrain"));
+  private final DistributionSummary pageSizeDistribution = Metrics.summary(name(MessagesCache.class, "pageSize"));
 
   static final String NEXT_SLOT_TO_PERSIST_KEY = "user_queue_persist_slot";
   private static final byte[] LOCK_VALUE = "1".getBytes(StandardCharsets.UTF_8);
@@ -100,6 +105,23 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   private static final String GET_FLUX_NAME = MetricsUtil.name(MessagesCache.class, "get");
   private static final int PAGE_SIZE = 100;
 
+  // When paging through a queue, we size each page so that it holds roughly this many bytes of envelopes; queues full of
+  // small messages can then be drained in fewer round trips, while queues full of large messages don't balloon memory
+  @VisibleForTesting
+  static final int TARGET_PAGE_BYTES = 512 * 1024;
+
+  @VisibleForTesting
+  static final int MIN_PAGE_SIZE = 10;
+
+  @VisibleForTesting
+  static final int MAX_PAGE_SIZE = 1_000;
+
+  // Each page depends on the last message ID of the page before it, so we fetch a few pages ahead of the one being
+  // delivered to keep Redis round trips off the delivery path. With pages of roughly TARGET_PAGE_BYTES, this holds at
+  // most a couple of megabytes per draining connection.
+  @VisibleForTesting
+  static final int READ_AHEAD_PAGES = 4;
+
   private static final Logger logger = LoggerFactory.getLogger(MessagesCache.class);
 
   public MessagesCache(final FaultTolerantRedisCluster insertCluster, final FaultTolerantRedisCluster readDeleteCluster,
@@ -113,7 +135,6 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     this.notificationExecutorService = notificationExecutorService;
     this.messageDeliveryScheduler = messageDeliveryScheduler;
     this.messageDeletionExecutorService = messageDeletionExecutorService;
-    this.messageDeletionScheduler = Schedulers.fromExecutorService(messageDeletionExecutorService, "messageDeletion");
 
     this.insertScript = ClusterLuaScript.fromResource(insertCluster, "lua/insert_item.lua", ScriptOutputType.INTEGER);
     this.removeByGuidScript = ClusterLuaScript.fromResource(readDeleteCluster, "lua/remove_item_by_guid.lua",
@@ -152,13 +173,35 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   public long insert(final UUID guid, final UUID destinationUuid, final long destinationDevice,
       final MessageProtos.Envelope message) {
     final MessageProtos.Envelope messageWithGuid = message.toBuilder().setServerGuid(guid.toString()).build();
-    return (long) insertTimer.record(() ->
+
+    final List<byte[]> args = new ArrayList<>(4);
+    args.add(messageWithGuid.toByteArray());
+    args.add(String.valueOf(message.getServerTimestamp()).getBytes(StandardCharsets.UTF_8));
+    args.add(guid.toString().getBytes(StandardCharsets.UTF_8));
+
+    if (message.hasEphemeral() && message.getEphemeral()) {
+      // Ephemeral messages are indexed by timestamp so stale ones can be discarded without leaving Redis
+      args.add(String.valueOf(message.getTimestamp()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    final long messageId = (long) insertTimer.record(() ->
         insertScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
                 getMessageQueueMetadataKey(destinationUuid, destinationDevice),
-                getQueueIndexKey(destinationUuid, destinationDevice)),
-            List.of(messageWithGuid.toByteArray(),
-                String.valueOf(message.getServerTimestamp()).getBytes(StandardCharsets.UTF_8),
-                guid.toString().getBytes(StandardCharsets.UTF_8))));
+                getQueueIndexKey(destinationUuid, destinationDevice),
+                getEphemeralMessageIndexKey(destinationUuid, destinationDevice)),
+            args));
+
+    // If the destination is connected to this server, there's no need to wait for the keyspace notification to make a
+    // round trip through Redis; the notification will still arrive later, but listeners tolerate redundant signals.
+    final String queueName = getQueueName(destinationUuid, destinationDevice);
+
+    if (findListenerForQueue(queueName).isPresent()) {
+      localNewMessageNotificationCounter.increment();
+      notificationExecutorService.execute(() ->
+          findListenerForQueue(queueName).ifPresent(this::notifyNewMessagesAvailable));
+    }
+
+    return messageId;
   }
 
   public CompletableFuture<Optional<MessageProtos.Envelope>> remove(final UUID destinationUuid,
@@ -176,7 +219,8 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
 
     return removeByGuidScript.executeBinaryAsync(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
                 getMessageQueueMetadataKey(destinationUuid, destinationDevice),
-                getQueueIndexKey(destinationUuid, destinationDevice)),
+                getQueueIndexKey(destinationUuid, destinationDevice),
+                getEphemeralMessageIndexKey(destinationUuid, destinationDevice)),
             messageGuids.stream().map(guid -> guid.toString().getBytes(StandardCharsets.UTF_8))
                 .collect(Collectors.toList()))
         .thenApplyAsync(result -> {
@@ -206,60 +250,37 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     final long earliestAllowableEphemeralTimestamp =
         clock.millis() - MAX_EPHEMERAL_MESSAGE_DELAY.toMillis();
 
-    final Flux<MessageProtos.Envelope> allMessages = getAllMessages(destinationUuid, destinationDevice)
-        .publish()
-        // We expect exactly two subscribers to this base flux:
-        // 1. the websocket that delivers messages to clients
-        // 2. an internal process to discard stale ephemeral messages
-        // The discard subscriber will subscribe immediately, but we don’t want to do any work if the
-        // websocket never subscribes.
-        .autoConnect(2);
-
-    final Flux<MessageProtos.Envelope> messagesToPublish = allMessages
-        .filter(Predicate.not(envelope -> isStaleEphemeralMessage(envelope, earliestAllowableEphemeralTimestamp)));
-
-    final Flux<MessageProtos.Envelope> staleEphemeralMessages = allMessages
-        .filter(envelope -> isStaleEphemeralMessage(envelope, earliestAllowableEphemeralTimestamp));
-
-    discardStaleEphemeralMessages(destinationUuid, destinationDevice, staleEphemeralMessages);
-
-    return messagesToPublish.name(GET_FLUX_NAME)
+    // get_items.lua discards stale ephemeral messages as it reads each page, so they never reach this publisher
+    return getAllMessages(destinationUuid, destinationDevice, earliestAllowableEphemeralTimestamp)
+        .name(GET_FLUX_NAME)
         .tap(Micrometer.metrics(Metrics.globalRegistry));
   }
 
-  private static boolean isStaleEphemeralMessage(final MessageProtos.Envelope message,
-      long earliestAllowableTimestamp) {
-    return message.hasEphemeral() && message.getEphemeral() && message.getTimestamp() < earliestAllowableTimestamp;
-  }
-
-  private void discardStaleEphemeralMessages(final UUID destinationUuid, final long destinationDevice,
-      Flux<MessageProtos.Envelope> staleEphemeralMessages) {
-    staleEphemeralMessages
-        .map(e -> UUID.fromString(e.getServerGuid()))
-        .buffer(PAGE_SIZE)
-        .subscribeOn(messageDeletionScheduler)
-        .subscribe(staleEphemeralMessageGuids ->
-                remove(destinationUuid, destinationDevice, staleEphemeralMessageGuids)
-                    .thenAccept(removedMessages -> staleEphemeralMessagesCounter.increment(removedMessages.size())),
-            e -> logger.warn("Could not remove stale ephemeral messages from cache", e));
-  }
-
   @VisibleForTesting
-  Flux<MessageProtos.Envelope> getAllMessages(final UUID destinationUuid, final long destinationDevice) {
+  Flux<MessageProtos.Envelope> getAllMessages(final UUID destinationUuid, final long destinationDevice,
+      final long earliestAllowableEphemeralTimestamp) {
+
+    // each page depends on the last message ID of the page before it, so time spent waiting for Redis accumulates
+    // serially over the course of a drain
+    final AtomicLong redisWaitNanos = new AtomicLong();
 
     // fetch messages by page
-    return getNextMessagePage(destinationUuid, destinationDevice, -1)
+    return getNextMessagePage(destinationUuid, destinationDevice, -1, PAGE_SIZE, earliestAllowableEphemeralTimestamp,
+        redisWaitNanos)
         .expand(queueItemsAndLastMessageId -> {
           // expand() is breadth-first, so each page will be published in order
           if (queueItemsAndLastMessageId.first().isEmpty()) {
             return Mono.empty();
           }
 
-          return getNextMessagePage(destinationUuid, destinationDevice, queueItemsAndLastMessageId.second());
+          return getNextMessagePage(destinationUuid, destinationDevice, queueItemsAndLastMessageId.second(),
+              getNextPageSize(queueItemsAndLastMessageId.first()), earliestAllowableEphemeralTimestamp, redisWaitNanos);
         })
+        .doFinally(ignored -> redisWaitPerDrainTimer.record(redisWaitNanos.get(), TimeUnit.NANOSECONDS))
         .limitRate(1)
-        // we want to ensure we don’t accidentally block the Lettuce/netty i/o executors
-        .publishOn(messageDeliveryScheduler)
+        // we want to ensure we don’t accidentally block the Lettuce/netty i/o executors; the prefetch here bounds how
+        // many pages we read ahead of the page being delivered
+        .publishOn(messageDeliveryScheduler, READ_AHEAD_PAGES)
         .map(Pair::first)
         .flatMapIterable(queueItems -> {
           final List<MessageProtos.Envelope> envelopes = new ArrayList<>(queueItems.size() / 2);
@@ -275,22 +296,66 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
           }
 
           return envelopes;
-        });
+        }, 1);
+  }
+
+  /**
+   * Chooses the size of the next page to fetch from a queue based on the average size of the envelopes in the page just
+   * fetched.
+   *
+   * @param queueItems the alternating envelopes and message IDs of the previous page
+   *
+   * @return the number of messages to fetch in the next page
+   */
+  @VisibleForTesting
+  static int getNextPageSize(final List<byte[]> queueItems) {
+    long envelopeBytes = 0;
+    int envelopeCount = 0;
+
+    for (int i = 0; i < queueItems.size() - 1; i += 2) {
+      envelopeBytes += queueItems.get(i).length;
+      envelopeCount += 1;
+    }
+
+    if (envelopeCount == 0 || envelopeBytes == 0) {
+      return PAGE_SIZE;
+    }
+
+    final long averageEnvelopeBytes = Math.max(1, envelopeBytes / envelopeCount);
+    return (int) Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, TARGET_PAGE_BYTES / averageEnvelopeBytes));
   }
 
   private Flux<Pair<List<byte[]>, Long>> getNextMessagePage(final UUID destinationUuid, final long destinationDevice,
-      long messageId) {
+      long messageId, final int pageSize, final long earliestAllowableEphemeralTimestamp,
+      final AtomicLong redisWaitNanos) {
+
+    pageSizeDistribution.record(pageSize);
+
+    final AtomicLong pageRequestedNanos = new AtomicLong();
 
     return getItemsScript.executeBinaryReactive(
             List.of(getMessageQueueKey(destinationUuid, destinationDevice),
-                getPersistInProgressKey(destinationUuid, destinationDevice)),
-            List.of(String.valueOf(PAGE_SIZE).getBytes(StandardCharsets.UTF_8),
-                String.valueOf(messageId).getBytes(StandardCharsets.UTF_8)))
+                getPersistInProgressKey(destinationUuid, destinationDevice),
+                getMessageQueueMetadataKey(destinationUuid, destinationDevice),
+                getQueueIndexKey(destinationUuid, destinationDevice),
+                getEphemeralMessageIndexKey(destinationUuid, destinationDevice)),
+            List.of(String.valueOf(pageSize).getBytes(StandardCharsets.UTF_8),
+                String.valueOf(messageId).getBytes(StandardCharsets.UTF_8),
+                String.valueOf(earliestAllowableEphemeralTimestamp).getBytes(StandardCharsets.UTF_8)))
+        .doOnSubscribe(ignored -> pageRequestedNanos.set(System.nanoTime()))
+        .doFinally(ignored -> redisWaitNanos.addAndGet(System.nanoTime() - pageRequestedNanos.get()))
         .map(result -> {
           logger.trace("Processing page: {}", messageId);
 
+          // get_items.lua returns the page of queue items followed by the number of stale ephemeral messages it
+          // discarded
+          @SuppressWarnings("unchecked")
+          final List<Object> pageAndDiscardedCount = (List<Object>) result;
+
+          discardedStaleEphemeralMessagesCounter.increment((Long) pageAndDiscardedCount.get(1));
+
           @SuppressWarnings("unchecked")
-          List<byte[]> queueItems = (List<byte[]>) result;
+          List<byte[]> queueItems = (List<byte[]>) pageAndDiscardedCount.get(0);
 
           if (queueItems.isEmpty()) {
             return new Pair<>(Collections.emptyList(), null);
@@ -329,21 +394,36 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     });
   }
 
-  public void clear(final UUID destinationUuid) {
+  public CompletableFuture<Void> clear(final UUID destinationUuid) {
     // TODO Remove null check in a fully UUID-based world
-    if (destinationUuid != null) {
-      for (int i = 1; i < Device.MAXIMUM_DEVICE_ID; i++) {
-        clear(destinationUuid, i);
-      }
+    if (destinationUuid == null) {
+      return CompletableFuture.completedFuture(null);
     }
+
+    final Timer.Sample sample = Timer.start();
+
+    // Each device's queue hashes to a different slot, so there's no single index that can tell us which of an account's
+    // queues actually exist. Removing a queue that doesn't exist is cheap, though, so rather than waiting on one round
+    // trip per possible device, we issue every removal at once and let Lettuce pipeline them to each node.
+    return CompletableFuture.allOf(IntStream.range(1, Device.MAXIMUM_DEVICE_ID)
+            .mapToObj(deviceId -> removeQueueScript.executeBinaryAsync(getQueueKeys(destinationUuid, deviceId),
+                Collections.emptyList()))
+            .toArray(CompletableFuture[]::new))
+        .whenComplete((ignored, throwable) -> sample.stop(clearAccountQueuesTimer));
   }
 
-  public void clear(final UUID destinationUuid, final long deviceId) {
-    clearQueueTimer.record(() ->
-        removeQueueScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, deviceId),
-                getMessageQueueMetadataKey(destinationUuid, deviceId),
-                getQueueIndexKey(destinationUuid, deviceId)),
-            Collections.emptyList()));
+  public CompletableFuture<Void> clear(final UUID destinationUuid, final long deviceId) {
+    final Timer.Sample sample = Timer.start();
+
+    return removeQueueScript.executeBinaryAsync(getQueueKeys(destinationUuid, deviceId), Collections.emptyList())
+        .thenRun(() -> sample.stop(clearQueueTimer));
+  }
+
+  private static List<byte[]> getQueueKeys(final UUID destinationUuid, final long deviceId) {
+    return List.of(getMessageQueueKey(destinationUuid, deviceId),
+        getMessageQueueMetadataKey(destinationUuid, deviceId),
+        getQueueIndexKey(destinationUuid, deviceId),
+        getEphemeralMessageIndexKey(destinationUuid, deviceId));
   }
 
   int getNextSlotToPersist() {
@@ -431,17 +511,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
 
     if (channel.startsWith(QUEUE_KEYSPACE_PREFIX) && "zadd".equals(message)) {
       newMessageNotificationCounter.increment();
-      notificationExecutorService.execute(() -> {
-        try {
-          findListener(channel).ifPresent(listener -> {
-            if (!listener.handleNewMessagesAvailable()) {
-              removeMessageAvailabilityListener(listener);
-            }
-          });
-        } catch (final Exception e) {
-          logger.warn("Unexpected error handling new message", e);
-        }
-      });
+      notificationExecutorService.execute(() -> findListener(channel).ifPresent(this::notifyNewMessagesAvailable));
     } else if (channel.startsWith(PERSISTING_KEYSPACE_PREFIX) && "del".equals(message)) {
       queuePersistedNotificationCounter.increment();
       notificationExecutorService.execute(() -> {
@@ -458,9 +528,21 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     }
   }
 
+  private void notifyNewMessagesAvailable(final MessageAvailabilityListener listener) {
+    try {
+      if (!listener.handleNewMessagesAvailable()) {
+        removeMessageAvailabilityListener(listener);
+      }
+    } catch (final Exception e) {
+      logger.warn("Unexpected error handling new message", e);
+    }
+  }
+
   private Optional<MessageAvailabilityListener> findListener(final String keyspaceChannel) {
-    final String queueName = getQueueNameFromKeyspaceChannel(keyspaceChannel);
+    return findListenerForQueue(getQueueNameFromKeyspaceChannel(keyspaceChannel));
+  }
 
+  private Optional<MessageAvailabilityListener> findListenerForQueue(final String queueName) {
     synchronized (messageListenersByQueueName) {
       return Optional.ofNullable(messageListenersByQueueName.get(queueName));
     }
@@ -488,6 +570,10 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     return ("user_queue_metadata::{" + accountUuid.toString() + "::" + deviceId + "}").getBytes(StandardCharsets.UTF_8);
   }
 
+  private static byte[] getEphemeralMessageIndexKey(final UUID accountUuid, final long deviceId) {
+    return ("user_queue_ephemeral::{" + accountUuid + "::" + deviceId + "}").getBytes(StandardCharsets.UTF_8);
+  }
+
   private static byte[] getQueueIndexKey(final UUID accountUuid, final long deviceId) {
     return getQueueIndexKey(SlotHash.getSlot(accountUuid.toString() + "::" + deviceId));
   }
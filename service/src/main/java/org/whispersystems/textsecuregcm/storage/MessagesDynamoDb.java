@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.util.AttributeValues;
+import org.whispersystems.textsecuregcm.util.Util;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
@@ -37,7 +38,6 @@ import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
-import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
 import software.amazon.awssdk.services.dynamodb.model.PutRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
@@ -60,6 +60,9 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
   private static final String KEY_TTL = "E";
   private static final String KEY_ENVELOPE_BYTES = "EB";
 
+  // The maximum number of concurrent item deletions when removing all of an account's messages
+  private static final int DELETE_MESSAGES_CONCURRENCY = 16;
+
   private final Timer storeTimer = timer(name(getClass(), "store"));
   private final Timer deleteByAccount = timer(name(getClass(), "delete", "account"));
   private final Timer deleteByDevice = timer(name(getClass(), "delete", "device"));
@@ -215,38 +218,79 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
         }, messageDeletionExecutor);
   }
 
-  public void deleteAllMessagesForAccount(final UUID destinationAccountUuid) {
-    deleteByAccount.record(() -> {
-      final AttributeValue partitionKey = convertPartitionKey(destinationAccountUuid);
-      final QueryRequest queryRequest = QueryRequest.builder()
-          .tableName(tableName)
-          .projectionExpression(KEY_SORT)
-          .consistentRead(true)
-          .keyConditionExpression("#part = :part")
-          .expressionAttributeNames(Map.of("#part", KEY_PARTITION))
-          .expressionAttributeValues(Map.of(":part", partitionKey))
-          .build();
-      deleteRowsMatchingQuery(partitionKey, queryRequest);
-    });
+  /**
+   * Removes all messages for all devices associated with the given account. Messages are streamed from DynamoDB and
+   * removed as they arrive with bounded concurrency.
+   *
+   * @param destinationAccountUuid the account for which to remove all messages
+   *
+   * @return a future that completes when all messages for the given account have been removed
+   */
+  public CompletableFuture<Void> deleteAllMessagesForAccount(final UUID destinationAccountUuid) {
+    final Timer.Sample sample = Timer.start();
+
+    final AttributeValue partitionKey = convertPartitionKey(destinationAccountUuid);
+    final QueryRequest queryRequest = QueryRequest.builder()
+        .tableName(tableName)
+        .projectionExpression(KEY_SORT)
+        .consistentRead(true)
+        .keyConditionExpression("#part = :part")
+        .expressionAttributeNames(Map.of("#part", KEY_PARTITION))
+        .expressionAttributeValues(Map.of(":part", partitionKey))
+        .build();
+
+    return Flux.from(dbAsyncClient.queryPaginator(queryRequest).items())
+        .map(item -> DeleteItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of(KEY_PARTITION, partitionKey, KEY_SORT, item.get(KEY_SORT)))
+            .build())
+        .flatMap(deleteItemRequest -> Mono.fromFuture(dbAsyncClient.deleteItem(deleteItemRequest)),
+            DELETE_MESSAGES_CONCURRENCY)
+        // Idiom: wait for everything to finish, but discard the results
+        .reduce(0, (a, b) -> 0)
+        .toFuture()
+        .whenComplete((ignored, throwable) -> sample.stop(deleteByAccount))
+        .thenRun(Util.NOOP);
   }
 
-  public void deleteAllMessagesForDevice(final UUID destinationAccountUuid, final long destinationDeviceId) {
-    deleteByDevice.record(() -> {
-      final AttributeValue partitionKey = convertPartitionKey(destinationAccountUuid);
-      final QueryRequest queryRequest = QueryRequest.builder()
-          .tableName(tableName)
-          .keyConditionExpression("#part = :part AND begins_with ( #sort , :sortprefix )")
-          .expressionAttributeNames(Map.of(
-              "#part", KEY_PARTITION,
-              "#sort", KEY_SORT))
-          .expressionAttributeValues(Map.of(
-              ":part", partitionKey,
-              ":sortprefix", convertDestinationDeviceIdToSortKeyPrefix(destinationDeviceId)))
-          .projectionExpression(KEY_SORT)
-          .consistentRead(true)
-          .build();
-      deleteRowsMatchingQuery(partitionKey, queryRequest);
-    });
+  /**
+   * Deletes all messages stored for a specific device.
+   *
+   * @param destinationAccountUuid the account for which to remove messages
+   * @param destinationDeviceId the device for which to remove all messages
+   *
+   * @return a future that completes when all messages for the given device have been removed
+   */
+  public CompletableFuture<Void> deleteAllMessagesForDevice(final UUID destinationAccountUuid,
+      final long destinationDeviceId) {
+
+    final Timer.Sample sample = Timer.start();
+
+    final AttributeValue partitionKey = convertPartitionKey(destinationAccountUuid);
+    final QueryRequest queryRequest = QueryRequest.builder()
+        .tableName(tableName)
+        .keyConditionExpression("#part = :part AND begins_with ( #sort , :sortprefix )")
+        .expressionAttributeNames(Map.of(
+            "#part", KEY_PARTITION,
+            "#sort", KEY_SORT))
+        .expressionAttributeValues(Map.of(
+            ":part", partitionKey,
+            ":sortprefix", convertDestinationDeviceIdToSortKeyPrefix(destinationDeviceId)))
+        .projectionExpression(KEY_SORT)
+        .consistentRead(true)
+        .build();
+
+    return Flux.from(dbAsyncClient.queryPaginator(queryRequest).items())
+        .map(item -> DeleteItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of(KEY_PARTITION, partitionKey, KEY_SORT, item.get(KEY_SORT)))
+            .build())
+        .flatMap(deleteItemRequest -> Mono.fromFuture(dbAsyncClient.deleteItem(deleteItemRequest)),
+            DELETE_MESSAGES_CONCURRENCY)
+        // Idiom: wait for everything to finish, but discard the results
+        .reduce(0, (a, b) -> 0)
+        .toFuture()
+        .thenRun(() -> sample.stop(deleteByDevice));
   }
 
   @VisibleForTesting
@@ -256,21 +300,6 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
     return MessageProtos.Envelope.parseFrom(item.get(KEY_ENVELOPE_BYTES).b().asByteArray());
   }
 
-  private void deleteRowsMatchingQuery(AttributeValue partitionKey, QueryRequest querySpec) {
-    writeInBatches(db().queryPaginator(querySpec).items(), itemBatch -> deleteItems(partitionKey, itemBatch));
-  }
-
-  private void deleteItems(AttributeValue partitionKey, List<Map<String, AttributeValue>> items) {
-    List<WriteRequest> deletes = items.stream()
-        .map(item -> WriteRequest.builder()
-            .deleteRequest(DeleteRequest.builder().key(Map.of(
-                KEY_PARTITION, partitionKey,
-                KEY_SORT, item.get(KEY_SORT))).build())
-            .build())
-        .toList();
-    executeTableWriteItemsUntilComplete(Map.of(tableName, deletes));
-  }
-
   private long getTtlForMessage(MessageProtos.Envelope message) {
     return message.getServerTimestamp() / 1000 + timeToLive.getSeconds();
   }
@@ -103,13 +103,16 @@ public class MessagesManager {
   }
 
   public void clear(UUID destinationUuid) {
-    messagesCache.clear(destinationUuid);
-    messagesDynamoDb.deleteAllMessagesForAccount(destinationUuid);
+    CompletableFuture.allOf(
+            messagesCache.clear(destinationUuid),
+            messagesDynamoDb.deleteAllMessagesForAccount(destinationUuid))
+        .join();
   }
 
-  public void clear(UUID destinationUuid, long deviceId) {
-    messagesCache.clear(destinationUuid, deviceId);
-    messagesDynamoDb.deleteAllMessagesForDevice(destinationUuid, deviceId);
+  public CompletableFuture<Void> clear(UUID destinationUuid, long deviceId) {
+    return CompletableFuture.allOf(
+        messagesCache.clear(destinationUuid, deviceId),
+        messagesDynamoDb.deleteAllMessagesForDevice(destinationUuid, deviceId));
   }
 
   public CompletableFuture<Optional<Envelope>> delete(UUID destinationUuid, long destinationDeviceId, UUID guid,
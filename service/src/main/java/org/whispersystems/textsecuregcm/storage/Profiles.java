@@ -198,6 +198,20 @@ public class Profiles {
     });
   }
 
+  public CompletableFuture<Optional<VersionedProfile>> getAsync(final UUID uuid, final String version) {
+    final Timer.Sample sample = Timer.start();
+
+    return dynamoDbAsyncClient.getItem(GetItemRequest.builder()
+            .tableName(tableName)
+            .key(buildPrimaryKey(uuid, version))
+            .consistentRead(true)
+            .build())
+        .thenApply(response -> response.hasItem()
+            ? Optional.of(fromItem(response.item()))
+            : Optional.<VersionedProfile>empty())
+        .whenComplete((ignored, throwable) -> sample.stop(GET_PROFILE_TIMER));
+  }
+
   private static VersionedProfile fromItem(final Map<String, AttributeValue> item) {
     return new VersionedProfile(
         AttributeValues.getString(item, ATTR_VERSION, null),
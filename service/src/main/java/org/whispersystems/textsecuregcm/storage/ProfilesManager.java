@@ -5,15 +5,25 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.lettuce.core.RedisException;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
 
 public class ProfilesManager {
@@ -22,64 +32,192 @@ public class ProfilesManager {
 
   private static final String CACHE_PREFIX = "profiles::";
 
+  // Versioned profiles are fetched in bursts (i.e. whenever a large group changes), and each burst asks for the same
+  // handful of profiles many times over. Clients may rewrite an existing version (i.e. to change a name), so we can't
+  // keep entries forever; this instance updates its own entries when it writes, but a change made via another instance
+  // may go unnoticed here for up to this long.
+  private static final Duration LOCAL_CACHE_TTL = Duration.ofSeconds(10);
+  private static final int LOCAL_CACHE_MAX_SIZE = 50_000;
+
+  private static final String GET_PROFILE_COUNTER_NAME = name(ProfilesManager.class, "get");
+  private static final Counter LOCAL_CACHE_HIT_COUNTER = Metrics.counter(GET_PROFILE_COUNTER_NAME, "source", "local");
+  private static final Counter REDIS_HIT_COUNTER = Metrics.counter(GET_PROFILE_COUNTER_NAME, "source", "redis");
+  private static final Counter DYNAMO_HIT_COUNTER = Metrics.counter(GET_PROFILE_COUNTER_NAME, "source", "dynamoDb");
+  private static final Counter MISSING_COUNTER = Metrics.counter(GET_PROFILE_COUNTER_NAME, "source", "none");
+
   private final Profiles profiles;
   private final FaultTolerantRedisCluster cacheCluster;
-  private final ObjectMapper mapper;
+  private final boolean binaryCacheEncoding;
+
+  private final Cache<ProfileKey, VersionedProfile> localCache;
 
+  private record ProfileKey(UUID uuid, String version) {
+  }
+
+  /**
+   * @param binaryCacheEncoding if {@code true}, profiles are cached in Redis as CBOR instead of JSON. Profiles cached in
+   * either encoding can always be read, but this should only be enabled once every server in the fleet is able to read
+   * CBOR-encoded profiles.
+   */
   public ProfilesManager(final Profiles profiles,
-      final FaultTolerantRedisCluster cacheCluster) {
+      final FaultTolerantRedisCluster cacheCluster,
+      final boolean binaryCacheEncoding) {
     this.profiles = profiles;
     this.cacheCluster = cacheCluster;
-    this.mapper = SystemMapper.jsonMapper();
+    this.binaryCacheEncoding = binaryCacheEncoding;
+
+    this.localCache = CacheBuilder.newBuilder()
+        .maximumSize(LOCAL_CACHE_MAX_SIZE)
+        .expireAfterWrite(LOCAL_CACHE_TTL)
+        .build();
   }
 
   public void set(UUID uuid, VersionedProfile versionedProfile) {
+    final ProfileKey profileKey = new ProfileKey(uuid, versionedProfile.getVersion());
+
+    localCache.invalidate(profileKey);
     memcacheSet(uuid, versionedProfile);
     profiles.set(uuid, versionedProfile);
+    localCache.put(profileKey, versionedProfile);
   }
 
   public void deleteAll(UUID uuid) {
+    localCache.asMap().keySet().removeIf(profileKey -> profileKey.uuid().equals(uuid));
     memcacheDelete(uuid);
     profiles.deleteAll(uuid);
   }
 
+  /**
+   * Returns the stored profile with the given version. Unlike {@link #getAsync(UUID, String)}, this method never returns
+   * a profile from this server's local cache, and so is suitable for callers that modify a profile based on its current
+   * contents.
+   */
   public Optional<VersionedProfile> get(UUID uuid, String version) {
-    Optional<VersionedProfile> profile = memcacheGet(uuid, version);
+    try {
+      return getFromRemote(uuid, version).join();
+    } catch (final CompletionException e) {
+      Throwables.throwIfUnchecked(ExceptionUtils.unwrap(e));
+      throw e;
+    }
+  }
 
-    if (profile.isEmpty()) {
-      profile = profiles.get(uuid, version);
-      profile.ifPresent(versionedProfile -> memcacheSet(uuid, versionedProfile));
+  /**
+   * Returns the profile with the given version, preferring a copy from this server's local cache. A profile rewritten
+   * via another server may be briefly stale; callers that modify a profile should use {@link #get(UUID, String)}
+   * instead.
+   */
+  public CompletableFuture<Optional<VersionedProfile>> getAsync(UUID uuid, String version) {
+    final VersionedProfile cachedProfile = localCache.getIfPresent(new ProfileKey(uuid, version));
+
+    if (cachedProfile != null) {
+      LOCAL_CACHE_HIT_COUNTER.increment();
+      return CompletableFuture.completedFuture(Optional.of(cachedProfile));
     }
 
-    return profile;
+    return getFromRemote(uuid, version);
+  }
+
+  private CompletableFuture<Optional<VersionedProfile>> getFromRemote(final UUID uuid, final String version) {
+    return memcacheGetAsync(uuid, version)
+        .thenCompose(maybeCachedProfile -> {
+          if (maybeCachedProfile.isPresent()) {
+            REDIS_HIT_COUNTER.increment();
+            return CompletableFuture.completedFuture(maybeCachedProfile);
+          }
+
+          return profiles.getAsync(uuid, version)
+              .thenApply(maybeProfile -> {
+                maybeProfile.ifPresentOrElse(profile -> {
+                  DYNAMO_HIT_COUNTER.increment();
+                  memcacheSetAsync(uuid, profile);
+                }, MISSING_COUNTER::increment);
+
+                return maybeProfile;
+              });
+        })
+        .thenApply(maybeProfile -> {
+          maybeProfile.ifPresent(profile -> localCache.put(new ProfileKey(uuid, version), profile));
+          return maybeProfile;
+        });
   }
 
   private void memcacheSet(UUID uuid, VersionedProfile profile) {
-    try {
-      final String profileJson = mapper.writeValueAsString(profile);
+    final byte[] serializedProfile = serialize(profile);
 
-      cacheCluster.useCluster(connection -> connection.sync().hset(CACHE_PREFIX + uuid.toString(), profile.getVersion(), profileJson));
-    } catch (JsonProcessingException e) {
-      throw new IllegalArgumentException(e);
+    cacheCluster.useBinaryCluster(connection -> connection.sync()
+        .hset(getCacheKey(uuid), profile.getVersion().getBytes(StandardCharsets.UTF_8), serializedProfile));
+  }
+
+  private void memcacheSetAsync(final UUID uuid, final VersionedProfile profile) {
+    final byte[] serializedProfile = serialize(profile);
+
+    // Repopulating the cache is best-effort; callers already have the profile they asked for
+    try {
+      cacheCluster.withBinaryCluster(connection -> connection.async()
+              .hset(getCacheKey(uuid), profile.getVersion().getBytes(StandardCharsets.UTF_8), serializedProfile))
+          .whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+              logger.warn("Failed to cache profile", throwable);
+            }
+          });
+    } catch (final RuntimeException e) {
+      logger.warn("Failed to cache profile", e);
     }
   }
 
-  private Optional<VersionedProfile> memcacheGet(UUID uuid, String version) {
+  private CompletableFuture<Optional<VersionedProfile>> memcacheGetAsync(final UUID uuid, final String version) {
+    final CompletableFuture<byte[]> getFuture;
+
     try {
-      final String json = cacheCluster.withCluster(connection -> connection.sync().hget(CACHE_PREFIX + uuid.toString(), version));
-
-      if (json == null) return Optional.empty();
-      else              return Optional.of(mapper.readValue(json, VersionedProfile.class));
-    } catch (IOException e) {
-      logger.warn("Error deserializing value...", e);
-      return Optional.empty();
-    } catch (RedisException e) {
+      getFuture = cacheCluster.withBinaryCluster(connection -> connection.async()
+              .hget(getCacheKey(uuid), version.getBytes(StandardCharsets.UTF_8)))
+          .toCompletableFuture();
+    } catch (final RuntimeException e) {
       logger.warn("Redis exception", e);
-      return Optional.empty();
+      return CompletableFuture.completedFuture(Optional.empty());
     }
+
+    return getFuture
+        .thenApply(serializedProfile -> {
+          if (serializedProfile == null) {
+            return Optional.<VersionedProfile>empty();
+          }
+
+          try {
+            return Optional.of(deserialize(serializedProfile));
+          } catch (final IOException e) {
+            logger.warn("Error deserializing value...", e);
+            return Optional.<VersionedProfile>empty();
+          }
+        })
+        .exceptionally(throwable -> {
+          logger.warn("Redis exception", throwable);
+          return Optional.empty();
+        });
   }
 
   private void memcacheDelete(UUID uuid) {
     cacheCluster.useCluster(connection -> connection.sync().del(CACHE_PREFIX + uuid.toString()));
   }
+
+  private static byte[] getCacheKey(final UUID uuid) {
+    return (CACHE_PREFIX + uuid.toString()).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] serialize(final VersionedProfile profile) {
+    try {
+      return binaryCacheEncoding
+          ? SystemMapper.cborMapper().writeValueAsBytes(profile)
+          : SystemMapper.jsonMapper().writeValueAsBytes(profile);
+    } catch (final JsonProcessingException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private static VersionedProfile deserialize(final byte[] serializedProfile) throws IOException {
+    // JSON-encoded profiles are objects, which always begin with '{'; a CBOR-encoded profile is a map, which never does
+    return serializedProfile.length > 0 && serializedProfile[0] == '{'
+        ? SystemMapper.jsonMapper().readValue(serializedProfile, VersionedProfile.class)
+        : SystemMapper.cborMapper().readValue(serializedProfile, VersionedProfile.class);
+  }
 }
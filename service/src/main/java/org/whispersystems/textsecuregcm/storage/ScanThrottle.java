@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+
+/**
+ * A scan throttle paces table scans so they consume read capacity at no more than a target rate, leaving the rest of a
+ * table's capacity for live traffic. Scans report the capacity consumed by each page, and wait for the delay returned
+ * by {@link #getDelay()} before requesting the next page. When DynamoDB throttles a scan, the throttle halves its rate
+ * and delays the next request; the rate then recovers gradually toward the target as pages succeed.
+ * <p>
+ * A single throttle may be shared by several concurrent scans (for example, the segments of a parallel scan), in which
+ * case it limits their combined rate.
+ */
+class ScanThrottle {
+
+  private final double targetCapacityUnitsPerSecond;
+  private final double minCapacityUnitsPerSecond;
+  private final LongSupplier nanoTimeSupplier;
+
+  private double capacityUnitsPerSecond;
+  private long nextPageNanos;
+
+  // After a successful page, the rate recovers by this fraction of the target rate
+  private static final double RECOVERY_FRACTION = 0.05;
+
+  // The rate never falls below this fraction of the target rate
+  private static final double MIN_RATE_FRACTION = 0.05;
+
+  @VisibleForTesting
+  static final Duration THROTTLED_BACKOFF = Duration.ofSeconds(1);
+
+  /**
+   * Constructs a new scan throttle.
+   *
+   * @param targetCapacityUnitsPerSecond the maximum number of read capacity units per second to consume; if not
+   * positive, scans are paced only when DynamoDB throttles them
+   */
+  ScanThrottle(final double targetCapacityUnitsPerSecond) {
+    this(targetCapacityUnitsPerSecond, System::nanoTime);
+  }
+
+  @VisibleForTesting
+  ScanThrottle(final double targetCapacityUnitsPerSecond, final LongSupplier nanoTimeSupplier) {
+    this.targetCapacityUnitsPerSecond = Math.max(0, targetCapacityUnitsPerSecond);
+    this.minCapacityUnitsPerSecond = this.targetCapacityUnitsPerSecond * MIN_RATE_FRACTION;
+    this.nanoTimeSupplier = nanoTimeSupplier;
+
+    this.capacityUnitsPerSecond = this.targetCapacityUnitsPerSecond;
+    this.nextPageNanos = nanoTimeSupplier.getAsLong();
+  }
+
+  /**
+   * Returns the time a scan should wait before requesting its next page.
+   */
+  synchronized Duration getDelay() {
+    return Duration.ofNanos(Math.max(0, nextPageNanos - nanoTimeSupplier.getAsLong()));
+  }
+
+  /**
+   * Records the read capacity consumed by a successfully-scanned page.
+   *
+   * @param consumedCapacity the capacity consumed by the page, or {@code null} if DynamoDB did not report it
+   */
+  synchronized void pageScanned(@Nullable final ConsumedCapacity consumedCapacity) {
+    if (targetCapacityUnitsPerSecond <= 0) {
+      return;
+    }
+
+    capacityUnitsPerSecond =
+        Math.min(targetCapacityUnitsPerSecond, capacityUnitsPerSecond + targetCapacityUnitsPerSecond * RECOVERY_FRACTION);
+
+    final double consumedCapacityUnits =
+        consumedCapacity != null && consumedCapacity.capacityUnits() != null ? consumedCapacity.capacityUnits() : 0;
+
+    nextPageNanos = Math.max(nanoTimeSupplier.getAsLong(), nextPageNanos)
+        + (long) (consumedCapacityUnits / capacityUnitsPerSecond * 1_000_000_000);
+  }
+
+  /**
+   * Records that DynamoDB throttled a scan request.
+   */
+  synchronized void throttled() {
+    capacityUnitsPerSecond = Math.max(minCapacityUnitsPerSecond, capacityUnitsPerSecond / 2);
+    nextPageNanos = Math.max(nanoTimeSupplier.getAsLong(), nextPageNanos) + THROTTLED_BACKOFF.toNanos();
+  }
+
+  /**
+   * Returns the current target rate in read capacity units per second, or zero if this throttle has no target rate.
+   */
+  synchronized double getCapacityUnitsPerSecond() {
+    return capacityUnitsPerSecond;
+  }
+
+  static boolean isThrottlingException(final Throwable throwable) {
+    final Throwable unwrapped = ExceptionUtils.unwrap(throwable);
+
+    return unwrapped instanceof ProvisionedThroughputExceededException
+        || unwrapped instanceof RequestLimitExceededException
+        || (unwrapped instanceof AwsServiceException awsServiceException && awsServiceException.isThrottlingException());
+  }
+}
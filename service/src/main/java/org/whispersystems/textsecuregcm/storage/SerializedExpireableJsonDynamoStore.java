@@ -8,6 +8,7 @@ package org.whispersystems.textsecuregcm.storage;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.time.Clock;
@@ -15,16 +16,20 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.util.AttributeValues;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
+import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
 public abstract class SerializedExpireableJsonDynamoStore<T> {
 
@@ -34,24 +39,59 @@ public abstract class SerializedExpireableJsonDynamoStore<T> {
     long getExpirationEpochSeconds();
   }
 
+  /**
+   * The format in which values are written to the table. Values written in either format can always be read, so the
+   * encoding for a table may be changed at any time.
+   */
+  public enum ValueEncoding {
+    /**
+     * Values are stored as JSON strings
+     */
+    JSON,
+
+    /**
+     * Values are stored as CBOR-encoded binary attributes, which are smaller and faster to parse than JSON
+     */
+    CBOR
+  }
+
+  /**
+   * A stored value and the version of the item that contained it.
+   *
+   * @param value the stored value
+   * @param version the version of the stored item; incremented by every write. Items written before versions were
+   * tracked have a version of zero.
+   */
+  public record Versioned<T>(T value, long version) {
+  }
+
   private final DynamoDbAsyncClient dynamoDbClient;
   private final String tableName;
   private final Clock clock;
+  private final ValueEncoding valueEncoding;
   private final Class<T> deserializationTargetClass;
 
   @VisibleForTesting
   static final String KEY_KEY = "K";
 
-  private static final String ATTR_SERIALIZED_VALUE = "V";
+  @VisibleForTesting
+  static final String ATTR_SERIALIZED_VALUE = "V";
   private static final String ATTR_TTL = "E";
+  private static final String ATTR_VERSION = "R";
 
   private static final Logger log = LoggerFactory.getLogger(VerificationCodeStore.class);
 
   public SerializedExpireableJsonDynamoStore(final DynamoDbAsyncClient dynamoDbClient, final String tableName,
       final Clock clock) {
+    this(dynamoDbClient, tableName, clock, ValueEncoding.JSON);
+  }
+
+  public SerializedExpireableJsonDynamoStore(final DynamoDbAsyncClient dynamoDbClient, final String tableName,
+      final Clock clock, final ValueEncoding valueEncoding) {
     this.dynamoDbClient = dynamoDbClient;
     this.tableName = tableName;
     this.clock = clock;
+    this.valueEncoding = valueEncoding;
 
     if (getClass().getGenericSuperclass() instanceof ParameterizedType pt) {
       // Extract the parameterized class declared by concrete implementations, so that it can
@@ -68,59 +108,142 @@ public abstract class SerializedExpireableJsonDynamoStore<T> {
   }
 
   public CompletableFuture<Void> insert(final String key, final T v) {
-    return put(key, v, builder -> builder.expressionAttributeNames(Map.of(
-        "#key", KEY_KEY
-    )).conditionExpression("attribute_not_exists(#key)"));
+    final Map<String, AttributeValue> item = new HashMap<>(Map.of(
+        KEY_KEY, AttributeValues.fromString(key),
+        ATTR_SERIALIZED_VALUE, serialize(v),
+        ATTR_VERSION, AttributeValues.fromLong(1)));
+
+    if (v instanceof Expireable ev) {
+      item.put(ATTR_TTL, AttributeValues.fromLong(getExpirationTimestamp(ev)));
+    }
+
+    return dynamoDbClient.putItem(PutItemRequest.builder()
+            .tableName(tableName)
+            .item(item)
+            .expressionAttributeNames(Map.of("#key", KEY_KEY))
+            .conditionExpression("attribute_not_exists(#key)")
+            .build())
+        .thenRun(() -> {
+        });
   }
 
+  /**
+   * Unconditionally stores the given value, replacing any previously-stored value.
+   */
   public CompletableFuture<Void> update(final String key, final T v) {
-    return put(key, v, ignored -> {
+    return update(key, v, Optional.empty()).thenRun(() -> {
     });
   }
 
-  private CompletableFuture<Void> put(final String key, final T v,
-      final Consumer<PutItemRequest.Builder> putRequestCustomizer) {
-    try {
-      final Map<String, AttributeValue> attributeValueMap = new HashMap<>(Map.of(
-          KEY_KEY, AttributeValues.fromString(key),
-          ATTR_SERIALIZED_VALUE,
-          AttributeValues.fromString(SystemMapper.jsonMapper().writeValueAsString(v))));
-      if (v instanceof Expireable ev) {
-        attributeValueMap.put(ATTR_TTL, AttributeValues.fromLong(getExpirationTimestamp(ev)));
+  /**
+   * Stores the given value if and only if the stored item has not been modified since it was read at the given
+   * version.
+   *
+   * @return a future that yields the new version of the stored item, or fails with a
+   * {@link ContestedOptimisticLockException} if the item has been modified or removed since it was read
+   */
+  public CompletableFuture<Long> update(final String key, final T v, final long expectedVersion) {
+    return update(key, v, Optional.of(expectedVersion));
+  }
+
+  private CompletableFuture<Long> update(final String key, final T v, final Optional<Long> maybeExpectedVersion) {
+    final Map<String, String> attributeNames = new HashMap<>(Map.of(
+        "#value", ATTR_SERIALIZED_VALUE,
+        "#version", ATTR_VERSION));
+
+    final Map<String, AttributeValue> attributeValues = new HashMap<>(Map.of(
+        ":value", serialize(v),
+        ":one", AttributeValues.fromLong(1)));
+
+    final StringBuilder updateExpression = new StringBuilder("SET #value = :value");
+
+    if (v instanceof Expireable ev) {
+      attributeNames.put("#ttl", ATTR_TTL);
+      attributeValues.put(":ttl", AttributeValues.fromLong(getExpirationTimestamp(ev)));
+      updateExpression.append(", #ttl = :ttl");
+    }
+
+    updateExpression.append(" ADD #version :one");
+
+    final UpdateItemRequest.Builder builder = UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of(KEY_KEY, AttributeValues.fromString(key)))
+        .returnValues(ReturnValue.UPDATED_NEW);
+
+    maybeExpectedVersion.ifPresent(expectedVersion -> {
+      attributeNames.put("#key", KEY_KEY);
+
+      if (expectedVersion == 0) {
+        // Items written before we started tracking versions have no version attribute at all
+        builder.conditionExpression("attribute_exists(#key) AND attribute_not_exists(#version)");
+      } else {
+        attributeValues.put(":expectedVersion", AttributeValues.fromLong(expectedVersion));
+        builder.conditionExpression("attribute_exists(#key) AND #version = :expectedVersion");
       }
-      final PutItemRequest.Builder builder = PutItemRequest.builder()
-          .tableName(tableName)
-          .item(attributeValueMap);
-      putRequestCustomizer.accept(builder);
-
-      return dynamoDbClient.putItem(builder.build())
-          .thenRun(() -> {
-          });
+    });
+
+    return dynamoDbClient.updateItem(builder
+            .updateExpression(updateExpression.toString())
+            .expressionAttributeNames(attributeNames)
+            .expressionAttributeValues(attributeValues)
+            .build())
+        .thenApply(response -> AttributeValues.getLong(response.attributes(), ATTR_VERSION, 0))
+        .exceptionally(throwable -> {
+          if (ExceptionUtils.unwrap(throwable) instanceof ConditionalCheckFailedException) {
+            throw new ContestedOptimisticLockException();
+          }
+
+          throw ExceptionUtils.wrap(throwable);
+        });
+  }
+
+  private AttributeValue serialize(final T v) {
+    try {
+      return switch (valueEncoding) {
+        case JSON -> AttributeValues.fromString(SystemMapper.jsonMapper().writeValueAsString(v));
+        case CBOR -> AttributeValues.fromByteArray(SystemMapper.cborMapper().writeValueAsBytes(v));
+      };
     } catch (final JsonProcessingException e) {
-      // This should never happen when writing directly to a string except in cases of serious misconfiguration, which
-      // would be caught by tests.
+      // This should never happen when writing directly to a string or byte array except in cases of serious
+      // misconfiguration, which would be caught by tests.
       throw new AssertionError(e);
     }
   }
 
+  private T deserialize(final AttributeValue serializedValue) throws IOException {
+    // Read whichever format the value was written in, regardless of the encoding we currently write
+    final SdkBytes bytes = serializedValue.b();
+
+    return bytes != null
+        ? SystemMapper.cborMapper().readValue(bytes.asByteArrayUnsafe(), deserializationTargetClass)
+        : SystemMapper.jsonMapper().readValue(serializedValue.s(), deserializationTargetClass);
+  }
+
   private long getExpirationTimestamp(final Expireable v) {
     return v.getExpirationEpochSeconds();
   }
 
   public CompletableFuture<Optional<T>> findForKey(final String key) {
+    return findVersionedForKey(key).thenApply(maybeVersioned -> maybeVersioned.map(Versioned::value));
+  }
+
+  public CompletableFuture<Optional<Versioned<T>>> findVersionedForKey(final String key) {
     return dynamoDbClient.getItem(GetItemRequest.builder()
             .tableName(tableName)
             .consistentRead(true)
             .key(Map.of(KEY_KEY, AttributeValues.fromString(key)))
             .build())
         .thenApply(response -> {
+          if (!response.hasItem()) {
+            return Optional.empty();
+          }
+
           try {
-            return response.hasItem()
-                ? filterMaybeExpiredValue(
-                SystemMapper.jsonMapper()
-                    .readValue(response.item().get(ATTR_SERIALIZED_VALUE).s(), deserializationTargetClass))
-                : Optional.empty();
-          } catch (final JsonProcessingException e) {
+            final long version = AttributeValues.getLong(response.item(), ATTR_VERSION, 0);
+
+            return filterMaybeExpiredValue(deserialize(response.item().get(ATTR_SERIALIZED_VALUE)))
+                .map(v -> new Versioned<>(v, version));
+          } catch (final IOException e) {
             log.error("Failed to parse stored value", e);
             return Optional.empty();
           }
@@ -5,6 +5,7 @@
 package org.whispersystems.textsecuregcm.storage;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import org.whispersystems.textsecuregcm.auth.StoredVerificationCode;
 
 public class StoredVerificationCodeManager {
@@ -23,6 +24,10 @@ public class StoredVerificationCodeManager {
     verificationCodeStore.remove(number);
   }
 
+  public CompletableFuture<Void> removeAsync(String number) {
+    return verificationCodeStore.removeAsync(number);
+  }
+
   public Optional<StoredVerificationCode> getCodeForNumber(String number) {
     return verificationCodeStore.findForNumber(number);
   }
@@ -14,11 +14,14 @@ import io.micrometer.core.instrument.Timer;
 import java.time.Instant;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.auth.StoredVerificationCode;
 import org.whispersystems.textsecuregcm.util.AttributeValues;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
+import org.whispersystems.textsecuregcm.util.Util;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
@@ -28,6 +31,7 @@ import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
 public class VerificationCodeStore {
 
   private final DynamoDbClient dynamoDbClient;
+  private final DynamoDbAsyncClient dynamoDbAsyncClient;
   private final String tableName;
 
   private final Timer insertTimer;
@@ -42,8 +46,12 @@ public class VerificationCodeStore {
 
   private static final Logger log = LoggerFactory.getLogger(VerificationCodeStore.class);
 
-  public VerificationCodeStore(final DynamoDbClient dynamoDbClient, final String tableName) {
+  public VerificationCodeStore(final DynamoDbClient dynamoDbClient,
+      final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final String tableName) {
+
     this.dynamoDbClient = dynamoDbClient;
+    this.dynamoDbAsyncClient = dynamoDbAsyncClient;
     this.tableName = tableName;
 
     this.insertTimer = Metrics.timer(name(getClass(), "insert"), "table", tableName);
@@ -111,4 +119,15 @@ public class VerificationCodeStore {
           .build());
     });
   }
+
+  public CompletableFuture<Void> removeAsync(final String number) {
+    final Timer.Sample sample = Timer.start();
+
+    return dynamoDbAsyncClient.deleteItem(DeleteItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of(KEY_E164, AttributeValues.fromString(number)))
+            .build())
+        .whenComplete((ignored, throwable) -> sample.stop(removeTimer))
+        .thenRun(Util.NOOP);
+  }
 }
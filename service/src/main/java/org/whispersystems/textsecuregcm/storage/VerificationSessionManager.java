@@ -5,28 +5,120 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import org.whispersystems.textsecuregcm.registration.VerificationSession;
+import org.whispersystems.textsecuregcm.storage.SerializedExpireableJsonDynamoStore.Versioned;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 
 public class VerificationSessionManager {
 
   private final VerificationSessions verificationSessions;
 
+  // A registration flow reads and writes the same session several times in quick succession, so we briefly remember the
+  // sessions we've seen. A session modified by another instance may appear stale here for up to this long, but writes
+  // are checked against the version we read, so a write based on a stale session fails rather than clobbering a newer
+  // one.
+  private static final Duration CACHE_TTL = Duration.ofSeconds(5);
+  private static final int CACHE_MAX_SIZE = 50_000;
+
+  private final Cache<String, Versioned<VerificationSession>> sessionCache;
+
+  private static final Timer INSERT_TIMER = Metrics.timer(name(VerificationSessionManager.class, "insert"));
+  private static final Timer UPDATE_TIMER = Metrics.timer(name(VerificationSessionManager.class, "update"));
+  private static final Timer FIND_TIMER = Metrics.timer(name(VerificationSessionManager.class, "find"));
+
+  private static final String CACHE_COUNTER_NAME = name(VerificationSessionManager.class, "cache");
+  private static final Counter CACHE_HIT_COUNTER = Metrics.counter(CACHE_COUNTER_NAME, "outcome", "hit");
+  private static final Counter CACHE_MISS_COUNTER = Metrics.counter(CACHE_COUNTER_NAME, "outcome", "miss");
+
+  private static final Counter CONTESTED_UPDATE_COUNTER =
+      Metrics.counter(name(VerificationSessionManager.class, "contestedUpdate"));
+
   public VerificationSessionManager(final VerificationSessions verificationSessions) {
     this.verificationSessions = verificationSessions;
+
+    this.sessionCache = CacheBuilder.newBuilder()
+        .maximumSize(CACHE_MAX_SIZE)
+        .expireAfterWrite(CACHE_TTL)
+        .build();
   }
 
   public CompletableFuture<Void> insert(final String encodedSessionId, final VerificationSession verificationSession) {
-    return verificationSessions.insert(encodedSessionId, verificationSession);
+    final Timer.Sample sample = Timer.start();
+
+    return verificationSessions.insert(encodedSessionId, verificationSession)
+        .thenRun(() -> cacheSession(encodedSessionId, new Versioned<>(verificationSession, 1)))
+        .whenComplete((ignored, throwable) -> sample.stop(INSERT_TIMER));
   }
 
+  /**
+   * Stores the given session. If this manager has recently read or written the session, the write succeeds only if the
+   * stored session has not changed since then.
+   *
+   * @return a future that completes when the session has been stored, or fails with a
+   * {@link ContestedOptimisticLockException} if the stored session was modified by another writer
+   */
   public CompletableFuture<Void> update(final String encodedSessionId, final VerificationSession verificationSession) {
-    return verificationSessions.update(encodedSessionId, verificationSession);
+    final Timer.Sample sample = Timer.start();
+
+    final Versioned<VerificationSession> cachedSession = sessionCache.getIfPresent(encodedSessionId);
+
+    final CompletableFuture<Void> updateFuture;
+
+    if (cachedSession != null) {
+      updateFuture = verificationSessions.update(encodedSessionId, verificationSession, cachedSession.version())
+          .thenAccept(version -> cacheSession(encodedSessionId, new Versioned<>(verificationSession, version)))
+          .whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+              sessionCache.invalidate(encodedSessionId);
+
+              if (ExceptionUtils.unwrap(throwable) instanceof ContestedOptimisticLockException) {
+                CONTESTED_UPDATE_COUNTER.increment();
+              }
+            }
+          });
+    } else {
+      // We don't know which version the caller read, so fall back to an unconditional write; the next read will fetch
+      // the stored version
+      updateFuture = verificationSessions.update(encodedSessionId, verificationSession)
+          .whenComplete((ignored, throwable) -> sessionCache.invalidate(encodedSessionId));
+    }
+
+    return updateFuture.whenComplete((ignored, throwable) -> sample.stop(UPDATE_TIMER));
   }
 
   public CompletableFuture<Optional<VerificationSession>> findForId(final String encodedSessionId) {
-    return verificationSessions.findForKey(encodedSessionId);
+    final Versioned<VerificationSession> cachedSession = sessionCache.getIfPresent(encodedSessionId);
+
+    if (cachedSession != null) {
+      CACHE_HIT_COUNTER.increment();
+      return CompletableFuture.completedFuture(Optional.of(cachedSession.value()));
+    }
+
+    CACHE_MISS_COUNTER.increment();
+
+    final Timer.Sample sample = Timer.start();
+
+    return verificationSessions.findVersionedForKey(encodedSessionId)
+        .thenApply(maybeSession -> {
+          maybeSession.ifPresent(session -> cacheSession(encodedSessionId, session));
+          return maybeSession.map(Versioned::value);
+        })
+        .whenComplete((ignored, throwable) -> sample.stop(FIND_TIMER));
   }
 
+  private void cacheSession(final String encodedSessionId, final Versioned<VerificationSession> session) {
+    // A read that started before a write may finish after it; never replace a cached session with an older one
+    sessionCache.asMap().merge(encodedSessionId, session,
+        (existing, candidate) -> candidate.version() >= existing.version() ? candidate : existing);
+  }
 }
@@ -14,4 +14,9 @@ public class VerificationSessions extends SerializedExpireableJsonDynamoStore<Ve
   public VerificationSessions(final DynamoDbAsyncClient dynamoDbClient, final String tableName, final Clock clock) {
     super(dynamoDbClient, tableName, clock);
   }
+
+  public VerificationSessions(final DynamoDbAsyncClient dynamoDbClient, final String tableName, final Clock clock,
+      final ValueEncoding valueEncoding) {
+    super(dynamoDbClient, tableName, clock, valueEncoding);
+  }
 }
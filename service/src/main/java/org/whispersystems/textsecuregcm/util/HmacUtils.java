@@ -27,6 +27,33 @@ public final class HmacUtils {
     }
   });
 
+  /**
+   * Returns a thread-local HMAC-SHA256 instance that has already been initialized with the given key. Callers that
+   * compute many HMACs with the same key can use this to avoid re-initializing a {@link Mac} for every computation.
+   */
+  public static ThreadLocal<Mac> keyedHmac256(final byte[] key) {
+    final SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_SHA_256);
+
+    return ThreadLocal.withInitial(() -> {
+      try {
+        final Mac mac = Mac.getInstance(HMAC_SHA_256);
+        mac.init(keySpec);
+        return mac;
+      } catch (final NoSuchAlgorithmException | InvalidKeyException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+
+  public static String hmac256ToHexString(final ThreadLocal<Mac> keyedMac, final String input) {
+    return HEX.formatHex(keyedMac.get().doFinal(input.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  public static String hmac256TruncatedToHexString(final ThreadLocal<Mac> keyedMac, final String input,
+      final int length) {
+    return HEX.formatHex(Util.truncate(keyedMac.get().doFinal(input.getBytes(StandardCharsets.UTF_8)), length));
+  }
+
   public static byte[] hmac256(final byte[] key, final byte[] input) {
     try {
       final Mac mac = THREAD_LOCAL_HMAC_SHA_256.get();
@@ -9,6 +9,7 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -21,6 +22,7 @@ public class SystemMapper {
 
   private static final ObjectMapper YAML_MAPPER = configureMapper(new YAMLMapper());
 
+  private static final ObjectMapper CBOR_MAPPER = configureMapper(new CBORMapper());
 
   @Nonnull
   public static ObjectMapper jsonMapper() {
@@ -32,6 +34,15 @@ public class SystemMapper {
     return YAML_MAPPER;
   }
 
+  /**
+   * Returns a mapper that reads and writes the same objects as {@link #jsonMapper()}, but in the more compact binary
+   * CBOR format. Suitable for values that are only ever read by the server itself.
+   */
+  @Nonnull
+  public static ObjectMapper cborMapper() {
+    return CBOR_MAPPER;
+  }
+
   public static ObjectMapper configureMapper(final ObjectMapper mapper) {
     return mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
         .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
@@ -16,10 +16,7 @@ import io.micrometer.core.instrument.Tags;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.auth.AuthenticatedAccount;
@@ -59,8 +56,6 @@ public class AuthenticatedConnectListener implements WebSocketConnectListener {
 
   private static final String AUTHENTICATED_TAG_NAME = "authenticated";
 
-  private static final long RENEW_PRESENCE_INTERVAL_MINUTES = 5;
-
   private static final Logger log = LoggerFactory.getLogger(AuthenticatedConnectListener.class);
 
   private final ReceiptSender receiptSender;
@@ -164,8 +159,6 @@ public class AuthenticatedConnectListener implements WebSocketConnectListener {
 
       pushNotificationManager.handleMessagesRetrieved(auth.getAccount(), device, userAgent);
 
-      final AtomicReference<ScheduledFuture<?>> renewPresenceFutureReference = new AtomicReference<>();
-
       context.addWebsocketClosedListener((closingContext, statusCode, reason) -> {
         openWebsocketAtomicInteger.decrementAndGet();
         openWebsocketCounter.dec();
@@ -173,12 +166,6 @@ public class AuthenticatedConnectListener implements WebSocketConnectListener {
         timer.stop();
         sample.stop(connectionTimer);
 
-        final ScheduledFuture<?> renewPresenceFuture = renewPresenceFutureReference.get();
-
-        if (renewPresenceFuture != null) {
-          renewPresenceFuture.cancel(false);
-        }
-
         connection.stop();
 
         RedisOperation.unchecked(
@@ -199,12 +186,6 @@ public class AuthenticatedConnectListener implements WebSocketConnectListener {
         connection.start();
         clientPresenceManager.setPresent(auth.getAccount().getUuid(), device.getId(), connection);
         messagesManager.addMessageAvailabilityListener(auth.getAccount().getUuid(), device.getId(), connection);
-
-        renewPresenceFutureReference.set(scheduledExecutorService.scheduleAtFixedRate(() -> RedisOperation.unchecked(() ->
-                clientPresenceManager.renewPresence(auth.getAccount().getUuid(), device.getId())),
-            RENEW_PRESENCE_INTERVAL_MINUTES,
-            RENEW_PRESENCE_INTERVAL_MINUTES,
-            TimeUnit.MINUTES));
       } catch (final Exception e) {
         log.warn("Failed to initialize websocket", e);
         context.getClient().close(1011, "Unexpected error initializing connection");
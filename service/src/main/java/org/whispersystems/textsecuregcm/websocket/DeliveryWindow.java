@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A delivery window limits the number of messages that may be awaiting acknowledgement from a client at any one time.
+ * The window starts small and grows by one message for each acknowledgement that arrives within a small multiple of the
+ * fastest acknowledgement observed so far; acknowledgements that take much longer than that shrink the window by one
+ * message, and failures halve it.
+ */
+class DeliveryWindow {
+
+  private final int minWindowSize;
+  private final int maxWindowSize;
+
+  private int windowSize;
+  private int inFlight = 0;
+  private Duration minRoundTripTime = null;
+
+  private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+  // An acknowledgement within this multiple of the fastest observed round trip suggests the client has room for more
+  private static final int GROW_THRESHOLD_MULTIPLE = 2;
+
+  // An acknowledgement slower than this multiple of the fastest observed round trip suggests the client is backing up
+  private static final int SHRINK_THRESHOLD_MULTIPLE = 4;
+
+  DeliveryWindow(final int initialWindowSize, final int minWindowSize, final int maxWindowSize) {
+    this.windowSize = initialWindowSize;
+    this.minWindowSize = minWindowSize;
+    this.maxWindowSize = maxWindowSize;
+  }
+
+  /**
+   * Reserves a place in the window for a single message.
+   *
+   * @return a future that completes when the caller may send a message; callers that no longer wish to send may cancel
+   * the future to give up their place in line
+   */
+  synchronized CompletableFuture<Void> acquire() {
+    if (inFlight < windowSize) {
+      inFlight++;
+      return CompletableFuture.completedFuture(null);
+    }
+
+    final CompletableFuture<Void> waiter = new CompletableFuture<>();
+    waiters.add(waiter);
+
+    waiter.whenComplete((ignored, throwable) -> {
+      if (throwable != null) {
+        removeWaiter(waiter);
+      }
+    });
+
+    return waiter;
+  }
+
+  /**
+   * Releases a place in the window previously reserved by {@link #acquire()} and adjusts the size of the window.
+   *
+   * @param roundTripTime the time between sending the message and receiving an acknowledgement (or failure)
+   * @param acknowledged {@code true} if the client acknowledged the message or {@code false} if delivery failed
+   *
+   * @return the size of the window after adjustment
+   */
+  int release(final Duration roundTripTime, final boolean acknowledged) {
+    final int adjustedWindowSize;
+
+    synchronized (this) {
+      inFlight--;
+
+      if (!acknowledged) {
+        windowSize = Math.max(minWindowSize, windowSize / 2);
+      } else {
+        if (minRoundTripTime == null || roundTripTime.compareTo(minRoundTripTime) < 0) {
+          minRoundTripTime = roundTripTime;
+        }
+
+        if (roundTripTime.compareTo(minRoundTripTime.multipliedBy(GROW_THRESHOLD_MULTIPLE)) <= 0) {
+          windowSize = Math.min(maxWindowSize, windowSize + 1);
+        } else if (roundTripTime.compareTo(minRoundTripTime.multipliedBy(SHRINK_THRESHOLD_MULTIPLE)) > 0) {
+          windowSize = Math.max(minWindowSize, windowSize - 1);
+        }
+      }
+
+      adjustedWindowSize = windowSize;
+    }
+
+    admitWaiters();
+
+    return adjustedWindowSize;
+  }
+
+  /**
+   * Fails all callers still waiting for room in the window; callers that already hold a place in the window are
+   * unaffected and must still release it.
+   *
+   * @param cause the exception with which to fail waiting callers
+   */
+  void failWaiters(final Throwable cause) {
+    final List<CompletableFuture<Void>> failedWaiters;
+
+    synchronized (this) {
+      failedWaiters = new ArrayList<>(waiters);
+      waiters.clear();
+    }
+
+    failedWaiters.forEach(waiter -> waiter.completeExceptionally(cause));
+  }
+
+  private void admitWaiters() {
+    while (true) {
+      final CompletableFuture<Void> waiter;
+
+      synchronized (this) {
+        if (inFlight >= windowSize || waiters.isEmpty()) {
+          return;
+        }
+
+        inFlight++;
+        waiter = waiters.remove();
+      }
+
+      // Complete waiters outside the lock; completing a waiter may immediately send another message
+      if (!waiter.complete(null)) {
+        // The waiter was cancelled after we took it from the queue, so its place goes to the next waiter instead
+        synchronized (this) {
+          inFlight--;
+        }
+      }
+    }
+  }
+
+  private synchronized void removeWaiter(final CompletableFuture<Void> waiter) {
+    waiters.remove(waiter);
+  }
+
+  synchronized int getWindowSize() {
+    return windowSize;
+  }
+
+  synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  synchronized int getWaiterCount() {
+    return waiters.size();
+  }
+}
@@ -13,11 +13,15 @@ import org.whispersystems.websocket.session.WebSocketSessionContext;
 import org.whispersystems.websocket.setup.WebSocketConnectListener;
 import java.util.List;
 import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ProvisioningConnectListener implements WebSocketConnectListener {
 
   private final ProvisioningManager provisioningManager;
 
+  private static final Logger logger = LoggerFactory.getLogger(ProvisioningConnectListener.class);
+
   public ProvisioningConnectListener(final ProvisioningManager provisioningManager) {
     this.provisioningManager = provisioningManager;
   }
@@ -34,12 +38,19 @@ public class ProvisioningConnectListener implements WebSocketConnectListener {
 
       context.getClient().sendRequest("PUT", "/v1/message", List.of(HeaderUtils.getTimestampHeader()), body)
           .whenComplete((ignored, throwable) -> context.getClient().close(1000, "Closed"));
+    }).whenComplete((ignored, throwable) -> {
+      // Don't hand out the address until we're actually listening for messages sent to it
+      if (throwable != null) {
+        logger.warn("Failed to subscribe to provisioning address", throwable);
+        context.getClient().close(1011, "Failed to subscribe");
+        return;
+      }
+
+      context.getClient().sendRequest("PUT", "/v1/address", List.of(HeaderUtils.getTimestampHeader()),
+          Optional.of(MessageProtos.ProvisioningUuid.newBuilder()
+              .setUuid(provisioningAddress.getAddress())
+              .build()
+              .toByteArray()));
     });
-
-    context.getClient().sendRequest("PUT", "/v1/address", List.of(HeaderUtils.getTimestampHeader()),
-        Optional.of(MessageProtos.ProvisioningUuid.newBuilder()
-            .setUuid(provisioningAddress.getAddress())
-            .build()
-            .toByteArray()));
   }
 }
@@ -15,12 +15,14 @@ import com.google.common.annotations.VisibleForTesting;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -88,14 +90,21 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
       "sendMessages");
   private static final String SEND_MESSAGE_ERROR_COUNTER = MetricsUtil.name(WebSocketConnection.class,
       "sendMessageError");
+  private static final String DELIVERY_WINDOW_SIZE_DISTRIBUTION_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "deliveryWindowSize");
+  private static final String ACK_ROUND_TRIP_TIMER_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "ackRoundTrip");
   private static final String STATUS_CODE_TAG = "status";
   private static final String STATUS_MESSAGE_TAG = "message";
   private static final String ERROR_TYPE_TAG = "errorType";
 
   private static final long SLOW_DRAIN_THRESHOLD = 10_000;
 
+  private static final int INITIAL_DELIVERY_WINDOW_SIZE = 8;
+  private static final int MIN_DELIVERY_WINDOW_SIZE = 1;
+
   @VisibleForTesting
-  static final int MESSAGE_PUBLISHER_LIMIT_RATE = 100;
+  static final int MAX_DELIVERY_WINDOW_SIZE = 256;
 
   @VisibleForTesting
   static final int MAX_CONSECUTIVE_RETRIES = 5;
@@ -126,6 +135,8 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   private final AtomicInteger consecutiveRetries = new AtomicInteger();
   private final AtomicReference<ScheduledFuture<?>> retryFuture = new AtomicReference<>();
   private final AtomicReference<Disposable> messageSubscription = new AtomicReference<>();
+  private final DeliveryWindow deliveryWindow =
+      new DeliveryWindow(INITIAL_DELIVERY_WINDOW_SIZE, MIN_DELIVERY_WINDOW_SIZE, MAX_DELIVERY_WINDOW_SIZE);
 
   private final Random random = new Random();
   private final Scheduler messageDeliveryScheduler;
@@ -209,7 +220,7 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     MessageMetrics.measureAccountEnvelopeUuidMismatches(auth.getAccount(), message);
 
     // X-Signal-Key: false must be sent until Android stops assuming it missing means true
-    return client.sendRequest("PUT", "/api/v1/message",
+    return sendRequestInDeliveryWindow("PUT", "/api/v1/message",
             List.of(HeaderUtils.X_SIGNAL_KEY + ": false", HeaderUtils.getTimestampHeader()), body)
         .whenComplete((ignored, throwable) -> {
           if (throwable != null) {
@@ -251,6 +262,34 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
         });
   }
 
+  /**
+   * Sends a request to the client using a place in this connection's delivery window that the caller has already
+   * acquired, then releases that place and adjusts the window when the client responds, the request fails, or the
+   * request goes unanswered for longer than the send timeout.
+   */
+  private CompletableFuture<WebSocketResponseMessage> sendRequestInDeliveryWindow(final String verb,
+      final String path, final List<String> headers, final Optional<byte[]> body) {
+
+    final long start = System.nanoTime();
+
+    // The client's own future may stay pending for much longer than we're willing to wait (until its pending request
+    // table gives up on it), so time out a copy; whichever happens first releases the place, and only once
+    return client.sendRequest(verb, path, headers, body)
+        .copy()
+        .orTimeout(sendFuturesTimeoutMillis, TimeUnit.MILLISECONDS)
+        .whenComplete((response, throwable) -> {
+          final Duration roundTripTime = Duration.ofNanos(System.nanoTime() - start);
+          final int windowSize = deliveryWindow.release(roundTripTime, throwable == null);
+
+          final Tags tags = Tags.of(UserAgentTagUtil.getPlatformTag(client.getUserAgent()));
+          Metrics.summary(DELIVERY_WINDOW_SIZE_DISTRIBUTION_NAME, tags).record(windowSize);
+
+          if (throwable == null) {
+            Metrics.timer(ACK_ROUND_TRIP_TIMER_NAME, tags).record(roundTripTime);
+          }
+        });
+  }
+
   public static void recordMessageDeliveryDuration(long timestamp, Device messageDestinationDevice) {
     final long messageDeliveryDuration = System.currentTimeMillis() - timestamp;
     messageTime.update(messageDeliveryDuration);
@@ -354,10 +393,13 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     final Disposable subscription = Flux.from(messages)
         .name(SEND_MESSAGES_FLUX_NAME)
         .tap(Micrometer.metrics(Metrics.globalRegistry))
-        .limitRate(MESSAGE_PUBLISHER_LIMIT_RATE)
-        .flatMapSequential(envelope ->
-            Mono.fromFuture(sendMessage(envelope)
-                .orTimeout(sendFuturesTimeoutMillis, TimeUnit.MILLISECONDS)))
+        .limitRate(MAX_DELIVERY_WINDOW_SIZE)
+        // the delivery window, rather than the operator's concurrency, governs how many messages are actually in flight
+        .flatMapSequential(envelope -> Mono.fromFuture(sendMessage(envelope)), MAX_DELIVERY_WINDOW_SIZE)
+        // messages still waiting for room in the delivery window will never be sent by this subscription, and must not
+        // take room from the next one
+        .doOnTerminate(() -> deliveryWindow.failWaiters(new CancellationException("Message subscription ended")))
+        .doOnCancel(() -> deliveryWindow.failWaiters(new CancellationException("Message subscription cancelled")))
         .subscribeOn(messageDeliveryScheduler)
         .subscribe(
             // no additional consumer of values - it is Flux<Void> by now
@@ -395,7 +437,10 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
 
       return CompletableFuture.completedFuture(null);
     } else {
-      return sendMessage(envelope, new StoredMessageInfo(messageGuid, envelope.getServerTimestamp()));
+      // Time out only once the message has a place in the delivery window; waiting for room isn't a sign of trouble
+      return deliveryWindow.acquire().thenCompose(ignored ->
+          sendMessage(envelope, new StoredMessageInfo(messageGuid, envelope.getServerTimestamp()))
+              .orTimeout(sendFuturesTimeoutMillis, TimeUnit.MILLISECONDS));
     }
   }
 
@@ -9,6 +9,16 @@ import io.dropwizard.Application;
 import io.dropwizard.cli.Cli;
 import io.dropwizard.cli.EnvironmentCommand;
 import io.dropwizard.setup.Environment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import org.slf4j.Logger;
@@ -16,11 +26,13 @@ import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.WhisperServerConfiguration;
 import org.whispersystems.textsecuregcm.metrics.MetricsUtil;
 import org.whispersystems.textsecuregcm.storage.Account;
+import org.whispersystems.textsecuregcm.storage.AccountCrawlChunk;
+import org.whispersystems.textsecuregcm.storage.AccountDatabaseCrawlerCache;
 import org.whispersystems.textsecuregcm.util.logging.UncaughtExceptionHandler;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.ParallelFlux;
+import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
-import java.util.Objects;
 
 public abstract class AbstractSinglePassCrawlAccountsCommand extends EnvironmentCommand<WhisperServerConfiguration> {
 
@@ -29,6 +41,21 @@ public abstract class AbstractSinglePassCrawlAccountsCommand extends Environment
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   private static final String SEGMENT_COUNT = "segments";
+  private static final String RESUME = "resume";
+
+  private static final String ACCOUNTS_CRAWLED_COUNTER_NAME =
+      MetricsUtil.name(AbstractSinglePassCrawlAccountsCommand.class, "accountsCrawled");
+
+  private static final String SEGMENTS_FINISHED_COUNTER_NAME =
+      MetricsUtil.name(AbstractSinglePassCrawlAccountsCommand.class, "segmentsFinished");
+
+  private static final String ACCOUNTS_PER_SECOND_GAUGE_NAME =
+      MetricsUtil.name(AbstractSinglePassCrawlAccountsCommand.class, "accountsPerSecond");
+
+  private static final String ESTIMATED_SECONDS_REMAINING_GAUGE_NAME =
+      MetricsUtil.name(AbstractSinglePassCrawlAccountsCommand.class, "estimatedSecondsRemaining");
+
+  private static final Duration PROGRESS_INTERVAL = Duration.ofMinutes(1);
 
   public AbstractSinglePassCrawlAccountsCommand(final String name, final String description) {
     super(new Application<>() {
@@ -48,6 +75,11 @@ public abstract class AbstractSinglePassCrawlAccountsCommand extends Environment
         .required(false)
         .setDefault(1)
         .help("The total number of segments for a DynamoDB scan");
+
+    subparser.addArgument("--resume")
+        .action(Arguments.storeTrue())
+        .dest(RESUME)
+        .help("Resume each segment from its last checkpoint instead of starting a new scan");
   }
 
   protected CommandDependencies getCommandDependencies() {
@@ -64,12 +96,98 @@ public abstract class AbstractSinglePassCrawlAccountsCommand extends Environment
     commandDependencies = CommandDependencies.build(getName(), environment, configuration);
 
     final int segments = Objects.requireNonNull(namespace.getInt(SEGMENT_COUNT));
+    final boolean resume = namespace.getBoolean(RESUME);
+
+    final AccountDatabaseCrawlerCache progressCache =
+        new AccountDatabaseCrawlerCache(commandDependencies.cacheCluster(), getName());
 
-    logger.info("Crawling accounts with {} segments and {} processors",
+    if (!resume) {
+      progressCache.clearSegmentProgress(segments);
+    }
+
+    logger.info("Crawling accounts with {} segments and {} processors{}",
         segments,
-        Runtime.getRuntime().availableProcessors());
+        Runtime.getRuntime().availableProcessors(),
+        resume ? " from previous checkpoints" : "");
+
+    final Tags tags = Tags.of("command", getName());
+    final Counter accountsCrawledCounter = Metrics.counter(ACCOUNTS_CRAWLED_COUNTER_NAME, tags);
+    final AtomicLong accountsCrawled = new AtomicLong();
+
+    // DynamoDB only refreshes its item count every few hours, and we can't tell how much of the table earlier runs
+    // covered when resuming, so the estimate of the time remaining is necessarily rough
+    final long approximateAccountCount =
+        commandDependencies.accountsManager().getApproximateAccountCountFromDynamo().join();
+
+    final long startNanos = System.nanoTime();
+    final AtomicLong accountsPerSecond = Metrics.gauge(ACCOUNTS_PER_SECOND_GAUGE_NAME, tags, new AtomicLong());
+    final AtomicLong estimatedSecondsRemaining =
+        Metrics.gauge(ESTIMATED_SECONDS_REMAINING_GAUGE_NAME, tags, new AtomicLong());
+
+    final Disposable progressReporter = Flux.interval(PROGRESS_INTERVAL)
+        .subscribe(ignored -> {
+          final long elapsedSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+          final long crawled = accountsCrawled.get();
+          final long rate = crawled / elapsedSeconds;
+
+          accountsPerSecond.set(rate);
+          estimatedSecondsRemaining.set(rate > 0 ? Math.max(0, approximateAccountCount - crawled) / rate : -1);
+
+          logger.info("Crawled {} of approximately {} accounts ({} accounts/s; approximately {}s remaining)",
+              crawled, approximateAccountCount, rate, estimatedSecondsRemaining.get());
+        });
+
+    try {
+      Flux.range(0, segments)
+          .flatMap(segment -> crawlSegment(progressCache, segment, segments, accountsCrawled, accountsCrawledCounter),
+              segments)
+          .then()
+          .block();
+    } finally {
+      progressReporter.dispose();
+    }
+
+    progressCache.clearSegmentProgress(segments);
+
+    logger.info("Crawled {} accounts in {}", accountsCrawled.get(), Duration.ofNanos(System.nanoTime() - startNanos));
+  }
+
+  private Mono<Void> crawlSegment(final AccountDatabaseCrawlerCache progressCache,
+      final int segment,
+      final int totalSegments,
+      final AtomicLong accountsCrawled,
+      final Counter accountsCrawledCounter) {
+
+    if (progressCache.isSegmentFinished(segment, totalSegments)) {
+      logger.info("Segment {} already finished; skipping", segment);
+      return Mono.empty();
+    }
+
+    @Nullable final UUID from = progressCache.getLastUuid(segment, totalSegments).orElse(null);
+
+    return commandDependencies.accountsManager().streamAllFromDynamo(segment, totalSegments, from)
+        .publishOn(Schedulers.boundedElastic())
+        // Only advance the checkpoint once every account in the page has been processed; after a crash, we'll process
+        // the interrupted page again
+        .concatMap(chunk -> crawlAccounts(Flux.fromIterable(chunk.getAccounts()))
+            .then(Mono.fromRunnable(() -> {
+              checkpoint(progressCache, segment, totalSegments, chunk);
+
+              accountsCrawled.addAndGet(chunk.getAccounts().size());
+              accountsCrawledCounter.increment(chunk.getAccounts().size());
+            })))
+        .then(Mono.fromRunnable(() -> {
+          progressCache.setSegmentFinished(segment, totalSegments);
+          Metrics.counter(SEGMENTS_FINISHED_COUNTER_NAME, "command", getName()).increment();
+        }));
+  }
+
+  private static void checkpoint(final AccountDatabaseCrawlerCache progressCache,
+      final int segment,
+      final int totalSegments,
+      final AccountCrawlChunk chunk) {
 
-    crawlAccounts(commandDependencies.accountsManager().streamAllFromDynamo(segments, Schedulers.parallel()));
+    chunk.getLastUuid().ifPresent(lastUuid -> progressCache.setLastUuid(segment, totalSegments, lastUuid));
   }
 
   @Override
@@ -77,5 +195,14 @@ public abstract class AbstractSinglePassCrawlAccountsCommand extends Environment
     logger.error("Unhandled error", throwable);
   }
 
-  protected abstract void crawlAccounts(final ParallelFlux<Account> accounts);
+  /**
+   * Processes a single page of accounts from one segment of the scan. Pages from different segments may be processed
+   * concurrently. A segment's checkpoint advances only after the returned publisher completes, so a page may be
+   * processed more than once if the command is interrupted and resumed.
+   *
+   * @param accounts the accounts in the page
+   *
+   * @return a publisher that completes when all accounts in the page have been processed
+   */
+  protected abstract Mono<Void> crawlAccounts(final Flux<Account> accounts);
 }
@@ -137,9 +137,9 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
     DynamoDbClient dynamoDbClient = DynamoDbFromConfig.client(configuration.getDynamoDbClientConfiguration(),
         WhisperServerService.AWSSDK_CREDENTIALS_PROVIDER);
 
-    DeletedAccounts deletedAccounts = new DeletedAccounts(dynamoDbClient,
+    DeletedAccounts deletedAccounts = new DeletedAccounts(dynamoDbAsyncClient,
         configuration.getDynamoDbTables().getDeletedAccounts().getTableName());
-    VerificationCodeStore pendingAccounts = new VerificationCodeStore(dynamoDbClient,
+    VerificationCodeStore pendingAccounts = new VerificationCodeStore(dynamoDbClient, dynamoDbAsyncClient,
         configuration.getDynamoDbTables().getPendingAccounts().getTableName());
     RegistrationRecoveryPasswords registrationRecoveryPasswords = new RegistrationRecoveryPasswords(
         configuration.getDynamoDbTables().getRegistrationRecovery().getTableName(),
@@ -157,7 +157,8 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
         configuration.getDynamoDbTables().getAccounts().getPhoneNumberTableName(),
         configuration.getDynamoDbTables().getAccounts().getPhoneNumberIdentifierTableName(),
         configuration.getDynamoDbTables().getAccounts().getUsernamesTableName(),
-        configuration.getDynamoDbTables().getAccounts().getScanPageSize());
+        configuration.getDynamoDbTables().getAccounts().getScanPageSize(),
+        configuration.getDynamoDbTables().getAccounts().getScanCapacityUnitsPerSecond());
     PhoneNumberIdentifiers phoneNumberIdentifiers = new PhoneNumberIdentifiers(dynamoDbClient,
         configuration.getDynamoDbTables().getPhoneNumberIdentifiers().getTableName());
     Profiles profiles = new Profiles(dynamoDbClient, dynamoDbAsyncClient,
@@ -193,7 +194,8 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
         Executors.newSingleThreadScheduledExecutor(), keyspaceNotificationDispatchExecutor);
     MessagesCache messagesCache = new MessagesCache(messageInsertCacheCluster, messageReadDeleteCluster,
         keyspaceNotificationDispatchExecutor, messageDeliveryScheduler, messageDeletionExecutor, Clock.systemUTC());
-    ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster);
+    ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster,
+        configuration.getDynamoDbTables().getProfiles().isBinaryCacheEncoding());
     ReportMessageDynamoDb reportMessageDynamoDb = new ReportMessageDynamoDb(dynamoDbClient,
         configuration.getDynamoDbTables().getReportMessage().getTableName(),
         configuration.getReportMessageConfiguration().getReportTtl());
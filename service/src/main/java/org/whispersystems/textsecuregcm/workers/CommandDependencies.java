@@ -120,9 +120,9 @@ record CommandDependencies(
     DynamoDbClient dynamoDbClient = DynamoDbFromConfig.client(
         configuration.getDynamoDbClientConfiguration(), WhisperServerService.AWSSDK_CREDENTIALS_PROVIDER);
 
-    DeletedAccounts deletedAccounts = new DeletedAccounts(dynamoDbClient,
+    DeletedAccounts deletedAccounts = new DeletedAccounts(dynamoDbAsyncClient,
         configuration.getDynamoDbTables().getDeletedAccounts().getTableName());
-    VerificationCodeStore pendingAccounts = new VerificationCodeStore(dynamoDbClient,
+    VerificationCodeStore pendingAccounts = new VerificationCodeStore(dynamoDbClient, dynamoDbAsyncClient,
         configuration.getDynamoDbTables().getPendingAccounts().getTableName());
     RegistrationRecoveryPasswords registrationRecoveryPasswords = new RegistrationRecoveryPasswords(
         configuration.getDynamoDbTables().getRegistrationRecovery().getTableName(),
@@ -141,7 +141,8 @@ record CommandDependencies(
         configuration.getDynamoDbTables().getAccounts().getPhoneNumberTableName(),
         configuration.getDynamoDbTables().getAccounts().getPhoneNumberIdentifierTableName(),
         configuration.getDynamoDbTables().getAccounts().getUsernamesTableName(),
-        configuration.getDynamoDbTables().getAccounts().getScanPageSize());
+        configuration.getDynamoDbTables().getAccounts().getScanPageSize(),
+        configuration.getDynamoDbTables().getAccounts().getScanCapacityUnitsPerSecond());
     PhoneNumberIdentifiers phoneNumberIdentifiers = new PhoneNumberIdentifiers(dynamoDbClient,
         configuration.getDynamoDbTables().getPhoneNumberIdentifiers().getTableName());
     Profiles profiles = new Profiles(dynamoDbClient, dynamoDbAsyncClient,
@@ -178,7 +179,8 @@ record CommandDependencies(
         recurringJobExecutor, keyspaceNotificationDispatchExecutor);
     MessagesCache messagesCache = new MessagesCache(messageInsertCacheCluster, messageReadDeleteCluster,
         keyspaceNotificationDispatchExecutor, messageDeliveryScheduler, messageDeletionExecutor, Clock.systemUTC());
-    ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster);
+    ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster,
+        configuration.getDynamoDbTables().getProfiles().isBinaryCacheEncoding());
     ReportMessageDynamoDb reportMessageDynamoDb = new ReportMessageDynamoDb(dynamoDbClient,
         configuration.getDynamoDbTables().getReportMessage().getTableName(),
         configuration.getReportMessageConfiguration().getReportTtl());
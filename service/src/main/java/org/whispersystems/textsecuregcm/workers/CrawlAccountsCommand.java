@@ -104,17 +104,15 @@ public class CrawlAccountsCommand extends EnvironmentCommand<WhisperServerConfig
     MetricsUtil.registerSystemResourceMetrics(environment);
 
     final int workers = Objects.requireNonNull(namespace.getInt(WORKER_COUNT));
+    final int segments = configuration.getAccountDatabaseCrawlerConfiguration().getSegments();
 
     final AccountDatabaseCrawler crawler = switch ((CrawlType) namespace.get(CRAWL_TYPE)) {
       case GENERAL_PURPOSE -> {
-        final ExecutorService pushFeedbackUpdateExecutor = environment.lifecycle()
-            .executorService(name(getClass(), "pushFeedback-%d")).maxThreads(workers).minThreads(workers).build();
-
         // TODO listeners must be ordered so that ones that directly update accounts come last, so that read-only ones are not working with stale data
         final List<AccountDatabaseCrawlerListener> accountDatabaseCrawlerListeners = List.of(
             new NonNormalizedAccountCrawlerListener(accountsManager, metricsCluster),
             // PushFeedbackProcessor may update device properties
-            new PushFeedbackProcessor(accountsManager, pushFeedbackUpdateExecutor));
+            new PushFeedbackProcessor(accountsManager, workers));
 
         final AccountDatabaseCrawlerCache accountDatabaseCrawlerCache = new AccountDatabaseCrawlerCache(
             cacheCluster,
@@ -123,7 +121,9 @@ public class CrawlAccountsCommand extends EnvironmentCommand<WhisperServerConfig
         yield new AccountDatabaseCrawler("General-purpose account crawler",
             accountsManager,
             accountDatabaseCrawlerCache, accountDatabaseCrawlerListeners,
-            configuration.getAccountDatabaseCrawlerConfiguration().getChunkSize()
+            configuration.getAccountDatabaseCrawlerConfiguration().getChunkSize(),
+            segments,
+            buildSegmentExecutor(environment, segments)
         );
       }
       case ACCOUNT_CLEANER -> {
@@ -137,7 +137,9 @@ public class CrawlAccountsCommand extends EnvironmentCommand<WhisperServerConfig
             accountsManager,
             accountDatabaseCrawlerCache,
             List.of(new AccountCleaner(accountsManager, accountDeletionExecutor)),
-            configuration.getAccountDatabaseCrawlerConfiguration().getChunkSize()
+            configuration.getAccountDatabaseCrawlerConfiguration().getChunkSize(),
+            segments,
+            buildSegmentExecutor(environment, segments)
         );
       }
     };
@@ -165,4 +167,9 @@ public class CrawlAccountsCommand extends EnvironmentCommand<WhisperServerConfig
       }
     });
   }
+
+  private ExecutorService buildSegmentExecutor(final Environment environment, final int segments) {
+    return environment.lifecycle()
+        .executorService(name(getClass(), "segment-%d")).maxThreads(segments).minThreads(segments).build();
+  }
 }
@@ -15,7 +15,6 @@ import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.KeysManager;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.ParallelFlux;
 import reactor.util.function.Tuple3;
 import reactor.util.function.Tuples;
 
@@ -24,8 +23,8 @@ public class MigrateSignedECPreKeysCommand extends AbstractSinglePassCrawlAccoun
   private static final String STORE_KEY_ATTEMPT_COUNTER_NAME =
       MetricsUtil.name(MigrateSignedECPreKeysCommand.class, "storeKeyAttempt");
 
-  // It's tricky to find, but the default connection count for the AWS SDK's async DynamoDB client is 50. We expect
-  // four workers, so this should keep us below the concurrency limit.
+  // It's tricky to find, but the default connection count for the AWS SDK's async DynamoDB client is 50. This limit
+  // applies to each segment, so with four segments, this should keep us below the concurrency limit.
   private static final int MAX_CONCURRENCY = 12;
 
   public MigrateSignedECPreKeysCommand() {
@@ -33,10 +32,10 @@ public class MigrateSignedECPreKeysCommand extends AbstractSinglePassCrawlAccoun
   }
 
   @Override
-  protected void crawlAccounts(final ParallelFlux<Account> accounts) {
+  protected Mono<Void> crawlAccounts(final Flux<Account> accounts) {
     final KeysManager keysManager = getCommandDependencies().keysManager();
 
-    accounts.flatMap(account -> Flux.fromIterable(account.getDevices())
+    return accounts.flatMap(account -> Flux.fromIterable(account.getDevices())
             .flatMap(device -> {
               final List<Tuple3<UUID, Long, ECSignedPreKey>> keys = new ArrayList<>(2);
 
@@ -51,9 +50,8 @@ public class MigrateSignedECPreKeysCommand extends AbstractSinglePassCrawlAccoun
               return Flux.fromIterable(keys);
             }))
         .flatMap(keyTuple -> Mono.fromFuture(
-            keysManager.storeEcSignedPreKeyIfAbsent(keyTuple.getT1(), keyTuple.getT2(), keyTuple.getT3())), false, MAX_CONCURRENCY)
+            keysManager.storeEcSignedPreKeyIfAbsent(keyTuple.getT1(), keyTuple.getT2(), keyTuple.getT3())), MAX_CONCURRENCY)
         .doOnNext(keyStored -> Metrics.counter(STORE_KEY_ATTEMPT_COUNTER_NAME, "stored", String.valueOf(keyStored)).increment())
-        .then()
-        .block();
+        .then();
   }
 }
@@ -11,6 +11,7 @@ import io.dropwizard.Application;
 import io.dropwizard.cli.ServerCommand;
 import io.dropwizard.setup.Environment;
 import java.util.concurrent.ExecutorService;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import org.whispersystems.textsecuregcm.WhisperServerConfiguration;
@@ -23,6 +24,7 @@ import org.whispersystems.textsecuregcm.util.logging.UncaughtExceptionHandler;
 public class ScheduledApnPushNotificationSenderServiceCommand extends ServerCommand<WhisperServerConfiguration> {
 
   private static final String WORKER_COUNT = "workers";
+  private static final String SHARDED_WORKERS = "shardedWorkers";
 
   public ScheduledApnPushNotificationSenderServiceCommand() {
     super(new Application<>() {
@@ -42,6 +44,12 @@ public class ScheduledApnPushNotificationSenderServiceCommand extends ServerComm
         .dest(WORKER_COUNT)
         .required(true)
         .help("The number of worker threads");
+
+    subparser.addArgument("--sharded-workers")
+        .action(Arguments.storeTrue())
+        .setDefault(Boolean.FALSE)
+        .dest(SHARDED_WORKERS)
+        .help("Have each worker claim a range of slots at a time and send notifications within each page concurrently");
   }
 
   @Override
@@ -62,7 +70,8 @@ public class ScheduledApnPushNotificationSenderServiceCommand extends ServerComm
 
     final APNSender apnSender = new APNSender(apnSenderExecutor, configuration.getApnConfiguration());
     final ApnPushNotificationScheduler apnPushNotificationScheduler = new ApnPushNotificationScheduler(
-        pushSchedulerCluster, apnSender, deps.accountsManager(), namespace.getInt(WORKER_COUNT));
+        pushSchedulerCluster, apnSender, deps.accountsManager(), namespace.getInt(WORKER_COUNT),
+        namespace.getBoolean(SHARDED_WORKERS));
 
     environment.lifecycle().manage(apnSender);
     environment.lifecycle().manage(apnPushNotificationScheduler);
@@ -2,6 +2,8 @@ local pendingNotificationQueue = KEYS[1]
 
 local maxTime = ARGV[1]
 local limit = ARGV[2]
+-- if set, each destination is followed by the time at which its notification was due
+local withScores = ARGV[3] == "true"
 
 local hgetall = function (key)
     local bulk = redis.call('HGETALL', key)
@@ -46,11 +48,13 @@ local getNextInterval = function(interval)
 end
 
 
-local results  = redis.call("ZRANGEBYSCORE", pendingNotificationQueue, 0, maxTime, "LIMIT", 0, limit)
+local results  = redis.call("ZRANGEBYSCORE", pendingNotificationQueue, 0, maxTime, "WITHSCORES", "LIMIT", 0, limit)
 local collated = {}
 
 if results and next(results) then
-    for i, name in ipairs(results) do
+    for i = 1, #results, 2 do
+        local name         = results[i]
+        local score        = results[i + 1]
         local pending      = hgetall(name)
         local lastInterval = pending["interval"]
 
@@ -63,7 +67,11 @@ if results and next(results) then
         redis.call("HSET", name, "interval", nextInterval)
         redis.call("ZADD", pendingNotificationQueue, tonumber(maxTime) + nextInterval, name)
 
-        collated[i] = pending["account"] .. ":" .. pending["device"]
+        collated[#collated + 1] = pending["account"] .. ":" .. pending["device"]
+
+        if withScores then
+            collated[#collated + 1] = score
+        end
     end
 end
 
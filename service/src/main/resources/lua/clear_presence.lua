@@ -1,9 +1,13 @@
-local presenceKey  = KEYS[1]
+-- clears every given presence key that is still held by the given manager and returns the number of keys cleared; all
+-- keys must hash to the same slot
 local presenceUuid = ARGV[1]
+local cleared = 0
 
-if redis.call("GET", presenceKey) == presenceUuid then
-    redis.call("DEL", presenceKey)
-    return true
+for _, presenceKey in ipairs(KEYS) do
+    if redis.call("GET", presenceKey) == presenceUuid then
+        redis.call("DEL", presenceKey)
+        cleared = cleared + 1
+    end
 end
 
-return false
+return cleared
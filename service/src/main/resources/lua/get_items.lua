@@ -1,25 +1,56 @@
-local queueKey     = KEYS[1]
-local queueLockKey = KEYS[2]
-local limit        = ARGV[1]
-local afterMessageId = ARGV[2]
+local queueKey                   = KEYS[1]
+local queueLockKey               = KEYS[2]
+local queueMetadataKey           = KEYS[3]
+local queueTotalIndexKey         = KEYS[4]
+local ephemeralIndexKey          = KEYS[5]
+local limit                      = ARGV[1]
+local afterMessageId             = ARGV[2]
+local earliestEphemeralTimestamp = ARGV[3]
 
 local locked = redis.call("GET", queueLockKey)
 
 if locked then
-    return {}
+    return { {}, 0 }
 end
 
+-- Discard stale ephemeral messages before reading the page so they never leave Redis
+local discarded = 0
+local staleEphemeralGuids = redis.call("ZRANGEBYSCORE", ephemeralIndexKey, "-inf", "(" .. earliestEphemeralTimestamp,
+    "LIMIT", 0, limit)
+
+for _, guid in ipairs(staleEphemeralGuids) do
+    local messageId = redis.call("HGET", queueMetadataKey, guid)
+
+    if messageId then
+        discarded = discarded + redis.call("ZREMRANGEBYSCORE", queueKey, messageId, messageId)
+        redis.call("HDEL", queueMetadataKey, guid)
+    end
+
+    redis.call("ZREM", ephemeralIndexKey, guid)
+end
+
+if discarded > 0 and redis.call("ZCARD", queueKey) == 0 then
+    redis.call("DEL", queueKey)
+    redis.call("DEL", queueMetadataKey)
+    redis.call("DEL", ephemeralIndexKey)
+    redis.call("ZREM", queueTotalIndexKey, queueKey)
+end
+
+local items
+
 if afterMessageId == "null" then
     -- An index range is inclusive
     local min = 0
     local max = limit - 1
 
     if max < 0 then
-        return {}
+        items = {}
+    else
+        items = redis.call("ZRANGE", queueKey, min, max, "WITHSCORES")
     end
-
-    return redis.call("ZRANGE", queueKey, min, max, "WITHSCORES")
 else
     -- note: this is deprecated in Redis 6.2, and should be migrated to zrange after the cluster is updated
-    return redis.call("ZRANGEBYSCORE", queueKey, "("..afterMessageId, "+inf", "WITHSCORES", "LIMIT", 0, limit)
+    items = redis.call("ZRANGEBYSCORE", queueKey, "("..afterMessageId, "+inf", "WITHSCORES", "LIMIT", 0, limit)
 end
+
+return { items, discarded }
@@ -1,9 +1,11 @@
 local queueKey           = KEYS[1]
 local queueMetadataKey   = KEYS[2]
 local queueTotalIndexKey = KEYS[3]
+local ephemeralIndexKey  = KEYS[4]
 local message            = ARGV[1]
 local currentTime        = ARGV[2]
 local guid               = ARGV[3]
+local ephemeralTimestamp = ARGV[4] -- only present for ephemeral messages
 
 if redis.call("HEXISTS", queueMetadataKey, guid) == 1 then
     return tonumber(redis.call("HGET", queueMetadataKey, guid))
@@ -18,5 +20,10 @@ redis.call("HSET", queueMetadataKey, guid, messageId)
 redis.call("EXPIRE", queueKey, 7776000)         -- 90 days
 redis.call("EXPIRE", queueMetadataKey, 7776000) -- 90 days
 
+if ephemeralTimestamp then
+    redis.call("ZADD", ephemeralIndexKey, ephemeralTimestamp, guid)
+    redis.call("EXPIRE", ephemeralIndexKey, 7776000) -- 90 days
+end
+
 redis.call("ZADD", queueTotalIndexKey, "NX", currentTime, queueKey)
 return messageId
@@ -1,6 +1,7 @@
 local queueKey           = KEYS[1]
 local queueMetadataKey   = KEYS[2]
 local queueTotalIndexKey = KEYS[3]
+local ephemeralIndexKey  = KEYS[4]
 
 local removedMessages = {}
 
@@ -12,6 +13,7 @@ for _, guid in ipairs(ARGV) do
 
         redis.call("ZREMRANGEBYSCORE", queueKey, messageId, messageId)
         redis.call("HDEL", queueMetadataKey, guid)
+        redis.call("ZREM", ephemeralIndexKey, guid)
 
         if envelope and next(envelope) then
             removedMessages[#removedMessages + 1] = envelope[1]
@@ -22,6 +24,7 @@ end
 if (redis.call("ZCARD", queueKey) == 0) then
     redis.call("DEL", queueKey)
     redis.call("DEL", queueMetadataKey)
+    redis.call("DEL", ephemeralIndexKey)
     redis.call("ZREM", queueTotalIndexKey, queueKey)
 end
 
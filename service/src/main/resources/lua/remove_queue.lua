@@ -1,7 +1,9 @@
 local queueKey           = KEYS[1]
 local queueMetadataKey   = KEYS[2]
 local queueTotalIndexKey = KEYS[3]
+local ephemeralIndexKey  = KEYS[4]
 
 redis.call("DEL", queueKey)
 redis.call("DEL", queueMetadataKey)
+redis.call("DEL", ephemeralIndexKey)
 redis.call("ZREM", queueTotalIndexKey, queueKey)
@@ -1,7 +1,9 @@
-local presenceKey  = KEYS[1]
+-- renews every given presence key that is still held by the given manager; all keys must hash to the same slot
 local presenceUuid = ARGV[1]
 local expireSeconds = ARGV[2]
 
-if redis.call("GET", presenceKey) == presenceUuid then
-    redis.call("EXPIRE", presenceKey, expireSeconds)
+for _, presenceKey in ipairs(KEYS) do
+    if redis.call("GET", presenceKey) == presenceUuid then
+        redis.call("EXPIRE", presenceKey, expireSeconds)
+    end
 end
@@ -269,12 +269,12 @@ class MessageControllerTest {
 
     assertThat("Good Response", response.getStatus(), is(equalTo(200)));
 
-    ArgumentCaptor<Envelope> captor = ArgumentCaptor.forClass(Envelope.class);
-    verify(messageSender, times(1)).sendMessage(any(Account.class), any(Device.class), captor.capture(), eq(false));
+    final List<Envelope> envelopes = verifySentEnvelopes(false);
+    assertEquals(1, envelopes.size());
 
-    assertTrue(captor.getValue().hasSourceUuid());
-    assertTrue(captor.getValue().hasSourceDevice());
-    assertTrue(captor.getValue().getUrgent());
+    assertTrue(envelopes.get(0).hasSourceUuid());
+    assertTrue(envelopes.get(0).hasSourceDevice());
+    assertTrue(envelopes.get(0).getUrgent());
   }
 
   @Test
@@ -290,12 +290,12 @@ class MessageControllerTest {
 
     assertThat("Good Response", response.getStatus(), is(equalTo(200)));
 
-    ArgumentCaptor<Envelope> captor = ArgumentCaptor.forClass(Envelope.class);
-    verify(messageSender, times(1)).sendMessage(any(Account.class), any(Device.class), captor.capture(), eq(false));
+    final List<Envelope> envelopes = verifySentEnvelopes(false);
+    assertEquals(1, envelopes.size());
 
-    assertTrue(captor.getValue().hasSourceUuid());
-    assertTrue(captor.getValue().hasSourceDevice());
-    assertFalse(captor.getValue().getUrgent());
+    assertTrue(envelopes.get(0).hasSourceUuid());
+    assertTrue(envelopes.get(0).hasSourceDevice());
+    assertFalse(envelopes.get(0).getUrgent());
   }
 
   @Test
@@ -311,11 +311,11 @@ class MessageControllerTest {
 
     assertThat("Good Response", response.getStatus(), is(equalTo(200)));
 
-    ArgumentCaptor<Envelope> captor = ArgumentCaptor.forClass(Envelope.class);
-    verify(messageSender, times(1)).sendMessage(any(Account.class), any(Device.class), captor.capture(), eq(false));
+    final List<Envelope> envelopes = verifySentEnvelopes(false);
+    assertEquals(1, envelopes.size());
 
-    assertTrue(captor.getValue().hasSourceUuid());
-    assertTrue(captor.getValue().hasSourceDevice());
+    assertTrue(envelopes.get(0).hasSourceUuid());
+    assertTrue(envelopes.get(0).hasSourceDevice());
   }
 
   @Test
@@ -344,11 +344,11 @@ class MessageControllerTest {
 
     assertThat("Good Response", response.getStatus(), is(equalTo(200)));
 
-    ArgumentCaptor<Envelope> captor = ArgumentCaptor.forClass(Envelope.class);
-    verify(messageSender, times(1)).sendMessage(any(Account.class), any(Device.class), captor.capture(), eq(false));
+    final List<Envelope> envelopes = verifySentEnvelopes(false);
+    assertEquals(1, envelopes.size());
 
-    assertFalse(captor.getValue().hasSourceUuid());
-    assertFalse(captor.getValue().hasSourceDevice());
+    assertFalse(envelopes.get(0).hasSourceUuid());
+    assertFalse(envelopes.get(0).hasSourceDevice());
   }
 
   @Test
@@ -432,11 +432,10 @@ class MessageControllerTest {
 
     assertThat("Good Response Code", response.getStatus(), is(equalTo(200)));
 
-    final ArgumentCaptor<Envelope> envelopeCaptor = ArgumentCaptor.forClass(Envelope.class);
+    final List<Envelope> envelopes = verifySentEnvelopes(false);
+    assertEquals(2, envelopes.size());
 
-    verify(messageSender, times(2)).sendMessage(any(Account.class), any(Device.class), envelopeCaptor.capture(), eq(false));
-
-    envelopeCaptor.getAllValues().forEach(envelope -> assertTrue(envelope.getUrgent()));
+    envelopes.forEach(envelope -> assertTrue(envelope.getUrgent()));
   }
 
   @Test
@@ -452,11 +451,10 @@ class MessageControllerTest {
 
     assertThat("Good Response Code", response.getStatus(), is(equalTo(200)));
 
-    final ArgumentCaptor<Envelope> envelopeCaptor = ArgumentCaptor.forClass(Envelope.class);
-
-    verify(messageSender, times(2)).sendMessage(any(Account.class), any(Device.class), envelopeCaptor.capture(), eq(false));
+    final List<Envelope> envelopes = verifySentEnvelopes(false);
+    assertEquals(2, envelopes.size());
 
-    envelopeCaptor.getAllValues().forEach(envelope -> assertFalse(envelope.getUrgent()));
+    envelopes.forEach(envelope -> assertFalse(envelope.getUrgent()));
   }
 
   @Test
@@ -472,7 +470,7 @@ class MessageControllerTest {
 
     assertThat("Good Response Code", response.getStatus(), is(equalTo(200)));
 
-    verify(messageSender, times(2)).sendMessage(any(Account.class), any(Device.class), any(Envelope.class), eq(false));
+    assertEquals(2, verifySentEnvelopes(false).size());
   }
 
   @Test
@@ -867,8 +865,7 @@ class MessageControllerTest {
 
     assertThat("Bad response", response.getStatus(), is(equalTo(413)));
 
-    verify(messageSender, never()).sendMessage(any(Account.class), any(Device.class), any(Envelope.class),
-        anyBoolean());
+    verify(messageSender, never()).sendMessages(any(Account.class), any(), anyBoolean());
   }
 
   @ParameterizedTest
@@ -886,11 +883,10 @@ class MessageControllerTest {
     if (expectOk) {
       assertEquals(200, response.getStatus());
 
-      final ArgumentCaptor<Envelope> captor = ArgumentCaptor.forClass(Envelope.class);
-      verify(messageSender).sendMessage(any(Account.class), any(Device.class), captor.capture(), eq(false));
+      assertEquals(1, verifySentEnvelopes(false).size());
     } else {
       assertEquals(400, response.getStatus());
-      verify(messageSender, never()).sendMessage(any(), any(), any(), anyBoolean());
+      verify(messageSender, never()).sendMessages(any(), any(), anyBoolean());
     }
   }
 
@@ -999,9 +995,7 @@ class MessageControllerTest {
     Response response = bldr.put(entity);
 
     if (authorize) {
-      ArgumentCaptor<Envelope> envelopeArgumentCaptor = ArgumentCaptor.forClass(Envelope.class);
-      verify(messageSender, atLeastOnce()).sendMessage(any(), any(), envelopeArgumentCaptor.capture(), anyBoolean());
-      assertEquals(urgent, envelopeArgumentCaptor.getValue().getUrgent());
+      verifySentEnvelopes(true).forEach(envelope -> assertEquals(urgent, envelope.getUrgent()));
     }
 
     // We have a 2x2x2 grid of possible situations based on:
@@ -1167,19 +1161,28 @@ class MessageControllerTest {
 
   private void checkBadMultiRecipientResponse(Response response, int expectedCode) throws Exception {
     assertThat("Unexpected response", response.getStatus(), is(equalTo(expectedCode)));
-    verify(messageSender, never()).sendMessage(any(), any(), any(), anyBoolean());
+    verify(messageSender, never()).sendMessages(any(), any(), anyBoolean());
     verify(multiRecipientMessageExecutor, never()).invokeAll(any());
   }
 
   private void checkGoodMultiRecipientResponse(Response response, int expectedCount) throws Exception {
     assertThat("Unexpected response", response.getStatus(), is(equalTo(200)));
-    ArgumentCaptor<List<Callable<Void>>> captor = ArgumentCaptor.forClass(List.class);
-    verify(multiRecipientMessageExecutor, times(1)).invokeAll(captor.capture());
-    assert (captor.getValue().size() == expectedCount);
+    verify(multiRecipientMessageExecutor, times(1)).invokeAll(any());
+    assertEquals(expectedCount, verifySentEnvelopes(true).size());
     SendMultiRecipientMessageResponse smrmr = response.readEntity(SendMultiRecipientMessageResponse.class);
     assert (smrmr.getUUIDs404().isEmpty());
   }
 
+  @SuppressWarnings("unchecked")
+  private static List<Envelope> verifySentEnvelopes(final boolean online) {
+    final ArgumentCaptor<List<Pair<Device, Envelope>>> captor = ArgumentCaptor.forClass(List.class);
+    verify(messageSender, atLeastOnce()).sendMessages(any(Account.class), captor.capture(), eq(online));
+
+    return captor.getAllValues().stream()
+        .flatMap(deviceAndEnvelopes -> deviceAndEnvelopes.stream().map(Pair::second))
+        .toList();
+  }
+
   private static Envelope generateEnvelope(UUID guid, int type, long timestamp, UUID sourceUuid,
       int sourceDevice, UUID destinationUuid, UUID updatedPni, byte[] content, long serverTimestamp) {
     return generateEnvelope(guid, type, timestamp, sourceUuid, sourceDevice, destinationUuid, updatedPni, content, serverTimestamp, false);
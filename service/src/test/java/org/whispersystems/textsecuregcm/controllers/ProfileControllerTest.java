@@ -41,6 +41,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 import javax.ws.rs.client.Entity;
@@ -217,9 +218,15 @@ class ProfileControllerTest {
     when(accountsManager.getByE164(AuthHelper.VALID_NUMBER)).thenReturn(Optional.of(capabilitiesAccount));
     when(accountsManager.getByAccountIdentifier(AuthHelper.VALID_UUID)).thenReturn(Optional.of(capabilitiesAccount));
 
+    final VersionedProfile validProfile = new VersionedProfile(
+        "validversion", "validname", "profiles/validavatar", "emoji", "about", null, "validcommitmnet".getBytes());
+
     when(profilesManager.get(eq(AuthHelper.VALID_UUID), eq("someversion"))).thenReturn(Optional.empty());
-    when(profilesManager.get(eq(AuthHelper.VALID_UUID_TWO), eq("validversion"))).thenReturn(Optional.of(new VersionedProfile(
-        "validversion", "validname", "profiles/validavatar", "emoji", "about", null, "validcommitmnet".getBytes())));
+    when(profilesManager.getAsync(eq(AuthHelper.VALID_UUID), eq("someversion")))
+        .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+    when(profilesManager.get(eq(AuthHelper.VALID_UUID_TWO), eq("validversion"))).thenReturn(Optional.of(validProfile));
+    when(profilesManager.getAsync(eq(AuthHelper.VALID_UUID_TWO), eq("validversion")))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(validProfile)));
 
     when(accountsManager.getByAccountIdentifier(AuthHelper.INVALID_UUID)).thenReturn(Optional.empty());
 
@@ -841,7 +848,7 @@ class ProfileControllerTest {
         badge -> "Test Badge".equals(badge.getName()), "has badge with expected name"));
 
     verify(accountsManager, times(1)).getByAccountIdentifier(eq(AuthHelper.VALID_UUID_TWO));
-    verify(profilesManager, times(1)).get(eq(AuthHelper.VALID_UUID_TWO), eq("validversion"));
+    verify(profilesManager, times(1)).getAsync(eq(AuthHelper.VALID_UUID_TWO), eq("validversion"));
 
     verify(rateLimiter, times(1)).validate(AuthHelper.VALID_UUID);
   }
@@ -872,8 +879,8 @@ class ProfileControllerTest {
 
   @Test
   void testGetProfileReturnsNoPaymentAddressIfCurrentVersionMismatch() {
-    when(profilesManager.get(AuthHelper.VALID_UUID_TWO, "validversion")).thenReturn(
-        Optional.of(new VersionedProfile(null, null, null, null, null, "paymentaddress", null)));
+    when(profilesManager.getAsync(AuthHelper.VALID_UUID_TWO, "validversion")).thenReturn(CompletableFuture.completedFuture(
+        Optional.of(new VersionedProfile(null, null, null, null, null, "paymentaddress", null))));
 
     {
       final VersionedProfileResponse profile = resources.getJerseyTest()
@@ -918,7 +925,7 @@ class ProfileControllerTest {
     when(account.isEnabled()).thenReturn(true);
 
     when(accountsManager.getByAccountIdentifier(AuthHelper.VALID_UUID)).thenReturn(Optional.of(account));
-    when(profilesManager.get(any(), any())).thenReturn(Optional.empty());
+    when(profilesManager.getAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
     final ExpiringProfileKeyCredentialProfileResponse profile = resources.getJerseyTest()
         .target(String.format("/v1/profile/%s/%s/%s", AuthHelper.VALID_UUID, "version-that-does-not-exist", "credential-request"))
@@ -1080,7 +1087,8 @@ class ProfileControllerTest {
         serverZkProfile.issueExpiringProfileKeyCredential(credentialRequest, AuthHelper.VALID_UUID, profileKeyCommitment, expiration);
 
     when(accountsManager.getByAccountIdentifier(AuthHelper.VALID_UUID)).thenReturn(Optional.of(account));
-    when(profilesManager.get(AuthHelper.VALID_UUID, version)).thenReturn(Optional.of(versionedProfile));
+    when(profilesManager.getAsync(AuthHelper.VALID_UUID, version))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(versionedProfile)));
     when(zkProfileOperations.issueExpiringProfileKeyCredential(credentialRequest, AuthHelper.VALID_UUID, profileKeyCommitment, expiration))
         .thenReturn(credentialResponse);
 
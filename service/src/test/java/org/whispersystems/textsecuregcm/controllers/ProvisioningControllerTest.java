@@ -23,9 +23,11 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Base64;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import org.glassfish.jersey.server.ServerProperties;
 import org.glassfish.jersey.test.grizzly.GrizzlyWebTestContainerFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -36,6 +38,7 @@ import org.whispersystems.textsecuregcm.auth.DisabledPermittedAuthenticatedAccou
 import org.whispersystems.textsecuregcm.entities.ProvisioningMessage;
 import org.whispersystems.textsecuregcm.limits.RateLimiter;
 import org.whispersystems.textsecuregcm.limits.RateLimiters;
+import org.whispersystems.textsecuregcm.mappers.CompletionExceptionMapper;
 import org.whispersystems.textsecuregcm.mappers.RateLimitExceededExceptionMapper;
 import org.whispersystems.textsecuregcm.push.ProvisioningManager;
 import org.whispersystems.textsecuregcm.tests.util.AuthHelper;
@@ -54,7 +57,9 @@ class ProvisioningControllerTest {
       .addProvider(AuthHelper.getAuthFilter())
       .addProvider(new PolymorphicAuthValueFactoryProvider.Binder<>(
           ImmutableSet.of(AuthenticatedAccount.class, DisabledPermittedAuthenticatedAccount.class)))
+      .addProperty(ServerProperties.UNWRAP_COMPLETION_STAGE_IN_WRITER_ENABLE, Boolean.TRUE)
       .addProvider(new RateLimitExceededExceptionMapper())
+      .addProvider(CompletionExceptionMapper.class)
       .setMapper(SystemMapper.jsonMapper())
       .setTestContainerFactory(new GrizzlyWebTestContainerFactory())
       .addResource(new ProvisioningController(rateLimiters, provisioningManager))
@@ -73,7 +78,7 @@ class ProvisioningControllerTest {
     final String destination = UUID.randomUUID().toString();
     final byte[] messageBody = "test".getBytes(StandardCharsets.UTF_8);
 
-    when(provisioningManager.sendProvisioningMessage(any(), any())).thenReturn(true);
+    when(provisioningManager.sendProvisioningMessage(any(), any())).thenReturn(CompletableFuture.completedFuture(true));
 
     try (final Response response = RESOURCE_EXTENSION.getJerseyTest()
         .target("/v1/provisioning/" + destination)
@@ -119,4 +124,23 @@ class ProvisioningControllerTest {
       verify(provisioningManager, never()).sendProvisioningMessage(any(), any());
     }
   }
+
+  @Test
+  void sendProvisioningMessageNoListener() {
+    final String destination = UUID.randomUUID().toString();
+    final byte[] messageBody = "test".getBytes(StandardCharsets.UTF_8);
+
+    when(provisioningManager.sendProvisioningMessage(any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(false));
+
+    try (final Response response = RESOURCE_EXTENSION.getJerseyTest()
+        .target("/v1/provisioning/" + destination)
+        .request()
+        .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID, AuthHelper.VALID_PASSWORD))
+        .put(Entity.entity(new ProvisioningMessage(Base64.getMimeEncoder().encodeToString(messageBody)),
+            MediaType.APPLICATION_JSON))) {
+
+      assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+  }
 }
@@ -12,6 +12,8 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.whispersystems.textsecuregcm.entities.CurrencyConversionEntityList;
@@ -27,7 +29,8 @@ class CurrencyConversionManagerTest {
     FixerClient fixerClient = mock(FixerClient.class);
     CoinMarketCapClient   coinMarketCapClient   = mock(CoinMarketCapClient.class);
 
-    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD"))).thenReturn(new BigDecimal("2.35"));
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("2.35")));
     when(fixerClient.getConversionsForBase(eq("USD"))).thenReturn(Map.of(
         "EUR", new BigDecimal("0.822876"),
         "FJD", new BigDecimal("2.0577"),
@@ -35,7 +38,7 @@ class CurrencyConversionManagerTest {
     ));
 
     CurrencyConversionManager manager = new CurrencyConversionManager(fixerClient, coinMarketCapClient, REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        List.of("FOO"), Clock.systemUTC());
+        List.of("FOO"), mock(ScheduledExecutorService.class), Clock.systemUTC());
 
     manager.updateCacheIfNecessary();
 
@@ -55,7 +58,8 @@ class CurrencyConversionManagerTest {
     FixerClient fixerClient = mock(FixerClient.class);
     CoinMarketCapClient   coinMarketCapClient   = mock(CoinMarketCapClient.class);
 
-    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD"))).thenReturn(new BigDecimal("1.00000"));
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("1.00000")));
     when(fixerClient.getConversionsForBase(eq("USD"))).thenReturn(Map.of(
         "EUR", new BigDecimal("0.200000"),
         "FJD", new BigDecimal("3.00000"),
@@ -64,7 +68,7 @@ class CurrencyConversionManagerTest {
     ));
 
     CurrencyConversionManager manager = new CurrencyConversionManager(fixerClient, coinMarketCapClient, REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        List.of("FOO"), Clock.systemUTC());
+        List.of("FOO"), mock(ScheduledExecutorService.class), Clock.systemUTC());
 
     manager.updateCacheIfNecessary();
 
@@ -85,7 +89,8 @@ class CurrencyConversionManagerTest {
     FixerClient fixerClient = mock(FixerClient.class);
     CoinMarketCapClient   coinMarketCapClient   = mock(CoinMarketCapClient.class);
 
-    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD"))).thenReturn(new BigDecimal("0.999999"));
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("0.999999")));
     when(fixerClient.getConversionsForBase(eq("USD"))).thenReturn(Map.of(
         "EUR", new BigDecimal("1.000001"),
         "FJD", new BigDecimal("0.000001"),
@@ -93,7 +98,7 @@ class CurrencyConversionManagerTest {
     ));
 
     CurrencyConversionManager manager = new CurrencyConversionManager(fixerClient, coinMarketCapClient, REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        List.of("FOO"), Clock.systemUTC());
+        List.of("FOO"), mock(ScheduledExecutorService.class), Clock.systemUTC());
 
     manager.updateCacheIfNecessary();
 
@@ -114,7 +119,8 @@ class CurrencyConversionManagerTest {
     FixerClient fixerClient = mock(FixerClient.class);
     CoinMarketCapClient   coinMarketCapClient   = mock(CoinMarketCapClient.class);
 
-    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD"))).thenReturn(new BigDecimal("2.35"));
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("2.35")));
     when(fixerClient.getConversionsForBase(eq("USD"))).thenReturn(Map.of(
         "EUR", new BigDecimal("0.822876"),
         "FJD", new BigDecimal("2.0577"),
@@ -122,11 +128,12 @@ class CurrencyConversionManagerTest {
     ));
 
     CurrencyConversionManager manager = new CurrencyConversionManager(fixerClient, coinMarketCapClient, REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        List.of("FOO"), Clock.systemUTC());
+        List.of("FOO"), mock(ScheduledExecutorService.class), Clock.systemUTC());
 
     manager.updateCacheIfNecessary();
 
-    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD"))).thenReturn(new BigDecimal("3.50"));
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("3.50")));
 
     manager.updateCacheIfNecessary();
 
@@ -146,7 +153,8 @@ class CurrencyConversionManagerTest {
     FixerClient fixerClient = mock(FixerClient.class);
     CoinMarketCapClient   coinMarketCapClient   = mock(CoinMarketCapClient.class);
 
-    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD"))).thenReturn(new BigDecimal("2.35"));
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("2.35")));
     when(fixerClient.getConversionsForBase(eq("USD"))).thenReturn(Map.of(
         "EUR", new BigDecimal("0.822876"),
         "FJD", new BigDecimal("2.0577"),
@@ -154,14 +162,15 @@ class CurrencyConversionManagerTest {
     ));
 
     CurrencyConversionManager manager = new CurrencyConversionManager(fixerClient, coinMarketCapClient, REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        List.of("FOO"), Clock.systemUTC());
+        List.of("FOO"), mock(ScheduledExecutorService.class), Clock.systemUTC());
 
     manager.updateCacheIfNecessary();
 
     REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
         connection.sync().del(CurrencyConversionManager.COIN_MARKET_CAP_SHARED_CACHE_CURRENT_KEY));
 
-    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD"))).thenReturn(new BigDecimal("3.50"));
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("3.50")));
     manager.updateCacheIfNecessary();
 
     CurrencyConversionEntityList conversions = manager.getCurrencyConversions().orElseThrow();
@@ -181,7 +190,8 @@ class CurrencyConversionManagerTest {
     FixerClient fixerClient = mock(FixerClient.class);
     CoinMarketCapClient   coinMarketCapClient   = mock(CoinMarketCapClient.class);
 
-    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD"))).thenReturn(new BigDecimal("2.35"));
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("2.35")));
     when(fixerClient.getConversionsForBase(eq("USD"))).thenReturn(Map.of(
         "EUR", new BigDecimal("0.822876"),
         "FJD", new BigDecimal("2.0577"),
@@ -195,11 +205,12 @@ class CurrencyConversionManagerTest {
     when(clock.millis()).thenReturn(currentTime.toEpochMilli());
 
     CurrencyConversionManager manager = new CurrencyConversionManager(fixerClient, coinMarketCapClient, REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        List.of("FOO"), clock);
+        List.of("FOO"), mock(ScheduledExecutorService.class), clock);
 
     manager.updateCacheIfNecessary();
 
-    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD"))).thenReturn(new BigDecimal("3.50"));
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("3.50")));
     when(fixerClient.getConversionsForBase(eq("USD"))).thenReturn(Map.of(
         "EUR", new BigDecimal("0.922876"),
         "FJD", new BigDecimal("2.0577"),
@@ -223,4 +234,37 @@ class CurrencyConversionManagerTest {
     assertThat(conversions.getCurrencies().get(0).getConversions().get("FKP")).isEqualTo(new BigDecimal("1.7470981"));
   }
 
+  @Test
+  void testUnchangedRatesReuseSnapshot() throws IOException {
+    FixerClient fixerClient = mock(FixerClient.class);
+    CoinMarketCapClient coinMarketCapClient = mock(CoinMarketCapClient.class);
+
+    when(coinMarketCapClient.getSpotPrice(eq("FOO"), eq("USD")))
+        .thenReturn(CompletableFuture.completedFuture(new BigDecimal("2.35")));
+    when(fixerClient.getConversionsForBase(eq("USD"))).thenReturn(Map.of("EUR", new BigDecimal("0.822876")));
+
+    final Instant currentTime = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+    final Clock clock = mock(Clock.class);
+    when(clock.instant()).thenReturn(currentTime);
+    when(clock.millis()).thenReturn(currentTime.toEpochMilli());
+
+    CurrencyConversionManager manager = new CurrencyConversionManager(fixerClient, coinMarketCapClient, REDIS_CLUSTER_EXTENSION.getRedisCluster(),
+        List.of("FOO"), mock(ScheduledExecutorService.class), clock);
+
+    manager.updateCacheIfNecessary();
+
+    final CurrencyConversionEntityList initialConversions = manager.getCurrencyConversions().orElseThrow();
+
+    final Instant later = currentTime.plusSeconds(15);
+    when(clock.instant()).thenReturn(later);
+    when(clock.millis()).thenReturn(later.toEpochMilli());
+
+    manager.updateCacheIfNecessary();
+
+    final CurrencyConversionEntityList updatedConversions = manager.getCurrencyConversions().orElseThrow();
+
+    assertThat(updatedConversions.getCurrencies()).isSameAs(initialConversions.getCurrencies());
+    assertThat(updatedConversions.getTimestamp()).isEqualTo(later.toEpochMilli());
+  }
 }
@@ -9,6 +9,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -21,7 +22,10 @@ import com.eatthepath.pushy.apns.PushType;
 import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
 import com.eatthepath.pushy.apns.util.concurrent.PushNotificationFuture;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -213,9 +217,87 @@ class APNSenderTest {
     verifyNoMoreInteractions(apnsClient);
   }
 
+  @Test
+  void testShardByDeviceToken() {
+    final ApnsClient firstClient = mock(ApnsClient.class);
+    final ApnsClient secondClient = mock(ApnsClient.class);
+
+    final APNSender pooledApnSender =
+        new APNSender(new SynchronousExecutorService(), List.of(firstClient, secondClient), BUNDLE_ID, 10);
+
+    final PushNotificationResponse<SimpleApnsPushNotification> response = mock(PushNotificationResponse.class);
+    when(response.isAccepted()).thenReturn(true);
+
+    for (final ApnsClient client : List.of(firstClient, secondClient)) {
+      when(client.sendNotification(any(SimpleApnsPushNotification.class)))
+          .thenAnswer(
+              (Answer) invocationOnMock -> new MockPushNotificationFuture<>(invocationOnMock.getArgument(0), response));
+    }
+
+    final int clientIndex = pooledApnSender.getClientIndex(DESTINATION_DEVICE_TOKEN);
+    assertThat(pooledApnSender.getClientIndex(DESTINATION_DEVICE_TOKEN)).isEqualTo(clientIndex);
+
+    final PushNotification pushNotification = new PushNotification(DESTINATION_DEVICE_TOKEN, PushNotification.TokenType.APN,
+        PushNotification.NotificationType.NOTIFICATION, null, destinationAccount, destinationDevice, true);
+
+    assertThat(pooledApnSender.sendNotification(pushNotification).join().accepted()).isTrue();
+
+    final ApnsClient expectedClient = clientIndex == 0 ? firstClient : secondClient;
+    final ApnsClient otherClient = clientIndex == 0 ? secondClient : firstClient;
+
+    verify(expectedClient).sendNotification(any(SimpleApnsPushNotification.class));
+    verify(otherClient, never()).sendNotification(any());
+  }
+
+  @Test
+  void testMaxConcurrentStreams() {
+    final APNSender limitedApnSender =
+        new APNSender(new SynchronousExecutorService(), List.of(apnsClient), BUNDLE_ID, 1);
+
+    final PushNotificationResponse<SimpleApnsPushNotification> response = mock(PushNotificationResponse.class);
+    when(response.isAccepted()).thenReturn(true);
+
+    final List<MockPushNotificationFuture<SimpleApnsPushNotification, PushNotificationResponse<SimpleApnsPushNotification>>> sentFutures =
+        new ArrayList<>();
+
+    when(apnsClient.sendNotification(any(SimpleApnsPushNotification.class)))
+        .thenAnswer((Answer) invocationOnMock -> {
+          final MockPushNotificationFuture<SimpleApnsPushNotification, PushNotificationResponse<SimpleApnsPushNotification>> future =
+              new MockPushNotificationFuture<>(invocationOnMock.getArgument(0));
+
+          sentFutures.add(future);
+          return future;
+        });
+
+    final PushNotification pushNotification = new PushNotification(DESTINATION_DEVICE_TOKEN, PushNotification.TokenType.APN,
+        PushNotification.NotificationType.NOTIFICATION, null, destinationAccount, destinationDevice, true);
+
+    final CompletableFuture<SendPushNotificationResult> firstResult = limitedApnSender.sendNotification(pushNotification);
+    final CompletableFuture<SendPushNotificationResult> secondResult = limitedApnSender.sendNotification(pushNotification);
+
+    // The second notification should wait for the first to finish before going out
+    assertThat(sentFutures).hasSize(1);
+    assertThat(firstResult).isNotDone();
+    assertThat(secondResult).isNotDone();
+
+    sentFutures.get(0).complete(response);
+
+    assertThat(firstResult.join().accepted()).isTrue();
+    assertThat(sentFutures).hasSize(2);
+    assertThat(secondResult).isNotDone();
+
+    sentFutures.get(1).complete(response);
+
+    assertThat(secondResult.join().accepted()).isTrue();
+  }
+
   private static class MockPushNotificationFuture<P extends ApnsPushNotification, V> extends
       PushNotificationFuture<P, V> {
 
+    MockPushNotificationFuture(final P pushNotification) {
+      super(pushNotification);
+    }
+
     MockPushNotificationFuture(final P pushNotification, final V response) {
       super(pushNotification);
       complete(response);
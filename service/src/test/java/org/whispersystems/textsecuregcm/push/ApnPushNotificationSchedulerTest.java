@@ -5,17 +5,24 @@
 
 package org.whispersystems.textsecuregcm.push;
 
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import io.lettuce.core.RedisException;
+import io.lettuce.core.ScoredValue;
 import io.lettuce.core.cluster.SlotHash;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -135,6 +142,96 @@ class ApnPushNotificationSchedulerTest {
     assertEquals(0, worker.processRecurringVoipNotifications(slot));
   }
 
+  @Test
+  void testGetPendingDestinationsWithScores() throws ExecutionException, InterruptedException {
+    final String endpoint = ApnPushNotificationScheduler.getEndpointKey(account, device);
+    final long currentTimeMillis = System.currentTimeMillis();
+
+    clock.pin(Instant.ofEpochMilli(currentTimeMillis - 30_000));
+    apnPushNotificationScheduler.scheduleRecurringVoipNotification(account, device).toCompletableFuture().get();
+
+    clock.pin(Instant.ofEpochMilli(currentTimeMillis));
+    final List<ScoredValue<String>> pendingDestinations =
+        apnPushNotificationScheduler.getPendingDestinationsWithScoresForRecurringVoipNotifications(
+            SlotHash.getSlot(endpoint), 2);
+
+    assertEquals(1, pendingDestinations.size());
+    assertEquals(ACCOUNT_UUID + ":" + DEVICE_ID, pendingDestinations.get(0).getValue());
+    assertEquals(currentTimeMillis - 30_000 + 15_000, (long) pendingDestinations.get(0).getScore());
+  }
+
+  @Test
+  void testShardedProcessRecurringVoipNotifications() throws ExecutionException, InterruptedException {
+    final ApnPushNotificationScheduler.ShardedNotificationWorker worker =
+        apnPushNotificationScheduler.new ShardedNotificationWorker();
+
+    final long currentTimeMillis = System.currentTimeMillis();
+
+    clock.pin(Instant.ofEpochMilli(currentTimeMillis - 30_000));
+    apnPushNotificationScheduler.scheduleRecurringVoipNotification(account, device).toCompletableFuture().get();
+
+    clock.pin(Instant.ofEpochMilli(currentTimeMillis));
+
+    final int slot = SlotHash.getSlot(ApnPushNotificationScheduler.getEndpointKey(account, device));
+
+    assertEquals(1, worker.processRecurringVoipNotifications(slot));
+
+    final ArgumentCaptor<PushNotification> notificationCaptor = ArgumentCaptor.forClass(PushNotification.class);
+    verify(apnSender).sendNotification(notificationCaptor.capture());
+
+    final PushNotification pushNotification = notificationCaptor.getValue();
+
+    assertEquals(VOIP_APN_ID, pushNotification.deviceToken());
+    assertEquals(account, pushNotification.destination());
+    assertEquals(device, pushNotification.destinationDevice());
+
+    assertEquals(0, worker.processRecurringVoipNotifications(slot));
+  }
+
+  @Test
+  void testShardedProcessScheduledBackgroundNotifications() throws ExecutionException, InterruptedException {
+    final ApnPushNotificationScheduler.ShardedNotificationWorker worker =
+        apnPushNotificationScheduler.new ShardedNotificationWorker();
+
+    final Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+    clock.pin(now);
+    apnPushNotificationScheduler.scheduleBackgroundNotification(account, device).toCompletableFuture().get();
+
+    final int slot =
+        SlotHash.getSlot(ApnPushNotificationScheduler.getPendingBackgroundNotificationQueueKey(account, device));
+
+    assertEquals(1, worker.processScheduledBackgroundNotifications(slot));
+
+    final ArgumentCaptor<PushNotification> notificationCaptor = ArgumentCaptor.forClass(PushNotification.class);
+    verify(apnSender).sendNotification(notificationCaptor.capture());
+
+    final PushNotification pushNotification = notificationCaptor.getValue();
+
+    assertEquals(PushNotification.TokenType.APN, pushNotification.tokenType());
+    assertEquals(APN_ID, pushNotification.deviceToken());
+    assertFalse(pushNotification.urgent());
+
+    assertEquals(Optional.of(now), apnPushNotificationScheduler.getLastBackgroundNotificationTimestamp(account, device));
+    assertEquals(0, worker.processScheduledBackgroundNotifications(slot));
+  }
+
+  @Test
+  void testShardedProcessShardSlotFailure() {
+    final ApnPushNotificationScheduler.ShardedNotificationWorker worker =
+        spy(apnPushNotificationScheduler.new ShardedNotificationWorker());
+
+    doThrow(new RedisException("OH NO")).when(worker).processRecurringVoipNotifications(0);
+
+    final int slotsPerShard = ApnPushNotificationScheduler.ShardedNotificationWorker.SLOTS_PER_SHARD;
+
+    assertDoesNotThrow(() -> worker.processShard(slotsPerShard));
+
+    // A failure in the first slot shouldn't keep the rest of the shard from being processed
+    verify(worker, times(slotsPerShard)).processRecurringVoipNotifications(anyInt());
+    verify(worker, times(slotsPerShard - 1)).processScheduledBackgroundNotifications(anyInt());
+  }
+
   @Test
   void testScheduleBackgroundNotificationWithNoRecentNotification() throws ExecutionException, InterruptedException {
     final Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
@@ -15,7 +15,9 @@ import static org.mockito.Mockito.mock;
 import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
 import io.lettuce.core.cluster.event.ClusterTopologyChangedEvent;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -30,6 +32,7 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
+import org.whispersystems.textsecuregcm.util.Pair;
 
 class ClientPresenceManagerTest {
 
@@ -83,6 +86,46 @@ class ClientPresenceManagerTest {
     assertTrue(clientPresenceManager.isPresent(accountUuid, deviceId));
   }
 
+  @Test
+  void testIsPresentBatch() {
+    final UUID accountUuid = UUID.randomUUID();
+    final UUID otherAccountUuid = UUID.randomUUID();
+
+    final Pair<UUID, Long> presentDevice = new Pair<>(accountUuid, 1L);
+    final Pair<UUID, Long> absentDevice = new Pair<>(accountUuid, 2L);
+    final Pair<UUID, Long> otherAccountPresentDevice = new Pair<>(otherAccountUuid, 1L);
+    final Pair<UUID, Long> remotelyPresentDevice = new Pair<>(otherAccountUuid, 2L);
+
+    assertEquals(Map.of(), clientPresenceManager.isPresent(List.of()));
+
+    clientPresenceManager.setPresent(presentDevice.first(), presentDevice.second(), NO_OP);
+    clientPresenceManager.setPresent(otherAccountPresentDevice.first(), otherAccountPresentDevice.second(), NO_OP);
+
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> connection.sync()
+        .set(ClientPresenceManager.getPresenceKey(remotelyPresentDevice.first(), remotelyPresentDevice.second()),
+            "other-manager"));
+
+    assertEquals(Map.of(presentDevice, true,
+            absentDevice, false,
+            otherAccountPresentDevice, true,
+            remotelyPresentDevice, true),
+        clientPresenceManager.isPresentAsync(
+            List.of(presentDevice, absentDevice, otherAccountPresentDevice, remotelyPresentDevice)).join());
+  }
+
+  @Test
+  void testIsPresentLocalShortCircuit() {
+    final UUID accountUuid = UUID.randomUUID();
+    final long deviceId = 1;
+
+    clientPresenceManager.setPresent(accountUuid, deviceId, NO_OP);
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> connection.sync().flushall());
+
+    assertTrue(clientPresenceManager.isPresent(accountUuid, deviceId));
+    assertEquals(Map.of(new Pair<>(accountUuid, deviceId), true),
+        clientPresenceManager.isPresent(List.of(new Pair<>(accountUuid, deviceId))));
+  }
+
   @Test
   void testIsLocallyPresent() {
     final UUID accountUuid = UUID.randomUUID();
@@ -204,6 +247,28 @@ class ClientPresenceManagerTest {
             .sismember(ClientPresenceManager.MANAGER_SET_KEY, missingPeerId)));
   }
 
+  @Test
+  void testPruneMissingPeersInBatches() {
+    final String missingPeerId = UUID.randomUUID().toString();
+
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+        connection.sync().sadd(ClientPresenceManager.MANAGER_SET_KEY, missingPeerId));
+
+    final List<String> presenceKeys = new ArrayList<>();
+
+    for (int i = 0; i < ClientPresenceManager.PRUNE_CLIENTS_BATCH_SIZE * 2 + 1; i++) {
+      presenceKeys.add(addClientPresence(missingPeerId));
+    }
+
+    clientPresenceManager.pruneMissingPeers();
+
+    assertEquals(0, (long) REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(
+        connection -> connection.sync().exists(ClientPresenceManager.getConnectedClientSetKey(missingPeerId))));
+
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+        presenceKeys.forEach(presenceKey -> assertEquals(0, connection.sync().exists(presenceKey))));
+  }
+
   @Test
   void testInitialPresenceExpiration() {
     final UUID accountUuid = UUID.randomUUID();
@@ -246,12 +311,42 @@ class ClientPresenceManagerTest {
     }
   }
 
+  @Test
+  void testRenewPresences() {
+    final List<String> presenceKeys = new ArrayList<>();
+
+    for (int i = 0; i < 32; i++) {
+      final UUID accountUuid = UUID.randomUUID();
+      clientPresenceManager.setPresent(accountUuid, 1, NO_OP);
+      presenceKeys.add(ClientPresenceManager.getPresenceKey(accountUuid, 1));
+    }
+
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+        presenceKeys.forEach(presenceKey -> connection.sync().persist(presenceKey)));
+
+    final int segment = ClientPresenceManager.getRenewalSegment(presenceKeys.get(0));
+    clientPresenceManager.renewPresences(segment);
+
+    for (final String presenceKey : presenceKeys) {
+      final long ttl = REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
+          connection.sync().ttl(presenceKey));
+
+      if (ClientPresenceManager.getRenewalSegment(presenceKey) == segment) {
+        assertTrue(ttl > 0);
+      } else {
+        assertEquals(-1, ttl);
+      }
+    }
+  }
+
   @Test
   void testExpiredPresence() {
     final UUID accountUuid = UUID.randomUUID();
     final long deviceId = 1;
 
-    clientPresenceManager.setPresent(accountUuid, deviceId, NO_OP);
+    // Clients connected to this server are always considered present, so simulate a client connected elsewhere
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+        connection.sync().set(ClientPresenceManager.getPresenceKey(accountUuid, deviceId), "other-manager"));
 
     assertTrue(clientPresenceManager.isPresent(accountUuid, deviceId));
 
@@ -262,13 +357,15 @@ class ClientPresenceManagerTest {
     assertFalse(clientPresenceManager.isPresent(accountUuid, deviceId));
   }
 
-  private void addClientPresence(final String managerId) {
+  private String addClientPresence(final String managerId) {
     final String clientPresenceKey = ClientPresenceManager.getPresenceKey(UUID.randomUUID(), 7);
 
     REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> {
       connection.sync().set(clientPresenceKey, managerId);
       connection.sync().sadd(ClientPresenceManager.getConnectedClientSetKey(managerId), clientPresenceKey);
     });
+
+    return clientPresenceKey;
   }
 
   @Test
@@ -20,6 +20,8 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
@@ -29,6 +31,7 @@ import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import org.whispersystems.textsecuregcm.util.Pair;
 
 class MessageSenderTest {
 
@@ -142,6 +145,113 @@ class MessageSenderTest {
     verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
   }
 
+  @Test
+  void testSendMessages() {
+    final Device otherDevice = mock(Device.class);
+    final Device unregisteredDevice = mock(Device.class);
+    final MessageProtos.Envelope otherMessage = generateRandomMessage();
+    final MessageProtos.Envelope unregisteredDeviceMessage = generateRandomMessage();
+
+    when(device.getGcmId()).thenReturn("gcm-id");
+    when(otherDevice.getId()).thenReturn(DEVICE_ID + 1);
+    when(otherDevice.getApnId()).thenReturn("apn-id");
+    when(unregisteredDevice.getId()).thenReturn(DEVICE_ID + 2);
+    when(unregisteredDevice.getApnId()).thenReturn("apn-id");
+
+    when(clientPresenceManager.isPresent(any())).thenReturn(Map.of(
+        new Pair<>(ACCOUNT_UUID, DEVICE_ID), true,
+        new Pair<>(ACCOUNT_UUID, DEVICE_ID + 1), false,
+        new Pair<>(ACCOUNT_UUID, DEVICE_ID + 2), false));
+
+    assertDoesNotThrow(() -> doThrow(NotPushRegisteredException.class)
+        .when(pushNotificationManager).sendNewMessageNotification(account, DEVICE_ID + 2, unregisteredDeviceMessage.getUrgent()));
+
+    final List<Pair<Device, MessageProtos.Envelope>> messages = List.of(
+        new Pair<>(device, message),
+        new Pair<>(otherDevice, otherMessage),
+        new Pair<>(unregisteredDevice, unregisteredDeviceMessage));
+
+    assertEquals(List.of(unregisteredDevice), messageSender.sendMessages(account, messages, false));
+
+    verify(clientPresenceManager).isPresent(any());
+    verify(clientPresenceManager, never()).isPresent(any(), anyLong());
+
+    verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
+    verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID + 1, otherMessage);
+    verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID + 2, unregisteredDeviceMessage);
+
+    assertDoesNotThrow(() -> {
+      verify(pushNotificationManager, never()).sendNewMessageNotification(account, DEVICE_ID, message.getUrgent());
+      verify(pushNotificationManager).sendNewMessageNotification(account, DEVICE_ID + 1, otherMessage.getUrgent());
+    });
+  }
+
+  @Test
+  void testSendMessagesDuplicateDevice() {
+    final MessageProtos.Envelope otherMessage = generateRandomMessage();
+
+    when(device.getGcmId()).thenReturn("gcm-id");
+    when(clientPresenceManager.isPresent(any())).thenReturn(Map.of(new Pair<>(ACCOUNT_UUID, DEVICE_ID), false));
+
+    assertEquals(List.of(),
+        messageSender.sendMessages(account, List.of(new Pair<>(device, message), new Pair<>(device, otherMessage)),
+            false));
+
+    verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
+    verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, otherMessage);
+  }
+
+  @Test
+  void testSendMessagesPrimaryNotPushRegistered() {
+    final Device otherDevice = mock(Device.class);
+    final MessageProtos.Envelope otherMessage = generateRandomMessage();
+
+    when(device.isMaster()).thenReturn(true);
+    when(device.getGcmId()).thenReturn("");
+    when(otherDevice.getId()).thenReturn(DEVICE_ID + 1);
+    when(otherDevice.getApnId()).thenReturn("apn-id");
+
+    when(clientPresenceManager.isPresent(any())).thenReturn(Map.of(
+        new Pair<>(ACCOUNT_UUID, DEVICE_ID), false,
+        new Pair<>(ACCOUNT_UUID, DEVICE_ID + 1), false));
+
+    assertDoesNotThrow(() -> doThrow(NotPushRegisteredException.class)
+        .when(pushNotificationManager).sendNewMessageNotification(account, DEVICE_ID, message.getUrgent()));
+
+    assertEquals(List.of(device),
+        messageSender.sendMessages(account, List.of(new Pair<>(device, message), new Pair<>(otherDevice, otherMessage)),
+            false));
+
+    verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
+    verify(messagesManager, never()).insert(ACCOUNT_UUID, DEVICE_ID + 1, otherMessage);
+  }
+
+  @Test
+  void testSendOnlineMessages() {
+    final Device otherDevice = mock(Device.class);
+
+    when(device.getGcmId()).thenReturn("gcm-id");
+    when(otherDevice.getId()).thenReturn(DEVICE_ID + 1);
+    when(otherDevice.getGcmId()).thenReturn("gcm-id");
+
+    when(clientPresenceManager.isPresent(any())).thenReturn(Map.of(
+        new Pair<>(ACCOUNT_UUID, DEVICE_ID), true,
+        new Pair<>(ACCOUNT_UUID, DEVICE_ID + 1), false));
+
+    assertEquals(List.of(),
+        messageSender.sendMessages(account,
+            List.of(new Pair<>(device, message), new Pair<>(otherDevice, generateRandomMessage())), true));
+
+    final ArgumentCaptor<MessageProtos.Envelope> envelopeArgumentCaptor = ArgumentCaptor.forClass(
+        MessageProtos.Envelope.class);
+
+    verify(messagesManager).insert(eq(ACCOUNT_UUID), eq(DEVICE_ID), envelopeArgumentCaptor.capture());
+    verify(messagesManager, never()).insert(eq(ACCOUNT_UUID), eq(DEVICE_ID + 1), any());
+
+    assertTrue(envelopeArgumentCaptor.getValue().getEphemeral());
+    verifyNoInteractions(pushNotificationManager);
+  }
+
   private MessageProtos.Envelope generateRandomMessage() {
     return MessageProtos.Envelope.newBuilder()
         .setTimestamp(System.currentTimeMillis())
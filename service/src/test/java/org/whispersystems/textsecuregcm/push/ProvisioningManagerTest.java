@@ -12,8 +12,11 @@ import org.whispersystems.textsecuregcm.storage.PubSubProtos;
 import org.whispersystems.textsecuregcm.websocket.ProvisioningAddress;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -51,8 +54,8 @@ class ProvisioningManagerTest {
 
     @SuppressWarnings("unchecked") final Consumer<PubSubProtos.PubSubMessage> subscribedConsumer = mock(Consumer.class);
 
-    provisioningManager.addListener(address, subscribedConsumer);
-    provisioningManager.sendProvisioningMessage(address, content);
+    provisioningManager.addListener(address, subscribedConsumer).join();
+    assertTrue(provisioningManager.sendProvisioningMessage(address, content).join());
 
     final ArgumentCaptor<PubSubProtos.PubSubMessage> messageCaptor =
         ArgumentCaptor.forClass(PubSubProtos.PubSubMessage.class);
@@ -72,11 +75,37 @@ class ProvisioningManagerTest {
 
     @SuppressWarnings("unchecked") final Consumer<PubSubProtos.PubSubMessage> subscribedConsumer = mock(Consumer.class);
 
-    provisioningManager.addListener(address, subscribedConsumer);
+    provisioningManager.addListener(address, subscribedConsumer).join();
     provisioningManager.removeListener(address);
-    provisioningManager.sendProvisioningMessage(address, content);
+    provisioningManager.sendProvisioningMessage(address, content).join();
 
     // Make sure that we give the message enough time to show up (if it was going to) before declaring victory
     verify(subscribedConsumer, after(PUBSUB_TIMEOUT_MILLIS).never()).accept(any());
   }
+
+  @Test
+  void addListenersConcurrently() {
+    final List<ProvisioningAddress> addresses = IntStream.range(0, 100)
+        .mapToObj(i -> new ProvisioningAddress("address-" + i, 0))
+        .toList();
+
+    @SuppressWarnings("unchecked") final Consumer<PubSubProtos.PubSubMessage> subscribedConsumer = mock(Consumer.class);
+
+    CompletableFuture.allOf(addresses.stream()
+            .map(address -> provisioningManager.addListener(address, subscribedConsumer))
+            .toArray(CompletableFuture[]::new))
+        .join();
+
+    for (final ProvisioningAddress address : addresses) {
+      assertTrue(provisioningManager.sendProvisioningMessage(address, new byte[16]).join());
+    }
+
+    verify(subscribedConsumer, timeout(PUBSUB_TIMEOUT_MILLIS).times(addresses.size())).accept(any());
+
+    addresses.forEach(provisioningManager::removeListener);
+
+    // Unsubscribing is asynchronous, but should not take long
+    verify(subscribedConsumer, after(PUBSUB_TIMEOUT_MILLIS).times(addresses.size())).accept(any());
+    addresses.forEach(address -> assertFalse(provisioningManager.sendProvisioningMessage(address, new byte[16]).join()));
+  }
 }
@@ -5,9 +5,13 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -15,6 +19,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
@@ -34,7 +41,9 @@ class AccountDatabaseCrawlerIntegrationTest {
   private AccountsManager accountsManager;
   private AccountDatabaseCrawlerListener listener;
 
+  private AccountDatabaseCrawlerCache crawlerCache;
   private AccountDatabaseCrawler accountDatabaseCrawler;
+  private ExecutorService segmentExecutor;
 
   private static final int CHUNK_SIZE = 1;
 
@@ -56,10 +65,24 @@ class AccountDatabaseCrawlerIntegrationTest {
         .thenReturn(new AccountCrawlChunk(List.of(secondAccount), SECOND_UUID))
         .thenReturn(new AccountCrawlChunk(Collections.emptyList(), null));
 
-    final AccountDatabaseCrawlerCache crawlerCache = new AccountDatabaseCrawlerCache(
-        REDIS_CLUSTER_EXTENSION.getRedisCluster(), "test");
+    // segment 0 holds the first account and segment 1 holds the second
+    when(accountsManager.getAllFromDynamo(eq(0), eq(2), isNull(), eq(CHUNK_SIZE)))
+        .thenReturn(new AccountCrawlChunk(List.of(firstAccount), FIRST_UUID));
+    when(accountsManager.getAllFromDynamo(eq(1), eq(2), isNull(), eq(CHUNK_SIZE)))
+        .thenReturn(new AccountCrawlChunk(List.of(secondAccount), SECOND_UUID));
+    when(accountsManager.getAllFromDynamo(anyInt(), eq(2), any(UUID.class), eq(CHUNK_SIZE)))
+        .thenReturn(new AccountCrawlChunk(Collections.emptyList(), null));
+
+    crawlerCache = new AccountDatabaseCrawlerCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(), "test");
     accountDatabaseCrawler = new AccountDatabaseCrawler("test", accountsManager, crawlerCache, List.of(listener),
         CHUNK_SIZE);
+
+    segmentExecutor = Executors.newFixedThreadPool(2);
+  }
+
+  @AfterEach
+  void tearDown() {
+    segmentExecutor.shutdown();
   }
 
   @Test
@@ -75,4 +98,39 @@ class AccountDatabaseCrawlerIntegrationTest {
     verify(listener).timeAndProcessCrawlChunk(Optional.of(FIRST_UUID), List.of(secondAccount));
     verify(listener).onCrawlEnd();
   }
+
+  @Test
+  void testCrawlAllSegments() {
+    new AccountDatabaseCrawler("test", accountsManager, crawlerCache, List.of(listener), CHUNK_SIZE, 2,
+        segmentExecutor).crawlAllAccounts();
+
+    verify(accountsManager).getAllFromDynamo(0, 2, null, CHUNK_SIZE);
+    verify(accountsManager).getAllFromDynamo(0, 2, FIRST_UUID, CHUNK_SIZE);
+    verify(accountsManager).getAllFromDynamo(1, 2, null, CHUNK_SIZE);
+    verify(accountsManager).getAllFromDynamo(1, 2, SECOND_UUID, CHUNK_SIZE);
+
+    verify(listener).onCrawlStart();
+    verify(listener).timeAndProcessCrawlChunk(Optional.empty(), List.of(firstAccount));
+    verify(listener).timeAndProcessCrawlChunk(Optional.empty(), List.of(secondAccount));
+    verify(listener).onCrawlEnd();
+
+    assertFalse(crawlerCache.hasSegmentProgress(2));
+  }
+
+  @Test
+  void testResumeSegments() {
+    crawlerCache.setSegmentFinished(1, 2);
+    crawlerCache.setLastUuid(0, 2, FIRST_UUID);
+
+    new AccountDatabaseCrawler("test", accountsManager, crawlerCache, List.of(listener), CHUNK_SIZE, 2,
+        segmentExecutor).crawlAllAccounts();
+
+    verify(accountsManager, never()).getAllFromDynamo(eq(0), eq(2), isNull(), anyInt());
+    verify(accountsManager).getAllFromDynamo(0, 2, FIRST_UUID, CHUNK_SIZE);
+    verify(accountsManager, never()).getAllFromDynamo(eq(1), eq(2), any(), anyInt());
+
+    verify(listener, never()).onCrawlStart();
+    verify(listener).timeAndProcessCrawlChunk(Optional.of(FIRST_UUID), Collections.emptyList());
+    verify(listener).onCrawlEnd();
+  }
 }
@@ -78,9 +78,9 @@ class AccountsManagerChangeNumberIntegrationTest {
           Tables.NUMBERS.tableName(),
           Tables.PNI_ASSIGNMENTS.tableName(),
           Tables.USERNAMES.tableName(),
-          SCAN_PAGE_SIZE);
+          SCAN_PAGE_SIZE, 0);
 
-      deletedAccounts = new DeletedAccounts(DYNAMO_DB_EXTENSION.getDynamoDbClient(),
+      deletedAccounts = new DeletedAccounts(DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(),
           Tables.DELETED_ACCOUNTS.tableName());
 
       final AccountLockManager accountLockManager = new AccountLockManager(DYNAMO_DB_EXTENSION.getDynamoDbClient(),
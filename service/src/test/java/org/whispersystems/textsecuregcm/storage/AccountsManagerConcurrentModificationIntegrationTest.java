@@ -87,7 +87,7 @@ class AccountsManagerConcurrentModificationIntegrationTest {
         Tables.NUMBERS.tableName(),
         Tables.PNI_ASSIGNMENTS.tableName(),
         Tables.USERNAMES.tableName(),
-        SCAN_PAGE_SIZE);
+        SCAN_PAGE_SIZE, 0);
 
     {
       //noinspection unchecked
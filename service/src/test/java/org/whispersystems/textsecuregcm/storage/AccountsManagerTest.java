@@ -7,6 +7,7 @@ package org.whispersystems.textsecuregcm.storage;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -28,7 +29,11 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import io.lettuce.core.protocol.AsyncCommand;
+import io.lettuce.core.protocol.RedisCommand;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
@@ -86,6 +91,7 @@ class AccountsManagerTest {
   private Map<String, UUID> phoneNumberIdentifiersByE164;
 
   private RedisAdvancedClusterCommands<String, String> commands;
+  private RedisAdvancedClusterAsyncCommands<String, String> asyncCommands;
   private AccountsManager accountsManager;
 
   private static final Answer<?> ACCOUNT_UPDATE_ANSWER = (answer) -> {
@@ -108,6 +114,9 @@ class AccountsManagerTest {
     //noinspection unchecked
     commands = mock(RedisAdvancedClusterCommands.class);
 
+    //noinspection unchecked
+    asyncCommands = mock(RedisAdvancedClusterAsyncCommands.class);
+
     doAnswer((Answer<Void>) invocation -> {
       final Account account = invocation.getArgument(0, Account.class);
       final String number = invocation.getArgument(1, String.class);
@@ -162,7 +171,7 @@ class AccountsManagerTest {
     accountsManager = new AccountsManager(
         accounts,
         phoneNumberIdentifiers,
-        RedisClusterHelper.builder().stringCommands(commands).build(),
+        RedisClusterHelper.builder().stringCommands(commands).stringAsyncCommands(asyncCommands).build(),
         accountLockManager,
         deletedAccounts,
         keysManager,
@@ -493,6 +502,95 @@ class AccountsManagerTest {
     verifyNoMoreInteractions(accounts);
   }
 
+  @Test
+  void testUpdateAsync_optimisticLockingFailure() {
+    final UUID uuid = UUID.randomUUID();
+    final UUID pni = UUID.randomUUID();
+    final Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[16]);
+
+    when(accounts.getByAccountIdentifierAsync(uuid)).thenReturn(CompletableFuture.completedFuture(
+        Optional.of(AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[16]))));
+
+    when(accounts.updateAsync(any()))
+        .thenReturn(CompletableFuture.failedFuture(new ContestedOptimisticLockException()))
+        .thenAnswer(invocation -> {
+          final Account updated = invocation.getArgument(0);
+          updated.setVersion(updated.getVersion() + 1);
+          return CompletableFuture.completedFuture(null);
+        });
+
+    final AsyncCommand<?, ?, ?> deleteSuccess = new AsyncCommand<>(mock(RedisCommand.class));
+    deleteSuccess.complete();
+
+    final AsyncCommand<?, ?, ?> setSuccess = new AsyncCommand<>(mock(RedisCommand.class));
+    setSuccess.complete();
+
+    //noinspection unchecked
+    when(asyncCommands.del(any(String[].class))).thenReturn((RedisFuture<Long>) deleteSuccess);
+    //noinspection unchecked
+    when(asyncCommands.setex(anyString(), anyLong(), anyString())).thenReturn((RedisFuture<String>) setSuccess);
+
+    final IdentityKey identityKey = new IdentityKey(Curve.generateKeyPair().getPublicKey());
+
+    final Account updatedAccount = accountsManager.updateAsync(account, a -> a.setIdentityKey(identityKey)).join();
+
+    assertEquals(1, updatedAccount.getVersion());
+    assertEquals(identityKey, updatedAccount.getIdentityKey());
+
+    verify(accounts, times(1)).getByAccountIdentifierAsync(uuid);
+    verify(accounts, times(2)).updateAsync(any());
+    verifyNoMoreInteractions(accounts);
+  }
+
+  @Test
+  void testUpdateDevices() {
+    final UUID contestedUuid = UUID.randomUUID();
+    final UUID unchangedUuid = UUID.randomUUID();
+
+    final Account contestedAccount = AccountsHelper.generateTestAccount("+14152222222", contestedUuid,
+        UUID.randomUUID(), List.of(generateTestDevice(0)), new byte[16]);
+
+    final Device unchangedDevice = generateTestDevice(0);
+    unchangedDevice.setFetchesMessages(false);
+
+    final Account unchangedAccount = AccountsHelper.generateTestAccount("+14153333333", unchangedUuid,
+        UUID.randomUUID(), List.of(unchangedDevice), new byte[16]);
+
+    final Account refreshedAccount = AccountsHelper.generateTestAccount("+14152222222", contestedUuid,
+        contestedAccount.getPhoneNumberIdentifier(), List.of(generateTestDevice(0)), new byte[16]);
+
+    when(accounts.updateAsync(any()))
+        .thenReturn(CompletableFuture.failedFuture(new ContestedOptimisticLockException()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    when(accounts.getByAccountIdentifier(contestedUuid)).thenReturn(Optional.of(refreshedAccount));
+
+    final AsyncCommand<?, ?, ?> deleteSuccess = new AsyncCommand<>(mock(RedisCommand.class));
+    deleteSuccess.complete();
+
+    //noinspection unchecked
+    when(asyncCommands.del(any(String[].class))).thenReturn((RedisFuture<Long>) deleteSuccess);
+
+    final long updatedAccounts = accountsManager.updateDevices(List.of(contestedAccount, unchangedAccount), device -> {
+      if (!device.getFetchesMessages()) {
+        return false;
+      }
+
+      device.setFetchesMessages(false);
+      return true;
+    }, 2).join();
+
+    assertEquals(1, updatedAccounts);
+    assertFalse(refreshedAccount.getDevice(Device.MASTER_ID).orElseThrow().getFetchesMessages());
+    assertTrue(contestedAccount.getDevice(Device.MASTER_ID).orElseThrow().getFetchesMessages(),
+        "Crawled accounts should not be modified");
+
+    verify(accounts, times(2)).updateAsync(argThat(account -> account.getUuid().equals(contestedUuid)));
+    verify(accounts).getByAccountIdentifier(contestedUuid);
+    verify(accounts, never()).updateAsync(argThat(account -> account.getUuid().equals(unchangedUuid)));
+    verify(asyncCommands).del(any(String[].class));
+  }
+
   @Test
   void testUpdate_dynamoOptimisticLockingFailureDuringCreate() {
     UUID uuid = UUID.randomUUID();
@@ -90,7 +90,7 @@ class AccountsManagerUsernameIntegrationTest {
         Tables.NUMBERS.tableName(),
         Tables.PNI_ASSIGNMENTS.tableName(),
         Tables.USERNAMES.tableName(),
-        SCAN_PAGE_SIZE));
+        SCAN_PAGE_SIZE, 0));
 
     final AccountLockManager accountLockManager = mock(AccountLockManager.class);
 
@@ -11,6 +11,7 @@ import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -28,10 +29,12 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
@@ -433,7 +436,7 @@ class AccountsTest {
     final DynamoDbAsyncClient dynamoDbAsyncClient = mock(DynamoDbAsyncClient.class);
     accounts = new Accounts(mock(DynamoDbClient.class),
         dynamoDbAsyncClient, Tables.ACCOUNTS.tableName(),
-        Tables.NUMBERS.tableName(), Tables.PNI_ASSIGNMENTS.tableName(), Tables.USERNAMES.tableName(), SCAN_PAGE_SIZE);
+        Tables.NUMBERS.tableName(), Tables.PNI_ASSIGNMENTS.tableName(), Tables.USERNAMES.tableName(), SCAN_PAGE_SIZE, 0);
 
     Exception e = TransactionConflictException.builder().build();
     e = wrapException ? new CompletionException(e) : e;
@@ -513,6 +516,58 @@ class AccountsTest {
         retrievedAccounts.stream().map(Account::getUuid).collect(Collectors.toSet()));
   }
 
+  @Test
+  void testGetAllFromSegment() {
+    final Set<UUID> expectedAccountIdentifiers = new HashSet<>();
+
+    for (int i = 1; i <= 100; i++) {
+      final Account account = generateAccount("+1" + String.format("%03d", i), UUID.randomUUID(), UUID.randomUUID());
+      expectedAccountIdentifiers.add(account.getUuid());
+      accounts.create(account);
+    }
+
+    final Set<UUID> retrievedAccountIdentifiers = new HashSet<>();
+
+    for (int segment = 0; segment < 3; segment++) {
+      UUID from = null;
+      AccountCrawlChunk chunk;
+
+      do {
+        chunk = accounts.getAllFromSegment(segment, 3, from, 7);
+        chunk.getAccounts().forEach(account -> assertTrue(retrievedAccountIdentifiers.add(account.getUuid())));
+        from = chunk.getLastUuid().orElse(null);
+      } while (!chunk.getAccounts().isEmpty());
+    }
+
+    assertEquals(expectedAccountIdentifiers, retrievedAccountIdentifiers);
+  }
+
+  @Test
+  void testGetAllPages() {
+    final Set<UUID> expectedAccountIdentifiers = new HashSet<>();
+
+    for (int i = 1; i <= 100; i++) {
+      final Account account = generateAccount("+1" + String.format("%03d", i), UUID.randomUUID(), UUID.randomUUID());
+      expectedAccountIdentifiers.add(account.getUuid());
+      accounts.create(account);
+    }
+
+    final Set<UUID> retrievedAccountIdentifiers = new HashSet<>();
+
+    for (int segment = 0; segment < 3; segment++) {
+      final List<AccountCrawlChunk> pages = accounts.getAllPages(segment, 3, null).collectList().block();
+
+      assertNotNull(pages);
+      assertFalse(pages.isEmpty());
+      assertTrue(pages.get(pages.size() - 1).getLastUuid().isEmpty());
+
+      pages.forEach(page ->
+          page.getAccounts().forEach(account -> assertTrue(retrievedAccountIdentifiers.add(account.getUuid()))));
+    }
+
+    assertEquals(expectedAccountIdentifiers, retrievedAccountIdentifiers);
+  }
+
   @Test
   void testDelete() {
     final Device deletedDevice = generateDevice(1);
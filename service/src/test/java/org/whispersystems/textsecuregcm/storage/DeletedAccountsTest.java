@@ -22,7 +22,8 @@ class DeletedAccountsTest {
 
   @BeforeEach
   void setUp() {
-    deletedAccounts = new DeletedAccounts(DYNAMO_DB_EXTENSION.getDynamoDbClient(), Tables.DELETED_ACCOUNTS.tableName());
+    deletedAccounts = new DeletedAccounts(DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(),
+        Tables.DELETED_ACCOUNTS.tableName());
   }
 
   @Test
@@ -10,7 +10,6 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -19,12 +18,9 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.protobuf.ByteString;
-import io.lettuce.core.RedisFuture;
 import io.lettuce.core.cluster.SlotHash;
 import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.api.reactive.RedisAdvancedClusterReactiveCommands;
-import io.lettuce.core.protocol.AsyncCommand;
-import io.lettuce.core.protocol.RedisCommand;
 import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
@@ -298,7 +294,7 @@ class MessagesCacheTest {
             .get(5, TimeUnit.SECONDS);
 
         final List<MessageProtos.Envelope> messages = messagesCache.getAllMessages(DESTINATION_UUID,
-                DESTINATION_DEVICE_ID)
+                DESTINATION_DEVICE_ID, cacheClock.millis() - MessagesCache.MAX_EPHEMERAL_MESSAGE_DELAY.toMillis())
             .collectList()
             .toFuture().get(5, TimeUnit.SECONDS);
 
@@ -306,6 +302,36 @@ class MessagesCacheTest {
       }
     }
 
+    @Test
+    void testGetAllMessagesDiscardsStaleEphemeralMessages() throws Exception {
+      final UUID staleEphemeralMessageGuid = UUID.randomUUID();
+      final MessageProtos.Envelope staleEphemeralMessage = generateRandomMessage(staleEphemeralMessageGuid, true)
+          .toBuilder().setEphemeral(true).build();
+      messagesCache.insert(staleEphemeralMessageGuid, DESTINATION_UUID, DESTINATION_DEVICE_ID, staleEphemeralMessage);
+
+      final UUID messageGuid = UUID.randomUUID();
+      final MessageProtos.Envelope message = generateRandomMessage(messageGuid, true);
+      messagesCache.insert(messageGuid, DESTINATION_UUID, DESTINATION_DEVICE_ID, message);
+
+      final UUID freshEphemeralMessageGuid = UUID.randomUUID();
+      final MessageProtos.Envelope freshEphemeralMessage = generateRandomMessage(freshEphemeralMessageGuid, true)
+          .toBuilder().setEphemeral(true).build();
+      messagesCache.insert(freshEphemeralMessageGuid, DESTINATION_UUID, DESTINATION_DEVICE_ID, freshEphemeralMessage);
+
+      assertEquals(List.of(message, freshEphemeralMessage),
+          messagesCache.getAllMessages(DESTINATION_UUID, DESTINATION_DEVICE_ID, message.getTimestamp())
+              .collectList()
+              .toFuture().get(5, TimeUnit.SECONDS));
+
+      // the stale ephemeral message should have been removed from the queue, not just filtered from the page
+      assertEquals(List.of(message, freshEphemeralMessage),
+          messagesCache.getMessagesToPersist(DESTINATION_UUID, DESTINATION_DEVICE_ID, 10));
+
+      assertEquals(Optional.empty(),
+          messagesCache.remove(DESTINATION_UUID, DESTINATION_DEVICE_ID, staleEphemeralMessageGuid)
+              .get(5, TimeUnit.SECONDS));
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     void testClearQueueForDevice(final boolean sealedSender) {
@@ -320,7 +346,7 @@ class MessagesCacheTest {
         }
       }
 
-      messagesCache.clear(DESTINATION_UUID, DESTINATION_DEVICE_ID);
+      messagesCache.clear(DESTINATION_UUID, DESTINATION_DEVICE_ID).join();
 
       assertEquals(Collections.emptyList(), get(DESTINATION_UUID, DESTINATION_DEVICE_ID, messageCount));
       assertEquals(messageCount, get(DESTINATION_UUID, DESTINATION_DEVICE_ID + 1, messageCount).size());
@@ -340,7 +366,7 @@ class MessagesCacheTest {
         }
       }
 
-      messagesCache.clear(DESTINATION_UUID);
+      messagesCache.clear(DESTINATION_UUID).join();
 
       assertEquals(Collections.emptyList(), get(DESTINATION_UUID, DESTINATION_DEVICE_ID, messageCount));
       assertEquals(Collections.emptyList(), get(DESTINATION_UUID, DESTINATION_DEVICE_ID + 1, messageCount));
@@ -375,6 +401,22 @@ class MessagesCacheTest {
               "__keyspace@0__:user_queue::{1b363a31-a429-4fb6-8959-984a025e72ff::7}"));
     }
 
+    @Test
+    void testGetNextPageSize() {
+      final byte[] messageId = "1".getBytes(StandardCharsets.UTF_8);
+
+      assertEquals(MessagesCache.TARGET_PAGE_BYTES / 2048,
+          MessagesCache.getNextPageSize(List.of(new byte[2048], messageId, new byte[2048], messageId)));
+
+      assertEquals(MessagesCache.MAX_PAGE_SIZE,
+          MessagesCache.getNextPageSize(List.of(new byte[16], messageId)),
+          "Small envelopes should not produce pages larger than the maximum size");
+
+      assertEquals(MessagesCache.MIN_PAGE_SIZE,
+          MessagesCache.getNextPageSize(List.of(new byte[MessagesCache.TARGET_PAGE_BYTES], messageId)),
+          "Large envelopes should not produce pages smaller than the minimum size");
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     public void testGetQueuesToPersist(final boolean sealedSender) {
@@ -430,6 +472,38 @@ class MessagesCacheTest {
       });
     }
 
+    @Test
+    void testNotifyLocalListenerWithoutKeyspaceNotification() {
+      final CompletableFuture<Void> notified = new CompletableFuture<>();
+      final UUID messageGuid = UUID.randomUUID();
+
+      final MessageAvailabilityListener listener = new MessageAvailabilityListener() {
+        @Override
+        public boolean handleNewMessagesAvailable() {
+          notified.complete(null);
+          return true;
+        }
+
+        @Override
+        public boolean handleMessagesPersisted() {
+          return true;
+        }
+      };
+
+      // Listeners connected to this server should hear about new messages even if keyspace notifications are delayed
+      // or missing entirely
+      REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+          connection.sync().upstream().commands().configSet("notify-keyspace-events", ""));
+
+      assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+        messagesCache.addMessageAvailabilityListener(DESTINATION_UUID, DESTINATION_DEVICE_ID, listener);
+        messagesCache.insert(messageGuid, DESTINATION_UUID, DESTINATION_DEVICE_ID,
+            generateRandomMessage(messageGuid, true));
+
+        notified.join();
+      });
+    }
+
     @Test
     void testNotifyListenerPersisted() {
       final AtomicBoolean notified = new AtomicBoolean(false);
@@ -593,7 +667,7 @@ class MessagesCacheTest {
       final TestPublisher<Object> page56Publisher = TestPublisher.create();
       final TestPublisher<Object> emptyFinalPagePublisher = TestPublisher.create();
 
-      final Deque<List<byte[]>> pages = new ArrayDeque<>();
+      final Deque<List<Object>> pages = new ArrayDeque<>();
       pages.add(generatePage());
       pages.add(generatePage());
       pages.add(generatePage());
@@ -611,7 +685,7 @@ class MessagesCacheTest {
           .thenReturn(Flux.from(emptyFinalPagePublisher))
           .thenReturn(Flux.empty());
 
-      final Flux<?> allMessages = messagesCache.getAllMessages(UUID.randomUUID(), 1L);
+      final Flux<?> allMessages = messagesCache.getAllMessages(UUID.randomUUID(), 1L, 0);
 
       // Why initialValue = 3?
       // 1. messagesCache.getAllMessages() above produces the first call
@@ -679,8 +753,8 @@ class MessagesCacheTest {
     }
 
     @Test
-    void testGetDiscardsEphemeralMessages() {
-      final Deque<List<byte[]>> pages = new ArrayDeque<>();
+    void testGetLeavesEphemeralMessageDiscardToRedis() {
+      final Deque<List<Object>> pages = new ArrayDeque<>();
       pages.add(generatePage());
       pages.add(generatePage());
       pages.add(generateStaleEphemeralPage());
@@ -691,33 +765,24 @@ class MessagesCacheTest {
           .thenReturn(Flux.just(pages.pop()))
           .thenReturn(Flux.empty());
 
-      final AsyncCommand<?, ?, ?> removeSuccess = new AsyncCommand<>(mock(RedisCommand.class));
-      removeSuccess.complete();
-
-      when(asyncCommands.evalsha(any(), any(), any(), any()))
-          .thenReturn((RedisFuture) removeSuccess);
-
       final Publisher<?> allMessages = messagesCache.get(UUID.randomUUID(), 1L);
 
       StepVerifier.setDefaultTimeout(Duration.ofSeconds(5));
 
-      // async commands are used for remove(), and nothing should happen until we are subscribed
-      verify(asyncCommands, never()).evalsha(any(), any(), any(byte[][].class), any(byte[].class));
-      // the reactive commands will be called once, to prep the first page fetch (but no remote request would actually be sent)
-      verify(reactiveCommands, times(1)).evalsha(any(), any(), any(byte[][].class), any(byte[].class));
-
+      // get_items.lua discards stale ephemeral messages before returning a page, so anything it returns (including
+      // ephemeral messages queued before ephemeral messages were indexed) is published as-is
       StepVerifier.create(allMessages)
           .expectSubscription()
-          .expectNextCount(200)
+          .expectNextCount(300)
           .expectComplete()
           .log()
           .verify();
 
       assertTrue(pages.isEmpty());
-      verify(asyncCommands, atLeast(1)).evalsha(any(), any(), any(), any());
+      verify(asyncCommands, never()).evalsha(any(), any(), any(), any());
     }
 
-    private List<byte[]> generatePage() {
+    private List<Object> generatePage() {
       final List<byte[]> messagesAndIds = new ArrayList<>();
 
       for (int i = 0; i < 100; i++) {
@@ -726,10 +791,11 @@ class MessagesCacheTest {
         messagesAndIds.add(String.valueOf(serialTimestamp).getBytes());
       }
 
-      return messagesAndIds;
+      // get_items.lua returns a page of queue items and the number of stale ephemeral messages it discarded
+      return List.of(messagesAndIds, 0L);
     }
 
-    private List<byte[]> generateStaleEphemeralPage() {
+    private List<Object> generateStaleEphemeralPage() {
       final List<byte[]> messagesAndIds = new ArrayList<>();
 
       for (int i = 0; i < 100; i++) {
@@ -739,7 +805,8 @@ class MessagesCacheTest {
         messagesAndIds.add(String.valueOf(serialTimestamp).getBytes());
       }
 
-      return messagesAndIds;
+      // get_items.lua returns a page of queue items and the number of stale ephemeral messages it discarded
+      return List.of(messagesAndIds, 0L);
     }
   }
 
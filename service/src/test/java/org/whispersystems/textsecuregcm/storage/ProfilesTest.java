@@ -56,6 +56,18 @@ public abstract class ProfilesTest {
     assertThat(retrieved.get().getAboutEmoji()).isEqualTo(profile.getAboutEmoji());
   }
 
+  @Test
+  void testSetGetAsync() {
+    UUID uuid = UUID.randomUUID();
+    VersionedProfile profile = new VersionedProfile("123", "foo", "avatarLocation", "emoji",
+        "the very model of a modern major general",
+        null, "acommitment".getBytes());
+    profiles.set(uuid, profile);
+
+    assertEquals(Optional.of(profile), profiles.getAsync(uuid, "123").join());
+    assertEquals(Optional.empty(), profiles.getAsync(uuid, "456").join());
+  }
+
   @Test
   void testDeleteReset() {
     UUID uuid = UUID.randomUUID();
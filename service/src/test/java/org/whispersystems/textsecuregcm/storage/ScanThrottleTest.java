@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+
+class ScanThrottleTest {
+
+  private AtomicLong nanoTime;
+
+  @BeforeEach
+  void setUp() {
+    nanoTime = new AtomicLong(1_000_000_000L);
+  }
+
+  @Test
+  void testPaceToTargetRate() {
+    final ScanThrottle scanThrottle = new ScanThrottle(100, nanoTime::get);
+
+    assertEquals(Duration.ZERO, scanThrottle.getDelay());
+
+    scanThrottle.pageScanned(consumedCapacity(50));
+    assertEquals(Duration.ofMillis(500), scanThrottle.getDelay());
+
+    nanoTime.addAndGet(Duration.ofMillis(200).toNanos());
+    assertEquals(Duration.ofMillis(300), scanThrottle.getDelay());
+
+    // A concurrent scan's page should push the next page back further
+    scanThrottle.pageScanned(consumedCapacity(10));
+    assertEquals(Duration.ofMillis(400), scanThrottle.getDelay());
+  }
+
+  @Test
+  void testMissingConsumedCapacity() {
+    final ScanThrottle scanThrottle = new ScanThrottle(100, nanoTime::get);
+
+    scanThrottle.pageScanned(null);
+    assertEquals(Duration.ZERO, scanThrottle.getDelay());
+  }
+
+  @Test
+  void testThrottled() {
+    final ScanThrottle scanThrottle = new ScanThrottle(100, nanoTime::get);
+
+    scanThrottle.throttled();
+    assertEquals(50, scanThrottle.getCapacityUnitsPerSecond());
+    assertEquals(ScanThrottle.THROTTLED_BACKOFF, scanThrottle.getDelay());
+
+    nanoTime.addAndGet(ScanThrottle.THROTTLED_BACKOFF.toNanos());
+
+    scanThrottle.pageScanned(consumedCapacity(11));
+    assertEquals(55, scanThrottle.getCapacityUnitsPerSecond(), 0.001);
+    assertEquals(Duration.ofMillis(200), scanThrottle.getDelay());
+
+    for (int i = 0; i < 100; i++) {
+      scanThrottle.throttled();
+    }
+
+    assertEquals(5, scanThrottle.getCapacityUnitsPerSecond(), 0.001, "Rate should not fall below minimum");
+
+    for (int i = 0; i < 100; i++) {
+      scanThrottle.pageScanned(consumedCapacity(0));
+    }
+
+    assertEquals(100, scanThrottle.getCapacityUnitsPerSecond(), 0.001, "Rate should not exceed target");
+  }
+
+  @Test
+  void testUnlimited() {
+    final ScanThrottle scanThrottle = new ScanThrottle(0, nanoTime::get);
+
+    scanThrottle.pageScanned(consumedCapacity(1_000));
+    assertEquals(Duration.ZERO, scanThrottle.getDelay());
+
+    scanThrottle.throttled();
+    assertEquals(ScanThrottle.THROTTLED_BACKOFF, scanThrottle.getDelay());
+  }
+
+  @Test
+  void testIsThrottlingException() {
+    final ProvisionedThroughputExceededException throttlingException =
+        ProvisionedThroughputExceededException.builder().statusCode(400).build();
+
+    assertTrue(ScanThrottle.isThrottlingException(throttlingException));
+    assertTrue(ScanThrottle.isThrottlingException(new CompletionException(throttlingException)));
+    assertFalse(ScanThrottle.isThrottlingException(ConditionalCheckFailedException.builder().build()));
+    assertFalse(ScanThrottle.isThrottlingException(new RuntimeException()));
+  }
+
+  private static ConsumedCapacity consumedCapacity(final double capacityUnits) {
+    return ConsumedCapacity.builder().capacityUnits(capacityUnits).build();
+  }
+}
@@ -16,11 +16,15 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.whispersystems.textsecuregcm.storage.SerializedExpireableJsonDynamoStore.ValueEncoding;
+import org.whispersystems.textsecuregcm.storage.SerializedExpireableJsonDynamoStore.Versioned;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
 import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
@@ -55,7 +59,7 @@ class SerializedExpireableJsonDynamoStoreTest {
     private SerializedExpireableJsonDynamoStore<T> store;
 
     abstract SerializedExpireableJsonDynamoStore<T> getStore(final DynamoDbAsyncClient dynamoDbClient,
-        final String tableName);
+        final String tableName, final ValueEncoding valueEncoding);
 
     abstract T testValue(final String v);
 
@@ -63,7 +67,7 @@ class SerializedExpireableJsonDynamoStoreTest {
 
     @BeforeEach
     void setUp() {
-      store = getStore(DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(), TABLE_NAME);
+      store = getStore(DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(), TABLE_NAME, ValueEncoding.JSON);
     }
 
     @Test
@@ -92,6 +96,47 @@ class SerializedExpireableJsonDynamoStoreTest {
       }
     }
 
+    @Test
+    void testVersionedUpdate() throws Exception {
+      final T original = testValue("1234");
+      final T second = testValue("5678");
+      final T third = testValue("9012");
+
+      assertTrue(ExceptionUtils.unwrap(assertThrows(CompletionException.class,
+              () -> store.update(KEY, original, 1).join())) instanceof ContestedOptimisticLockException,
+          "versioned updates should not create new items");
+
+      store.insert(KEY, original).get(1, TimeUnit.SECONDS);
+      assertEquals(Optional.of(new Versioned<>(original, 1)), store.findVersionedForKey(KEY).get(1, TimeUnit.SECONDS));
+
+      assertEquals(2, store.update(KEY, second, 1).get(1, TimeUnit.SECONDS));
+      assertEquals(Optional.of(new Versioned<>(second, 2)), store.findVersionedForKey(KEY).get(1, TimeUnit.SECONDS));
+
+      assertTrue(ExceptionUtils.unwrap(assertThrows(CompletionException.class,
+          () -> store.update(KEY, third, 1).join())) instanceof ContestedOptimisticLockException);
+      assertEquals(Optional.of(new Versioned<>(second, 2)), store.findVersionedForKey(KEY).get(1, TimeUnit.SECONDS));
+
+      store.update(KEY, third).get(1, TimeUnit.SECONDS);
+      assertEquals(Optional.of(new Versioned<>(third, 3)), store.findVersionedForKey(KEY).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testReadEitherEncoding() throws Exception {
+      final SerializedExpireableJsonDynamoStore<T> binaryStore =
+          getStore(DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(), TABLE_NAME, ValueEncoding.CBOR);
+
+      final T original = testValue("1234");
+      final T second = testValue("5678");
+
+      binaryStore.insert(KEY, original).get(1, TimeUnit.SECONDS);
+      assertEquals(Optional.of(original), store.findForKey(KEY).get(1, TimeUnit.SECONDS));
+      assertEquals(Optional.of(original), binaryStore.findForKey(KEY).get(1, TimeUnit.SECONDS));
+
+      store.update(KEY, second).get(1, TimeUnit.SECONDS);
+      assertEquals(Optional.of(second), store.findForKey(KEY).get(1, TimeUnit.SECONDS));
+      assertEquals(Optional.of(second), binaryStore.findForKey(KEY).get(1, TimeUnit.SECONDS));
+    }
+
     @Test
     void testRemove() throws Exception {
       assertEquals(Optional.empty(), store.findForKey(KEY).get(1, TimeUnit.SECONDS));
@@ -126,8 +171,9 @@ class SerializedExpireableJsonDynamoStoreTest {
 
     class ExpiresStore extends SerializedExpireableJsonDynamoStore<Expires> {
 
-      public ExpiresStore(final DynamoDbAsyncClient dynamoDbClient, final String tableName) {
-        super(dynamoDbClient, tableName, clock);
+      public ExpiresStore(final DynamoDbAsyncClient dynamoDbClient, final String tableName,
+          final ValueEncoding valueEncoding) {
+        super(dynamoDbClient, tableName, clock, valueEncoding);
       }
     }
 
@@ -137,8 +183,8 @@ class SerializedExpireableJsonDynamoStoreTest {
 
     @Override
     SerializedExpireableJsonDynamoStore<Expires> getStore(final DynamoDbAsyncClient dynamoDbClient,
-        final String tableName) {
-      return new ExpiresStore(dynamoDbClient, tableName);
+        final String tableName, final ValueEncoding valueEncoding) {
+      return new ExpiresStore(dynamoDbClient, tableName, valueEncoding);
     }
 
     @Override
@@ -162,15 +208,16 @@ class SerializedExpireableJsonDynamoStoreTest {
 
     class DoesNotExpireStore extends SerializedExpireableJsonDynamoStore<DoesNotExpire> {
 
-      public DoesNotExpireStore(final DynamoDbAsyncClient dynamoDbClient, final String tableName) {
-        super(dynamoDbClient, tableName, clock);
+      public DoesNotExpireStore(final DynamoDbAsyncClient dynamoDbClient, final String tableName,
+          final ValueEncoding valueEncoding) {
+        super(dynamoDbClient, tableName, clock, valueEncoding);
       }
     }
 
     @Override
     SerializedExpireableJsonDynamoStore<DoesNotExpire> getStore(final DynamoDbAsyncClient dynamoDbClient,
-        final String tableName) {
-      return new DoesNotExpireStore(dynamoDbClient, tableName);
+        final String tableName, final ValueEncoding valueEncoding) {
+      return new DoesNotExpireStore(dynamoDbClient, tableName, valueEncoding);
     }
 
     @Override
@@ -37,7 +37,8 @@ class VerificationCodeStoreTest {
   @BeforeEach
   void setUp() {
     verificationCodeStore = new VerificationCodeStore(
-        DYNAMO_DB_EXTENSION.getDynamoDbClient(), Tables.VERIFICATION_CODES.tableName());
+        DYNAMO_DB_EXTENSION.getDynamoDbClient(), DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(),
+        Tables.VERIFICATION_CODES.tableName());
   }
 
   @Test
@@ -82,6 +83,16 @@ class VerificationCodeStoreTest {
     assertFalse(verificationCodeStore.findForNumber(PHONE_NUMBER).isPresent());
   }
 
+  @Test
+  void testRemoveAsync() {
+    verificationCodeStore.insert(PHONE_NUMBER,
+        new StoredVerificationCode("1234", VALID_TIMESTAMP, "abcd", "session".getBytes(StandardCharsets.UTF_8)));
+    assertTrue(verificationCodeStore.findForNumber(PHONE_NUMBER).isPresent());
+
+    verificationCodeStore.removeAsync(PHONE_NUMBER).join();
+    assertFalse(verificationCodeStore.findForNumber(PHONE_NUMBER).isPresent());
+  }
+
   private static boolean storedVerificationCodesAreEqual(final StoredVerificationCode first, final StoredVerificationCode second) {
     if (first == null && second == null) {
       return true;
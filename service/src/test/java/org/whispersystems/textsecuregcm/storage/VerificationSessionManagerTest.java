@@ -0,0 +1,162 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.whispersystems.textsecuregcm.registration.VerificationSession;
+import org.whispersystems.textsecuregcm.storage.DynamoDbExtensionSchema.Tables;
+import org.whispersystems.textsecuregcm.util.AttributeValues;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
+import org.whispersystems.textsecuregcm.util.SystemMapper;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+class VerificationSessionManagerTest {
+
+  private static final Clock CLOCK = Clock.systemUTC();
+
+  @RegisterExtension
+  static final DynamoDbExtension DYNAMO_DB_EXTENSION = new DynamoDbExtension(Tables.VERIFICATION_SESSIONS);
+
+  private VerificationSessions verificationSessions;
+  private VerificationSessionManager verificationSessionManager;
+
+  @BeforeEach
+  void setUp() {
+    verificationSessions = spy(new VerificationSessions(DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(),
+        Tables.VERIFICATION_SESSIONS.tableName(), CLOCK));
+
+    verificationSessionManager = new VerificationSessionManager(verificationSessions);
+  }
+
+  @Test
+  void testFindCached() {
+    final String sessionId = "sessionId";
+    final VerificationSession session = buildSession(false);
+
+    assertEquals(Optional.empty(), verificationSessionManager.findForId(sessionId).join());
+
+    verificationSessionManager.insert(sessionId, session).join();
+
+    assertEquals(Optional.of(session), verificationSessionManager.findForId(sessionId).join());
+    assertEquals(Optional.of(session), verificationSessionManager.findForId(sessionId).join());
+
+    // Only the initial lookup (before the session existed) should have gone to DynamoDB
+    verify(verificationSessions, times(1)).findVersionedForKey(anyString());
+
+    final VerificationSession updatedSession = buildSession(true);
+    verificationSessionManager.update(sessionId, updatedSession).join();
+
+    assertEquals(Optional.of(updatedSession), verificationSessionManager.findForId(sessionId).join());
+    verify(verificationSessions, times(1)).findVersionedForKey(anyString());
+    verify(verificationSessions).update(anyString(), any(), anyLong());
+  }
+
+  @Test
+  void testUpdateStaleSession() {
+    final String sessionId = "sessionId";
+
+    final VerificationSessionManager otherVerificationSessionManager =
+        new VerificationSessionManager(verificationSessions);
+
+    verificationSessionManager.insert(sessionId, buildSession(false)).join();
+    otherVerificationSessionManager.findForId(sessionId).join();
+
+    final VerificationSession updatedSession = buildSession(true);
+    verificationSessionManager.update(sessionId, updatedSession).join();
+
+    // The other manager's cached session is now stale, and it should not be able to overwrite the newer session
+    final CompletionException completionException = assertThrows(CompletionException.class,
+        () -> otherVerificationSessionManager.update(sessionId, buildSession(false)).join());
+
+    assertTrue(ExceptionUtils.unwrap(completionException) instanceof ContestedOptimisticLockException);
+
+    // The conflict is reported to the caller rather than retried over the newer session
+    verify(verificationSessions, times(2)).update(anyString(), any(), anyLong());
+
+    // ...but once it has discarded its stale copy, it should read the current session
+    assertEquals(Optional.of(updatedSession), otherVerificationSessionManager.findForId(sessionId).join());
+    assertEquals(Optional.of(updatedSession), verificationSessions.findForKey(sessionId).join());
+  }
+
+  @Test
+  void testUpdateUncached() {
+    final String sessionId = "sessionId";
+
+    verificationSessionManager.insert(sessionId, buildSession(false)).join();
+
+    final VerificationSessionManager otherVerificationSessionManager =
+        new VerificationSessionManager(verificationSessions);
+
+    // With nothing cached, there's no version to check against, and the write shouldn't cost an extra read
+    final VerificationSession updatedSession = buildSession(true);
+    otherVerificationSessionManager.update(sessionId, updatedSession).join();
+
+    verify(verificationSessions, never()).findVersionedForKey(anyString());
+    verify(verificationSessions, never()).update(anyString(), any(), anyLong());
+    verify(verificationSessions).update(sessionId, updatedSession);
+
+    assertEquals(Optional.of(updatedSession), otherVerificationSessionManager.findForId(sessionId).join());
+  }
+
+  @Test
+  void testUpdateUnversionedItem() throws JsonProcessingException {
+    final String sessionId = "sessionId";
+
+    verificationSessionManager.insert(sessionId, buildSession(false)).join();
+
+    // Servers that don't track versions replace the whole item, dropping the version attribute
+    final VerificationSession unversionedSession = buildSession(false);
+
+    DYNAMO_DB_EXTENSION.getDynamoDbClient().putItem(PutItemRequest.builder()
+        .tableName(Tables.VERIFICATION_SESSIONS.tableName())
+        .item(Map.of(
+            SerializedExpireableJsonDynamoStore.KEY_KEY, AttributeValues.fromString(sessionId),
+            SerializedExpireableJsonDynamoStore.ATTR_SERIALIZED_VALUE,
+            AttributeValues.fromString(SystemMapper.jsonMapper().writeValueAsString(unversionedSession))))
+        .build());
+
+    final VerificationSession updatedSession = buildSession(true);
+
+    final CompletionException completionException = assertThrows(CompletionException.class,
+        () -> verificationSessionManager.update(sessionId, updatedSession).join());
+
+    assertTrue(ExceptionUtils.unwrap(completionException) instanceof ContestedOptimisticLockException);
+
+    // Once the current session has been read again, writes should succeed against the unversioned item
+    assertEquals(Optional.of(unversionedSession), verificationSessionManager.findForId(sessionId).join());
+    verificationSessionManager.update(sessionId, updatedSession).join();
+
+    assertEquals(Optional.of(updatedSession), verificationSessions.findForKey(sessionId).join());
+  }
+
+  private static VerificationSession buildSession(final boolean allowedToRequestCode) {
+    return new VerificationSession(null,
+        allowedToRequestCode ? Collections.emptyList() : List.of(VerificationSession.Information.CAPTCHA),
+        allowedToRequestCode ? List.of(VerificationSession.Information.CAPTCHA) : Collections.emptyList(),
+        allowedToRequestCode, CLOCK.millis(), CLOCK.millis(), Duration.ofMinutes(10).toSeconds());
+  }
+}
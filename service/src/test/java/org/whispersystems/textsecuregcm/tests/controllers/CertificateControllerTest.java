@@ -8,6 +8,7 @@ package org.whispersystems.textsecuregcm.tests.controllers;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.google.common.collect.ImmutableSet;
@@ -20,10 +21,13 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 import javax.ws.rs.core.Response;
 import org.apache.commons.lang3.StringUtils;
+import org.glassfish.jersey.server.ServerProperties;
 import org.glassfish.jersey.test.grizzly.GrizzlyWebTestContainerFactory;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -80,12 +84,14 @@ class CertificateControllerTest {
 
 
   private static final ResourceExtension resources = ResourceExtension.builder()
+      .addProperty(ServerProperties.UNWRAP_COMPLETION_STAGE_IN_WRITER_ENABLE, Boolean.TRUE)
       .addProvider(AuthHelper.getAuthFilter())
       .addProvider(new PolymorphicAuthValueFactoryProvider.Binder<>(
           ImmutableSet.of(AuthenticatedAccount.class, DisabledPermittedAuthenticatedAccount.class)))
       .setMapper(SystemMapper.jsonMapper())
       .setTestContainerFactory(new GrizzlyWebTestContainerFactory())
-      .addResource(new CertificateController(certificateGenerator, serverZkAuthOperations, genericServerSecretParams, clock))
+      .addResource(new CertificateController(certificateGenerator, serverZkAuthOperations, genericServerSecretParams, clock,
+          Executors.newSingleThreadExecutor()))
       .build();
 
   @Test
@@ -173,6 +179,32 @@ class CertificateControllerTest {
     assertArrayEquals(certificate.getIdentityKey().toByteArray(), AuthHelper.VALID_IDENTITY.serialize());
   }
 
+  @Test
+  void testCachedCertificate() throws Exception {
+    final byte[] firstCertificate = getDeliveryCertificate(true);
+    final byte[] secondCertificate = getDeliveryCertificate(true);
+    final byte[] certificateWithoutE164 = getDeliveryCertificate(false);
+
+    assertArrayEquals(firstCertificate, secondCertificate);
+    assertFalse(Arrays.equals(firstCertificate, certificateWithoutE164));
+
+    final SenderCertificate.Certificate certificate = SenderCertificate.Certificate.parseFrom(
+        SenderCertificate.parseFrom(firstCertificate).getCertificate());
+
+    assertEquals(clock.instant().truncatedTo(ChronoUnit.HOURS).plus(Duration.ofDays(1)).toEpochMilli(),
+        certificate.getExpires());
+  }
+
+  private static byte[] getDeliveryCertificate(final boolean includeE164) {
+    return resources.getJerseyTest()
+        .target("/v1/certificate/delivery")
+        .queryParam("includeE164", includeE164)
+        .request()
+        .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID, AuthHelper.VALID_PASSWORD))
+        .get(DeliveryCertificate.class)
+        .getCertificate();
+  }
+
   @Test
   void testBadAuthentication() {
     Response response = resources.getJerseyTest()
@@ -6,12 +6,16 @@ package org.whispersystems.textsecuregcm.tests.controllers;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -29,11 +33,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import javax.ws.rs.Path;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import org.glassfish.jersey.server.ServerProperties;
 import org.glassfish.jersey.test.grizzly.GrizzlyWebTestContainerFactory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -44,6 +51,7 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.signal.libsignal.protocol.IdentityKey;
 import org.signal.libsignal.protocol.ecc.Curve;
 import org.signal.libsignal.protocol.ecc.ECKeyPair;
@@ -62,6 +70,7 @@ import org.whispersystems.textsecuregcm.entities.KEMSignedPreKey;
 import org.whispersystems.textsecuregcm.entities.LinkDeviceRequest;
 import org.whispersystems.textsecuregcm.limits.RateLimiter;
 import org.whispersystems.textsecuregcm.limits.RateLimiters;
+import org.whispersystems.textsecuregcm.mappers.CompletionExceptionMapper;
 import org.whispersystems.textsecuregcm.mappers.DeviceLimitExceededExceptionMapper;
 import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
 import org.whispersystems.textsecuregcm.storage.Account;
@@ -117,6 +126,8 @@ class DeviceControllerTest {
       .setTestContainerFactory(new GrizzlyWebTestContainerFactory())
       .addProvider(new WebsocketRefreshApplicationEventListener(accountsManager, clientPresenceManager))
       .addProvider(new DeviceLimitExceededExceptionMapper())
+      .addProvider(CompletionExceptionMapper.class)
+      .addProperty(ServerProperties.UNWRAP_COMPLETION_STAGE_IN_WRITER_ENABLE, Boolean.TRUE)
       .addResource(new DumbVerificationDeviceController(pendingDevicesManager,
           accountsManager,
           messagesManager,
@@ -159,6 +170,8 @@ class DeviceControllerTest {
 
     when(keysManager.storePqLastResort(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
     when(keysManager.delete(any(), anyLong())).thenReturn(CompletableFuture.completedFuture(null));
+    when(messagesManager.clear(any(), anyLong())).thenReturn(CompletableFuture.completedFuture(null));
+    when(pendingDevicesManager.removeAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
   }
 
   @AfterEach
@@ -204,7 +217,7 @@ class DeviceControllerTest {
 
     assertThat(response.getDeviceId()).isEqualTo(42L);
 
-    verify(pendingDevicesManager).remove(AuthHelper.VALID_NUMBER);
+    verify(pendingDevicesManager).removeAsync(AuthHelper.VALID_NUMBER);
     verify(messagesManager).clear(eq(AuthHelper.VALID_UUID), eq(42L));
     verify(clientPresenceManager).disconnectPresence(AuthHelper.VALID_UUID, Device.MASTER_ID);
   }
@@ -320,7 +333,7 @@ class DeviceControllerTest {
     expectedGcmToken.ifPresentOrElse(expectedToken -> assertEquals(expectedToken, device.getGcmId()),
         () -> assertNull(device.getGcmId()));
 
-    verify(pendingDevicesManager).remove(AuthHelper.VALID_NUMBER);
+    verify(pendingDevicesManager).removeAsync(AuthHelper.VALID_NUMBER);
     verify(messagesManager).clear(eq(AuthHelper.VALID_UUID), eq(42L));
     verify(clientPresenceManager).disconnectPresence(AuthHelper.VALID_UUID, Device.MASTER_ID);
     verify(keysManager).storeEcSignedPreKeys(AuthHelper.VALID_UUID, Map.of(response.getDeviceId(), aciSignedPreKey.get()));
@@ -342,6 +355,160 @@ class DeviceControllerTest {
     );
   }
 
+  @Test
+  void linkDeviceAtomicStoreKeysFailure() {
+    when(accountsManager.getByAccountIdentifier(AuthHelper.VALID_UUID)).thenReturn(Optional.of(AuthHelper.VALID_ACCOUNT));
+
+    final Device existingDevice = mock(Device.class);
+    when(existingDevice.getId()).thenReturn(Device.MASTER_ID);
+    when(AuthHelper.VALID_ACCOUNT.getDevices()).thenReturn(List.of(existingDevice));
+
+    VerificationCode deviceCode = resources.getJerseyTest()
+        .target("/v1/devices/provisioning/code")
+        .request()
+        .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID, AuthHelper.VALID_PASSWORD))
+        .get(VerificationCode.class);
+
+    assertThat(deviceCode).isEqualTo(new VerificationCode(5678901));
+
+    final ECKeyPair aciIdentityKeyPair = Curve.generateKeyPair();
+    final ECKeyPair pniIdentityKeyPair = Curve.generateKeyPair();
+
+    when(account.getIdentityKey()).thenReturn(new IdentityKey(aciIdentityKeyPair.getPublicKey()));
+    when(account.getPhoneNumberIdentityKey()).thenReturn(new IdentityKey(pniIdentityKeyPair.getPublicKey()));
+
+    when(keysManager.storeEcSignedPreKeys(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+    when(keysManager.storePqLastResort(any(), any()))
+        .thenReturn(CompletableFuture.failedFuture(new RuntimeException("OH NO")));
+
+    final LinkDeviceRequest request = new LinkDeviceRequest("5678901",
+        new AccountAttributes(true, 1234, null, null, true, null),
+        new DeviceActivationRequest(Optional.of(KeysHelper.signedECPreKey(1, aciIdentityKeyPair)),
+            Optional.of(KeysHelper.signedECPreKey(2, pniIdentityKeyPair)),
+            Optional.of(KeysHelper.signedKEMPreKey(3, aciIdentityKeyPair)),
+            Optional.of(KeysHelper.signedKEMPreKey(4, pniIdentityKeyPair)),
+            Optional.empty(), Optional.empty()));
+
+    try (final Response response = resources.getJerseyTest()
+        .target("/v1/devices/link")
+        .request()
+        .header("Authorization", AuthHelper.getProvisioningAuthHeader(AuthHelper.VALID_NUMBER, "password1"))
+        .put(Entity.entity(request, MediaType.APPLICATION_JSON_TYPE))) {
+
+      assertEquals(500, response.getStatus());
+    }
+
+    // A device whose keys couldn't be stored must never become part of the account
+    verify(accountsManager, never()).updateAsync(any(), any());
+    verify(account, never()).addDevice(any());
+    verify(pendingDevicesManager, never()).removeAsync(any());
+  }
+
+  @Test
+  void linkDeviceMessageArrivesDuringLinking() {
+    when(accountsManager.getByAccountIdentifier(AuthHelper.VALID_UUID)).thenReturn(Optional.of(AuthHelper.VALID_ACCOUNT));
+
+    final Device existingDevice = mock(Device.class);
+    when(existingDevice.getId()).thenReturn(Device.MASTER_ID);
+    when(AuthHelper.VALID_ACCOUNT.getDevices()).thenReturn(List.of(existingDevice));
+
+    VerificationCode deviceCode = resources.getJerseyTest()
+        .target("/v1/devices/provisioning/code")
+        .request()
+        .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID, AuthHelper.VALID_PASSWORD))
+        .get(VerificationCode.class);
+
+    assertThat(deviceCode).isEqualTo(new VerificationCode(5678901));
+
+    final ECKeyPair aciIdentityKeyPair = Curve.generateKeyPair();
+    final ECKeyPair pniIdentityKeyPair = Curve.generateKeyPair();
+
+    when(account.getIdentityKey()).thenReturn(new IdentityKey(aciIdentityKeyPair.getPublicKey()));
+    when(account.getPhoneNumberIdentityKey()).thenReturn(new IdentityKey(pniIdentityKeyPair.getPublicKey()));
+
+    when(keysManager.storeEcSignedPreKeys(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+    // Once the device is part of the account, a sender may queue a message for it at any time; nothing in the linking
+    // process may clear the device's queue after that point
+    final AtomicBoolean deviceVisible = new AtomicBoolean(false);
+    final AtomicBoolean queueClearedAfterDeviceVisible = new AtomicBoolean(false);
+
+    doAnswer(invocation -> {
+      final Account updatedAccount = invocation.getArgument(0, Account.class);
+      invocation.<Consumer<Account>>getArgument(1).accept(updatedAccount);
+      deviceVisible.set(true);
+
+      return CompletableFuture.completedFuture(updatedAccount);
+    }).when(accountsManager).updateAsync(any(), any());
+
+    when(messagesManager.clear(any(), anyLong())).thenAnswer(invocation -> {
+      queueClearedAfterDeviceVisible.compareAndSet(false, deviceVisible.get());
+      return CompletableFuture.completedFuture(null);
+    });
+
+    final LinkDeviceRequest request = new LinkDeviceRequest("5678901",
+        new AccountAttributes(true, 1234, null, null, true, null),
+        new DeviceActivationRequest(Optional.of(KeysHelper.signedECPreKey(1, aciIdentityKeyPair)),
+            Optional.of(KeysHelper.signedECPreKey(2, pniIdentityKeyPair)),
+            Optional.of(KeysHelper.signedKEMPreKey(3, aciIdentityKeyPair)),
+            Optional.of(KeysHelper.signedKEMPreKey(4, pniIdentityKeyPair)),
+            Optional.empty(), Optional.empty()));
+
+    final DeviceResponse response = resources.getJerseyTest()
+        .target("/v1/devices/link")
+        .request()
+        .header("Authorization", AuthHelper.getProvisioningAuthHeader(AuthHelper.VALID_NUMBER, "password1"))
+        .put(Entity.entity(request, MediaType.APPLICATION_JSON_TYPE), DeviceResponse.class);
+
+    assertThat(response.getDeviceId()).isEqualTo(42L);
+    assertFalse(queueClearedAfterDeviceVisible.get());
+
+    // Stale state is cleared and the new keys are in place before the device becomes visible
+    final InOrder inOrder = inOrder(messagesManager, keysManager, account);
+    inOrder.verify(messagesManager).clear(AuthHelper.VALID_UUID, 42L);
+    inOrder.verify(keysManager).storePqLastResort(eq(AuthHelper.VALID_UUID), any());
+    inOrder.verify(account).addDevice(any());
+  }
+
+  @Test
+  void linkDeviceAtomicConflictingDeviceId() {
+    when(accountsManager.getByAccountIdentifier(AuthHelper.VALID_UUID)).thenReturn(Optional.of(AuthHelper.VALID_ACCOUNT));
+
+    final Device existingDevice = mock(Device.class);
+    when(existingDevice.getId()).thenReturn(Device.MASTER_ID);
+    when(AuthHelper.VALID_ACCOUNT.getDevices()).thenReturn(List.of(existingDevice));
+
+    VerificationCode deviceCode = resources.getJerseyTest()
+        .target("/v1/devices/provisioning/code")
+        .request()
+        .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID, AuthHelper.VALID_PASSWORD))
+        .get(VerificationCode.class);
+
+    assertThat(deviceCode).isEqualTo(new VerificationCode(5678901));
+
+    // Somebody else claims device ID 42 between our picking it and our account update
+    when(account.getNextDeviceId()).thenReturn(42L, 43L);
+
+    final DeviceResponse response = resources.getJerseyTest()
+        .target("/v1/devices/5678901")
+        .request()
+        .header("Authorization", AuthHelper.getProvisioningAuthHeader(AuthHelper.VALID_NUMBER, "password1"))
+        .put(Entity.entity(new AccountAttributes(false, 1234, null, null, true, null),
+                MediaType.APPLICATION_JSON_TYPE),
+            DeviceResponse.class);
+
+    assertThat(response.getDeviceId()).isEqualTo(43L);
+
+    final ArgumentCaptor<Device> deviceCaptor = ArgumentCaptor.forClass(Device.class);
+    verify(account).addDevice(deviceCaptor.capture());
+    assertEquals(43L, deviceCaptor.getValue().getId());
+
+    final InOrder inOrder = inOrder(messagesManager, account);
+    inOrder.verify(messagesManager).clear(AuthHelper.VALID_UUID, 42L);
+    inOrder.verify(messagesManager).clear(AuthHelper.VALID_UUID, 43L);
+    inOrder.verify(account).addDevice(any());
+  }
+
   @ParameterizedTest
   @MethodSource
   @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
@@ -837,7 +1004,7 @@ class DeviceControllerTest {
     assertThat(response.hasEntity()).isFalse();
 
     verify(messagesManager, times(2)).clear(AuthHelper.VALID_UUID, deviceId);
-    verify(accountsManager, times(1)).update(eq(AuthHelper.VALID_ACCOUNT), any());
+    verify(accountsManager, times(1)).updateAsync(eq(AuthHelper.VALID_ACCOUNT), any());
     verify(AuthHelper.VALID_ACCOUNT).removeDevice(deviceId);
     verify(keysManager).delete(AuthHelper.VALID_UUID, deviceId);
   }
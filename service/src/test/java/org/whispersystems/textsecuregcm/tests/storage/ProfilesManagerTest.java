@@ -9,7 +9,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -18,12 +19,21 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import io.lettuce.core.protocol.AsyncCommand;
+import io.lettuce.core.protocol.RedisCommand;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
 import org.whispersystems.textsecuregcm.storage.Profiles;
 import org.whispersystems.textsecuregcm.storage.ProfilesManager;
@@ -34,6 +44,9 @@ public class ProfilesManagerTest {
 
   private Profiles profiles;
   private RedisAdvancedClusterCommands<String, String> commands;
+  private RedisAdvancedClusterCommands<byte[], byte[]> binaryCommands;
+  private RedisAdvancedClusterAsyncCommands<byte[], byte[]> binaryAsyncCommands;
+  private FaultTolerantRedisCluster cacheCluster;
 
   private ProfilesManager profilesManager;
 
@@ -41,18 +54,31 @@ public class ProfilesManagerTest {
   void setUp() {
     //noinspection unchecked
     commands = mock(RedisAdvancedClusterCommands.class);
-    final FaultTolerantRedisCluster cacheCluster = RedisClusterHelper.builder().stringCommands(commands).build();
+    //noinspection unchecked
+    binaryCommands = mock(RedisAdvancedClusterCommands.class);
+    //noinspection unchecked
+    binaryAsyncCommands = mock(RedisAdvancedClusterAsyncCommands.class);
+
+    cacheCluster = RedisClusterHelper.builder()
+        .stringCommands(commands)
+        .binaryCommands(binaryCommands)
+        .binaryAsyncCommands(binaryAsyncCommands)
+        .build();
 
     profiles = mock(Profiles.class);
 
-    profilesManager = new ProfilesManager(profiles, cacheCluster);
+    when(binaryAsyncCommands.hset(any(byte[].class), any(byte[].class), any(byte[].class)))
+        .thenReturn(completedRedisFuture(true));
+
+    profilesManager = new ProfilesManager(profiles, cacheCluster, false);
   }
 
   @Test
   public void testGetProfileInCache() {
     UUID uuid = UUID.randomUUID();
 
-    when(commands.hget(eq("profiles::" + uuid), eq("someversion"))).thenReturn("{\"version\": \"someversion\", \"name\": \"somename\", \"avatar\": \"someavatar\", \"commitment\":\"" + Base64.getEncoder().encodeToString("somecommitment".getBytes()) + "\"}");
+    when(binaryAsyncCommands.hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion"))))
+        .thenReturn(completedRedisFuture(bytes("{\"version\": \"someversion\", \"name\": \"somename\", \"avatar\": \"someavatar\", \"commitment\":\"" + Base64.getEncoder().encodeToString("somecommitment".getBytes()) + "\"}")));
 
     Optional<VersionedProfile> profile = profilesManager.get(uuid, "someversion");
 
@@ -61,8 +87,36 @@ public class ProfilesManagerTest {
     assertEquals(profile.get().getAvatar(), "someavatar");
     assertThat(profile.get().getCommitment()).isEqualTo("somecommitment".getBytes());
 
-    verify(commands, times(1)).hget(eq("profiles::" + uuid), eq("someversion"));
-    verifyNoMoreInteractions(commands);
+    verify(binaryAsyncCommands, times(1)).hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion")));
+    verifyNoMoreInteractions(binaryAsyncCommands);
+    verifyNoMoreInteractions(profiles);
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  public void testGetProfileInCacheEncoding(final boolean binaryCacheEncoding) {
+    final ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster, binaryCacheEncoding);
+
+    UUID uuid = UUID.randomUUID();
+    VersionedProfile profile = new VersionedProfile("someversion", "somename", "someavatar", null, null,
+        null, "somecommitment".getBytes());
+
+    profilesManager.set(uuid, profile);
+
+    final ArgumentCaptor<byte[]> serializedProfileCaptor = ArgumentCaptor.forClass(byte[].class);
+    verify(binaryCommands).hset(aryEq(cacheKey(uuid)), aryEq(bytes("someversion")), serializedProfileCaptor.capture());
+    verify(profiles).set(uuid, profile);
+
+    assertThat(serializedProfileCaptor.getValue()[0] == '{').isNotEqualTo(binaryCacheEncoding);
+
+    when(binaryAsyncCommands.hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion"))))
+        .thenReturn(completedRedisFuture(serializedProfileCaptor.getValue()));
+
+    // Profiles cached in either encoding should be readable regardless of the encoding this instance writes
+    final ProfilesManager otherProfilesManager = new ProfilesManager(profiles, cacheCluster, !binaryCacheEncoding);
+
+    assertEquals(Optional.of(profile), profilesManager.get(uuid, "someversion"));
+    assertEquals(Optional.of(profile), otherProfilesManager.get(uuid, "someversion"));
     verifyNoMoreInteractions(profiles);
   }
 
@@ -72,19 +126,20 @@ public class ProfilesManagerTest {
     VersionedProfile profile = new VersionedProfile("someversion", "somename", "someavatar", null, null,
         null, "somecommitment".getBytes());
 
-    when(commands.hget(eq("profiles::" + uuid), eq("someversion"))).thenReturn(null);
-    when(profiles.get(eq(uuid), eq("someversion"))).thenReturn(Optional.of(profile));
+    when(binaryAsyncCommands.hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion"))))
+        .thenReturn(completedRedisFuture(null));
+    when(profiles.getAsync(eq(uuid), eq("someversion"))).thenReturn(CompletableFuture.completedFuture(Optional.of(profile)));
 
     Optional<VersionedProfile> retrieved = profilesManager.get(uuid, "someversion");
 
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), profile);
 
-    verify(commands, times(1)).hget(eq("profiles::" + uuid), eq("someversion"));
-    verify(commands, times(1)).hset(eq("profiles::" + uuid), eq("someversion"), anyString());
-    verifyNoMoreInteractions(commands);
+    verify(binaryAsyncCommands, times(1)).hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion")));
+    verify(binaryAsyncCommands, times(1)).hset(aryEq(cacheKey(uuid)), aryEq(bytes("someversion")), any(byte[].class));
+    verifyNoMoreInteractions(binaryAsyncCommands);
 
-    verify(profiles, times(1)).get(eq(uuid), eq("someversion"));
+    verify(profiles, times(1)).getAsync(eq(uuid), eq("someversion"));
     verifyNoMoreInteractions(profiles);
   }
 
@@ -94,19 +149,70 @@ public class ProfilesManagerTest {
     VersionedProfile profile = new VersionedProfile("someversion", "somename", "someavatar", null, null,
         null, "somecommitment".getBytes());
 
-    when(commands.hget(eq("profiles::" + uuid), eq("someversion"))).thenThrow(new RedisException("Connection lost"));
-    when(profiles.get(eq(uuid), eq("someversion"))).thenReturn(Optional.of(profile));
+    when(binaryAsyncCommands.hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion"))))
+        .thenThrow(new RedisException("Connection lost"));
+    when(profiles.getAsync(eq(uuid), eq("someversion"))).thenReturn(CompletableFuture.completedFuture(Optional.of(profile)));
 
     Optional<VersionedProfile> retrieved = profilesManager.get(uuid, "someversion");
 
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), profile);
 
-    verify(commands, times(1)).hget(eq("profiles::" + uuid), eq("someversion"));
-    verify(commands, times(1)).hset(eq("profiles::" + uuid), eq("someversion"), anyString());
-    verifyNoMoreInteractions(commands);
+    verify(binaryAsyncCommands, times(1)).hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion")));
+    verify(binaryAsyncCommands, times(1)).hset(aryEq(cacheKey(uuid)), aryEq(bytes("someversion")), any(byte[].class));
+    verifyNoMoreInteractions(binaryAsyncCommands);
 
-    verify(profiles, times(1)).get(eq(uuid), eq("someversion"));
+    verify(profiles, times(1)).getAsync(eq(uuid), eq("someversion"));
     verifyNoMoreInteractions(profiles);
   }
+
+  @Test
+  public void testGetAsyncLocalCache() {
+    UUID             uuid    = UUID.randomUUID();
+    VersionedProfile profile = new VersionedProfile("someversion", "somename", "someavatar", null, null,
+        null, "somecommitment".getBytes());
+
+    when(binaryAsyncCommands.hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion"))))
+        .thenReturn(completedRedisFuture(null));
+    when(profiles.getAsync(eq(uuid), eq("someversion"))).thenReturn(CompletableFuture.completedFuture(Optional.of(profile)));
+
+    assertEquals(Optional.of(profile), profilesManager.getAsync(uuid, "someversion").join());
+    assertEquals(Optional.of(profile), profilesManager.getAsync(uuid, "someversion").join());
+
+    verify(binaryAsyncCommands, times(1)).hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion")));
+    verify(profiles, times(1)).getAsync(eq(uuid), eq("someversion"));
+
+    // Writes from this server should be visible immediately
+    final VersionedProfile updatedProfile = new VersionedProfile("someversion", "othername", "someavatar", null, null,
+        null, "somecommitment".getBytes());
+
+    profilesManager.set(uuid, updatedProfile);
+    assertEquals(Optional.of(updatedProfile), profilesManager.getAsync(uuid, "someversion").join());
+
+    verify(binaryAsyncCommands, times(1)).hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion")));
+
+    profilesManager.deleteAll(uuid);
+
+    when(profiles.getAsync(eq(uuid), eq("someversion"))).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+    assertEquals(Optional.empty(), profilesManager.getAsync(uuid, "someversion").join());
+
+    verify(commands).del("profiles::" + uuid);
+    verify(binaryAsyncCommands, times(2)).hget(aryEq(cacheKey(uuid)), aryEq(bytes("someversion")));
+  }
+
+  private static byte[] cacheKey(final UUID uuid) {
+    return bytes("profiles::" + uuid);
+  }
+
+  private static byte[] bytes(final String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static <T> RedisFuture<T> completedRedisFuture(final T value) {
+    //noinspection unchecked
+    final AsyncCommand<byte[], byte[], T> command = new AsyncCommand<>(mock(RedisCommand.class));
+    command.complete(value);
+
+    return command;
+  }
 }
@@ -6,6 +6,7 @@
 package org.whispersystems.textsecuregcm.tests.util;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
@@ -14,10 +15,13 @@ import static org.mockito.Mockito.when;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import org.mockito.MockingDetails;
 import org.mockito.stubbing.Stubbing;
 import org.whispersystems.textsecuregcm.auth.SaltedTokenHash;
@@ -61,6 +65,13 @@ public class AccountsHelper {
       return markStale ? copyAndMarkStale(account) : account;
     });
 
+    when(mockAccountsManager.updateAsync(any(), any())).thenAnswer(answer -> {
+      final Account account = answer.getArgument(0, Account.class);
+      answer.getArgument(1, Consumer.class).accept(account);
+
+      return CompletableFuture.completedFuture(markStale ? copyAndMarkStale(account) : account);
+    });
+
     when(mockAccountsManager.updateDevice(any(), anyLong(), any())).thenAnswer(answer -> {
       final Account account = answer.getArgument(0, Account.class);
       final Long deviceId = answer.getArgument(1, Long.class);
@@ -69,6 +80,27 @@ public class AccountsHelper {
       return markStale ? copyAndMarkStale(account) : account;
     });
 
+    when(mockAccountsManager.updateDevices(any(), any(), anyInt())).thenAnswer(answer -> {
+      final Collection<Account> accounts = answer.getArgument(0);
+      final Function<Device, Boolean> deviceUpdater = answer.getArgument(1);
+
+      long updatedAccounts = 0;
+
+      for (final Account account : accounts) {
+        boolean updated = false;
+
+        for (final Device device : account.getDevices()) {
+          updated |= deviceUpdater.apply(device);
+        }
+
+        if (updated) {
+          updatedAccounts++;
+        }
+      }
+
+      return CompletableFuture.completedFuture(updatedAccounts);
+    });
+
     when(mockAccountsManager.updateDeviceLastSeen(any(), any(), anyLong())).thenAnswer(answer -> {
       answer.getArgument(1, Device.class).setLastSeen(answer.getArgument(2, Long.class));
       return mockAccountsManager.update(answer.getArgument(0, Account.class), account -> {});
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HexFormat;
+import javax.crypto.Mac;
+import org.junit.jupiter.api.Test;
+
+class HmacUtilsTest {
+
+  private static final byte[] KEY = "test-key".getBytes();
+  private static final byte[] OTHER_KEY = "other-test-key".getBytes();
+
+  @Test
+  void testKeyedHmac256MatchesHmac256() {
+    final ThreadLocal<Mac> keyedMac = HmacUtils.keyedHmac256(KEY);
+    final ThreadLocal<Mac> otherKeyedMac = HmacUtils.keyedHmac256(OTHER_KEY);
+
+    // Reuse both thread-local instances several times on the same thread, interleaved with each other and with one-off
+    // computations, to make sure that none of them leaks key or partial-input state into another
+    for (int i = 0; i < 5; i++) {
+      final String input = "input-" + i;
+
+      assertEquals(HexFormat.of().formatHex(HmacUtils.hmac256(KEY, input)),
+          HmacUtils.hmac256ToHexString(keyedMac, input));
+
+      assertEquals(HexFormat.of().formatHex(HmacUtils.hmac256(OTHER_KEY, input)),
+          HmacUtils.hmac256ToHexString(otherKeyedMac, input));
+
+      assertEquals(HmacUtils.hmac256TruncatedToHexString(KEY, input, 10),
+          HmacUtils.hmac256TruncatedToHexString(keyedMac, input, 10));
+    }
+  }
+
+  @Test
+  void testHmac256KnownAnswer() {
+    // RFC 4231, test case 2
+    assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",
+        HmacUtils.hmac256ToHexString(HmacUtils.keyedHmac256("Jefe".getBytes()), "what do ya want for nothing?"));
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+class DeliveryWindowTest {
+
+  @Test
+  void testAcquireWaitsForRoom() {
+    final DeliveryWindow deliveryWindow = new DeliveryWindow(2, 1, 10);
+
+    assertTrue(deliveryWindow.acquire().isDone());
+    assertTrue(deliveryWindow.acquire().isDone());
+
+    final CompletableFuture<Void> waiter = deliveryWindow.acquire();
+    assertFalse(waiter.isDone());
+    assertEquals(2, deliveryWindow.getInFlight());
+
+    deliveryWindow.release(Duration.ofMillis(10), true);
+
+    assertTrue(waiter.isDone());
+    assertEquals(2, deliveryWindow.getInFlight());
+  }
+
+  @Test
+  void testCancelledWaiterGivesUpPlace() {
+    final DeliveryWindow deliveryWindow = new DeliveryWindow(1, 1, 1);
+
+    assertTrue(deliveryWindow.acquire().isDone());
+
+    final CompletableFuture<Void> cancelledWaiter = deliveryWindow.acquire();
+    final CompletableFuture<Void> waiter = deliveryWindow.acquire();
+    assertEquals(2, deliveryWindow.getWaiterCount());
+
+    cancelledWaiter.cancel(false);
+    assertEquals(1, deliveryWindow.getWaiterCount());
+
+    deliveryWindow.release(Duration.ofMillis(10), true);
+
+    assertTrue(waiter.isDone());
+    assertFalse(waiter.isCompletedExceptionally());
+    assertEquals(1, deliveryWindow.getInFlight());
+    assertEquals(0, deliveryWindow.getWaiterCount());
+  }
+
+  @Test
+  void testFailWaiters() {
+    final DeliveryWindow deliveryWindow = new DeliveryWindow(1, 1, 1);
+
+    assertTrue(deliveryWindow.acquire().isDone());
+
+    final CompletableFuture<Void> waiter = deliveryWindow.acquire();
+    deliveryWindow.failWaiters(new CancellationException());
+
+    assertTrue(waiter.isCompletedExceptionally());
+    assertEquals(0, deliveryWindow.getWaiterCount());
+    assertEquals(1, deliveryWindow.getInFlight());
+
+    deliveryWindow.release(Duration.ofMillis(10), true);
+    assertEquals(0, deliveryWindow.getInFlight(), "Failed waiters should not be admitted");
+
+    assertTrue(deliveryWindow.acquire().isDone(), "Window should admit new callers after failing old ones");
+  }
+
+  @Test
+  void testGrowOnFastAcknowledgement() {
+    final DeliveryWindow deliveryWindow = new DeliveryWindow(2, 1, 3);
+
+    deliveryWindow.acquire();
+    assertEquals(3, deliveryWindow.release(Duration.ofMillis(10), true));
+
+    deliveryWindow.acquire();
+    assertEquals(3, deliveryWindow.release(Duration.ofMillis(15), true), "Window should not exceed maximum size");
+  }
+
+  @Test
+  void testShrinkOnSlowAcknowledgement() {
+    final DeliveryWindow deliveryWindow = new DeliveryWindow(4, 1, 10);
+
+    deliveryWindow.acquire();
+    assertEquals(5, deliveryWindow.release(Duration.ofMillis(10), true));
+
+    deliveryWindow.acquire();
+    assertEquals(5, deliveryWindow.release(Duration.ofMillis(30), true));
+
+    deliveryWindow.acquire();
+    assertEquals(4, deliveryWindow.release(Duration.ofMillis(50), true));
+  }
+
+  @Test
+  void testHalveOnFailure() {
+    final DeliveryWindow deliveryWindow = new DeliveryWindow(8, 3, 10);
+
+    deliveryWindow.acquire();
+    assertEquals(4, deliveryWindow.release(Duration.ofMillis(10), false));
+
+    deliveryWindow.acquire();
+    assertEquals(3, deliveryWindow.release(Duration.ofMillis(10), false), "Window should not shrink below minimum size");
+  }
+}
@@ -19,6 +19,7 @@ import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -45,6 +46,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.eclipse.jetty.websocket.api.UpgradeRequest;
 import org.junit.jupiter.api.AfterEach;
@@ -294,6 +296,50 @@ class WebSocketConnectionTest {
     verify(client, times(2)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class));
   }
 
+  @Test
+  void testTimedOutSendReleasesDeliveryWindow() {
+    final WebSocketClient client = mock(WebSocketClient.class);
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        100, retrySchedulingExecutor, Schedulers.immediate(), dynamicConfigurationManager);
+
+    final UUID accountUuid = UUID.randomUUID();
+
+    when(account.getNumber()).thenReturn("+18005551234");
+    when(account.getUuid()).thenReturn(accountUuid);
+    when(device.getId()).thenReturn(1L);
+    when(client.isOpen()).thenReturn(true);
+
+    // Enough unanswered messages to fill the initial delivery window, then one more in the next subscription
+    final List<Envelope> unansweredMessages = IntStream.range(0, 8)
+        .mapToObj(i -> createMessage(UUID.randomUUID(), UUID.randomUUID(), i, "unanswered"))
+        .toList();
+
+    when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(1L), anyBoolean()))
+        .thenReturn(Flux.fromIterable(unansweredMessages))
+        .thenReturn(Flux.just(createMessage(UUID.randomUUID(), UUID.randomUUID(), 1111, "answered")))
+        .thenReturn(Flux.empty());
+
+    final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
+    when(successResponse.getStatus()).thenReturn(200);
+
+    final AtomicInteger sendCounter = new AtomicInteger(0);
+
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class)))
+        .thenAnswer(invocation -> sendCounter.getAndIncrement() < unansweredMessages.size()
+            ? new CompletableFuture<>()
+            : CompletableFuture.completedFuture(successResponse));
+
+    connection.processStoredMessages();
+
+    // Wait for the first subscription to fail with timeouts and schedule a retry, then retry immediately
+    verify(retrySchedulingExecutor, timeout(5_000)).schedule(any(Runnable.class), anyLong(), any());
+    connection.processStoredMessages();
+
+    // The unanswered messages must not hold on to their places in the delivery window after they've timed out
+    verify(client, timeout(5_000).times(9))
+        .sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class));
+  }
+
   @Test
   void testPendingSend() {
     final UUID accountUuid = UUID.randomUUID();
@@ -801,7 +847,7 @@ class WebSocketConnectionTest {
         .log()
         .verify();
 
-    testPublisher.assertMaxRequested(WebSocketConnection.MESSAGE_PUBLISHER_LIMIT_RATE);
+    testPublisher.assertMaxRequested(WebSocketConnection.MAX_DELIVERY_WINDOW_SIZE);
   }
 
   @Test
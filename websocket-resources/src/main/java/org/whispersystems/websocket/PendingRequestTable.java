@@ -0,0 +1,80 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.websocket;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.whispersystems.websocket.messages.WebSocketResponseMessage;
+
+/**
+ * Tracks requests sent to a websocket client that are still awaiting a response. The table holds at most a fixed number
+ * of pending requests, and pending requests that go unanswered for too long are completed exceptionally with a
+ * {@link java.util.concurrent.TimeoutException} and removed from the table.
+ */
+public class PendingRequestTable {
+
+  private final Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequests = new ConcurrentHashMap<>();
+  private final Semaphore capacity;
+  private final Duration timeout;
+
+  public PendingRequestTable(final int maxPendingRequests, final Duration timeout) {
+    this.capacity = new Semaphore(maxPendingRequests);
+    this.timeout = timeout;
+  }
+
+  /**
+   * Registers a new pending request.
+   *
+   * @param requestId the ID of the outbound request
+   *
+   * @return a future that will be completed when a response to the request arrives, or empty if the table is already
+   * full
+   */
+  public Optional<CompletableFuture<WebSocketResponseMessage>> register(final long requestId) {
+    if (!capacity.tryAcquire()) {
+      return Optional.empty();
+    }
+
+    final CompletableFuture<WebSocketResponseMessage> future = new CompletableFuture<>();
+    pendingRequests.put(requestId, future);
+
+    future.whenComplete((ignored, cause) -> {
+      if (pendingRequests.remove(requestId, future)) {
+        capacity.release();
+      }
+    });
+
+    future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+    return Optional.of(future);
+  }
+
+  /**
+   * Completes the pending request to which the given message is a response, if any.
+   */
+  public void complete(final WebSocketResponseMessage responseMessage) {
+    final CompletableFuture<WebSocketResponseMessage> future = pendingRequests.get(responseMessage.getRequestId());
+
+    if (future != null) {
+      future.complete(responseMessage);
+    }
+  }
+
+  /**
+   * Completes all pending requests exceptionally with the given cause.
+   */
+  public void failAll(final Throwable cause) {
+    pendingRequests.values().forEach(future -> future.completeExceptionally(cause));
+  }
+
+  public int size() {
+    return pendingRequests.size();
+  }
+}
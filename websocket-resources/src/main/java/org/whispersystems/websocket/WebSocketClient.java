@@ -4,14 +4,18 @@
  */
 package org.whispersystems.websocket;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 import com.google.common.net.HttpHeaders;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketException;
@@ -27,19 +31,29 @@ public class WebSocketClient {
 
   private static final Logger logger = LoggerFactory.getLogger(WebSocketClient.class);
 
-  private final Session                                                session;
-  private final RemoteEndpoint                                         remoteEndpoint;
-  private final WebSocketMessageFactory                                messageFactory;
-  private final Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequestMapper;
-  private final long                                                   created;
+  private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+  private static final DistributionSummary PENDING_REQUESTS_DISTRIBUTION = DistributionSummary
+      .builder(name(WebSocketClient.class, "pendingRequests"))
+      .description("Number of requests awaiting a response on a connection when a new request is sent")
+      .publishPercentileHistogram(true)
+      .register(Metrics.globalRegistry);
+
+  private final Session                 session;
+  private final RemoteEndpoint          remoteEndpoint;
+  private final WebSocketMessageFactory messageFactory;
+  private final PendingRequestTable     pendingRequests;
+  private final AtomicLong              nextRequestId;
+  private final long                    created;
 
   public WebSocketClient(Session session, RemoteEndpoint remoteEndpoint,
                          WebSocketMessageFactory messageFactory,
-                         Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequestMapper) {
+                         PendingRequestTable pendingRequests) {
     this.session = session;
     this.remoteEndpoint = remoteEndpoint;
     this.messageFactory = messageFactory;
-    this.pendingRequestMapper = pendingRequestMapper;
+    this.pendingRequests = pendingRequests;
+    this.nextRequestId = new AtomicLong(SECURE_RANDOM.nextLong());
     this.created = System.currentTimeMillis();
   }
 
@@ -47,10 +61,16 @@ public class WebSocketClient {
                                                                  List<String> headers,
                                                                  Optional<byte[]> body)
   {
-    final long                                        requestId = generateRequestId();
-    final CompletableFuture<WebSocketResponseMessage> future    = new CompletableFuture<>();
+    final long requestId = generateRequestId();
+    final Optional<CompletableFuture<WebSocketResponseMessage>> maybeFuture = pendingRequests.register(requestId);
+
+    PENDING_REQUESTS_DISTRIBUTION.record(pendingRequests.size());
 
-    pendingRequestMapper.put(requestId, future);
+    if (maybeFuture.isEmpty()) {
+      return CompletableFuture.failedFuture(new IOException("Too many pending requests"));
+    }
+
+    final CompletableFuture<WebSocketResponseMessage> future = maybeFuture.get();
 
     WebSocketMessage requestMessage = messageFactory.createRequest(Optional.of(requestId), verb, path, headers, body);
 
@@ -59,7 +79,6 @@ public class WebSocketClient {
         @Override
         public void writeFailed(Throwable x) {
           logger.debug("Write failed", x);
-          pendingRequestMapper.remove(requestId);
           future.completeExceptionally(x);
         }
 
@@ -68,13 +87,19 @@ public class WebSocketClient {
       });
     } catch (WebSocketException e) {
       logger.debug("Write", e);
-      pendingRequestMapper.remove(requestId);
       future.completeExceptionally(e);
     }
 
     return future;
   }
 
+  /**
+   * Returns the number of requests sent to this client that have not yet been answered.
+   */
+  public int getPendingRequestCount() {
+    return pendingRequests.size();
+  }
+
   public String getUserAgent() {
     return session.getUpgradeRequest().getHeader(HttpHeaders.USER_AGENT);
   }
@@ -105,7 +130,8 @@ public class WebSocketClient {
   }
 
   private long generateRequestId() {
-    return Math.abs(new SecureRandom().nextLong());
+    // Request IDs start from a random point chosen when the connection opens and count up from there
+    return nextRequestId.getAndIncrement() & Long.MAX_VALUE;
   }
 
 }
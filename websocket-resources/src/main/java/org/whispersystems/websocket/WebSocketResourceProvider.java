@@ -16,6 +16,7 @@ import org.glassfish.jersey.server.ContainerRequest;
 import org.glassfish.jersey.server.ContainerResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.whispersystems.websocket.configuration.WebSocketConfiguration;
 import org.whispersystems.websocket.logging.WebsocketRequestLog;
 import org.whispersystems.websocket.messages.InvalidMessageException;
 import org.whispersystems.websocket.messages.WebSocketMessage;
@@ -28,12 +29,12 @@ import org.whispersystems.websocket.setup.WebSocketConnectListener;
 
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.security.Principal;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -41,7 +42,6 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
@@ -49,8 +49,6 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
 
   private static final Logger logger = LoggerFactory.getLogger(WebSocketResourceProvider.class);
 
-  private final Map<Long, CompletableFuture<WebSocketResponseMessage>> requestMap = new ConcurrentHashMap<>();
-
   private final T                                  authenticated;
   private final WebSocketMessageFactory            messageFactory;
   private final Optional<WebSocketConnectListener> connectListener;
@@ -58,6 +56,7 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
   private final WebsocketRequestLog                requestLog;
   private final long                               idleTimeoutMillis;
   private final String                             remoteAddress;
+  private final PendingRequestTable                pendingRequests;
 
   private Session                 session;
   private RemoteEndpoint          remoteEndpoint;
@@ -72,6 +71,20 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
                                    WebSocketMessageFactory            messageFactory,
                                    Optional<WebSocketConnectListener> connectListener,
                                    long                               idleTimeoutMillis)
+  {
+    this(remoteAddress, jerseyHandler, requestLog, authenticated, messageFactory, connectListener, idleTimeoutMillis,
+        WebSocketConfiguration.DEFAULT_MAX_PENDING_REQUESTS, WebSocketConfiguration.DEFAULT_PENDING_REQUEST_TIMEOUT);
+  }
+
+  public WebSocketResourceProvider(String                             remoteAddress,
+                                   ApplicationHandler                 jerseyHandler,
+                                   WebsocketRequestLog                requestLog,
+                                   T                                  authenticated,
+                                   WebSocketMessageFactory            messageFactory,
+                                   Optional<WebSocketConnectListener> connectListener,
+                                   long                               idleTimeoutMillis,
+                                   int                                maxPendingRequests,
+                                   Duration                           pendingRequestTimeout)
   {
     this.remoteAddress     = remoteAddress;
     this.jerseyHandler     = jerseyHandler;
@@ -80,13 +93,14 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
     this.messageFactory    = messageFactory;
     this.connectListener   = connectListener;
     this.idleTimeoutMillis = idleTimeoutMillis;
+    this.pendingRequests   = new PendingRequestTable(maxPendingRequests, pendingRequestTimeout);
   }
 
   @Override
   public void onWebSocketConnect(Session session) {
     this.session        = session;
     this.remoteEndpoint = session.getRemote();
-    this.context        = new WebSocketSessionContext(new WebSocketClient(session, remoteEndpoint, messageFactory, requestMap));
+    this.context        = new WebSocketSessionContext(new WebSocketClient(session, remoteEndpoint, messageFactory, pendingRequests));
     this.context.setAuthenticated(authenticated);
     this.session.setIdleTimeout(idleTimeoutMillis);
 
@@ -136,14 +150,7 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
   public void onWebSocketClose(int statusCode, String reason) {
     if (context != null) {
       context.notifyClosed(statusCode, reason);
-
-      for (long requestId : requestMap.keySet()) {
-        CompletableFuture<WebSocketResponseMessage> outstandingRequest = requestMap.remove(requestId);
-
-        if (outstandingRequest != null) {
-          outstandingRequest.completeExceptionally(new IOException("Connection closed!"));
-        }
-      }
+      pendingRequests.failAll(new IOException("Connection closed!"));
     }
   }
 
@@ -156,11 +163,9 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
     ContainerRequest containerRequest = new ContainerRequest(null, URI.create(requestMessage.getPath()), requestMessage.getVerb(), new WebSocketSecurityContext(new ContextPrincipal(context)), new MapPropertiesDelegate(new HashMap<>()), jerseyHandler.getConfiguration());
     containerRequest.headers(getCombinedHeaders(session.getUpgradeRequest().getHeaders(), requestMessage.getHeaders()));
 
-    if (requestMessage.getBody().isPresent()) {
-      containerRequest.setEntityStream(new ByteArrayInputStream(requestMessage.getBody().get()));
-    }
+    requestMessage.getBodyAsInputStream().ifPresent(containerRequest::setEntityStream);
 
-    ByteArrayOutputStream                responseBody     = new ByteArrayOutputStream();
+    ResponseBodyOutputStream             responseBody     = new ResponseBodyOutputStream();
     CompletableFuture<ContainerResponse> responseFuture   = (CompletableFuture<ContainerResponse>) jerseyHandler.apply(containerRequest, responseBody);
 
     responseFuture.thenAccept(response -> {
@@ -200,30 +205,22 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
   }
 
   private void handleResponse(WebSocketResponseMessage responseMessage) {
-    CompletableFuture<WebSocketResponseMessage> future = requestMap.remove(responseMessage.getRequestId());
-
-    if (future != null) {
-      future.complete(responseMessage);
-    }
+    pendingRequests.complete(responseMessage);
   }
 
   private void close(Session session, int status, String message) {
     session.close(status, message);
   }
 
-  private void sendResponse(WebSocketRequestMessage requestMessage, ContainerResponse response, ByteArrayOutputStream responseBody) {
+  private void sendResponse(WebSocketRequestMessage requestMessage, ContainerResponse response, ResponseBodyOutputStream responseBody) {
     if (requestMessage.hasRequestId()) {
-      byte[] body = responseBody.toByteArray();
+      Optional<ByteBuffer> body = responseBody.size() > 0 ? Optional.of(responseBody.asByteBuffer()) : Optional.empty();
 
-      if (body.length <= 0) {
-        body = null;
-      }
-
-      byte[] responseBytes = messageFactory.createResponse(requestMessage.getRequestId(),
-                                                           response.getStatus(),
-                                                           response.getStatusInfo().getReasonPhrase(),
-                                                           getHeaderList(response.getStringHeaders()),
-                                                           Optional.ofNullable(body))
+      byte[] responseBytes = messageFactory.createResponseWithBuffer(requestMessage.getRequestId(),
+                                                                     response.getStatus(),
+                                                                     response.getStatusInfo().getReasonPhrase(),
+                                                                     getHeaderList(response.getStringHeaders()),
+                                                                     body)
                                            .toByteArray();
 
       remoteEndpoint.sendBytesByFuture(ByteBuffer.wrap(responseBytes));
@@ -260,4 +257,15 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
 
     return headers;
   }
+
+  /**
+   * A byte array output stream that exposes its contents without copying them; the response body is written once by
+   * Jersey and then serialized directly into the outbound websocket message.
+   */
+  private static class ResponseBodyOutputStream extends ByteArrayOutputStream {
+
+    ByteBuffer asByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
 }
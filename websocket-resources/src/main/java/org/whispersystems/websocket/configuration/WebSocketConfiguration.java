@@ -5,6 +5,7 @@
 package org.whispersystems.websocket.configuration;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.Duration;
 import javax.validation.Valid;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
@@ -13,6 +14,9 @@ import org.whispersystems.websocket.logging.WebsocketRequestLoggerFactory;
 
 public class WebSocketConfiguration {
 
+  public static final int DEFAULT_MAX_PENDING_REQUESTS = 1_000;
+  public static final Duration DEFAULT_PENDING_REQUEST_TIMEOUT = Duration.ofMinutes(5);
+
   @Valid
   @NotNull
   @JsonProperty
@@ -28,6 +32,21 @@ public class WebSocketConfiguration {
   @JsonProperty
   private int maxTextMessageSize = 512 * 1024;
 
+  /**
+   * The maximum number of requests sent to a single client that may await a response at any one time; further requests
+   * fail immediately until the client catches up.
+   */
+  @Min(1)
+  @JsonProperty
+  private int maxPendingRequests = DEFAULT_MAX_PENDING_REQUESTS;
+
+  /**
+   * How long a request sent to a client may await a response before it's considered failed.
+   */
+  @NotNull
+  @JsonProperty
+  private Duration pendingRequestTimeout = DEFAULT_PENDING_REQUEST_TIMEOUT;
+
   public WebsocketRequestLoggerFactory getRequestLog() {
     return requestLog;
   }
@@ -39,4 +58,12 @@ public class WebSocketConfiguration {
   public int getMaxTextMessageSize() {
     return maxTextMessageSize;
   }
+
+  public int getMaxPendingRequests() {
+    return maxPendingRequests;
+  }
+
+  public Duration getPendingRequestTimeout() {
+    return pendingRequestTimeout;
+  }
 }
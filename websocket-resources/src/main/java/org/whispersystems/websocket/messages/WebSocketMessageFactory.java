@@ -5,6 +5,7 @@
 package org.whispersystems.websocket.messages;
 
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,4 +24,12 @@ public interface WebSocketMessageFactory {
                                          List<String> headers,
                                          Optional<byte[]> body);
 
+  /**
+   * Creates a response message whose body is backed directly by the given buffer rather than a copy of it; callers
+   * must not modify the contents of the buffer after passing it to this method.
+   */
+  public WebSocketMessage createResponseWithBuffer(long requestId, int status, String message,
+                                                   List<String> headers,
+                                                   Optional<ByteBuffer> body);
+
 }
@@ -4,8 +4,8 @@
  */
 package org.whispersystems.websocket.messages.protobuf;
 
-import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import java.nio.ByteBuffer;
 import org.whispersystems.websocket.messages.InvalidMessageException;
 import org.whispersystems.websocket.messages.WebSocketMessage;
 import org.whispersystems.websocket.messages.WebSocketRequestMessage;
@@ -17,7 +17,7 @@ public class ProtobufWebSocketMessage implements WebSocketMessage {
 
   ProtobufWebSocketMessage(byte[] buffer, int offset, int length) throws InvalidMessageException {
     try {
-      this.message = SubProtocol.WebSocketMessage.parseFrom(ByteString.copyFrom(buffer, offset, length));
+      this.message = SubProtocol.WebSocketMessage.parseFrom(ByteBuffer.wrap(buffer, offset, length));
 
       if (getType() == Type.REQUEST_MESSAGE) {
         if (!message.getRequest().hasVerb() || !message.getRequest().hasPath()) {
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+import org.whispersystems.websocket.messages.WebSocketResponseMessage;
+
+class PendingRequestTableTest {
+
+  @Test
+  void testComplete() {
+    final PendingRequestTable pendingRequests = new PendingRequestTable(10, Duration.ofMinutes(1));
+
+    final CompletableFuture<WebSocketResponseMessage> future = pendingRequests.register(1).orElseThrow();
+    assertEquals(1, pendingRequests.size());
+
+    final WebSocketResponseMessage responseMessage = mock(WebSocketResponseMessage.class);
+    when(responseMessage.getRequestId()).thenReturn(1L);
+
+    pendingRequests.complete(responseMessage);
+
+    assertSame(responseMessage, future.join());
+    assertEquals(0, pendingRequests.size());
+  }
+
+  @Test
+  void testCapacity() {
+    final PendingRequestTable pendingRequests = new PendingRequestTable(2, Duration.ofMinutes(1));
+
+    final CompletableFuture<WebSocketResponseMessage> future = pendingRequests.register(1).orElseThrow();
+    assertTrue(pendingRequests.register(2).isPresent());
+    assertTrue(pendingRequests.register(3).isEmpty());
+
+    future.completeExceptionally(new IOException());
+
+    assertEquals(1, pendingRequests.size());
+    assertTrue(pendingRequests.register(3).isPresent());
+  }
+
+  @Test
+  void testTimeout() {
+    final PendingRequestTable pendingRequests = new PendingRequestTable(10, Duration.ofMillis(1));
+
+    final CompletableFuture<WebSocketResponseMessage> future = pendingRequests.register(1).orElseThrow();
+
+    final CompletionException completionException = assertThrows(CompletionException.class, future::join);
+    assertInstanceOf(TimeoutException.class, completionException.getCause());
+  }
+
+  @Test
+  void testFailAll() {
+    final PendingRequestTable pendingRequests = new PendingRequestTable(10, Duration.ofMinutes(1));
+
+    final CompletableFuture<WebSocketResponseMessage> firstFuture = pendingRequests.register(1).orElseThrow();
+    final CompletableFuture<WebSocketResponseMessage> secondFuture = pendingRequests.register(2).orElseThrow();
+
+    pendingRequests.failAll(new IOException("Connection closed!"));
+
+    assertTrue(firstFuture.isCompletedExceptionally());
+    assertTrue(secondFuture.isCompletedExceptionally());
+    assertEquals(0, pendingRequests.size());
+  }
+}
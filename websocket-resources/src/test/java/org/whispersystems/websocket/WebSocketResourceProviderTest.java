@@ -31,6 +31,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
@@ -57,6 +58,8 @@ import org.glassfish.jersey.server.ContainerRequest;
 import org.glassfish.jersey.server.ContainerResponse;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
 import org.mockito.stubbing.Answer;
 import org.whispersystems.websocket.auth.WebsocketAuthValueFactoryProvider;
@@ -539,6 +542,53 @@ class WebSocketResourceProviderTest {
     assertThat(response.hasBody()).isFalse();
   }
 
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 1024 * 1024})
+  void testActualRouteMessageEchoBody(final int bodyLength) throws InvalidProtocolBufferException {
+    ResourceConfig resourceConfig = new DropwizardResourceConfig();
+    resourceConfig.register(new TestResource());
+    resourceConfig.register(new WebSocketSessionContextValueFactoryProvider.Binder());
+    resourceConfig.register(new WebsocketAuthValueFactoryProvider.Binder<>(TestPrincipal.class));
+    resourceConfig.register(new JacksonMessageBodyProvider(new ObjectMapper()));
+
+    ApplicationHandler applicationHandler = new ApplicationHandler(resourceConfig);
+    WebsocketRequestLog requestLog = mock(WebsocketRequestLog.class);
+    WebSocketResourceProvider<TestPrincipal> provider = new WebSocketResourceProvider<>("127.0.0.1", applicationHandler,
+        requestLog, new TestPrincipal("foo"), new ProtobufWebSocketMessageFactory(), Optional.empty(), 30000);
+
+    Session session = mock(Session.class);
+    RemoteEndpoint remoteEndpoint = mock(RemoteEndpoint.class);
+    UpgradeRequest request = mock(UpgradeRequest.class);
+
+    when(session.getUpgradeRequest()).thenReturn(request);
+    when(session.getRemote()).thenReturn(remoteEndpoint);
+
+    provider.onWebSocketConnect(session);
+
+    byte[] body = new byte[bodyLength];
+    new Random().nextBytes(body);
+
+    // Embed the frame in a larger buffer to make sure the provider honors the offset and length it's given
+    byte[] message = new ProtobufWebSocketMessageFactory().createRequest(Optional.of(111L), "PUT", "/v1/test/echo",
+        List.of("Content-Type: application/octet-stream"), Optional.of(body)).toByteArray();
+
+    byte[] frame = new byte[message.length + 16];
+    System.arraycopy(message, 0, frame, 8, message.length);
+
+    provider.onWebSocketBinary(frame, 8, message.length);
+
+    ArgumentCaptor<ByteBuffer> responseBytesCaptor = ArgumentCaptor.forClass(ByteBuffer.class);
+
+    verify(remoteEndpoint).sendBytesByFuture(responseBytesCaptor.capture());
+
+    SubProtocol.WebSocketResponseMessage response = getResponse(responseBytesCaptor);
+
+    assertThat(response.getId()).isEqualTo(111L);
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.hasBody()).isEqualTo(bodyLength > 0);
+    assertThat(response.getBody().toByteArray()).isEqualTo(body);
+  }
+
   @Test
   void testActualRouteMessageExceptionMapping() throws InvalidProtocolBufferException {
     ResourceConfig resourceConfig = new DropwizardResourceConfig();
@@ -767,6 +817,14 @@ class WebSocketResourceProviderTest {
       return Response.ok(user.name + ":" + param + ":" + entity.key + ":" + entity.value).build();
     }
 
+    @PUT
+    @Path("/echo")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public byte[] testEcho(byte[] body) {
+      return body;
+    }
+
     @GET
     @Path("/exception/map")
     public Response testExceptionMapping() throws TestException {
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.messages.protobuf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.whispersystems.websocket.messages.InvalidMessageException;
+import org.whispersystems.websocket.messages.WebSocketMessage;
+import org.whispersystems.websocket.messages.WebSocketRequestMessage;
+
+class ProtobufWebSocketMessageFactoryTest {
+
+  private final ProtobufWebSocketMessageFactory messageFactory = new ProtobufWebSocketMessageFactory();
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 1024 * 1024})
+  void testGetBodyAsInputStream(final int bodyLength) throws InvalidMessageException, IOException {
+    final byte[] body = randomBytes(bodyLength);
+    final byte[] serialized = messageFactory.createRequest(Optional.of(1L), "PUT", "/v1/test", List.of(),
+        Optional.of(body)).toByteArray();
+
+    // Parse from the middle of a larger buffer to make sure the message doesn't read past its own bounds
+    final byte[] frame = new byte[serialized.length + 16];
+    System.arraycopy(serialized, 0, frame, 8, serialized.length);
+
+    final WebSocketRequestMessage requestMessage =
+        messageFactory.parseMessage(frame, 8, serialized.length).getRequestMessage();
+
+    // Each call should produce an independent stream over the whole body
+    try (final InputStream first = requestMessage.getBodyAsInputStream().orElseThrow();
+        final InputStream second = requestMessage.getBodyAsInputStream().orElseThrow()) {
+
+      assertThat(first.readAllBytes()).isEqualTo(body);
+      assertThat(second.readAllBytes()).isEqualTo(body);
+    }
+
+    assertThat(requestMessage.getBody()).hasValueSatisfying(b -> assertThat(b).isEqualTo(body));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 1024 * 1024})
+  void testCreateResponseWithBuffer(final int bodyLength) throws InvalidMessageException {
+    final byte[] body = randomBytes(bodyLength);
+
+    // Wrap only a slice of a larger array to make sure the response honors the buffer's position and limit
+    final byte[] backingArray = new byte[bodyLength + 16];
+    System.arraycopy(body, 0, backingArray, 8, bodyLength);
+
+    final WebSocketMessage bufferedResponse = messageFactory.createResponseWithBuffer(1L, 200, "OK",
+        List.of("Content-Type: application/octet-stream"), Optional.of(ByteBuffer.wrap(backingArray, 8, bodyLength)));
+
+    final WebSocketMessage copiedResponse = messageFactory.createResponse(1L, 200, "OK",
+        List.of("Content-Type: application/octet-stream"), Optional.of(body));
+
+    final byte[] serialized = bufferedResponse.toByteArray();
+
+    assertThat(serialized).isEqualTo(copiedResponse.toByteArray());
+    assertThat(messageFactory.parseMessage(serialized, 0, serialized.length).getResponseMessage().getBody())
+        .hasValueSatisfying(b -> assertThat(b).isEqualTo(body));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 1024 * 1024})
+  void testCreateResponseWithBufferSerializedTwice(final int bodyLength) {
+    final byte[] body = randomBytes(bodyLength);
+
+    final WebSocketMessage response = messageFactory.createResponseWithBuffer(1L, 200, "OK", List.of(),
+        Optional.of(ByteBuffer.wrap(body)));
+
+    // Serializing must not consume the wrapped buffer
+    assertThat(response.toByteArray()).isEqualTo(response.toByteArray());
+  }
+
+  private static byte[] randomBytes(final int length) {
+    final byte[] bytes = new byte[length];
+    new Random().nextBytes(bytes);
+
+    return bytes;
+  }
+}